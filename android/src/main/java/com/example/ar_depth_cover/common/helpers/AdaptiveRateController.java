@@ -0,0 +1,189 @@
+package com.example.ar_depth_cover.common.helpers;
+
+/**
+ * Chooses how much continuous depth processing to do so the pipeline keeps up.
+ *
+ * <p>The controller walks a ladder of levels. Level 0 processes every new depth frame at full
+ * resolution. Degrading first skips frames, processing every 2nd, 3rd, ... up to
+ * {@code maxFrameStride}. After that it halves the output resolution, down to
+ * {@code 1 / maxDownsample}. Upgrading walks back the same way.
+ *
+ * <p>Decisions come from {@link #recordLatency}, the end-to-end latency of each delivered frame,
+ * smoothed with an exponential moving average. A level is dropped after
+ * {@link #OVER_BUDGET_SAMPLES} consecutive samples over the frame budget; a frame the pipeline
+ * had to drop counts as one of those samples. A level is regained after
+ * {@link #HEADROOM_SAMPLES} consecutive samples under {@link #HEADROOM_FRACTION} of the budget.
+ * After each change the next {@link #SETTLE_SAMPLES} results are ignored and the average
+ * restarts: those frames were mostly started at the old level and would trigger another step.
+ *
+ * <p>Nothing here reads a clock, so tests can drive it with synthetic timings. All methods are
+ * synchronized; the GL thread asks {@link #shouldProcess} while pipeline threads record results.
+ */
+public class AdaptiveRateController {
+    static final int OVER_BUDGET_SAMPLES = 3;
+    static final int HEADROOM_SAMPLES = 15;
+    static final double HEADROOM_FRACTION = 0.6;
+    static final int SETTLE_SAMPLES = 3;
+    private static final double SMOOTHING = 0.25;
+
+    private final int maxFrameStride;
+    private final int maxDownsampleSteps;
+
+    private long frameBudgetNanos;
+    private int level = 0;
+    private double smoothedLatencyNanos = -1;
+    private int overBudgetCount = 0;
+    private int headroomCount = 0;
+    private int settleRemaining = 0;
+
+    private long lastDepthTimestamp = Long.MIN_VALUE;
+    private long newFrameCount = 0;
+
+    /**
+     * @param frameBudgetNanos Latency a frame may take from acquisition to delivery
+     * @param maxFrameStride Most frames to step over between processed frames, at least 1
+     * @param maxDownsample Largest resolution divisor, a power of two; 1 never lowers resolution
+     */
+    public AdaptiveRateController(long frameBudgetNanos, int maxFrameStride, int maxDownsample) {
+        if (maxFrameStride < 1) {
+            throw new IllegalArgumentException(
+                    "maxFrameStride must be at least 1: " + maxFrameStride);
+        }
+        if (maxDownsample < 1 || Integer.bitCount(maxDownsample) != 1) {
+            throw new IllegalArgumentException(
+                    "maxDownsample must be a power of two: " + maxDownsample);
+        }
+        this.maxFrameStride = maxFrameStride;
+        this.maxDownsampleSteps = Integer.numberOfTrailingZeros(maxDownsample);
+        setFrameBudgetNanos(frameBudgetNanos);
+    }
+
+    public synchronized void setFrameBudgetNanos(long frameBudgetNanos) {
+        if (frameBudgetNanos <= 0) {
+            throw new IllegalArgumentException(
+                    "frameBudgetNanos must be positive: " + frameBudgetNanos);
+        }
+        this.frameBudgetNanos = frameBudgetNanos;
+        restartAverage();
+    }
+
+    public synchronized long getFrameBudgetNanos() {
+        return frameBudgetNanos;
+    }
+
+    /**
+     * Called once per drawn frame with its depth timestamp. Returns whether the frame should be
+     * processed: it must carry a new depth image, and at the current stride only every n-th new
+     * image is taken.
+     */
+    public synchronized boolean shouldProcess(long depthTimestamp) {
+        if (depthTimestamp == lastDepthTimestamp) {
+            return false;
+        }
+        lastDepthTimestamp = depthTimestamp;
+        return newFrameCount++ % getFrameStride() == 0;
+    }
+
+    /**
+     * Records the end-to-end latency of one delivered frame.
+     *
+     * @return true if the level changed
+     */
+    public synchronized boolean recordLatency(long latencyNanos) {
+        if (settleRemaining > 0) {
+            settleRemaining--;
+            return false;
+        }
+        smoothedLatencyNanos = smoothedLatencyNanos < 0
+                ? latencyNanos
+                : smoothedLatencyNanos + SMOOTHING * (latencyNanos - smoothedLatencyNanos);
+
+        if (smoothedLatencyNanos > frameBudgetNanos) {
+            return onOverBudget();
+        }
+        overBudgetCount = 0;
+        if (smoothedLatencyNanos < frameBudgetNanos * HEADROOM_FRACTION) {
+            if (++headroomCount >= HEADROOM_SAMPLES && level > 0) {
+                level--;
+                settle();
+                return true;
+            }
+        } else {
+            headroomCount = 0;
+        }
+        return false;
+    }
+
+    /**
+     * Records a frame the pipeline dropped because a stage was backed up.
+     *
+     * @return true if the level changed
+     */
+    public synchronized boolean recordDropped() {
+        if (settleRemaining > 0) {
+            settleRemaining--;
+            return false;
+        }
+        return onOverBudget();
+    }
+
+    private boolean onOverBudget() {
+        headroomCount = 0;
+        if (++overBudgetCount >= OVER_BUDGET_SAMPLES && level < getMaxLevel()) {
+            level++;
+            settle();
+            return true;
+        }
+        return false;
+    }
+
+    private void settle() {
+        restartAverage();
+        settleRemaining = SETTLE_SAMPLES;
+    }
+
+    private void restartAverage() {
+        smoothedLatencyNanos = -1;
+        overBudgetCount = 0;
+        headroomCount = 0;
+    }
+
+    /** Current position on the ladder, 0 being every frame at full resolution. */
+    public synchronized int getLevel() {
+        return level;
+    }
+
+    public synchronized int getMaxLevel() {
+        return maxFrameStride - 1 + maxDownsampleSteps;
+    }
+
+    /** Process one of every this many new depth frames. */
+    public synchronized int getFrameStride() {
+        return Math.min(level + 1, maxFrameStride);
+    }
+
+    /** Divide the output resolution by this, a power of two. */
+    public synchronized int getDownsample() {
+        return 1 << Math.max(0, level - (maxFrameStride - 1));
+    }
+
+    /** The latency average the next decision is based on, or 0 right after a change. */
+    public synchronized double getSmoothedLatencyMillis() {
+        return smoothedLatencyNanos < 0 ? 0 : smoothedLatencyNanos / 1e6;
+    }
+
+    /** Returns to every frame at full resolution. */
+    public synchronized void reset() {
+        level = 0;
+        lastDepthTimestamp = Long.MIN_VALUE;
+        newFrameCount = 0;
+        settleRemaining = 0;
+        restartAverage();
+    }
+
+    @Override
+    public synchronized String toString() {
+        return "level " + level + " (every " + getFrameStride() + " frames, 1/"
+                + getDownsample() + " resolution)";
+    }
+}
@@ -0,0 +1,106 @@
+package com.example.ar_depth_cover.common.helpers;
+
+import java.util.ArrayDeque;
+
+/**
+ * Fixed-capacity frame queue with credit-based flow control.
+ *
+ * <p>A producer offers frames at its own pace. A consumer may only take a frame while it holds a
+ * credit, and hands the credit back once it is done with the frame. While the consumer is busy
+ * the queue fills up, and from then on frames are dropped according to the {@link DropPolicy}
+ * rather than accumulating. All methods are thread-safe.
+ */
+public class BoundedFrameQueue<T> {
+    /** What to drop when a frame arrives and the queue is full. */
+    public enum DropPolicy {
+        /** Evict the oldest queued frame, so the consumer always sees the most recent ones. */
+        DROP_OLDEST,
+        /** Reject the arriving frame, so the consumer sees an uninterrupted early run. */
+        DROP_NEWEST
+    }
+
+    private final int capacity;
+    private final DropPolicy dropPolicy;
+    private final ArrayDeque<T> frames;
+    private final int maxInFlight;
+    private int credits;
+    private long droppedFrames = 0;
+
+    /**
+     * @param capacity Maximum number of queued frames
+     * @param maxInFlight Maximum number of frames taken but not yet released
+     */
+    public BoundedFrameQueue(int capacity, int maxInFlight, DropPolicy dropPolicy) {
+        if (capacity < 1 || maxInFlight < 1) {
+            throw new IllegalArgumentException(
+                    "capacity and maxInFlight must be positive: " + capacity + ", " + maxInFlight);
+        }
+        this.capacity = capacity;
+        this.dropPolicy = dropPolicy;
+        this.frames = new ArrayDeque<>(capacity);
+        this.maxInFlight = maxInFlight;
+        this.credits = maxInFlight;
+    }
+
+    /**
+     * Queues a frame, dropping one if the queue is full.
+     *
+     * @return The dropped frame, which may be {@code frame} itself, or null if nothing was dropped
+     */
+    public synchronized T offer(T frame) {
+        if (frames.size() < capacity) {
+            frames.addLast(frame);
+            return null;
+        }
+        droppedFrames++;
+        if (dropPolicy == DropPolicy.DROP_NEWEST) {
+            return frame;
+        }
+        T dropped = frames.pollFirst();
+        frames.addLast(frame);
+        return dropped;
+    }
+
+    /**
+     * Takes the oldest queued frame if a credit is available, consuming the credit.
+     *
+     * @return The frame, or null if the queue is empty or every credit is in use
+     */
+    public synchronized T poll() {
+        if (credits == 0 || frames.isEmpty()) {
+            return null;
+        }
+        credits--;
+        return frames.pollFirst();
+    }
+
+    /**
+     * Returns the credit of a frame obtained from {@link #poll()}. Credits never exceed
+     * {@code maxInFlight}, so a surplus release is ignored.
+     */
+    public synchronized void release() {
+        if (credits < maxInFlight) {
+            credits++;
+        }
+    }
+
+    /**
+     * Removes every queued frame without counting it as dropped.
+     */
+    public synchronized void clear() {
+        frames.clear();
+    }
+
+    public synchronized int size() {
+        return frames.size();
+    }
+
+    /** Total number of frames dropped since the queue was created. */
+    public synchronized long getDroppedFrames() {
+        return droppedFrames;
+    }
+
+    public DropPolicy getDropPolicy() {
+        return dropPolicy;
+    }
+}
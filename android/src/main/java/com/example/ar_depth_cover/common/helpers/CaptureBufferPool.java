@@ -0,0 +1,90 @@
+package com.example.ar_depth_cover.common.helpers;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Bounded pool of heap byte buffers for image plane snapshots, keyed by exact capacity.
+ *
+ * <p>Camera planes have a handful of fixed sizes for the life of a session, so after the first
+ * few captures every snapshot is served from the pool instead of allocating a multi-megabyte
+ * buffer. At most {@code maxBuffersPerSize} idle buffers are kept per size; extras handed back
+ * are left to the garbage collector. All methods are thread-safe.
+ */
+public class CaptureBufferPool {
+    private final int maxBuffersPerSize;
+    private final Map<Integer, ArrayDeque<ByteBuffer>> idleBuffers = new HashMap<>();
+    private long hits = 0;
+    private long misses = 0;
+
+    /**
+     * @param maxBuffersPerSize Maximum number of idle buffers kept for each capacity
+     */
+    public CaptureBufferPool(int maxBuffersPerSize) {
+        if (maxBuffersPerSize < 1) {
+            throw new IllegalArgumentException(
+                    "maxBuffersPerSize must be at least 1: " + maxBuffersPerSize);
+        }
+        this.maxBuffersPerSize = maxBuffersPerSize;
+    }
+
+    /**
+     * Lends a cleared buffer with exactly {@code capacity} bytes, allocating one if none is idle.
+     */
+    public synchronized ByteBuffer acquire(int capacity) {
+        ArrayDeque<ByteBuffer> buffers = idleBuffers.get(capacity);
+        ByteBuffer buffer = buffers != null ? buffers.pollFirst() : null;
+        if (buffer == null) {
+            misses++;
+            return ByteBuffer.allocate(capacity);
+        }
+        hits++;
+        buffer.clear();
+        return buffer;
+    }
+
+    /**
+     * Takes back a buffer obtained from {@link #acquire}. Null is ignored.
+     */
+    public synchronized void release(ByteBuffer buffer) {
+        if (buffer == null) {
+            return;
+        }
+        ArrayDeque<ByteBuffer> buffers = idleBuffers.get(buffer.capacity());
+        if (buffers == null) {
+            buffers = new ArrayDeque<>(maxBuffersPerSize);
+            idleBuffers.put(buffer.capacity(), buffers);
+        }
+        if (buffers.size() < maxBuffersPerSize) {
+            buffers.addFirst(buffer);
+        }
+    }
+
+    /** Number of {@link #acquire} calls served by an idle buffer. */
+    public synchronized long getHits() {
+        return hits;
+    }
+
+    /** Number of {@link #acquire} calls that had to allocate. */
+    public synchronized long getMisses() {
+        return misses;
+    }
+
+    /** Number of idle buffers currently held, across all sizes. */
+    public synchronized int getIdleCount() {
+        int count = 0;
+        for (ArrayDeque<ByteBuffer> buffers : idleBuffers.values()) {
+            count += buffers.size();
+        }
+        return count;
+    }
+
+    /**
+     * Drops every idle buffer. Hit and miss counts are kept.
+     */
+    public synchronized void clear() {
+        idleBuffers.clear();
+    }
+}
@@ -0,0 +1,162 @@
+package com.example.ar_depth_cover.common.helpers;
+
+/**
+ * Decides, frame by frame, which depth images a capture sequence should process.
+ *
+ * <p>The renderer asks {@link #shouldCapture} once per drawn frame with the timestamp of the
+ * frame's depth image. A capture is triggered only when that timestamp is new and at least the
+ * rate cap's interval after the previous capture, so the sequence follows the depth sensor's own
+ * cadence instead of a wall-clock timer. A sequence ends after a number of captures or after a
+ * duration, or when it is cancelled; the {@link Listener} is told either way.
+ *
+ * <p>{@link #shouldCapture} only does a few comparisons under a lock that is never held for
+ * longer, so it is safe to call from the GL thread while other threads start or cancel sequences.
+ */
+public class DepthCaptureScheduler {
+    /** Receives the end of each capture sequence, on the thread that ended it. */
+    public interface Listener {
+        void onCaptureSequenceFinished(int capturedFrames, boolean cancelled);
+    }
+
+    private static final long NANOS_PER_SECOND = 1_000_000_000L;
+    // Depth timestamps jitter, so a 10 Hz cap on a 30 Hz stream must accept every third frame
+    // even when it lands a little under 100 ms after the last capture
+    private static final long INTERVAL_SLACK_NANOS = 2_000_000L;
+
+    private Listener listener;
+
+    private boolean active = false;
+    private int frameLimit;
+    private long durationNanos;
+    private long minIntervalNanos;
+    private long startNanos;
+    private long lastDepthTimestamp;
+    private long lastCaptureTimestamp;
+    private int capturedFrames;
+
+    public synchronized void setListener(Listener listener) {
+        this.listener = listener;
+    }
+
+    /**
+     * Starts a sequence that captures {@code frameCount} new depth frames.
+     *
+     * @param maxRateHz Maximum captures per second, or 0 for every new depth frame
+     */
+    public void startFrames(int frameCount, float maxRateHz) {
+        if (frameCount < 1) {
+            throw new IllegalArgumentException("frameCount must be at least 1: " + frameCount);
+        }
+        start(frameCount, 0, maxRateHz);
+    }
+
+    /**
+     * Starts a sequence that captures new depth frames for {@code durationMillis}, measured from
+     * the first frame the scheduler sees.
+     *
+     * @param maxRateHz Maximum captures per second, or 0 for every new depth frame
+     */
+    public void startDuration(long durationMillis, float maxRateHz) {
+        if (durationMillis < 1) {
+            throw new IllegalArgumentException(
+                    "durationMillis must be at least 1: " + durationMillis);
+        }
+        start(0, durationMillis * 1_000_000L, maxRateHz);
+    }
+
+    private void start(int frameLimit, long durationNanos, float maxRateHz) {
+        Listener previousListener = null;
+        int previousCount = 0;
+        synchronized (this) {
+            if (active) {
+                previousListener = listener;
+                previousCount = capturedFrames;
+            }
+            this.frameLimit = frameLimit;
+            this.durationNanos = durationNanos;
+            this.minIntervalNanos =
+                    maxRateHz > 0 ? (long) (NANOS_PER_SECOND / (double) maxRateHz) : 0;
+            this.startNanos = -1;
+            this.lastDepthTimestamp = Long.MIN_VALUE;
+            this.lastCaptureTimestamp = Long.MIN_VALUE;
+            this.capturedFrames = 0;
+            this.active = true;
+        }
+        // A new sequence replaces one still running
+        if (previousListener != null) {
+            previousListener.onCaptureSequenceFinished(previousCount, true);
+        }
+    }
+
+    /**
+     * Cancels the running sequence, if any.
+     */
+    public void cancel() {
+        Listener finishedListener;
+        int count;
+        synchronized (this) {
+            if (!active) {
+                return;
+            }
+            active = false;
+            finishedListener = listener;
+            count = capturedFrames;
+        }
+        if (finishedListener != null) {
+            finishedListener.onCaptureSequenceFinished(count, true);
+        }
+    }
+
+    public synchronized boolean isActive() {
+        return active;
+    }
+
+    /** Number of frames captured by the running or most recent sequence. */
+    public synchronized int getCapturedFrames() {
+        return capturedFrames;
+    }
+
+    /**
+     * Called once per drawn frame. Returns whether the frame's depth image should be captured.
+     *
+     * @param depthTimestamp Timestamp of the frame's depth image, in nanoseconds
+     * @param nowNanos Current monotonic time, e.g. {@code System.nanoTime()}
+     */
+    public boolean shouldCapture(long depthTimestamp, long nowNanos) {
+        boolean capture = false;
+        Listener finishedListener = null;
+        int count = 0;
+        synchronized (this) {
+            if (!active) {
+                return false;
+            }
+            if (startNanos < 0) {
+                startNanos = nowNanos;
+            }
+
+            if (durationNanos > 0 && nowNanos - startNanos >= durationNanos) {
+                active = false;
+            } else if (depthTimestamp != lastDepthTimestamp
+                    && (lastCaptureTimestamp == Long.MIN_VALUE
+                            || depthTimestamp - lastCaptureTimestamp
+                                    >= minIntervalNanos - INTERVAL_SLACK_NANOS)) {
+                capture = true;
+                lastCaptureTimestamp = depthTimestamp;
+                capturedFrames++;
+                if (frameLimit > 0 && capturedFrames >= frameLimit) {
+                    active = false;
+                }
+            }
+            lastDepthTimestamp = depthTimestamp;
+
+            if (!active) {
+                finishedListener = listener;
+                count = capturedFrames;
+            }
+        }
+        if (finishedListener != null) {
+            finishedListener.onCaptureSequenceFinished(count, false);
+        }
+        return capture;
+    }
+}
@@ -0,0 +1,255 @@
+package com.example.ar_depth_cover.common.helpers;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Lossless compression of raw 16-bit depth and 8-bit confidence planes.
+ *
+ * <p>Each sample is predicted from its left, upper and upper-left neighbours with the LOCO-I
+ * median edge detector, which follows smooth surfaces and stops at depth edges. The residuals
+ * are small signed values around zero; they are zigzag mapped to unsigned, split into a plane
+ * of low bytes followed by a plane of high bytes (mostly zeros for depth), and deflated. The
+ * output is a raw deflate stream without a zlib header; its size is known from the container.
+ *
+ * <p>A codec keeps its scratch arrays and zlib state between frames and is not thread-safe.
+ * Call {@link #release()} when done with it to free the native zlib memory.
+ */
+public final class DepthCodec {
+    private final Deflater deflater;
+    private final Inflater inflater = new Inflater(true);
+    private final byte[] overflow = new byte[1];
+    private int[] previousRow = new int[0];
+    private int[] currentRow = new int[0];
+    private byte[] residuals = new byte[0];
+    private byte[] encodedDepth = new byte[0];
+    private byte[] encodedConfidence = new byte[0];
+    private byte[] input = new byte[0];
+
+    /** Codec favoring speed, which loses little ratio once the planes are predicted. */
+    public DepthCodec() {
+        this(Deflater.BEST_SPEED);
+    }
+
+    /**
+     * @param level Deflate level, 1 (fastest) to 9 (smallest)
+     */
+    public DepthCodec(int level) {
+        if (level < Deflater.BEST_SPEED || level > Deflater.BEST_COMPRESSION) {
+            throw new IllegalArgumentException("level must be in 1..9: " + level);
+        }
+        deflater = new Deflater(level, true);
+    }
+
+    /**
+     * Compresses tightly packed little-endian uint16 depth between position and limit.
+     *
+     * @return The compressed plane, valid until the next {@code encodeDepth} on this codec
+     */
+    public ByteBuffer encodeDepth(ByteBuffer depth, int width, int height) {
+        return encode(depth, width, height, 2);
+    }
+
+    /**
+     * Compresses tightly packed 8-bit confidence between position and limit.
+     *
+     * @return The compressed plane, valid until the next {@code encodeConfidence} on this codec
+     */
+    public ByteBuffer encodeConfidence(ByteBuffer confidence, int width, int height) {
+        return encode(confidence, width, height, 1);
+    }
+
+    /**
+     * Decompresses a plane from {@link #encodeDepth} between position and limit into {@code out},
+     * which receives {@code width * height} little-endian samples from its position on.
+     */
+    public void decodeDepth(ByteBuffer encoded, int width, int height, ByteBuffer out)
+            throws DataFormatException {
+        decode(encoded, width, height, 2, out);
+    }
+
+    /**
+     * Decompresses a plane from {@link #encodeConfidence} between position and limit into
+     * {@code out}, which receives {@code width * height} bytes from its position on.
+     */
+    public void decodeConfidence(ByteBuffer encoded, int width, int height, ByteBuffer out)
+            throws DataFormatException {
+        decode(encoded, width, height, 1, out);
+    }
+
+    /** Frees the native zlib state. The codec must not be used afterwards. */
+    public void release() {
+        deflater.end();
+        inflater.end();
+    }
+
+    private ByteBuffer encode(ByteBuffer plane, int width, int height, int bytesPerSample) {
+        int pixels = checkSize(width, height);
+        if (plane.remaining() != pixels * bytesPerSample) {
+            throw new IllegalArgumentException("plane must be tightly packed " + width + "x"
+                    + height + ": " + plane.remaining());
+        }
+        prepare(width, pixels * bytesPerSample);
+        ByteBuffer source = plane.duplicate().order(ByteOrder.LITTLE_ENDIAN);
+        int base = source.position();
+        int mask = bytesPerSample == 2 ? 0xFFFF : 0xFF;
+        int signShift = 32 - 8 * bytesPerSample;
+
+        int[] above = previousRow;
+        int[] row = currentRow;
+        for (int y = 0; y < height; y++) {
+            int rowOffset = y * width;
+            for (int x = 0; x < width; x++) {
+                int index = rowOffset + x;
+                int value = bytesPerSample == 2
+                        ? source.getShort(base + index * 2) & 0xFFFF
+                        : source.get(base + index) & 0xFF;
+                row[x] = value;
+                // Sign extend the wrapped difference, then zigzag it to unsigned
+                int residual = ((value - predict(row, above, x, y)) << signShift) >> signShift;
+                int zigzag = ((residual << 1) ^ (residual >> 31)) & mask;
+                residuals[index] = (byte) zigzag;
+                if (bytesPerSample == 2) {
+                    residuals[pixels + index] = (byte) (zigzag >>> 8);
+                }
+            }
+            int[] swap = above;
+            above = row;
+            row = swap;
+        }
+
+        deflater.reset();
+        deflater.setInput(residuals, 0, pixels * bytesPerSample);
+        deflater.finish();
+        byte[] encoded = bytesPerSample == 2 ? encodedDepth : encodedConfidence;
+        if (encoded.length == 0) {
+            encoded = new byte[Math.max(4096, pixels / 2)];
+        }
+        int length = 0;
+        while (!deflater.finished()) {
+            if (length == encoded.length) {
+                encoded = Arrays.copyOf(encoded, encoded.length * 2);
+            }
+            length += deflater.deflate(encoded, length, encoded.length - length);
+        }
+        if (bytesPerSample == 2) {
+            encodedDepth = encoded;
+        } else {
+            encodedConfidence = encoded;
+        }
+        return ByteBuffer.wrap(encoded, 0, length);
+    }
+
+    private void decode(
+            ByteBuffer compressed, int width, int height, int bytesPerSample, ByteBuffer out)
+            throws DataFormatException {
+        int pixels = checkSize(width, height);
+        int length = pixels * bytesPerSample;
+        if (out.remaining() < length) {
+            throw new IllegalArgumentException(
+                    "out must hold " + length + " bytes: " + out.remaining());
+        }
+        prepare(width, length);
+
+        inflater.reset();
+        if (compressed.hasArray()) {
+            inflater.setInput(compressed.array(), compressed.arrayOffset() + compressed.position(),
+                    compressed.remaining());
+        } else {
+            // Inflater.setInput(ByteBuffer) is missing on older Android releases
+            if (input.length < compressed.remaining()) {
+                input = new byte[compressed.remaining()];
+            }
+            compressed.duplicate().get(input, 0, compressed.remaining());
+            inflater.setInput(input, 0, compressed.remaining());
+        }
+        int inflated = 0;
+        while (!inflater.finished() && inflated <= length) {
+            // Once the plane is full, one more byte tells a longer stream from the final block
+            int count = inflated < length
+                    ? inflater.inflate(residuals, inflated, length - inflated)
+                    : inflater.inflate(overflow);
+            if (count == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+                break;
+            }
+            inflated += count;
+        }
+        if (inflated != length || !inflater.finished()) {
+            throw new DataFormatException("Compressed plane does not hold " + width + "x"
+                    + height + " samples");
+        }
+
+        ByteBuffer target = out.duplicate().order(ByteOrder.LITTLE_ENDIAN);
+        int base = target.position();
+        int mask = bytesPerSample == 2 ? 0xFFFF : 0xFF;
+        int[] above = previousRow;
+        int[] row = currentRow;
+        for (int y = 0; y < height; y++) {
+            int rowOffset = y * width;
+            for (int x = 0; x < width; x++) {
+                int index = rowOffset + x;
+                int zigzag = residuals[index] & 0xFF;
+                if (bytesPerSample == 2) {
+                    zigzag |= (residuals[pixels + index] & 0xFF) << 8;
+                }
+                int residual = (zigzag >>> 1) ^ -(zigzag & 1);
+                int value = (predict(row, above, x, y) + residual) & mask;
+                row[x] = value;
+                if (bytesPerSample == 2) {
+                    target.putShort(base + index * 2, (short) value);
+                } else {
+                    target.put(base + index, (byte) value);
+                }
+            }
+            int[] swap = above;
+            above = row;
+            row = swap;
+        }
+    }
+
+    /**
+     * Median edge detector: left or up when the upper-left sample suggests an edge between them,
+     * else the planar estimate {@code left + up - upLeft}. The first row predicts from the left,
+     * the first column from above.
+     */
+    private static int predict(int[] row, int[] above, int x, int y) {
+        if (y == 0) {
+            return x == 0 ? 0 : row[x - 1];
+        }
+        if (x == 0) {
+            return above[0];
+        }
+        int left = row[x - 1];
+        int up = above[x];
+        int upLeft = above[x - 1];
+        if (upLeft >= Math.max(left, up)) {
+            return Math.min(left, up);
+        }
+        if (upLeft <= Math.min(left, up)) {
+            return Math.max(left, up);
+        }
+        return left + up - upLeft;
+    }
+
+    private static int checkSize(int width, int height) {
+        if (width <= 0 || height <= 0) {
+            throw new IllegalArgumentException(
+                    "size must be positive: " + width + "x" + height);
+        }
+        return width * height;
+    }
+
+    private void prepare(int width, int bytes) {
+        if (previousRow.length < width) {
+            previousRow = new int[width];
+            currentRow = new int[width];
+        }
+        if (residuals.length < bytes) {
+            residuals = new byte[bytes];
+        }
+    }
+}
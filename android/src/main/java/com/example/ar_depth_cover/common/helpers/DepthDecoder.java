@@ -0,0 +1,99 @@
+package com.example.ar_depth_cover.common.helpers;
+
+import java.nio.ByteBuffer;
+import java.nio.ShortBuffer;
+
+/**
+ * Table-driven decoding of raw 16-bit depth and 8-bit confidence planes.
+ *
+ * <p>The millimeter-to-meter conversion is a 65,536-entry table shared by all decoders, and the
+ * confidence threshold is baked into a 256-entry mask per decoder, so the per-pixel work is two
+ * table lookups: no division and no float compare. Decoding, confidence gating and NaN marking
+ * happen in one pass.
+ */
+public final class DepthDecoder {
+    /** Decoder that keeps every pixel regardless of confidence. */
+    public static final DepthDecoder UNGATED = new DepthDecoder(0f);
+
+    private static final float[] MILLIMETERS_TO_METERS = new float[1 << 16];
+
+    static {
+        for (int millimeters = 0; millimeters < MILLIMETERS_TO_METERS.length; millimeters++) {
+            MILLIMETERS_TO_METERS[millimeters] = millimeters / 1000.0f;
+        }
+    }
+
+    private final float confidenceThreshold;
+    private final boolean[] confidenceMask = new boolean[256];
+
+    /**
+     * @param confidenceThreshold Minimum confidence ratio (0..1) for a pixel to be kept; pixels
+     *     below it decode to NaN
+     */
+    public DepthDecoder(float confidenceThreshold) {
+        this.confidenceThreshold = confidenceThreshold;
+        for (int confidence = 0; confidence < confidenceMask.length; confidence++) {
+            confidenceMask[confidence] = confidence / 255.0f >= confidenceThreshold;
+        }
+    }
+
+    public float getConfidenceThreshold() {
+        return confidenceThreshold;
+    }
+
+    /**
+     * Converts a raw unsigned 16-bit millimeter value to meters.
+     */
+    public static float toMeters(int millimeters) {
+        return MILLIMETERS_TO_METERS[millimeters & 0xFFFF];
+    }
+
+    /**
+     * Returns whether a raw confidence byte passes this decoder's threshold.
+     */
+    public boolean isConfident(int confidence) {
+        return confidenceMask[confidence & 0xFF];
+    }
+
+    /**
+     * Decodes rows {@code [rowStart, rowEnd)} into a tightly packed meter plane.
+     *
+     * <p>Buffers are read with absolute indices, so their positions are ignored and several
+     * threads may decode disjoint row ranges of the same frame at once.
+     *
+     * @param depth Raw depth in millimeters, little-endian view
+     * @param depthRowStride Distance between depth rows, in shorts
+     * @param confidence Raw confidence, or null to skip gating
+     * @param confidenceRowStride Distance between confidence rows, in bytes
+     * @param out Destination, {@code width} floats per row
+     */
+    public void decode(
+            ShortBuffer depth,
+            int depthRowStride,
+            ByteBuffer confidence,
+            int confidenceRowStride,
+            int width,
+            float[] out,
+            int rowStart,
+            int rowEnd) {
+        final float[] table = MILLIMETERS_TO_METERS;
+        final boolean[] mask = confidenceMask;
+
+        for (int y = rowStart; y < rowEnd; y++) {
+            int depthOffset = y * depthRowStride;
+            int outOffset = y * width;
+            if (confidence == null) {
+                for (int x = 0; x < width; x++) {
+                    out[outOffset + x] = table[depth.get(depthOffset + x) & 0xFFFF];
+                }
+            } else {
+                int confidenceOffset = y * confidenceRowStride;
+                for (int x = 0; x < width; x++) {
+                    out[outOffset + x] = mask[confidence.get(confidenceOffset + x) & 0xFF]
+                            ? table[depth.get(depthOffset + x) & 0xFFFF]
+                            : Float.NaN;
+                }
+            }
+        }
+    }
+}
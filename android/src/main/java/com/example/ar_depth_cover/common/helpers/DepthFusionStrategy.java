@@ -0,0 +1,43 @@
+package com.example.ar_depth_cover.common.helpers;
+
+import java.nio.ByteBuffer;
+import java.nio.FloatBuffer;
+import java.nio.ShortBuffer;
+
+/**
+ * A temporal depth fusion engine that {@link MultiFrameDepthProcessor} can delegate to.
+ *
+ * @see MultiFrameDepthProcessor#setFusionStrategy(DepthFusionStrategy)
+ */
+public interface DepthFusionStrategy {
+    /**
+     * Fuses a new raw depth frame into the strategy's state.
+     *
+     * @param depthBuffer Raw depth in millimeters, one unsigned 16-bit value per pixel
+     * @param confidenceBuffer Raw confidence, one unsigned byte per pixel
+     * @param timestamp Timestamp of the frame in milliseconds
+     * @param cameraPose Camera-to-world pose as a column-major 4x4 matrix, or null if unknown
+     * @param fx Focal length in depth image pixels
+     * @param fy Focal length in depth image pixels
+     * @param cx Principal point in depth image pixels
+     * @param cy Principal point in depth image pixels
+     * @return Fused depth in meters with NaN for invalid pixels. The buffer is owned by the
+     *     strategy and is overwritten by the next call.
+     */
+    FloatBuffer fuse(
+            ShortBuffer depthBuffer,
+            ByteBuffer confidenceBuffer,
+            long timestamp,
+            int width,
+            int height,
+            float[] cameraPose,
+            float fx,
+            float fy,
+            float cx,
+            float cy);
+
+    /**
+     * Discards all accumulated state.
+     */
+    void reset();
+}
@@ -0,0 +1,326 @@
+package com.example.ar_depth_cover.common.helpers;
+
+import java.util.ArrayDeque;
+import java.util.Iterator;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Bounded queue of image writes, drained in order by a single background thread.
+ *
+ * <p>Each pending write typically pins a full-size frame copy, so the queue holds at most
+ * {@code capacity} of them. When it is full, the {@link OverflowPolicy} decides whether the
+ * producer waits, the oldest pending write is discarded, or the new one is. Discarded writes get
+ * {@link WriteTask#discard()} so they can return pooled buffers. The time each write spent
+ * waiting in the queue is tracked so slow storage shows up in the metrics before it shows up as
+ * dropped frames.
+ *
+ * <p>Control tasks from {@link #submitControl}, such as closing a file the writes go to, bypass
+ * the capacity and overflow policy so they are never lost.
+ */
+public class ImageWriteQueue {
+    /** What {@link #submit} does when the queue is full. */
+    public enum OverflowPolicy {
+        /** Wait for room; nothing is lost but the producer stalls while storage catches up. */
+        BLOCK,
+        /** Discard the oldest pending write to make room for the new one. */
+        DROP_OLDEST,
+        /** Discard the new write and keep the pending ones. */
+        SKIP
+    }
+
+    /** One unit of work for the writer thread. */
+    public interface WriteTask {
+        /** Performs the write on the writer thread. */
+        void write() throws Exception;
+
+        /** Called instead of {@link #write()} when the task is dropped or the queue shuts down. */
+        void discard();
+    }
+
+    private static final class Entry {
+        final WriteTask task;
+        final long enqueuedNanos;
+        final boolean control;
+
+        Entry(WriteTask task, long enqueuedNanos, boolean control) {
+            this.task = task;
+            this.enqueuedNanos = enqueuedNanos;
+            this.control = control;
+        }
+    }
+
+    private final String name;
+    private final ArrayDeque<Entry> pending = new ArrayDeque<>();
+    private final Object lock = new Object();
+    private final Thread writer;
+
+    private int capacity;
+    private OverflowPolicy overflowPolicy;
+    private boolean shutdown = false;
+    // Pending control tasks, which do not count toward the capacity
+    private int pendingControl = 0;
+
+    // Metrics, guarded by lock
+    private long submitted = 0;
+    private long started = 0;
+    private long completed = 0;
+    private long failed = 0;
+    private long dropped = 0;
+    private long totalQueueLatencyNanos = 0;
+    private long maxQueueLatencyNanos = 0;
+    private int maxDepth = 0;
+
+    /**
+     * @param name Name of the writer thread
+     * @param capacity Maximum number of pending writes
+     */
+    public ImageWriteQueue(String name, int capacity, OverflowPolicy overflowPolicy) {
+        this.name = name;
+        setCapacity(capacity);
+        this.overflowPolicy = overflowPolicy;
+        writer = new Thread(this::drain, name);
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    /**
+     * Changes the maximum number of pending writes. Writes already queued beyond a smaller
+     * capacity are kept.
+     */
+    public void setCapacity(int capacity) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("capacity must be at least 1: " + capacity);
+        }
+        synchronized (lock) {
+            this.capacity = capacity;
+            lock.notifyAll();
+        }
+    }
+
+    public void setOverflowPolicy(OverflowPolicy overflowPolicy) {
+        synchronized (lock) {
+            this.overflowPolicy = overflowPolicy;
+            lock.notifyAll();
+        }
+    }
+
+    /**
+     * Queues a write, applying the overflow policy if the queue is full.
+     *
+     * @return false if {@code task} itself was discarded, either by {@link OverflowPolicy#SKIP},
+     *     because the queue is shut down, or because a blocked producer was interrupted
+     */
+    public boolean submit(WriteTask task) {
+        WriteTask evicted = null;
+        boolean accepted;
+        synchronized (lock) {
+            while (!shutdown
+                    && pending.size() - pendingControl >= capacity
+                    && overflowPolicy == OverflowPolicy.BLOCK) {
+                try {
+                    lock.wait();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    break;
+                }
+            }
+
+            boolean full = pending.size() - pendingControl >= capacity;
+            if (shutdown || (full && overflowPolicy != OverflowPolicy.DROP_OLDEST)) {
+                // SKIP, shut down, or an interrupted BLOCK
+                dropped++;
+                accepted = false;
+            } else {
+                if (full) {
+                    evicted = removeOldestWrite();
+                    dropped++;
+                }
+                pending.addLast(new Entry(task, System.nanoTime(), false));
+                submitted++;
+                maxDepth = Math.max(maxDepth, pending.size());
+                lock.notifyAll();
+                accepted = true;
+            }
+        }
+
+        // Run callbacks outside the lock
+        if (evicted != null) {
+            evicted.discard();
+        }
+        if (!accepted) {
+            task.discard();
+        }
+        return accepted;
+    }
+
+    /**
+     * Queues a control task behind the pending writes. It is never refused for lack of room,
+     * never evicted, and never makes the caller wait.
+     *
+     * @return false if the queue is shut down, in which case {@code task} is discarded right away
+     */
+    public boolean submitControl(WriteTask task) {
+        synchronized (lock) {
+            if (!shutdown) {
+                pending.addLast(new Entry(task, System.nanoTime(), true));
+                pendingControl++;
+                submitted++;
+                maxDepth = Math.max(maxDepth, pending.size());
+                lock.notifyAll();
+                return true;
+            }
+            dropped++;
+        }
+        task.discard();
+        return false;
+    }
+
+    /** Removes the oldest pending write, skipping control tasks. Callers hold the lock. */
+    private WriteTask removeOldestWrite() {
+        Iterator<Entry> entries = pending.iterator();
+        while (entries.hasNext()) {
+            Entry entry = entries.next();
+            if (!entry.control) {
+                entries.remove();
+                return entry.task;
+            }
+        }
+        throw new IllegalStateException("No write to evict");
+    }
+
+    /**
+     * Stops accepting writes and waits up to {@code timeout} for pending ones to finish. Writes
+     * still pending after that are discarded.
+     */
+    public void shutdown(long timeout, TimeUnit unit) {
+        synchronized (lock) {
+            shutdown = true;
+            lock.notifyAll();
+        }
+        try {
+            writer.join(unit.toMillis(timeout));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        if (writer.isAlive()) {
+            writer.interrupt();
+        }
+        ArrayDeque<Entry> leftovers;
+        synchronized (lock) {
+            leftovers = new ArrayDeque<>(pending);
+            pending.clear();
+            pendingControl = 0;
+        }
+        for (Entry entry : leftovers) {
+            entry.task.discard();
+        }
+    }
+
+    private void drain() {
+        while (true) {
+            Entry entry;
+            synchronized (lock) {
+                while (pending.isEmpty() && !shutdown) {
+                    try {
+                        lock.wait();
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                }
+                if (pending.isEmpty()) {
+                    return;
+                }
+                entry = pending.pollFirst();
+                if (entry.control) {
+                    pendingControl--;
+                }
+                started++;
+                long latency = System.nanoTime() - entry.enqueuedNanos;
+                totalQueueLatencyNanos += latency;
+                maxQueueLatencyNanos = Math.max(maxQueueLatencyNanos, latency);
+                // Wake producers blocked on a full queue
+                lock.notifyAll();
+            }
+
+            boolean succeeded = false;
+            try {
+                entry.task.write();
+                succeeded = true;
+            } catch (Exception e) {
+                // The task reports its own failure; the queue only counts it
+            }
+            synchronized (lock) {
+                if (succeeded) {
+                    completed++;
+                } else {
+                    failed++;
+                }
+            }
+            if (Thread.currentThread().isInterrupted()) {
+                return;
+            }
+        }
+    }
+
+    /** Whether the writer thread has exited, so no write is running or will run. */
+    public boolean isTerminated() {
+        return !writer.isAlive();
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    /** Number of writes currently waiting. */
+    public int getDepth() {
+        synchronized (lock) {
+            return pending.size();
+        }
+    }
+
+    /** Largest number of writes that have been waiting at once. */
+    public int getMaxDepth() {
+        synchronized (lock) {
+            return maxDepth;
+        }
+    }
+
+    public long getSubmittedCount() {
+        synchronized (lock) {
+            return submitted;
+        }
+    }
+
+    public long getCompletedCount() {
+        synchronized (lock) {
+            return completed;
+        }
+    }
+
+    public long getFailedCount() {
+        synchronized (lock) {
+            return failed;
+        }
+    }
+
+    /** Writes discarded by the overflow policy or shutdown, including rejected submissions. */
+    public long getDroppedCount() {
+        synchronized (lock) {
+            return dropped;
+        }
+    }
+
+    /** Mean time writes waited before the writer picked them up, in milliseconds. */
+    public double getAverageQueueLatencyMillis() {
+        synchronized (lock) {
+            return started == 0 ? 0 : totalQueueLatencyNanos / 1e6 / started;
+        }
+    }
+
+    /** Longest time a write waited before the writer picked it up, in milliseconds. */
+    public double getMaxQueueLatencyMillis() {
+        synchronized (lock) {
+            return maxQueueLatencyNanos / 1e6;
+        }
+    }
+}
@@ -0,0 +1,177 @@
+package com.example.ar_depth_cover.common.helpers;
+
+import java.nio.ByteBuffer;
+import java.nio.FloatBuffer;
+import java.nio.ShortBuffer;
+import java.util.Arrays;
+
+/**
+ * Per-pixel 1D Kalman filter over raw depth.
+ *
+ * <p>Each pixel keeps one depth estimate and its variance, so the memory held is two float planes
+ * (plus the output plane) no matter how long the filter has been running. Measurement noise is
+ * seeded from the raw confidence byte and grows with the square of the distance, which is how
+ * stereo/ToF depth error behaves. A measurement that lands far outside the current estimate's
+ * uncertainty is treated as a scene change and restarts the pixel.
+ *
+ * <p>All public methods are synchronized, so a new executor set from another thread applies
+ * from the next frame.
+ */
+public class KalmanDepthFilter implements DepthFusionStrategy {
+    // Standard deviation of a full-confidence measurement at 1 m, in meters
+    private static final float DEFAULT_MEASUREMENT_SIGMA = 0.01f;
+    // Variance added to every estimate per frame, allowing slow changes (meters^2)
+    private static final float DEFAULT_PROCESS_NOISE = 0.00001f;
+    // Estimates less certain than this are reported as NaN (meters^2)
+    private static final float DEFAULT_MAX_OUTPUT_VARIANCE = 0.0025f;
+    // Innovations beyond this many standard deviations restart the pixel
+    private static final float GATE_SIGMAS = 3f;
+
+    private final float measurementSigma;
+    private final float processNoise;
+    private final float maxOutputVariance;
+
+    // Inverse squared confidence ratio per raw confidence byte; 0 rejects the measurement
+    private final float[] confidenceNoiseScale = new float[256];
+
+    private int width = 0;
+    private int height = 0;
+    private float[] means;
+    private float[] variances;
+    private float[] output;
+    private FloatBuffer outputBuffer;
+
+    private RowStripeExecutor executor;
+
+    private ShortBuffer currentDepthBuffer;
+    private ByteBuffer currentConfidenceBuffer;
+    private final RowStripeExecutor.RowTask updateRows = this::update;
+
+    public KalmanDepthFilter() {
+        this(DEFAULT_MEASUREMENT_SIGMA, DEFAULT_PROCESS_NOISE, DEFAULT_MAX_OUTPUT_VARIANCE);
+    }
+
+    /**
+     * @param measurementSigma Standard deviation of a full-confidence measurement at 1 m, in meters
+     * @param processNoise Variance added to every estimate per frame, in meters^2
+     * @param maxOutputVariance Estimates with a larger variance are output as NaN
+     */
+    public KalmanDepthFilter(float measurementSigma, float processNoise, float maxOutputVariance) {
+        this.measurementSigma = measurementSigma;
+        this.processNoise = processNoise;
+        this.maxOutputVariance = maxOutputVariance;
+        for (int c = 1; c < 256; c++) {
+            float ratio = c / 255.0f;
+            confidenceNoiseScale[c] = 1f / (ratio * ratio);
+        }
+    }
+
+    /**
+     * Sets the pool used to process row stripes in parallel, or {@code null} to run serially.
+     */
+    public synchronized void setExecutor(RowStripeExecutor executor) {
+        this.executor = executor;
+    }
+
+    @Override
+    public synchronized FloatBuffer fuse(
+            ShortBuffer depthBuffer,
+            ByteBuffer confidenceBuffer,
+            long timestamp,
+            int width,
+            int height,
+            float[] cameraPose,
+            float fx,
+            float fy,
+            float cx,
+            float cy) {
+        RowStripeExecutor pool = executor;
+        ensureCapacity(width, height);
+
+        currentDepthBuffer = depthBuffer;
+        currentConfidenceBuffer = confidenceBuffer;
+        if (pool != null) {
+            pool.run(height, updateRows);
+        } else {
+            update(0, height);
+        }
+        currentDepthBuffer = null;
+        currentConfidenceBuffer = null;
+
+        outputBuffer.rewind();
+        return outputBuffer;
+    }
+
+    @Override
+    public synchronized void reset() {
+        if (means != null) {
+            Arrays.fill(means, Float.NaN);
+            Arrays.fill(variances, 0f);
+        }
+    }
+
+    /**
+     * Returns the current variance of the estimate at {@code idx}, or NaN if the pixel has no
+     * estimate yet.
+     */
+    public synchronized float getVariance(int idx) {
+        return Float.isNaN(means[idx]) ? Float.NaN : variances[idx];
+    }
+
+    private void ensureCapacity(int width, int height) {
+        if (this.width == width && this.height == height && means != null) {
+            return;
+        }
+        this.width = width;
+        this.height = height;
+        means = new float[width * height];
+        variances = new float[width * height];
+        output = new float[width * height];
+        outputBuffer = FloatBuffer.wrap(output);
+        reset();
+    }
+
+    private void update(int rowStart, int rowEnd) {
+        final ShortBuffer depthBuffer = currentDepthBuffer;
+        final ByteBuffer confidenceBuffer = currentConfidenceBuffer;
+        final float sigma2 = measurementSigma * measurementSigma;
+        final int end = rowEnd * width;
+
+        for (int idx = rowStart * width; idx < end; idx++) {
+            float mean = means[idx];
+            float variance = variances[idx];
+            boolean initialized = !Float.isNaN(mean);
+
+            // Predict
+            if (initialized) {
+                variance += processNoise;
+            }
+
+            // Correct
+            int depthMillimeters = depthBuffer.get(idx) & 0xFFFF;
+            float noiseScale = confidenceNoiseScale[confidenceBuffer.get(idx) & 0xFF];
+            if (depthMillimeters != 0 && noiseScale != 0f) {
+                float measurement = DepthDecoder.toMeters(depthMillimeters);
+                float measurementVariance =
+                        sigma2 * measurement * measurement * measurement * measurement * noiseScale;
+
+                float innovation = measurement - mean;
+                float innovationVariance = variance + measurementVariance;
+                if (!initialized
+                        || innovation * innovation
+                                > GATE_SIGMAS * GATE_SIGMAS * innovationVariance) {
+                    mean = measurement;
+                    variance = measurementVariance;
+                } else {
+                    float gain = variance / innovationVariance;
+                    mean += gain * innovation;
+                    variance *= 1f - gain;
+                }
+            }
+
+            means[idx] = mean;
+            variances[idx] = variance;
+            output[idx] = !Float.isNaN(mean) && variance <= maxOutputVariance ? mean : Float.NaN;
+        }
+    }
+}
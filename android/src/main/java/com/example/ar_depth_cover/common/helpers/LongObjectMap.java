@@ -0,0 +1,158 @@
+package com.example.ar_depth_cover.common.helpers;
+
+import java.util.Arrays;
+
+/**
+ * Hash map from {@code long} keys to objects, for packed voxel and block coordinates.
+ *
+ * <p>Open addressed with linear probing over parallel key and value arrays, like the table in
+ * {@link VoxelHashAccumulator}, so lookups neither box the key nor chase entry nodes. Removal
+ * shifts later entries of the probe run back instead of leaving tombstones. The key
+ * {@code -1} is reserved for empty slots. Values may be null. Not thread-safe.
+ */
+public class LongObjectMap<V> {
+    private static final long EMPTY = -1L;
+    private static final float MAX_LOAD = 0.75f;
+
+    private long[] keys;
+    private Object[] values;
+    private int mask;
+    private int size;
+
+    /**
+     * @param expectedSize Entries the map should hold before it first grows
+     */
+    public LongObjectMap(int expectedSize) {
+        if (expectedSize < 0) {
+            throw new IllegalArgumentException("expectedSize must not be negative: "
+                    + expectedSize);
+        }
+        allocate(capacityFor(expectedSize));
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean containsKey(long key) {
+        return keys[findSlot(key)] == key;
+    }
+
+    /** Returns the key's value, or null if the key is absent. */
+    @SuppressWarnings("unchecked")
+    public V get(long key) {
+        int slot = findSlot(key);
+        return keys[slot] == key ? (V) values[slot] : null;
+    }
+
+    /** Maps the key to the value, replacing any previous value. */
+    public void put(long key, V value) {
+        if (key == EMPTY) {
+            throw new IllegalArgumentException("The key -1 is reserved");
+        }
+        int slot = findSlot(key);
+        if (keys[slot] != key) {
+            if (size + 1 > (mask + 1) * MAX_LOAD) {
+                grow();
+                slot = findSlot(key);
+            }
+            keys[slot] = key;
+            size++;
+        }
+        values[slot] = value;
+    }
+
+    /** Removes the key if present. */
+    public void remove(long key) {
+        int slot = findSlot(key);
+        if (keys[slot] != key) {
+            return;
+        }
+        size--;
+        // Move back every later entry of the run whose home is at or before the freed slot
+        int free = slot;
+        int next = (free + 1) & mask;
+        while (keys[next] != EMPTY) {
+            int home = hash(keys[next]) & mask;
+            if (((next - home) & mask) >= ((next - free) & mask)) {
+                keys[free] = keys[next];
+                values[free] = values[next];
+                free = next;
+            }
+            next = (next + 1) & mask;
+        }
+        keys[free] = EMPTY;
+        values[free] = null;
+    }
+
+    /** Removes every entry, keeping the table's size. */
+    public void clear() {
+        Arrays.fill(keys, EMPTY);
+        Arrays.fill(values, null);
+        size = 0;
+    }
+
+    /**
+     * Number of slots, for iterating with {@link #valueAt}. Only valid until the next
+     * {@link #put}.
+     */
+    public int slots() {
+        return mask + 1;
+    }
+
+    /** The value in a slot, or null if the slot is empty. */
+    @SuppressWarnings("unchecked")
+    public V valueAt(int slot) {
+        return (V) values[slot];
+    }
+
+    /** Returns the key's slot, or the empty slot where it would go. */
+    private int findSlot(long key) {
+        int slot = hash(key) & mask;
+        while (keys[slot] != EMPTY && keys[slot] != key) {
+            slot = (slot + 1) & mask;
+        }
+        return slot;
+    }
+
+    private static int hash(long key) {
+        // Murmur3 finalizer; neighbouring blocks must not land in neighbouring slots
+        key ^= key >>> 33;
+        key *= 0xff51afd7ed558ccdL;
+        key ^= key >>> 33;
+        key *= 0xc4ceb9fe1a85ec53L;
+        key ^= key >>> 33;
+        return (int) key;
+    }
+
+    private void grow() {
+        long[] oldKeys = keys;
+        Object[] oldValues = values;
+        allocate((mask + 1) * 2);
+        for (int old = 0; old < oldKeys.length; old++) {
+            long key = oldKeys[old];
+            if (key == EMPTY) {
+                continue;
+            }
+            int slot = findSlot(key);
+            keys[slot] = key;
+            values[slot] = oldValues[old];
+            size++;
+        }
+    }
+
+    private void allocate(int capacity) {
+        keys = new long[capacity];
+        Arrays.fill(keys, EMPTY);
+        values = new Object[capacity];
+        mask = capacity - 1;
+        size = 0;
+    }
+
+    /** Smallest power-of-two table that holds {@code entries} within the load factor. */
+    private static int capacityFor(int entries) {
+        int needed = (int) Math.min(1 << 30, (long) Math.ceil(entries / MAX_LOAD) + 1);
+        int capacity = Integer.highestOneBit(needed);
+        return capacity < needed ? capacity << 1 : capacity;
+    }
+}
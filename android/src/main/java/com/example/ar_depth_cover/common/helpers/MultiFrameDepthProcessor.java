@@ -1,172 +1,561 @@
 package com.example.ar_depth_cover.common.helpers;
 
-import android.os.Build;
-
 import java.nio.ByteBuffer;
 import java.nio.FloatBuffer;
 import java.nio.ShortBuffer;
-import java.util.ArrayList;
-import java.util.List;
+import java.util.Arrays;
 
+/**
+ * Fuses raw depth over a short temporal window.
+ *
+ * <p>Frames are kept in a fixed-capacity ring of preallocated {@code float[]} slots that are
+ * reused across calls, so once the slots exist for a given image size, fusing a frame does not
+ * allocate.
+ *
+ * <p>Every per-pixel stage is a kernel over a row range, so with a {@link RowStripeExecutor}
+ * set the image is split into row stripes that are processed on several cores. Each pixel is
+ * computed by exactly the same arithmetic either way, so parallel output is bit-identical to
+ * serial output.
+ *
+ * <p>Alternatively, fusion can be handed to a {@link DepthFusionStrategy} such as
+ * {@link KalmanDepthFilter}; the built-in window is then bypassed.
+ *
+ * <p>All public methods are synchronized, so configuration changes from another thread apply
+ * between frames rather than halfway through one.
+ *
+ * @see FusionMode
+ */
 public class MultiFrameDepthProcessor {
+    /**
+     * How the recency-weighted average over the window is computed.
+     */
+    public enum FusionMode {
+        /** Recomputes the weighted sum over every stored frame, O(frames x pixels) per call. */
+        WEIGHTED_WINDOW,
+        /**
+         * Keeps per-pixel running sums that are updated as frames enter and leave the window,
+         * O(pixels) per call regardless of the window size.
+         */
+        RUNNING_SUM,
+        /**
+         * Reprojects every older frame into the newest frame's view using the camera poses and
+         * intrinsics passed to {@link #processMultiFrameDepth(ShortBuffer, ByteBuffer, long, int,
+         * int, float[], float, float, float, float)}, then applies the recency-weighted average.
+         * Frames without a pose are averaged as is.
+         */
+        REPROJECTED
+    }
+
     private static final int MAX_DEPTH_FRAMES = 5; // Number of frames to average
     private static final float CONFIDENCE_THRESHOLD = 0.7f; // 70% confidence threshold
     private static final long MAX_FRAME_AGE_MILLIS = 1000; // 1 second
 
-    // Circular buffer to store recent depth frames
-    final private List<DepthFrame> depthFrames = new ArrayList<>();
-    
+    private final int capacity;
+    private FusionMode fusionMode;
+    private final DepthDecoder decoder = new DepthDecoder(CONFIDENCE_THRESHOLD);
+
+    // Ring of depth frames in meters; NaN marks invalid pixels
+    private final float[][] depthSlots;
+    private final long[] timestamps;
+    // Slots of the current window ordered from oldest to newest, refreshed on every call
+    private final float[][] window;
+    private int oldest = 0;
+    private int frameCount = 0;
+
+    // Per-slot camera-to-world pose (column-major 4x4) and depth intrinsics (fx, fy, cx, cy)
+    private final float[] poses;
+    private final float[] intrinsics;
+    private final boolean[] hasPose;
+    // Scratch for FusionMode.REPROJECTED: one warped plane and one older-to-newest camera
+    // transform per window position
+    private final float[][] warpedSlots;
+    private final float[] relativePoses;
+
+    private int width = 0;
+    private int height = 0;
+
+    // Running sums for FusionMode.RUNNING_SUM. A frame at position p (1 = oldest) contributes
+    // p * depth to weightedSums and p to weightTotals; shifting every position down by one when the
+    // oldest frame leaves is then a single subtraction of depthSums and validCounts.
+    private double[] weightedSums;
+    private double[] depthSums;
+    private int[] weightTotals;
+    private int[] validCounts;
+    private boolean runningSumsValid = false;
+
+    // Output plane, reused across calls
+    private float[] averagedDepth;
+    private FloatBuffer averagedDepthBuffer;
+
+    // Replaces the built-in window when set
+    private DepthFusionStrategy fusionStrategy;
+
+    // Optional pool for row-striped execution; null runs every stage on the calling thread
+    private RowStripeExecutor executor;
+
+    // Inputs of the stage currently running, read by the row kernels
+    private ShortBuffer currentDepthBuffer;
+    private ByteBuffer currentConfidenceBuffer;
+    private float[] currentSlot;
+
+    private final RowStripeExecutor.RowTask convertRows = this::convertDepthToMeters;
+    private final RowStripeExecutor.RowTask averageRows = this::computeAveragedDepth;
+    private final RowStripeExecutor.RowTask evictRows = this::removeOldestFromRunningSums;
+    private final RowStripeExecutor.RowTask addRows = this::addNewestToRunningSums;
+    // Splatting scatters writes across the image, so reprojection is split by frame instead
+    private final RowStripeExecutor.RowTask reprojectFrames = this::reprojectOlderFrames;
+
+    public MultiFrameDepthProcessor() {
+        this(MAX_DEPTH_FRAMES);
+    }
+
     /**
-     * Represents a single depth frame with its depth data and metadata
+     * @param capacity Maximum number of frames held in the temporal window
      */
-    private static class DepthFrame {
-        final FloatBuffer depthBuffer;
-        final ByteBuffer confidenceBuffer;
-        final long timestamp;
-        
-        DepthFrame(FloatBuffer depthBuffer, ByteBuffer confidenceBuffer, long timestamp) {
-            this.depthBuffer = depthBuffer;
-            this.confidenceBuffer = confidenceBuffer;
-            this.timestamp = timestamp;
+    public MultiFrameDepthProcessor(int capacity) {
+        this(capacity, FusionMode.WEIGHTED_WINDOW);
+    }
+
+    /**
+     * @param capacity Maximum number of frames held in the temporal window
+     * @param fusionMode How the window is averaged
+     */
+    public MultiFrameDepthProcessor(int capacity, FusionMode fusionMode) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("capacity must be at least 1: " + capacity);
         }
+        this.capacity = capacity;
+        this.fusionMode = fusionMode;
+        this.depthSlots = new float[capacity][];
+        this.timestamps = new long[capacity];
+        this.window = new float[capacity][];
+        this.poses = new float[capacity * 16];
+        this.intrinsics = new float[capacity * 4];
+        this.hasPose = new boolean[capacity];
+        this.warpedSlots = new float[capacity][];
+        this.relativePoses = new float[capacity * 16];
     }
-    
+
     /**
      * Process and average depth data across multiple frames
-     * 
+     *
      * @param newDepthBuffer Raw depth buffer
      * @param newConfidenceBuffer Confidence buffer
      * @param timestamp Timestamp of the current frame
-     * @return Averaged and filtered depth buffer
+     * @return Averaged and filtered depth buffer. The buffer is owned by this processor and is
+     *     overwritten by the next call.
      */
-    public FloatBuffer processMultiFrameDepth(
+    public synchronized FloatBuffer processMultiFrameDepth(
             ShortBuffer newDepthBuffer,
-            ByteBuffer newConfidenceBuffer, 
+            ByteBuffer newConfidenceBuffer,
             long timestamp,
             int width,
             int height
             ) {
-
-        pruneOldFrames(timestamp);
-        
-        // Convert raw depth to meters with initial filtering
-        FloatBuffer processedDepthBuffer = convertDepthToMeters(
-            newDepthBuffer, 
-            newConfidenceBuffer,
-                width,
-                height
-        );
-        
-        // Create a new depth frame
-        DepthFrame newFrame = new DepthFrame(
-            processedDepthBuffer, 
-            newConfidenceBuffer, 
-            timestamp
-        );
-        
-        // Add new frame to the buffer
-        depthFrames.add(newFrame);
-        
-        // Limit buffer size
-        if (depthFrames.size() > MAX_DEPTH_FRAMES) {
-            depthFrames.remove(0);
-        }
-        
-        // Compute multi-frame averaged depth
-        return computeAveragedDepth(width,height);
+        return processMultiFrameDepth(
+                newDepthBuffer, newConfidenceBuffer, timestamp, width, height,
+                null, 0f, 0f, 0f, 0f);
     }
-    
+
     /**
-     * Convert raw depth data to meters with confidence filtering
+     * Process and average depth data across multiple frames, recording the camera pose and
+     * intrinsics of the frame for {@link FusionMode#REPROJECTED}.
+     *
+     * @param cameraPose Camera-to-world pose as a column-major 4x4 matrix, e.g. from
+     *     {@code Pose.toMatrix}, or null if unknown. The array is copied.
+     * @param fx Focal length in depth image pixels
+     * @param fy Focal length in depth image pixels
+     * @param cx Principal point in depth image pixels
+     * @param cy Principal point in depth image pixels
+     * @return Averaged and filtered depth buffer. The buffer is owned by this processor and is
+     *     overwritten by the next call.
      */
-    private FloatBuffer convertDepthToMeters(
-            ShortBuffer depthBuffer,
-            ByteBuffer confidenceBuffer,
+    public synchronized FloatBuffer processMultiFrameDepth(
+            ShortBuffer newDepthBuffer,
+            ByteBuffer newConfidenceBuffer,
+            long timestamp,
             int width,
-            int height
+            int height,
+            float[] cameraPose,
+            float fx,
+            float fy,
+            float cx,
+            float cy
             ) {
 
-        FloatBuffer depthMeters = FloatBuffer.allocate(width * height);
+        if (fusionStrategy != null) {
+            return fusionStrategy.fuse(
+                    newDepthBuffer, newConfidenceBuffer, timestamp, width, height,
+                    cameraPose, fx, fy, cx, cy);
+        }
+
+        RowStripeExecutor pool = executor;
+        ensureCapacity(width, height);
+        boolean runningSum = fusionMode == FusionMode.RUNNING_SUM;
+        if (runningSum && !runningSumsValid) {
+            rebuildRunningSums();
+        }
 
-        for (int y = 0; y < height; y++) {
-            for (int x = 0; x < width; x++) {
-                int idx = y * width + x;
+        pruneOldFrames(timestamp, pool);
 
-                // Get depth and confidence values
-                int depthMillimeters = depthBuffer.get(idx);
-                byte confidenceValue = confidenceBuffer.get(idx);
+        // Drop the oldest frame when the ring is full so its slot can be reused
+        if (frameCount == capacity) {
+            evictOldest(pool);
+        }
 
-                // Apply confidence threshold
-                float confidenceRatio = (confidenceValue & 0xFF) / 255.0f;
+        int slot = (oldest + frameCount) % capacity;
+        if (depthSlots[slot] == null) {
+            depthSlots[slot] = new float[width * height];
+        }
 
-                if (confidenceRatio >= CONFIDENCE_THRESHOLD) {
-                    // Convert to meters and store
-                    depthMeters.put(idx, depthMillimeters / 1000.0f);
+        // Convert raw depth to meters with initial filtering
+        currentDepthBuffer = newDepthBuffer;
+        currentConfidenceBuffer = newConfidenceBuffer;
+        currentSlot = depthSlots[slot];
+        forEachRowStripe(pool, convertRows);
+        currentDepthBuffer = null;
+        currentConfidenceBuffer = null;
+        timestamps[slot] = timestamp;
+        hasPose[slot] = cameraPose != null;
+        if (cameraPose != null) {
+            System.arraycopy(cameraPose, 0, poses, slot * 16, 16);
+            intrinsics[slot * 4] = fx;
+            intrinsics[slot * 4 + 1] = fy;
+            intrinsics[slot * 4 + 2] = cx;
+            intrinsics[slot * 4 + 3] = cy;
+        }
+        frameCount++;
+
+        // Compute multi-frame averaged depth
+        if (runningSum) {
+            forEachRowStripe(pool, addRows);
+        } else {
+            for (int i = 0; i < frameCount; i++) {
+                window[i] = depthSlots[(oldest + i) % capacity];
+            }
+            if (fusionMode == FusionMode.REPROJECTED && hasPose[slot] && frameCount > 1) {
+                if (pool != null) {
+                    pool.run(frameCount - 1, reprojectFrames);
                 } else {
-                    // Mark as invalid
-                    depthMeters.put(idx, Float.NaN);
+                    reprojectOlderFrames(0, frameCount - 1);
                 }
             }
+            forEachRowStripe(pool, averageRows);
+        }
+        currentSlot = null;
+        averagedDepthBuffer.rewind();
+        return averagedDepthBuffer;
+    }
+
+    /**
+     * Drops all buffered frames.
+     */
+    public synchronized void reset() {
+        oldest = 0;
+        frameCount = 0;
+        runningSumsValid = false;
+        if (fusionStrategy != null) {
+            fusionStrategy.reset();
+        }
+    }
+
+    public synchronized FusionMode getFusionMode() {
+        return fusionMode;
+    }
+
+    /**
+     * Switches the averaging mode. Buffered frames are kept; running sums are rebuilt from them
+     * on the next call when needed.
+     */
+    public synchronized void setFusionMode(FusionMode fusionMode) {
+        if (this.fusionMode != fusionMode) {
+            this.fusionMode = fusionMode;
+            runningSumsValid = false;
         }
+    }
 
-        depthMeters.rewind();
-        return depthMeters;
+    public synchronized DepthFusionStrategy getFusionStrategy() {
+        return fusionStrategy;
     }
-    
+
+    /**
+     * Delegates fusion to {@code strategy}, or returns to the built-in window when {@code null}.
+     * Frames buffered by the built-in window are dropped.
+     */
+    public synchronized void setFusionStrategy(DepthFusionStrategy strategy) {
+        this.fusionStrategy = strategy;
+        oldest = 0;
+        frameCount = 0;
+        runningSumsValid = false;
+    }
+
+    /**
+     * Sets the pool used to process row stripes in parallel, or {@code null} to run serially.
+     */
+    public synchronized void setExecutor(RowStripeExecutor executor) {
+        this.executor = executor;
+    }
+
+    /**
+     * Returns the number of frames currently in the temporal window.
+     */
+    public synchronized int getFrameCount() {
+        return frameCount;
+    }
+
+    /**
+     * (Re)allocates the output plane when the image size changes. Slots are allocated lazily as
+     * the ring fills up.
+     */
+    private void ensureCapacity(int width, int height) {
+        if (this.width == width && this.height == height && averagedDepth != null) {
+            return;
+        }
+        this.width = width;
+        this.height = height;
+        Arrays.fill(depthSlots, null);
+        Arrays.fill(warpedSlots, null);
+        averagedDepth = new float[width * height];
+        averagedDepthBuffer = FloatBuffer.wrap(averagedDepth);
+        weightedSums = null;
+        depthSums = null;
+        weightTotals = null;
+        validCounts = null;
+        reset();
+    }
+
+    private void forEachRowStripe(RowStripeExecutor pool, RowStripeExecutor.RowTask task) {
+        if (pool != null) {
+            pool.run(height, task);
+        } else {
+            task.run(0, height);
+        }
+    }
+
+    /**
+     * Convert raw depth data to meters with confidence filtering
+     */
+    private void convertDepthToMeters(int rowStart, int rowEnd) {
+        decoder.decode(
+                currentDepthBuffer, width, currentConfidenceBuffer, width,
+                width, currentSlot, rowStart, rowEnd);
+    }
+
     /**
      * Compute averaged depth across multiple frames
      * Implements weighted averaging with recency bias
      */
-    private FloatBuffer computeAveragedDepth(int width,int height) {
-        if (depthFrames.isEmpty()) {
-            return null;
-        }
-        
-        // Get dimensions from first frame
-        DepthFrame firstFrame = depthFrames.get(0);
+    private void computeAveragedDepth(int rowStart, int rowEnd) {
+        final int end = rowEnd * width;
+        final int frames = frameCount;
 
-        
-        FloatBuffer averagedDepth = FloatBuffer.allocate(width * height);
-        
-        for (int idx = 0; idx < width * height; idx++) {
+        for (int idx = rowStart * width; idx < end; idx++) {
             float weightedDepthSum = 0f;
             float totalWeight = 0f;
-            
-            // Iterate through frames with recency bias
-            for (int i = 0; i < depthFrames.size(); i++) {
-                DepthFrame frame = depthFrames.get(i);
-                float depth = frame.depthBuffer.get(idx);
-                
+
+            // Iterate through frames from oldest to newest with recency bias
+            for (int i = 0; i < frames; i++) {
+                float depth = window[i][idx];
+
                 // Skip invalid depth values
                 if (Float.isNaN(depth)) continue;
-                
+
                 // Apply recency weighting (more recent frames have higher weight)
-                float weight = (i + 1.0f) / depthFrames.size();
-                
+                float weight = (i + 1.0f) / frames;
+
                 weightedDepthSum += depth * weight;
                 totalWeight += weight;
             }
-            
+
             // Compute final averaged depth
-            float averagedValue = totalWeight > 0 
-                ? weightedDepthSum / totalWeight 
+            averagedDepth[idx] = totalWeight > 0
+                ? weightedDepthSum / totalWeight
+                : Float.NaN;
+        }
+    }
+
+    /**
+     * Forward-splats the older frames at window positions {@code [first, last)} into the newest
+     * frame's view, replacing their {@link #window} entries with the warped planes. Where several
+     * points land on the same pixel the nearest one wins; pixels nothing lands on stay NaN.
+     */
+    private void reprojectOlderFrames(int first, int last) {
+        final int newestSlot = (oldest + frameCount - 1) % capacity;
+        final float newFx = intrinsics[newestSlot * 4];
+        final float newFy = intrinsics[newestSlot * 4 + 1];
+        final float newCx = intrinsics[newestSlot * 4 + 2];
+        final float newCy = intrinsics[newestSlot * 4 + 3];
+
+        for (int i = first; i < last; i++) {
+            int slot = (oldest + i) % capacity;
+            if (!hasPose[slot]) {
+                continue;
+            }
+            if (warpedSlots[i] == null) {
+                warpedSlots[i] = new float[width * height];
+            }
+            final float[] source = depthSlots[slot];
+            final float[] warped = warpedSlots[i];
+            Arrays.fill(warped, Float.NaN);
+
+            // Older camera -> world -> newest camera
+            final float[] m = relativePoses;
+            final int o = i * 16;
+            multiplyInverseRigid(poses, newestSlot * 16, poses, slot * 16, m, o);
+
+            final float fx = intrinsics[slot * 4];
+            final float fy = intrinsics[slot * 4 + 1];
+            final float cx = intrinsics[slot * 4 + 2];
+            final float cy = intrinsics[slot * 4 + 3];
+
+            for (int v = 0; v < height; v++) {
+                for (int u = 0; u < width; u++) {
+                    float depth = source[v * width + u];
+                    if (Float.isNaN(depth)) continue;
+
+                    // Unproject into the older camera (+X right, +Y up, looking down -Z)
+                    float x = (u - cx) * depth / fx;
+                    float y = (cy - v) * depth / fy;
+                    float z = -depth;
+
+                    float nx = m[o] * x + m[o + 4] * y + m[o + 8] * z + m[o + 12];
+                    float ny = m[o + 1] * x + m[o + 5] * y + m[o + 9] * z + m[o + 13];
+                    float newDepth = -(m[o + 2] * x + m[o + 6] * y + m[o + 10] * z + m[o + 14]);
+                    if (!(newDepth > 0f)) continue;
+
+                    int pu = Math.round(newFx * nx / newDepth + newCx);
+                    int pv = Math.round(newCy - newFy * ny / newDepth);
+                    if (pu < 0 || pu >= width || pv < 0 || pv >= height) continue;
+
+                    int target = pv * width + pu;
+                    float existing = warped[target];
+                    if (Float.isNaN(existing) || newDepth < existing) {
+                        warped[target] = newDepth;
+                    }
+                }
+            }
+            window[i] = warped;
+        }
+    }
+
+    /**
+     * Writes {@code inverse(a) * b} to {@code out}, where {@code a} and {@code b} are rigid
+     * column-major 4x4 transforms.
+     */
+    private static void multiplyInverseRigid(
+            float[] a, int aOffset, float[] b, int bOffset, float[] out, int outOffset) {
+        // inverse(a) = [R^T, -R^T t]
+        for (int col = 0; col < 4; col++) {
+            float bx = b[bOffset + col * 4];
+            float by = b[bOffset + col * 4 + 1];
+            float bz = b[bOffset + col * 4 + 2];
+            float bw = b[bOffset + col * 4 + 3];
+            if (col == 3) {
+                bx -= a[aOffset + 12];
+                by -= a[aOffset + 13];
+                bz -= a[aOffset + 14];
+            }
+            for (int row = 0; row < 3; row++) {
+                out[outOffset + col * 4 + row] =
+                        a[aOffset + row * 4] * bx
+                        + a[aOffset + row * 4 + 1] * by
+                        + a[aOffset + row * 4 + 2] * bz;
+            }
+            out[outOffset + col * 4 + 3] = bw;
+        }
+    }
+
+    /**
+     * Remove frames older than {@link #MAX_FRAME_AGE_MILLIS}. Frames are stored in arrival order,
+     * so only the oldest end of the ring needs to be checked.
+     */
+    private void pruneOldFrames(long currentTimestamp, RowStripeExecutor pool) {
+        while (frameCount > 0
+                && currentTimestamp - timestamps[oldest] > MAX_FRAME_AGE_MILLIS) {
+            evictOldest(pool);
+        }
+    }
+
+    /**
+     * Removes the oldest frame from the window, updating the running sums if they are in use.
+     */
+    private void evictOldest(RowStripeExecutor pool) {
+        if (fusionMode == FusionMode.RUNNING_SUM) {
+            forEachRowStripe(pool, evictRows);
+        }
+        oldest = (oldest + 1) % capacity;
+        frameCount--;
+    }
+
+    private void removeOldestFromRunningSums(int rowStart, int rowEnd) {
+        final float[] leaving = depthSlots[oldest];
+        final int end = rowEnd * width;
+        for (int idx = rowStart * width; idx < end; idx++) {
+            // Every remaining frame moves down one position
+            weightedSums[idx] -= depthSums[idx];
+            weightTotals[idx] -= validCounts[idx];
+
+            float depth = leaving[idx];
+            if (!Float.isNaN(depth)) {
+                depthSums[idx] -= depth;
+                validCounts[idx]--;
+            }
+        }
+    }
+
+    /**
+     * Adds the newest frame, which sits at position {@code frameCount}, to the running sums and
+     * writes the resulting average to the output plane.
+     */
+    private void addNewestToRunningSums(int rowStart, int rowEnd) {
+        final float[] newest = currentSlot;
+        final int position = frameCount;
+        final int end = rowEnd * width;
+        for (int idx = rowStart * width; idx < end; idx++) {
+            float depth = newest[idx];
+            if (!Float.isNaN(depth)) {
+                weightedSums[idx] += (double) position * depth;
+                depthSums[idx] += depth;
+                weightTotals[idx] += position;
+                validCounts[idx]++;
+            }
+
+            averagedDepth[idx] = weightTotals[idx] > 0
+                ? (float) (weightedSums[idx] / weightTotals[idx])
                 : Float.NaN;
-            
-            averagedDepth.put(idx, averagedValue);
         }
-        
-        averagedDepth.rewind();
-        return averagedDepth;
     }
-    
+
     /**
-     * Optional: Remove old frames based on timestamp
+     * Recomputes the running sums from the frames currently in the window.
      */
-    private void pruneOldFrames(long currentTimestamp) {
-        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.N) {
-            depthFrames.removeIf(frame ->
-                currentTimestamp - frame.timestamp > MultiFrameDepthProcessor.MAX_FRAME_AGE_MILLIS
-            );
+    private void rebuildRunningSums() {
+        final int pixelCount = width * height;
+        if (weightedSums == null) {
+            weightedSums = new double[pixelCount];
+            depthSums = new double[pixelCount];
+            weightTotals = new int[pixelCount];
+            validCounts = new int[pixelCount];
+        } else {
+            Arrays.fill(weightedSums, 0);
+            Arrays.fill(depthSums, 0);
+            Arrays.fill(weightTotals, 0);
+            Arrays.fill(validCounts, 0);
+        }
+
+        for (int i = 0; i < frameCount; i++) {
+            final float[] frame = depthSlots[(oldest + i) % capacity];
+            final int position = i + 1;
+            for (int idx = 0; idx < pixelCount; idx++) {
+                float depth = frame[idx];
+                if (!Float.isNaN(depth)) {
+                    weightedSums[idx] += (double) position * depth;
+                    depthSums[idx] += depth;
+                    weightTotals[idx] += position;
+                    validCounts[idx]++;
+                }
+            }
         }
+        runningSumsValid = true;
     }
-}
\ No newline at end of file
+}
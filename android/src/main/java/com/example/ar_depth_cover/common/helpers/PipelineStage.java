@@ -0,0 +1,168 @@
+package com.example.ar_depth_cover.common.helpers;
+
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * One stage of a processing pipeline: a worker thread draining an {@link SpscQueue}.
+ *
+ * <p>Items are handed over without locks. The single upstream thread calls {@link #offer}, which
+ * never blocks: when the stage is backed up the item goes to the {@link Recycler} and counts as
+ * dropped, so an upstream stage such as the GL thread keeps a flat frame time. The worker parks
+ * when its queue is empty and is unparked by the next offer. The time spent processing each item
+ * is recorded. Anything a processor throws, errors included, is counted and passed to the
+ * {@link FailureListener} without ending the worker, so later items keep flowing.
+ *
+ * <p>Stages are chained by having one stage's {@link Processor} offer its result to the next.
+ */
+public class PipelineStage<T> {
+    /** Processes one item on the stage's thread and owns it from then on. */
+    public interface Processor<T> {
+        void process(T item) throws Exception;
+    }
+
+    /** Receives items the stage will not process, e.g. to return pooled buffers. */
+    public interface Recycler<T> {
+        void recycle(T item);
+    }
+
+    /**
+     * Told on the stage's thread when processing an item threw. The processor still owns the
+     * item, so it should release it in a {@code finally} block.
+     */
+    public interface FailureListener<T> {
+        void onFailure(T item, Throwable failure);
+    }
+
+    private final String name;
+    private final SpscQueue<T> queue;
+    private final Processor<T> processor;
+    private final Recycler<T> recycler;
+    private final Thread worker;
+    private final StageTimings timings = new StageTimings();
+
+    private volatile boolean running = true;
+    private volatile long droppedCount = 0;
+    private volatile long failedCount = 0;
+    private volatile Throwable lastFailure;
+    private volatile FailureListener<T> failureListener;
+
+    /**
+     * @param capacity Maximum number of items waiting for this stage
+     * @param recycler Receives dropped items and items left over at shutdown; may be null
+     */
+    public PipelineStage(String name, int capacity, Processor<T> processor, Recycler<T> recycler) {
+        this.name = name;
+        this.queue = new SpscQueue<>(capacity);
+        this.processor = processor;
+        this.recycler = recycler;
+        worker = new Thread(this::run, name);
+        worker.setDaemon(true);
+        worker.start();
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * Hands an item to the stage. Must always be called from the same thread.
+     *
+     * @return false if the stage is backed up or shut down; the item has then been recycled
+     */
+    public boolean offer(T item) {
+        if (!running || !queue.offer(item)) {
+            droppedCount++;
+            recycle(item);
+            return false;
+        }
+        LockSupport.unpark(worker);
+        return true;
+    }
+
+    /**
+     * Stops the worker after its current item and recycles anything still queued. Waits up to
+     * {@code timeoutMillis} for the worker to exit.
+     */
+    public void shutdown(long timeoutMillis) {
+        running = false;
+        LockSupport.unpark(worker);
+        try {
+            worker.join(timeoutMillis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /** Sets the listener told about processing failures, or null for none. */
+    public void setFailureListener(FailureListener<T> listener) {
+        this.failureListener = listener;
+    }
+
+    public StageTimings getTimings() {
+        return timings;
+    }
+
+    /** Items rejected because the stage was backed up or shut down. */
+    public long getDroppedCount() {
+        return droppedCount;
+    }
+
+    /** Items whose processing threw. */
+    public long getFailedCount() {
+        return failedCount;
+    }
+
+    /** The most recent processing failure, or null. */
+    public Throwable getLastFailure() {
+        return lastFailure;
+    }
+
+    /** Approximate number of items waiting. */
+    public int getQueuedCount() {
+        return queue.size();
+    }
+
+    private void run() {
+        while (running) {
+            T item = queue.poll();
+            if (item == null) {
+                // An unpark that comes before this leaves a permit, so the park returns at once
+                LockSupport.park(this);
+                continue;
+            }
+            long start = System.nanoTime();
+            try {
+                processor.process(item);
+            } catch (Throwable t) {
+                // Errors too: a dead worker would leave every later item stuck in the queue
+                failedCount++;
+                lastFailure = t;
+                notifyFailure(item, t);
+            }
+            timings.record(System.nanoTime() - start);
+        }
+
+        T leftover;
+        while ((leftover = queue.poll()) != null) {
+            recycle(leftover);
+        }
+    }
+
+    private void notifyFailure(T item, Throwable failure) {
+        FailureListener<T> listener = failureListener;
+        if (listener == null) {
+            return;
+        }
+        try {
+            listener.onFailure(item, failure);
+        } catch (Throwable ignored) {
+            // The listener must not end the worker either
+        }
+    }
+
+    private void recycle(T item) {
+        if (recycler != null) {
+            recycler.recycle(item);
+        }
+    }
+}
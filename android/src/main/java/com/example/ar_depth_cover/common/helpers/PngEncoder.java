@@ -0,0 +1,234 @@
+package com.example.ar_depth_cover.common.helpers;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+/**
+ * Streaming PNG encoder for single-channel planes: 16-bit grayscale for depth millimeters and
+ * 8-bit grayscale for confidence.
+ *
+ * <p>Rows are filtered one at a time, picking per row whichever of the five PNG filters gives
+ * the smallest sum of absolute residuals, and fed through a {@link Deflater} straight into
+ * fixed-size IDAT chunks on the output stream. Only two rows and one chunk are buffered, so no
+ * {@code Bitmap} or whole-image copy is ever built.
+ *
+ * <p>An encoder reuses its buffers and zlib state between images and is not thread-safe. Call
+ * {@link #release()} when done with it to free the native zlib memory.
+ */
+public final class PngEncoder {
+    private static final byte[] SIGNATURE = {
+        (byte) 0x89, 'P', 'N', 'G', '\r', '\n', 0x1A, '\n'
+    };
+    private static final byte[] IHDR = "IHDR".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] IDAT = "IDAT".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] IEND = "IEND".getBytes(StandardCharsets.US_ASCII);
+    private static final int IDAT_SIZE = 32 * 1024;
+    private static final int FILTER_COUNT = 5;
+
+    private final Deflater deflater;
+    private final CRC32 crc = new CRC32();
+    private final byte[] idat = new byte[IDAT_SIZE];
+    private final byte[] word = new byte[4];
+    private int idatLength;
+    // Unfiltered rows in PNG byte order
+    private byte[] previousRow = new byte[0];
+    private byte[] currentRow = new byte[0];
+    // One candidate per filter type, each led by its filter byte
+    private final byte[][] filtered = new byte[FILTER_COUNT][0];
+    private final long[] costs = new long[FILTER_COUNT];
+
+    /** Encoder favoring speed, as the rows are already filtered before deflating. */
+    public PngEncoder() {
+        this(Deflater.BEST_SPEED);
+    }
+
+    /**
+     * @param level Deflate level, 1 (fastest) to 9 (smallest)
+     */
+    public PngEncoder(int level) {
+        if (level < Deflater.BEST_SPEED || level > Deflater.BEST_COMPRESSION) {
+            throw new IllegalArgumentException("level must be in 1..9: " + level);
+        }
+        deflater = new Deflater(level);
+    }
+
+    /**
+     * Writes tightly packed little-endian uint16 samples between position and limit as a 16-bit
+     * grayscale PNG.
+     */
+    public void writeGray16(ByteBuffer plane, int width, int height, OutputStream out)
+            throws IOException {
+        write(plane, width, height, 2, out);
+    }
+
+    /**
+     * Writes tightly packed 8-bit samples between position and limit as an 8-bit grayscale PNG.
+     */
+    public void writeGray8(ByteBuffer plane, int width, int height, OutputStream out)
+            throws IOException {
+        write(plane, width, height, 1, out);
+    }
+
+    /** Frees the native zlib state. The encoder must not be used afterwards. */
+    public void release() {
+        deflater.end();
+    }
+
+    private void write(ByteBuffer plane, int width, int height, int bytesPerSample,
+            OutputStream out) throws IOException {
+        if (width <= 0 || height <= 0) {
+            throw new IllegalArgumentException("size must be positive: " + width + "x" + height);
+        }
+        int rowBytes = width * bytesPerSample;
+        if (plane.remaining() != rowBytes * height) {
+            throw new IllegalArgumentException("plane must be tightly packed " + width + "x"
+                    + height + ": " + plane.remaining());
+        }
+        prepare(rowBytes);
+        ByteBuffer source = plane.duplicate().order(ByteOrder.LITTLE_ENDIAN);
+        int base = source.position();
+
+        out.write(SIGNATURE);
+        ByteBuffer header = ByteBuffer.allocate(13);
+        header.putInt(width);
+        header.putInt(height);
+        header.put((byte) (8 * bytesPerSample));
+        header.put((byte) 0); // Grayscale
+        header.put((byte) 0); // Deflate
+        header.put((byte) 0); // Adaptive filtering
+        header.put((byte) 0); // Not interlaced
+        writeChunk(out, IHDR, header.array(), 13);
+
+        deflater.reset();
+        idatLength = 0;
+        // The row above the first one is all zeros
+        Arrays.fill(previousRow, 0, rowBytes, (byte) 0);
+        for (int y = 0; y < height; y++) {
+            int rowStart = base + y * rowBytes;
+            if (bytesPerSample == 2) {
+                // PNG samples are big endian
+                for (int x = 0; x < width; x++) {
+                    short sample = source.getShort(rowStart + x * 2);
+                    currentRow[x * 2] = (byte) (sample >> 8);
+                    currentRow[x * 2 + 1] = (byte) sample;
+                }
+            } else {
+                for (int x = 0; x < rowBytes; x++) {
+                    currentRow[x] = source.get(rowStart + x);
+                }
+            }
+            byte[] row = filterRow(rowBytes, bytesPerSample);
+            deflater.setInput(row, 0, rowBytes + 1);
+            // The deflater reads from the row until it needs input again
+            while (!deflater.needsInput()) {
+                drain(out);
+            }
+            byte[] swap = previousRow;
+            previousRow = currentRow;
+            currentRow = swap;
+        }
+        deflater.finish();
+        while (!deflater.finished()) {
+            drain(out);
+        }
+        if (idatLength > 0) {
+            writeChunk(out, IDAT, idat, idatLength);
+        }
+        writeChunk(out, IEND, idat, 0);
+        out.flush();
+    }
+
+    /**
+     * Filters the current row with each PNG filter type and returns the candidate whose bytes,
+     * read as signed, have the smallest absolute sum.
+     */
+    private byte[] filterRow(int rowBytes, int bytesPerPixel) {
+        for (int filter = 0; filter < FILTER_COUNT; filter++) {
+            filtered[filter][0] = (byte) filter;
+            costs[filter] = 0;
+        }
+        for (int i = 0; i < rowBytes; i++) {
+            int raw = currentRow[i] & 0xFF;
+            int left = i >= bytesPerPixel ? currentRow[i - bytesPerPixel] & 0xFF : 0;
+            int up = previousRow[i] & 0xFF;
+            int upLeft = i >= bytesPerPixel ? previousRow[i - bytesPerPixel] & 0xFF : 0;
+            byte none = (byte) raw;
+            byte sub = (byte) (raw - left);
+            byte upFiltered = (byte) (raw - up);
+            byte average = (byte) (raw - ((left + up) >>> 1));
+            byte paeth = (byte) (raw - paethPredictor(left, up, upLeft));
+            filtered[0][i + 1] = none;
+            filtered[1][i + 1] = sub;
+            filtered[2][i + 1] = upFiltered;
+            filtered[3][i + 1] = average;
+            filtered[4][i + 1] = paeth;
+            costs[0] += Math.abs(none);
+            costs[1] += Math.abs(sub);
+            costs[2] += Math.abs(upFiltered);
+            costs[3] += Math.abs(average);
+            costs[4] += Math.abs(paeth);
+        }
+        int best = 0;
+        for (int filter = 1; filter < FILTER_COUNT; filter++) {
+            if (costs[filter] < costs[best]) {
+                best = filter;
+            }
+        }
+        return filtered[best];
+    }
+
+    private static int paethPredictor(int left, int up, int upLeft) {
+        int estimate = left + up - upLeft;
+        int toLeft = Math.abs(estimate - left);
+        int toUp = Math.abs(estimate - up);
+        int toUpLeft = Math.abs(estimate - upLeft);
+        if (toLeft <= toUp && toLeft <= toUpLeft) {
+            return left;
+        }
+        return toUp <= toUpLeft ? up : upLeft;
+    }
+
+    /** Moves deflated bytes into the IDAT buffer, writing the chunk out whenever it fills. */
+    private void drain(OutputStream out) throws IOException {
+        idatLength += deflater.deflate(idat, idatLength, IDAT_SIZE - idatLength);
+        if (idatLength == IDAT_SIZE) {
+            writeChunk(out, IDAT, idat, idatLength);
+            idatLength = 0;
+        }
+    }
+
+    private void writeChunk(OutputStream out, byte[] type, byte[] data, int length)
+            throws IOException {
+        writeInt(out, length);
+        out.write(type);
+        out.write(data, 0, length);
+        crc.reset();
+        crc.update(type, 0, type.length);
+        crc.update(data, 0, length);
+        writeInt(out, (int) crc.getValue());
+    }
+
+    private void writeInt(OutputStream out, int value) throws IOException {
+        word[0] = (byte) (value >>> 24);
+        word[1] = (byte) (value >>> 16);
+        word[2] = (byte) (value >>> 8);
+        word[3] = (byte) value;
+        out.write(word);
+    }
+
+    private void prepare(int rowBytes) {
+        if (previousRow.length < rowBytes) {
+            previousRow = new byte[rowBytes];
+            currentRow = new byte[rowBytes];
+            for (int filter = 0; filter < FILTER_COUNT; filter++) {
+                filtered[filter] = new byte[rowBytes + 1];
+            }
+        }
+    }
+}
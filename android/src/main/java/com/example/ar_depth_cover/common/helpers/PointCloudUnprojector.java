@@ -0,0 +1,153 @@
+package com.example.ar_depth_cover.common.helpers;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.nio.ShortBuffer;
+
+/**
+ * Turns a raw depth image into a point cloud of X, Y, Z, confidence floats.
+ *
+ * <p>Pixel (u, v) with depth d meters unprojects to camera space as
+ * {@code ((u - cx) * d / fx, -(v - cy) * d / fy, -d)}, following ARCore's camera convention of
+ * +X right, +Y up, looking down -Z while image rows grow downwards. Given the camera's pose
+ * matrix the points are moved to world space as well. Pixels without depth or below the
+ * confidence threshold are skipped, so the cloud holds only valid points.
+ *
+ * <p>The output is a direct, native-order {@link FloatBuffer} that is reused by the next call,
+ * ready to upload as a vertex buffer or copy into a message. Not thread-safe; use one instance
+ * per thread.
+ */
+public class PointCloudUnprojector {
+    public static final int FLOATS_PER_POINT = 4; // X,Y,Z,confidence.
+
+    private int minConfidence = 0;
+    private float maxDepthMeters = Float.POSITIVE_INFINITY;
+
+    private FloatBuffer points;
+    private float[] scratch;
+    private float[] columnRays;
+    private float[] rowRays;
+    private int pointCount;
+
+    /**
+     * Skips pixels whose raw confidence (0-255) is below {@code minConfidence}.
+     */
+    public void setMinConfidence(int minConfidence) {
+        this.minConfidence = minConfidence;
+    }
+
+    /** Skips pixels farther than this. */
+    public void setMaxDepthMeters(float maxDepthMeters) {
+        this.maxDepthMeters = maxDepthMeters;
+    }
+
+    /**
+     * Unprojects a depth image.
+     *
+     * @param depthMillimeters Tightly packed raw depth, read from index 0
+     * @param confidence Tightly packed raw confidence, read from index 0
+     * @param cameraToWorld Column-major camera pose to move points to world space, or null to
+     *     keep them in camera space
+     * @return The points, positioned at 0 with the limit at {@code getPointCount() * 4}. The
+     *     buffer is reused by the next call.
+     */
+    public FloatBuffer unproject(
+            ShortBuffer depthMillimeters,
+            ByteBuffer confidence,
+            int width,
+            int height,
+            float fx,
+            float fy,
+            float cx,
+            float cy,
+            float[] cameraToWorld) {
+        ensureCapacity(width, height);
+
+        // x = (u - cx) / fx * d and y = -(v - cy) / fy * d, so the ratios are per column and row
+        for (int u = 0; u < width; u++) {
+            columnRays[u] = (u - cx) / fx;
+        }
+        for (int v = 0; v < height; v++) {
+            rowRays[v] = -(v - cy) / fy;
+        }
+
+        boolean toWorld = cameraToWorld != null;
+        float m0 = 0, m1 = 0, m2 = 0, m4 = 0, m5 = 0, m6 = 0, m8 = 0, m9 = 0, m10 = 0;
+        float m12 = 0, m13 = 0, m14 = 0;
+        if (toWorld) {
+            m0 = cameraToWorld[0];
+            m1 = cameraToWorld[1];
+            m2 = cameraToWorld[2];
+            m4 = cameraToWorld[4];
+            m5 = cameraToWorld[5];
+            m6 = cameraToWorld[6];
+            m8 = cameraToWorld[8];
+            m9 = cameraToWorld[9];
+            m10 = cameraToWorld[10];
+            m12 = cameraToWorld[12];
+            m13 = cameraToWorld[13];
+            m14 = cameraToWorld[14];
+        }
+
+        int out = 0;
+        for (int v = 0; v < height; v++) {
+            float rowRay = rowRays[v];
+            int rowStart = v * width;
+            for (int u = 0; u < width; u++) {
+                int index = rowStart + u;
+                int millimeters = depthMillimeters.get(index) & 0xFFFF;
+                int pixelConfidence = confidence.get(index) & 0xFF;
+                if (millimeters == 0 || pixelConfidence < minConfidence) {
+                    continue;
+                }
+                float depth = millimeters * 0.001f;
+                if (depth > maxDepthMeters) {
+                    continue;
+                }
+                float x = columnRays[u] * depth;
+                float y = rowRay * depth;
+                float z = -depth;
+                if (toWorld) {
+                    scratch[out] = m0 * x + m4 * y + m8 * z + m12;
+                    scratch[out + 1] = m1 * x + m5 * y + m9 * z + m13;
+                    scratch[out + 2] = m2 * x + m6 * y + m10 * z + m14;
+                } else {
+                    scratch[out] = x;
+                    scratch[out + 1] = y;
+                    scratch[out + 2] = z;
+                }
+                scratch[out + 3] = pixelConfidence / 255f;
+                out += FLOATS_PER_POINT;
+            }
+        }
+        pointCount = out / FLOATS_PER_POINT;
+
+        // One bulk copy; per-element puts into a direct buffer are much slower
+        points.clear();
+        points.put(scratch, 0, out);
+        points.flip();
+        return points;
+    }
+
+    /** Number of points produced by the last call. */
+    public int getPointCount() {
+        return pointCount;
+    }
+
+    private void ensureCapacity(int width, int height) {
+        int floats = width * height * FLOATS_PER_POINT;
+        if (scratch == null || scratch.length < floats) {
+            scratch = new float[floats];
+            points = ByteBuffer.allocateDirect(floats * 4)
+                    .order(ByteOrder.nativeOrder())
+                    .asFloatBuffer();
+        }
+        if (columnRays == null || columnRays.length != width) {
+            columnRays = new float[width];
+        }
+        if (rowRays == null || rowRays.length != height) {
+            rowRays = new float[height];
+        }
+    }
+}
@@ -0,0 +1,192 @@
+package com.example.ar_depth_cover.common.helpers;
+
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Runs per-row image kernels in parallel by splitting the rows into contiguous stripes on a
+ * bounded pool of worker threads.
+ *
+ * <p>The calling thread always processes one stripe itself and then waits for the others, so a
+ * call to {@link #run} returns only once every row has been processed. Stripe descriptors are
+ * preallocated, which keeps a steady stream of calls from producing garbage. Calls are
+ * serialized; an executor can be shared but only runs one kernel at a time.
+ */
+public class RowStripeExecutor {
+    /**
+     * A kernel over the half-open row range {@code [rowStart, rowEnd)}. Kernels must only write to
+     * memory owned by their rows for the parallel result to match the serial one.
+     */
+    public interface RowTask {
+        void run(int rowStart, int rowEnd);
+    }
+
+    private static RowStripeExecutor defaultExecutor;
+
+    private final int parallelism;
+    private final ThreadPoolExecutor workers;
+    private final Stripe[] stripes;
+
+    private final Object lock = new Object();
+    private int pendingStripes;
+    private Throwable failure;
+
+    /**
+     * Returns a process-wide executor with one stripe per available core.
+     */
+    public static synchronized RowStripeExecutor getDefault() {
+        if (defaultExecutor == null) {
+            defaultExecutor = new RowStripeExecutor(Runtime.getRuntime().availableProcessors());
+        }
+        return defaultExecutor;
+    }
+
+    /**
+     * @param parallelism Number of stripes, including the one run on the calling thread
+     */
+    public RowStripeExecutor(int parallelism) {
+        if (parallelism < 1) {
+            throw new IllegalArgumentException("parallelism must be at least 1: " + parallelism);
+        }
+        this.parallelism = parallelism;
+        this.stripes = new Stripe[parallelism];
+        for (int i = 0; i < parallelism; i++) {
+            stripes[i] = new Stripe();
+        }
+
+        ThreadFactory threadFactory = runnable -> {
+            Thread thread = new Thread(runnable, "RowStripeWorker");
+            thread.setDaemon(true);
+            return thread;
+        };
+        int workerCount = Math.max(1, parallelism - 1);
+        workers = new ThreadPoolExecutor(
+                workerCount, workerCount, 30, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<>(), threadFactory);
+        workers.allowCoreThreadTimeOut(true);
+    }
+
+    public int getParallelism() {
+        return parallelism;
+    }
+
+    /**
+     * Runs {@code task} over rows {@code [0, rows)} and blocks until all stripes have finished.
+     *
+     * @throws RuntimeException if a stripe failed; the original exception is the cause
+     */
+    public void run(int rows, RowTask task) {
+        int stripeCount = Math.min(parallelism, rows);
+        if (stripeCount <= 1) {
+            task.run(0, rows);
+            return;
+        }
+
+        synchronized (this) {
+            synchronized (lock) {
+                pendingStripes = stripeCount - 1;
+                failure = null;
+            }
+
+            // Even split; the first (rows % stripeCount) stripes take one extra row
+            int baseRows = rows / stripeCount;
+            int extraRows = rows % stripeCount;
+            int rowStart = 0;
+            for (int i = 0; i < stripeCount; i++) {
+                int rowEnd = rowStart + baseRows + (i < extraRows ? 1 : 0);
+                stripes[i].set(task, rowStart, rowEnd);
+                rowStart = rowEnd;
+            }
+            for (int i = 1; i < stripeCount; i++) {
+                try {
+                    workers.execute(stripes[i]);
+                } catch (RejectedExecutionException e) {
+                    // Shut down; finish the stripe on the calling thread instead
+                    stripes[i].run();
+                }
+            }
+
+            Throwable callerFailure = null;
+            try {
+                task.run(stripes[0].rowStart, stripes[0].rowEnd);
+            } catch (Throwable t) {
+                callerFailure = t;
+            }
+
+            Throwable stripeFailure;
+            boolean interrupted = false;
+            synchronized (lock) {
+                while (pendingStripes > 0) {
+                    try {
+                        lock.wait();
+                    } catch (InterruptedException e) {
+                        // Other stripes still write into shared buffers; wait them out
+                        interrupted = true;
+                    }
+                }
+                stripeFailure = failure;
+            }
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+
+            for (int i = 0; i < stripeCount; i++) {
+                stripes[i].task = null;
+            }
+
+            Throwable error = callerFailure != null ? callerFailure : stripeFailure;
+            if (error instanceof RuntimeException) {
+                throw (RuntimeException) error;
+            } else if (error instanceof Error) {
+                throw (Error) error;
+            } else if (error != null) {
+                throw new RuntimeException(error);
+            }
+        }
+    }
+
+    /**
+     * Stops the worker threads. Later calls to {@link #run} still complete, on the calling thread.
+     */
+    public void shutdown() {
+        workers.shutdown();
+    }
+
+    private void stripeFinished(Throwable error) {
+        synchronized (lock) {
+            if (error != null && failure == null) {
+                failure = error;
+            }
+            pendingStripes--;
+            if (pendingStripes == 0) {
+                lock.notifyAll();
+            }
+        }
+    }
+
+    private final class Stripe implements Runnable {
+        RowTask task;
+        int rowStart;
+        int rowEnd;
+
+        void set(RowTask task, int rowStart, int rowEnd) {
+            this.task = task;
+            this.rowStart = rowStart;
+            this.rowEnd = rowEnd;
+        }
+
+        @Override
+        public void run() {
+            Throwable error = null;
+            try {
+                task.run(rowStart, rowEnd);
+            } catch (Throwable t) {
+                error = t;
+            }
+            stripeFinished(error);
+        }
+    }
+}
@@ -0,0 +1,81 @@
+package com.example.ar_depth_cover.common.helpers;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Bounded lock-free queue for exactly one producer thread and one consumer thread.
+ *
+ * <p>The producer only writes {@code tail} and the consumer only writes {@code head}, so both
+ * sides make progress with a plain volatile publish and no compare-and-set. Neither
+ * {@link #offer} nor {@link #poll} ever blocks; a full queue rejects the item and leaves the
+ * decision to the caller.
+ */
+public class SpscQueue<T> {
+    private final AtomicReferenceArray<T> slots;
+    private final int mask;
+    private final AtomicLong head = new AtomicLong();
+    private final AtomicLong tail = new AtomicLong();
+
+    /**
+     * @param capacity Maximum number of queued items, rounded up to a power of two
+     */
+    public SpscQueue(int capacity) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("capacity must be at least 1: " + capacity);
+        }
+        int size = Integer.highestOneBit(capacity);
+        if (size < capacity) {
+            size <<= 1;
+        }
+        slots = new AtomicReferenceArray<>(size);
+        mask = size - 1;
+    }
+
+    public int capacity() {
+        return mask + 1;
+    }
+
+    /**
+     * Adds an item. Producer thread only.
+     *
+     * @return false if the queue is full
+     */
+    public boolean offer(T item) {
+        long currentTail = tail.get();
+        if (currentTail - head.get() > mask) {
+            return false;
+        }
+        slots.lazySet((int) currentTail & mask, item);
+        // Publishes the slot write to the consumer
+        tail.set(currentTail + 1);
+        return true;
+    }
+
+    /**
+     * Removes the oldest item. Consumer thread only.
+     *
+     * @return The item, or null if the queue is empty
+     */
+    public T poll() {
+        long currentHead = head.get();
+        if (currentHead == tail.get()) {
+            return null;
+        }
+        int index = (int) currentHead & mask;
+        T item = slots.get(index);
+        slots.lazySet(index, null);
+        // Hands the slot back to the producer
+        head.set(currentHead + 1);
+        return item;
+    }
+
+    /** Approximate number of queued items; exact when called from either endpoint thread. */
+    public int size() {
+        return (int) (tail.get() - head.get());
+    }
+
+    public boolean isEmpty() {
+        return size() == 0;
+    }
+}
@@ -0,0 +1,50 @@
+package com.example.ar_depth_cover.common.helpers;
+
+import java.util.Locale;
+
+/**
+ * Running count, mean, maximum and most recent value of a stage's per-item duration.
+ *
+ * <p>One thread records while any thread reads. Readers may see a count and total from different
+ * moments, which is fine for monitoring.
+ */
+public class StageTimings {
+    private volatile long count = 0;
+    private volatile long totalNanos = 0;
+    private volatile long maxNanos = 0;
+    private volatile long lastNanos = 0;
+
+    /** Records one duration. Single writer thread only. */
+    public void record(long nanos) {
+        lastNanos = nanos;
+        totalNanos += nanos;
+        if (nanos > maxNanos) {
+            maxNanos = nanos;
+        }
+        count++;
+    }
+
+    public long getCount() {
+        return count;
+    }
+
+    public double getAverageMillis() {
+        long n = count;
+        return n == 0 ? 0 : totalNanos / 1e6 / n;
+    }
+
+    public double getMaxMillis() {
+        return maxNanos / 1e6;
+    }
+
+    public double getLastMillis() {
+        return lastNanos / 1e6;
+    }
+
+    @Override
+    public String toString() {
+        return String.format(
+                Locale.US, "n=%d avg=%.2fms max=%.2fms last=%.2fms",
+                getCount(), getAverageMillis(), getMaxMillis(), getLastMillis());
+    }
+}
@@ -0,0 +1,622 @@
+package com.example.ar_depth_cover.common.helpers;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Extracts the zero surface of a {@link TsdfVolume} as an indexed triangle mesh, re-meshing only
+ * the blocks that changed since the previous extraction.
+ *
+ * <p>Each cube of eight neighbouring voxel centers is split into six tetrahedra around its main
+ * diagonal and every tetrahedron is triangulated where the distance changes sign (marching
+ * tetrahedra). Unlike the 256-case marching cubes table this has no ambiguous cases, and
+ * neighbouring cubes split their shared faces the same way, so the surface has no cracks. Cubes
+ * with an unobserved corner are skipped; the mesh ends where observation ends.
+ *
+ * <p>Meshes are kept per block. Cubes on a block's far faces read voxels from the next block and
+ * normals read one voxel into the blocks on either side, so a changed block also re-meshes the
+ * allocated blocks around it. Vertices are computed from global voxel coordinates, so the
+ * copies of a vertex on either side of a block border are identical, and assembling the mesh
+ * welds them into one. A surface observed all round is therefore closed, with every edge
+ * shared by exactly two triangles. Normals follow the
+ * distance gradient and point out of the surface, towards the camera that observed it;
+ * triangles wind counter-clockwise seen from outside.
+ *
+ * <p>{@link #update} refreshes the changed blocks and assembles the whole mesh into direct,
+ * native-order buffers that can be uploaded as-is: positions and normals as XYZ floats and
+ * triangle indices as ints for {@code GL_UNSIGNED_INT} (OpenGL ES 3.0, which ARCore requires).
+ * The buffers are reused by the next update. All public methods are synchronized; the mesher
+ * holds the volume's lock while it reads blocks.
+ */
+public class TsdfMesher {
+    private static final int B = TsdfVolume.BLOCK_SIZE;
+    // Samples span voxels -1 .. B + 1 of a block: cubes need one voxel past the block and
+    // gradients one more on each side
+    private static final int SPAN = B + 3;
+    // Cube corners are voxels 0 .. B of a block
+    private static final int POINTS = B + 1;
+    // Corners of a cube as bit masks, x = 1, y = 2, z = 4. Each tetrahedron walks from corner 0
+    // to corner 7 along one ordering of the axes, so all its edges join nested corners.
+    private static final int[][] TETRAHEDRA = {
+        {0, 1, 3, 7}, {0, 1, 5, 7}, {0, 2, 3, 7}, {0, 2, 6, 7}, {0, 4, 5, 7}, {0, 4, 6, 7},
+    };
+
+    /** Surface of one block, in world coordinates. */
+    private static final class BlockMesh {
+        final float[] positions;
+        final float[] normals;
+        final int[] indices;
+        // Vertices on a face shared with a neighbouring block, which has its own copy
+        final int[] borderVertices;
+
+        BlockMesh(float[] positions, float[] normals, int[] indices, int[] borderVertices) {
+            this.positions = positions;
+            this.normals = normals;
+            this.indices = indices;
+            this.borderVertices = borderVertices;
+        }
+    }
+
+    private final TsdfVolume volume;
+    private final LongObjectMap<BlockMesh> meshes = new LongObjectMap<>(1024);
+    private int meshedVersion = 0;
+    private int meshedGeneration;
+    private int lastRemeshedBlocks = 0;
+
+    // Scratch for meshing one block
+    private final List<TsdfVolume.Block> changed = new ArrayList<>();
+    // Blocks already considered, mapped to the block or null if none is allocated there
+    private final LongObjectMap<TsdfVolume.Block> dirty = new LongObjectMap<>(256);
+    private final List<TsdfVolume.Block> toMesh = new ArrayList<>();
+    private final TsdfVolume.Block[] neighbours = new TsdfVolume.Block[27];
+    private final float[] samples = new float[SPAN * SPAN * SPAN];
+    private final float[] gradients = new float[SPAN * SPAN * SPAN * 3];
+    private final int[] edgeVertices = new int[POINTS * POINTS * POINTS * 8];
+    private final float[] corners = new float[8];
+    private final int[] triangle = new int[3];
+    private float[] positions = new float[3 * 1024];
+    private float[] normals = new float[3 * 1024];
+    private int[] indices = new int[3 * 1024];
+    private int[] borderVertices = new int[1024];
+    private int vertexCount;
+    private int indexCount;
+    private int borderCount;
+
+    // Scratch for assembling, so welded vertices can be compared and skipped before upload
+    private float[] assembledPositions = new float[0];
+    private float[] assembledNormals = new float[0];
+    private int[] assembledIndices = new int[0];
+    private int[] vertexRemap = new int[0];
+    // Open-addressed table of assembled border vertices by position, -1 for empty
+    private int[] weldSlots = new int[0];
+    private int assembledVertexCount;
+
+    private FloatBuffer vertexBuffer;
+    private FloatBuffer normalBuffer;
+    private IntBuffer indexBuffer;
+    private int meshVertexCount = 0;
+    private int meshIndexCount = 0;
+
+    public TsdfMesher(TsdfVolume volume) {
+        this.volume = volume;
+        this.meshedGeneration = volume.getGeneration();
+        allocateOutput(0, 0);
+    }
+
+    /**
+     * Re-meshes the blocks changed since the previous update and, if any were, reassembles the
+     * mesh. A cleared volume drops every cached block.
+     *
+     * @return Number of blocks re-meshed
+     */
+    public synchronized int update() {
+        int remeshed;
+        boolean cleared = false;
+        synchronized (volume) {
+            if (volume.getGeneration() != meshedGeneration) {
+                meshes.clear();
+                meshedGeneration = volume.getGeneration();
+                meshedVersion = 0;
+                cleared = true;
+            }
+            changed.clear();
+            volume.collectChangedBlocks(meshedVersion, changed);
+            collectDirtyBlocks();
+            for (TsdfVolume.Block block : toMesh) {
+                long key = TsdfVolume.blockKey(block.x, block.y, block.z);
+                BlockMesh mesh = meshBlock(block);
+                if (mesh != null) {
+                    meshes.put(key, mesh);
+                } else {
+                    meshes.remove(key);
+                }
+            }
+            remeshed = toMesh.size();
+            meshedVersion = volume.getVersion();
+            changed.clear();
+            toMesh.clear();
+            dirty.clear();
+        }
+        if (remeshed > 0 || cleared) {
+            assemble();
+        }
+        lastRemeshedBlocks = remeshed;
+        return remeshed;
+    }
+
+    /** Positions as XYZ floats in meters, world space; limit is {@code getVertexCount() * 3}. */
+    public synchronized FloatBuffer getVertices() {
+        return vertexBuffer;
+    }
+
+    /** Unit normals as XYZ floats, one per vertex. */
+    public synchronized FloatBuffer getNormals() {
+        return normalBuffer;
+    }
+
+    /** Three vertex indices per triangle; limit is {@code getIndexCount()}. */
+    public synchronized IntBuffer getIndices() {
+        return indexBuffer;
+    }
+
+    public synchronized int getVertexCount() {
+        return meshVertexCount;
+    }
+
+    public synchronized int getIndexCount() {
+        return meshIndexCount;
+    }
+
+    /** Blocks holding at least one triangle. */
+    public synchronized int getMeshedBlockCount() {
+        return meshes.size();
+    }
+
+    /** Blocks re-meshed by the last update. */
+    public synchronized int getLastRemeshedBlocks() {
+        return lastRemeshedBlocks;
+    }
+
+    /** Drops the cached meshes; the next update re-meshes the whole volume. */
+    public synchronized void reset() {
+        meshes.clear();
+        meshedVersion = 0;
+        meshedGeneration = volume.getGeneration();
+        lastRemeshedBlocks = 0;
+        allocateOutput(0, 0);
+        meshVertexCount = 0;
+        meshIndexCount = 0;
+    }
+
+    /** Lists each changed block and its existing neighbours, once. */
+    private void collectDirtyBlocks() {
+        for (TsdfVolume.Block block : changed) {
+            for (int dz = -1; dz <= 1; dz++) {
+                for (int dy = -1; dy <= 1; dy++) {
+                    for (int dx = -1; dx <= 1; dx++) {
+                        int bx = block.x - dx;
+                        int by = block.y - dy;
+                        int bz = block.z - dz;
+                        long key = TsdfVolume.blockKey(bx, by, bz);
+                        if (dirty.containsKey(key)) {
+                            continue;
+                        }
+                        TsdfVolume.Block target = volume.findBlock(bx, by, bz);
+                        dirty.put(key, target);
+                        if (target != null) {
+                            toMesh.add(target);
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    /** Triangulates the cubes whose lowest corner lies in the block, or returns null if none. */
+    private BlockMesh meshBlock(TsdfVolume.Block block) {
+        loadSamples(block);
+        Arrays.fill(edgeVertices, -1);
+        vertexCount = 0;
+        indexCount = 0;
+        borderCount = 0;
+
+        for (int k = 0; k < B; k++) {
+            for (int j = 0; j < B; j++) {
+                for (int i = 0; i < B; i++) {
+                    meshCube(block, i, j, k);
+                }
+            }
+        }
+        if (indexCount == 0) {
+            return null;
+        }
+        return new BlockMesh(
+                Arrays.copyOf(positions, vertexCount * 3),
+                Arrays.copyOf(normals, vertexCount * 3),
+                Arrays.copyOf(indices, indexCount),
+                Arrays.copyOf(borderVertices, borderCount));
+    }
+
+    /**
+     * Copies the distances around a block into {@link #samples}, NaN where unobserved, and
+     * computes their gradients.
+     */
+    private void loadSamples(TsdfVolume.Block block) {
+        for (int n = 0; n < 27; n++) {
+            neighbours[n] = volume.findBlock(
+                    block.x + n % 3 - 1, block.y + n / 3 % 3 - 1, block.z + n / 9 - 1);
+        }
+        int s = 0;
+        for (int k = -1; k < B + 2; k++) {
+            int nz = Math.floorDiv(k, B) + 1;
+            int vz = Math.floorMod(k, B);
+            for (int j = -1; j < B + 2; j++) {
+                int ny = Math.floorDiv(j, B) + 1;
+                int vy = Math.floorMod(j, B);
+                for (int i = -1; i < B + 2; i++, s++) {
+                    TsdfVolume.Block source = neighbours[nz * 9 + ny * 3 + Math.floorDiv(i, B) + 1];
+                    if (source == null) {
+                        samples[s] = Float.NaN;
+                        continue;
+                    }
+                    int voxel = (vz * B + vy) * B + Math.floorMod(i, B);
+                    samples[s] = source.weights[voxel] > 0 ? source.tsdf[voxel] : Float.NaN;
+                }
+            }
+        }
+
+        // Central differences where both neighbours were observed, one-sided otherwise; only
+        // the cube corners need them
+        for (int k = 1; k <= POINTS; k++) {
+            for (int j = 1; j <= POINTS; j++) {
+                for (int i = 1; i <= POINTS; i++) {
+                    int index = (k * SPAN + j) * SPAN + i;
+                    gradients[index * 3] = difference(index, 1);
+                    gradients[index * 3 + 1] = difference(index, SPAN);
+                    gradients[index * 3 + 2] = difference(index, SPAN * SPAN);
+                }
+            }
+        }
+    }
+
+    private float difference(int index, int step) {
+        float before = samples[index - step];
+        float after = samples[index + step];
+        float here = samples[index];
+        boolean hasBefore = !Float.isNaN(before);
+        boolean hasAfter = !Float.isNaN(after);
+        if (hasBefore && hasAfter) {
+            return (after - before) * 0.5f;
+        } else if (hasAfter) {
+            return after - here;
+        } else if (hasBefore) {
+            return here - before;
+        }
+        return 0f;
+    }
+
+    private static int sampleIndex(int i, int j, int k) {
+        // Voxel 0 of the block is sample 1
+        return ((k + 1) * SPAN + j + 1) * SPAN + i + 1;
+    }
+
+    private void meshCube(TsdfVolume.Block block, int i, int j, int k) {
+        int insideCount = 0;
+        for (int c = 0; c < 8; c++) {
+            float value = samples[sampleIndex(i + (c & 1), j + (c >> 1 & 1), k + (c >> 2))];
+            if (Float.isNaN(value)) {
+                return;
+            }
+            corners[c] = value;
+            if (value < 0) {
+                insideCount++;
+            }
+        }
+        if (insideCount == 0 || insideCount == 8) {
+            return;
+        }
+
+        for (int[] tetrahedron : TETRAHEDRA) {
+            int insideMask = 0;
+            for (int t = 0; t < 4; t++) {
+                if (corners[tetrahedron[t]] < 0) {
+                    insideMask |= 1 << t;
+                }
+            }
+            int inside = Integer.bitCount(insideMask);
+            if (inside == 0 || inside == 4) {
+                continue;
+            }
+            if (inside == 2) {
+                // Quad between the two inside corners a, b and the outside corners c, d
+                int a = -1, b = -1, c = -1, d = -1;
+                for (int t = 0; t < 4; t++) {
+                    int corner = tetrahedron[t];
+                    if ((insideMask & (1 << t)) != 0) {
+                        if (a < 0) {
+                            a = corner;
+                        } else {
+                            b = corner;
+                        }
+                    } else if (c < 0) {
+                        c = corner;
+                    } else {
+                        d = corner;
+                    }
+                }
+                int ac = edgeVertex(block, i, j, k, a, c);
+                int ad = edgeVertex(block, i, j, k, a, d);
+                int bd = edgeVertex(block, i, j, k, b, d);
+                int bc = edgeVertex(block, i, j, k, b, c);
+                // Both triangles contain the crossing on a-c, so that edge orients both
+                addTriangle(ac, ad, bd, a, c);
+                addTriangle(ac, bd, bc, a, c);
+            } else {
+                // One corner on its own side
+                boolean loneInside = inside == 1;
+                int lone = -1;
+                int first = -1, second = -1, third = -1;
+                for (int t = 0; t < 4; t++) {
+                    int corner = tetrahedron[t];
+                    if (((insideMask & (1 << t)) != 0) == loneInside) {
+                        lone = corner;
+                    } else if (first < 0) {
+                        first = corner;
+                    } else if (second < 0) {
+                        second = corner;
+                    } else {
+                        third = corner;
+                    }
+                }
+                addTriangle(
+                        edgeVertex(block, i, j, k, lone, first),
+                        edgeVertex(block, i, j, k, lone, second),
+                        edgeVertex(block, i, j, k, lone, third),
+                        loneInside ? lone : first,
+                        loneInside ? first : lone);
+            }
+        }
+    }
+
+    /**
+     * Returns the vertex where the distance crosses zero between two corners of cube (i, j, k),
+     * creating it the first time the edge is seen in this block.
+     */
+    private int edgeVertex(TsdfVolume.Block block, int i, int j, int k, int cornerA, int cornerB) {
+        // Corners of a tetrahedron edge are nested, so the edge runs from low along direction
+        int low = cornerA & cornerB;
+        int direction = cornerA ^ cornerB;
+        int pi = i + (low & 1);
+        int pj = j + (low >> 1 & 1);
+        int pk = k + (low >> 2);
+        int key = ((pk * POINTS + pj) * POINTS + pi) * 8 + direction;
+        if (edgeVertices[key] >= 0) {
+            return edgeVertices[key];
+        }
+
+        int dx = direction & 1;
+        int dy = direction >> 1 & 1;
+        int dz = direction >> 2;
+        int from = sampleIndex(pi, pj, pk);
+        int to = sampleIndex(pi + dx, pj + dy, pk + dz);
+        float fromValue = samples[from];
+        // Kept off the corners: crossings on different edges meeting at a corner would otherwise
+        // produce coincident vertices and pinch the surface there
+        float t = Math.min(0.999f, Math.max(0.001f, fromValue / (fromValue - samples[to])));
+
+        if (vertexCount * 3 == positions.length) {
+            positions = Arrays.copyOf(positions, positions.length * 2);
+            normals = Arrays.copyOf(normals, normals.length * 2);
+        }
+        int out = vertexCount * 3;
+        float voxelSize = volume.getVoxelSize();
+        // Global voxel coordinates first, so both blocks sharing a border compute the same
+        // vertex
+        positions[out] = (block.x * B + pi + t * dx + 0.5f) * voxelSize;
+        positions[out + 1] = (block.y * B + pj + t * dy + 0.5f) * voxelSize;
+        positions[out + 2] = (block.z * B + pk + t * dz + 0.5f) * voxelSize;
+
+        float nx = gradients[from * 3] + t * (gradients[to * 3] - gradients[from * 3]);
+        float ny = gradients[from * 3 + 1] + t * (gradients[to * 3 + 1] - gradients[from * 3 + 1]);
+        float nz = gradients[from * 3 + 2] + t * (gradients[to * 3 + 2] - gradients[from * 3 + 2]);
+        float length = (float) Math.sqrt(nx * nx + ny * ny + nz * nz);
+        if (length > 0) {
+            nx /= length;
+            ny /= length;
+            nz /= length;
+        }
+        normals[out] = nx;
+        normals[out + 1] = ny;
+        normals[out + 2] = nz;
+
+        // An edge lying in a block face is also meshed by the block on the other side
+        if ((dx == 0 && (pi == 0 || pi == B)) || (dy == 0 && (pj == 0 || pj == B))
+                || (dz == 0 && (pk == 0 || pk == B))) {
+            if (borderCount == borderVertices.length) {
+                borderVertices = Arrays.copyOf(borderVertices, borderCount * 2);
+            }
+            borderVertices[borderCount++] = vertexCount;
+        }
+
+        edgeVertices[key] = vertexCount;
+        return vertexCount++;
+    }
+
+    /**
+     * Adds a triangle wound so that it faces out of the surface. One of its edges crosses from
+     * cube corner {@code inside} to {@code outside}; the corners lie on opposite sides of the
+     * triangle's plane, so this decides the side exactly where interpolated normals might not.
+     * Triangles collapsed to a line or point are dropped.
+     */
+    private void addTriangle(int a, int b, int c, int inside, int outside) {
+        float[] p = positions;
+        float e1x = p[b * 3] - p[a * 3];
+        float e1y = p[b * 3 + 1] - p[a * 3 + 1];
+        float e1z = p[b * 3 + 2] - p[a * 3 + 2];
+        float e2x = p[c * 3] - p[a * 3];
+        float e2y = p[c * 3 + 1] - p[a * 3 + 1];
+        float e2z = p[c * 3 + 2] - p[a * 3 + 2];
+        float fx = e1y * e2z - e1z * e2y;
+        float fy = e1z * e2x - e1x * e2z;
+        float fz = e1x * e2y - e1y * e2x;
+        if (fx == 0 && fy == 0 && fz == 0) {
+            return;
+        }
+        int gx = (outside & 1) - (inside & 1);
+        int gy = (outside >> 1 & 1) - (inside >> 1 & 1);
+        int gz = (outside >> 2) - (inside >> 2);
+
+        triangle[0] = a;
+        if (fx * gx + fy * gy + fz * gz >= 0) {
+            triangle[1] = b;
+            triangle[2] = c;
+        } else {
+            triangle[1] = c;
+            triangle[2] = b;
+        }
+        if (indexCount + 3 > indices.length) {
+            indices = Arrays.copyOf(indices, indices.length * 2);
+        }
+        System.arraycopy(triangle, 0, indices, indexCount, 3);
+        indexCount += 3;
+    }
+
+    /**
+     * Concatenates the block meshes into the output buffers, welding the copies of border
+     * vertices so the index buffer is connected across blocks.
+     */
+    private void assemble() {
+        int vertices = 0;
+        int triangleIndices = 0;
+        int borders = 0;
+        int largestMesh = 0;
+        for (int slot = 0; slot < meshes.slots(); slot++) {
+            BlockMesh mesh = meshes.valueAt(slot);
+            if (mesh == null) {
+                continue;
+            }
+            int meshVertices = mesh.positions.length / 3;
+            vertices += meshVertices;
+            triangleIndices += mesh.indices.length;
+            borders += mesh.borderVertices.length;
+            largestMesh = Math.max(largestMesh, meshVertices);
+        }
+        // Sized for no welds; the buffers' limits come from what is actually written
+        allocateOutput(vertices, triangleIndices);
+
+        // Assembled in heap arrays; per-element puts into a direct buffer are much slower
+        if (assembledPositions.length < vertices * 3) {
+            assembledPositions = new float[vertices * 3];
+            assembledNormals = new float[vertices * 3];
+        }
+        if (assembledIndices.length < triangleIndices) {
+            assembledIndices = new int[triangleIndices];
+        }
+        if (vertexRemap.length < largestMesh) {
+            vertexRemap = new int[largestMesh];
+        }
+        int weldCapacity = Integer.highestOneBit(Math.max(borders, 1) * 2) * 2;
+        if (weldSlots.length < weldCapacity) {
+            weldSlots = new int[weldCapacity];
+        }
+        Arrays.fill(weldSlots, -1);
+        int weldMask = weldSlots.length - 1;
+
+        assembledVertexCount = 0;
+        int out = 0;
+        for (int slot = 0; slot < meshes.slots(); slot++) {
+            BlockMesh mesh = meshes.valueAt(slot);
+            if (mesh == null) {
+                continue;
+            }
+            int meshVertices = mesh.positions.length / 3;
+            Arrays.fill(vertexRemap, 0, meshVertices, -1);
+            for (int vertex : mesh.borderVertices) {
+                int weld = findWeldSlot(mesh.positions, vertex, weldMask);
+                if (weldSlots[weld] < 0) {
+                    weldSlots[weld] = appendVertex(mesh, vertex);
+                }
+                vertexRemap[vertex] = weldSlots[weld];
+            }
+            for (int vertex = 0; vertex < meshVertices; vertex++) {
+                if (vertexRemap[vertex] < 0) {
+                    vertexRemap[vertex] = appendVertex(mesh, vertex);
+                }
+            }
+            for (int index : mesh.indices) {
+                assembledIndices[out++] = vertexRemap[index];
+            }
+        }
+        vertexBuffer.put(assembledPositions, 0, assembledVertexCount * 3);
+        normalBuffer.put(assembledNormals, 0, assembledVertexCount * 3);
+        indexBuffer.put(assembledIndices, 0, out);
+        vertexBuffer.flip();
+        normalBuffer.flip();
+        indexBuffer.flip();
+        meshVertexCount = assembledVertexCount;
+        meshIndexCount = triangleIndices;
+    }
+
+    private int appendVertex(BlockMesh mesh, int vertex) {
+        System.arraycopy(mesh.positions, vertex * 3, assembledPositions,
+                assembledVertexCount * 3, 3);
+        System.arraycopy(mesh.normals, vertex * 3, assembledNormals,
+                assembledVertexCount * 3, 3);
+        return assembledVertexCount++;
+    }
+
+    /**
+     * Returns the weld table slot holding an assembled vertex at the same position as
+     * {@code vertex} of {@code positions}, or the empty slot where it would go. Copies of a
+     * border vertex are bit-identical, so positions are compared exactly.
+     */
+    private int findWeldSlot(float[] positions, int vertex, int mask) {
+        float x = positions[vertex * 3];
+        float y = positions[vertex * 3 + 1];
+        float z = positions[vertex * 3 + 2];
+        int hash = Float.floatToIntBits(x);
+        hash = hash * 0x9E3779B1 + Float.floatToIntBits(y);
+        hash = hash * 0x9E3779B1 + Float.floatToIntBits(z);
+        hash ^= hash >>> 16;
+        int slot = hash & mask;
+        while (weldSlots[slot] >= 0) {
+            int existing = weldSlots[slot] * 3;
+            if (assembledPositions[existing] == x && assembledPositions[existing + 1] == y
+                    && assembledPositions[existing + 2] == z) {
+                return slot;
+            }
+            slot = (slot + 1) & mask;
+        }
+        return slot;
+    }
+
+    private void allocateOutput(int vertices, int triangleIndices) {
+        if (vertexBuffer == null || vertexBuffer.capacity() < vertices * 3) {
+            // Headroom so a growing scan does not reallocate on every update
+            int capacity = Math.max(vertices * 3 / 2, 1024) * 3;
+            vertexBuffer = ByteBuffer.allocateDirect(capacity * 4)
+                    .order(ByteOrder.nativeOrder())
+                    .asFloatBuffer();
+            normalBuffer = ByteBuffer.allocateDirect(capacity * 4)
+                    .order(ByteOrder.nativeOrder())
+                    .asFloatBuffer();
+        }
+        if (indexBuffer == null || indexBuffer.capacity() < triangleIndices) {
+            int capacity = Math.max(triangleIndices * 3 / 2, 3 * 1024);
+            indexBuffer = ByteBuffer.allocateDirect(capacity * 4)
+                    .order(ByteOrder.nativeOrder())
+                    .asIntBuffer();
+        }
+        vertexBuffer.clear();
+        normalBuffer.clear();
+        indexBuffer.clear();
+        vertexBuffer.limit(vertices * 3);
+        normalBuffer.limit(vertices * 3);
+        indexBuffer.limit(triangleIndices);
+    }
+}
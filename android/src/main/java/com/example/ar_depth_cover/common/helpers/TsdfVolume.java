@@ -0,0 +1,437 @@
+package com.example.ar_depth_cover.common.helpers;
+
+import java.nio.ByteBuffer;
+import java.nio.ShortBuffer;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Truncated signed distance field fused from raw depth frames.
+ *
+ * <p>Space is divided into blocks of {@link #BLOCK_SIZE}^3 voxels. A block is allocated only
+ * when a depth measurement's truncation band passes through it, so memory follows the observed
+ * surface rather than the scanned bounding volume. Each voxel stores the signed distance to the
+ * nearest surface along the camera ray, divided by the truncation distance and clamped to
+ * [-1, 1], positive in front of the surface. Each voxel also stores the accumulated confidence
+ * weight of the measurements averaged into it.
+ *
+ * <p>{@link #integrate} first walks every valid depth pixel's truncation band to allocate and
+ * collect the blocks it touches. It then updates those blocks: each voxel is projected into the
+ * depth image and blended with the measurement there, weighted by its confidence. Blocks are
+ * independent, so the update runs in parallel over stripes of the visible block list when an
+ * executor is set.
+ *
+ * <p>Poses are column-major camera-to-world matrices, with the camera looking down -Z as in
+ * ARCore. All public methods are synchronized.
+ */
+public class TsdfVolume {
+    /** Voxels along each edge of a block. */
+    public static final int BLOCK_SIZE = 8;
+    static final int VOXELS_PER_BLOCK = BLOCK_SIZE * BLOCK_SIZE * BLOCK_SIZE;
+    private static final int AXIS_BITS = 21;
+    private static final int AXIS_OFFSET = 1 << (AXIS_BITS - 1);
+    private static final long AXIS_MASK = (1L << AXIS_BITS) - 1;
+    private static final float DEFAULT_MAX_WEIGHT = 64f;
+
+    /** One allocated block of voxels. */
+    public static final class Block {
+        final int x;
+        final int y;
+        final int z;
+        // Indexed (z * BLOCK_SIZE + y) * BLOCK_SIZE + x
+        final float[] tsdf = new float[VOXELS_PER_BLOCK];
+        final float[] weights = new float[VOXELS_PER_BLOCK];
+        // Integration that last changed a voxel here
+        int version;
+        // Integration that last listed this block as visible
+        int visibleVersion;
+
+        Block(int x, int y, int z) {
+            this.x = x;
+            this.y = y;
+            this.z = z;
+            Arrays.fill(tsdf, 1f);
+        }
+
+        /**
+         * Block coordinates; the block spans voxels {@code [x * BLOCK_SIZE, (x + 1) * BLOCK_SIZE)}.
+         */
+        public int getX() {
+            return x;
+        }
+
+        public int getY() {
+            return y;
+        }
+
+        public int getZ() {
+            return z;
+        }
+
+        /** The integration that last changed this block. */
+        public int getVersion() {
+            return version;
+        }
+    }
+
+    private final LongObjectMap<Block> blocks = new LongObjectMap<>(1024);
+
+    private float voxelSize;
+    private float truncation;
+    private int maxBlocks;
+    private float maxWeight = DEFAULT_MAX_WEIGHT;
+    private int minConfidence = 0;
+    private RowStripeExecutor executor;
+
+    private int version = 0;
+    // Bumped by every clear, so derived data such as meshes knows to start over
+    private int generation = 0;
+    private long rejectedBlocks = 0;
+    private Block[] visible = new Block[256];
+    private int visibleCount;
+
+    // Inputs of the integration in progress, read by the block stripes
+    private ShortBuffer frameDepth;
+    private ByteBuffer frameConfidence;
+    private int frameWidth;
+    private int frameHeight;
+    private float frameFx;
+    private float frameFy;
+    private float frameCx;
+    private float frameCy;
+    private final float[] worldToCamera = new float[12];
+    private final RowStripeExecutor.RowTask integrateBlocks = this::integrateBlocks;
+
+    /**
+     * @param voxelSize Voxel edge length, in meters
+     * @param truncation Distance from the surface beyond which measurements are clamped, in
+     *     meters; a few voxels is typical
+     * @param maxBlocks Most blocks kept; each takes about 4 KB
+     */
+    public TsdfVolume(float voxelSize, float truncation, int maxBlocks) {
+        configure(voxelSize, truncation, maxBlocks);
+    }
+
+    /**
+     * Changes the resolution, truncation and block cap, clearing the volume.
+     */
+    public synchronized void configure(float voxelSize, float truncation, int maxBlocks) {
+        if (!(voxelSize > 0)) {
+            throw new IllegalArgumentException("voxelSize must be positive: " + voxelSize);
+        }
+        if (!(truncation >= voxelSize)) {
+            throw new IllegalArgumentException(
+                    "truncation must be at least one voxel: " + truncation);
+        }
+        if (maxBlocks < 1) {
+            throw new IllegalArgumentException("maxBlocks must be at least 1: " + maxBlocks);
+        }
+        this.voxelSize = voxelSize;
+        this.truncation = truncation;
+        this.maxBlocks = maxBlocks;
+        clear();
+    }
+
+    /** Drops every block, keeping the configuration. */
+    public synchronized void clear() {
+        blocks.clear();
+        Arrays.fill(visible, null);
+        visibleCount = 0;
+        rejectedBlocks = 0;
+        version = 0;
+        generation++;
+    }
+
+    /**
+     * Sets the pool used to integrate blocks in parallel, or {@code null} to run serially.
+     */
+    public synchronized void setExecutor(RowStripeExecutor executor) {
+        this.executor = executor;
+    }
+
+    /** Ignores depth pixels whose raw confidence (0-255) is below {@code minConfidence}. */
+    public synchronized void setMinConfidence(int minConfidence) {
+        this.minConfidence = minConfidence;
+    }
+
+    /**
+     * Caps the weight a voxel accumulates, so that it keeps adapting when the scene changes.
+     */
+    public synchronized void setMaxWeight(float maxWeight) {
+        this.maxWeight = maxWeight;
+    }
+
+    public synchronized float getVoxelSize() {
+        return voxelSize;
+    }
+
+    public synchronized float getTruncation() {
+        return truncation;
+    }
+
+    public synchronized int getMaxBlocks() {
+        return maxBlocks;
+    }
+
+    /**
+     * Fuses one depth frame into the volume.
+     *
+     * @param depthMillimeters Tightly packed raw depth, read from index 0
+     * @param confidence Tightly packed raw confidence, read from index 0
+     * @param cameraToWorld Column-major camera pose
+     * @return Number of blocks the frame touched
+     */
+    public synchronized int integrate(
+            ShortBuffer depthMillimeters,
+            ByteBuffer confidence,
+            int width,
+            int height,
+            float fx,
+            float fy,
+            float cx,
+            float cy,
+            float[] cameraToWorld) {
+        version++;
+        frameDepth = depthMillimeters;
+        frameConfidence = confidence;
+        frameWidth = width;
+        frameHeight = height;
+        frameFx = fx;
+        frameFy = fy;
+        frameCx = cx;
+        frameCy = cy;
+        invertRigid(cameraToWorld, worldToCamera);
+
+        allocateVisibleBlocks(cameraToWorld);
+        if (executor != null) {
+            executor.run(visibleCount, integrateBlocks);
+        } else {
+            integrateBlocks(0, visibleCount);
+        }
+
+        int touched = visibleCount;
+        Arrays.fill(visible, 0, visibleCount, null);
+        visibleCount = 0;
+        frameDepth = null;
+        frameConfidence = null;
+        return touched;
+    }
+
+    /**
+     * Allocates and lists every block crossed by the truncation band of a valid depth pixel.
+     */
+    private void allocateVisibleBlocks(float[] pose) {
+        float blockLength = voxelSize * BLOCK_SIZE;
+        float inverseBlockLength = 1f / blockLength;
+        // Half a block per step never skips a block the band crosses
+        int steps = Math.max(1, (int) Math.ceil(2 * truncation / (blockLength * 0.5f)));
+
+        for (int v = 0; v < frameHeight; v++) {
+            float rayY = -(v - frameCy) / frameFy;
+            for (int u = 0; u < frameWidth; u++) {
+                int index = v * frameWidth + u;
+                int millimeters = frameDepth.get(index) & 0xFFFF;
+                int pixelConfidence = frameConfidence.get(index) & 0xFF;
+                if (millimeters == 0 || pixelConfidence == 0 || pixelConfidence < minConfidence) {
+                    continue;
+                }
+                float rayX = (u - frameCx) / frameFx;
+                float depth = millimeters * 0.001f;
+                float nearDepth = Math.max(depth - truncation, 0f);
+                float farDepth = depth + truncation;
+
+                for (int s = 0; s <= steps; s++) {
+                    float d = nearDepth + (farDepth - nearDepth) * s / steps;
+                    float x = rayX * d;
+                    float y = rayY * d;
+                    float z = -d;
+                    float wx = pose[0] * x + pose[4] * y + pose[8] * z + pose[12];
+                    float wy = pose[1] * x + pose[5] * y + pose[9] * z + pose[13];
+                    float wz = pose[2] * x + pose[6] * y + pose[10] * z + pose[14];
+                    markVisible(
+                            (int) Math.floor(wx * inverseBlockLength),
+                            (int) Math.floor(wy * inverseBlockLength),
+                            (int) Math.floor(wz * inverseBlockLength));
+                }
+            }
+        }
+    }
+
+    private void markVisible(int bx, int by, int bz) {
+        if (Math.abs(bx) >= AXIS_OFFSET || Math.abs(by) >= AXIS_OFFSET
+                || Math.abs(bz) >= AXIS_OFFSET) {
+            return;
+        }
+        long key = blockKey(bx, by, bz);
+        Block block = blocks.get(key);
+        if (block == null) {
+            if (blocks.size() >= maxBlocks) {
+                rejectedBlocks++;
+                return;
+            }
+            block = new Block(bx, by, bz);
+            blocks.put(key, block);
+        }
+        if (block.visibleVersion == version) {
+            return;
+        }
+        block.visibleVersion = version;
+        if (visibleCount == visible.length) {
+            visible = Arrays.copyOf(visible, visibleCount * 2);
+        }
+        visible[visibleCount++] = block;
+    }
+
+    /**
+     * Updates the visible blocks {@code [start, end)}; each stripe only writes its own blocks.
+     */
+    private void integrateBlocks(int start, int end) {
+        final float[] m = worldToCamera;
+        final float inverseTruncation = 1f / truncation;
+        for (int b = start; b < end; b++) {
+            Block block = visible[b];
+            boolean changed = false;
+            for (int k = 0; k < BLOCK_SIZE; k++) {
+                float wz = (block.z * BLOCK_SIZE + k + 0.5f) * voxelSize;
+                for (int j = 0; j < BLOCK_SIZE; j++) {
+                    float wy = (block.y * BLOCK_SIZE + j + 0.5f) * voxelSize;
+                    int voxel = (k * BLOCK_SIZE + j) * BLOCK_SIZE;
+                    for (int i = 0; i < BLOCK_SIZE; i++, voxel++) {
+                        float wx = (block.x * BLOCK_SIZE + i + 0.5f) * voxelSize;
+                        float x = m[0] * wx + m[3] * wy + m[6] * wz + m[9];
+                        float y = m[1] * wx + m[4] * wy + m[7] * wz + m[10];
+                        float depth = -(m[2] * wx + m[5] * wy + m[8] * wz + m[11]);
+                        if (depth <= 0) {
+                            continue;
+                        }
+                        int u = Math.round(x * frameFx / depth + frameCx);
+                        int v = Math.round(-y * frameFy / depth + frameCy);
+                        if (u < 0 || u >= frameWidth || v < 0 || v >= frameHeight) {
+                            continue;
+                        }
+                        int pixel = v * frameWidth + u;
+                        int millimeters = frameDepth.get(pixel) & 0xFFFF;
+                        int pixelConfidence = frameConfidence.get(pixel) & 0xFF;
+                        if (millimeters == 0 || pixelConfidence == 0
+                                || pixelConfidence < minConfidence) {
+                            continue;
+                        }
+                        float sdf = millimeters * 0.001f - depth;
+                        if (sdf < -truncation) {
+                            // Hidden behind the measured surface
+                            continue;
+                        }
+                        float measured = Math.min(1f, sdf * inverseTruncation);
+                        float weight = pixelConfidence / 255f;
+                        float oldWeight = block.weights[voxel];
+                        float newWeight = oldWeight + weight;
+                        block.tsdf[voxel] =
+                                (block.tsdf[voxel] * oldWeight + measured * weight) / newWeight;
+                        block.weights[voxel] = Math.min(newWeight, maxWeight);
+                        changed = true;
+                    }
+                }
+            }
+            if (changed) {
+                block.version = version;
+            }
+        }
+    }
+
+    /**
+     * Returns the fused distance at a world point as a fraction of the truncation distance, or
+     * NaN if its voxel has not been observed.
+     */
+    public synchronized float getTsdf(float x, float y, float z) {
+        int vx = (int) Math.floor(x / voxelSize);
+        int vy = (int) Math.floor(y / voxelSize);
+        int vz = (int) Math.floor(z / voxelSize);
+        Block block = blocks.get(blockKey(
+                Math.floorDiv(vx, BLOCK_SIZE),
+                Math.floorDiv(vy, BLOCK_SIZE),
+                Math.floorDiv(vz, BLOCK_SIZE)));
+        if (block == null) {
+            return Float.NaN;
+        }
+        int voxel = (Math.floorMod(vz, BLOCK_SIZE) * BLOCK_SIZE + Math.floorMod(vy, BLOCK_SIZE))
+                * BLOCK_SIZE + Math.floorMod(vx, BLOCK_SIZE);
+        return block.weights[voxel] > 0 ? block.tsdf[voxel] : Float.NaN;
+    }
+
+    /** Returns the block at block coordinates, or null if it was never allocated. */
+    public synchronized Block getBlock(int bx, int by, int bz) {
+        return blocks.get(blockKey(bx, by, bz));
+    }
+
+    public synchronized int getBlockCount() {
+        return blocks.size();
+    }
+
+    /** Blocks not allocated since the last clear because the cap was reached. */
+    public synchronized long getRejectedBlocks() {
+        return rejectedBlocks;
+    }
+
+    /** The number of integrations since the last clear. */
+    public synchronized int getVersion() {
+        return version;
+    }
+
+    /** Changes whenever the volume is cleared or reconfigured. */
+    public synchronized int getGeneration() {
+        return generation;
+    }
+
+    /**
+     * Adds every block changed by an integration after {@code sinceVersion} to {@code out}.
+     * Callers must hold the volume's lock.
+     */
+    void collectChangedBlocks(int sinceVersion, List<Block> out) {
+        for (int slot = 0; slot < blocks.slots(); slot++) {
+            Block block = blocks.valueAt(slot);
+            if (block != null && block.version > sinceVersion) {
+                out.add(block);
+            }
+        }
+    }
+
+    /** Like {@link #getBlock} for callers already holding the volume's lock. */
+    Block findBlock(int bx, int by, int bz) {
+        return blocks.get(blockKey(bx, by, bz));
+    }
+
+    /** Approximate bytes held by voxel data. */
+    public synchronized long getMemoryBytes() {
+        return (long) blocks.size() * VOXELS_PER_BLOCK * 8;
+    }
+
+    static long blockKey(int bx, int by, int bz) {
+        long ix = (bx + AXIS_OFFSET) & AXIS_MASK;
+        long iy = (by + AXIS_OFFSET) & AXIS_MASK;
+        long iz = (bz + AXIS_OFFSET) & AXIS_MASK;
+        return (ix << (2 * AXIS_BITS)) | (iy << AXIS_BITS) | iz;
+    }
+
+    /**
+     * Writes the inverse of a rigid column-major pose as a 3x3 rotation followed by a
+     * translation: {@code out[0..8]} column-major R^T, {@code out[9..11]} -R^T t.
+     */
+    private static void invertRigid(float[] pose, float[] out) {
+        // R^T: column c of the inverse is row c of R
+        out[0] = pose[0];
+        out[1] = pose[4];
+        out[2] = pose[8];
+        out[3] = pose[1];
+        out[4] = pose[5];
+        out[5] = pose[9];
+        out[6] = pose[2];
+        out[7] = pose[6];
+        out[8] = pose[10];
+        float tx = pose[12];
+        float ty = pose[13];
+        float tz = pose[14];
+        out[9] = -(out[0] * tx + out[3] * ty + out[6] * tz);
+        out[10] = -(out[1] * tx + out[4] * ty + out[7] * tz);
+        out[11] = -(out[2] * tx + out[5] * ty + out[8] * tz);
+    }
+}
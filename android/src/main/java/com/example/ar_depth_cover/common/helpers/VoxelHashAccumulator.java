@@ -0,0 +1,286 @@
+package com.example.ar_depth_cover.common.helpers;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.util.Arrays;
+
+/**
+ * Fuses world-space points from successive depth frames into one sparse cloud with at most one
+ * point per voxel.
+ *
+ * <p>Voxels live in a hash table keyed by their integer coordinates packed into a {@code long},
+ * 21 bits per axis, so a 1 cm voxel covers about +/-10 km. The table is open addressed with
+ * linear probing over parallel primitive arrays, so adding a point allocates nothing and
+ * touches a few neighbouring array slots. Each voxel keeps the confidence-weighted mean of the
+ * points that fell into it, their total confidence and their count.
+ *
+ * <p>The table grows by doubling until it holds {@code maxCells} voxels. After that, points
+ * landing in new voxels are counted as rejected while existing voxels keep refining, so memory
+ * stays bounded whatever the scan length. Every voxel records the integration that last
+ * changed it, which lets {@link #getChangedCells} return only what changed since the previous
+ * call.
+ *
+ * <p>Points use the {@link PointCloudUnprojector} layout of X, Y, Z, confidence floats, and so
+ * do the query results, where confidence is the voxel's mean. All methods are synchronized:
+ * integration runs on a pipeline thread while queries come from elsewhere.
+ */
+public class VoxelHashAccumulator {
+    private static final int FLOATS = PointCloudUnprojector.FLOATS_PER_POINT;
+    private static final long EMPTY = -1L;
+    private static final int AXIS_BITS = 21;
+    private static final int AXIS_OFFSET = 1 << (AXIS_BITS - 1);
+    private static final long AXIS_MASK = (1L << AXIS_BITS) - 1;
+    private static final int INITIAL_CAPACITY = 1 << 12;
+    private static final float MAX_LOAD = 0.75f;
+    // Bytes of table storage per slot: key, mean XYZ, weight, count, version
+    private static final int BYTES_PER_SLOT = 8 + 12 + 4 + 4 + 4;
+
+    private float voxelSize;
+    private float inverseVoxelSize;
+    private int maxCells;
+
+    private long[] keys;
+    private float[] means; // x, y, z per slot
+    private float[] weights;
+    private int[] counts;
+    private int[] versions;
+    private int mask;
+    private int size;
+
+    private int version = 0;
+    private int lastChangesVersion = 0;
+    private long rejectedPoints = 0;
+
+    private FloatBuffer output;
+
+    /**
+     * @param voxelSize Edge length of a voxel, in meters
+     * @param maxCells Most voxels kept; bounds memory to about {@link #getMemoryBytes()}
+     */
+    public VoxelHashAccumulator(float voxelSize, int maxCells) {
+        configure(voxelSize, maxCells);
+    }
+
+    /**
+     * Changes the voxel size and cap, clearing the accumulated cloud.
+     */
+    public synchronized void configure(float voxelSize, int maxCells) {
+        if (!(voxelSize > 0)) {
+            throw new IllegalArgumentException("voxelSize must be positive: " + voxelSize);
+        }
+        if (maxCells < 1) {
+            throw new IllegalArgumentException("maxCells must be at least 1: " + maxCells);
+        }
+        this.voxelSize = voxelSize;
+        this.inverseVoxelSize = 1f / voxelSize;
+        this.maxCells = maxCells;
+        allocate(Math.min(INITIAL_CAPACITY, capacityFor(maxCells)));
+        rejectedPoints = 0;
+        version = 0;
+        lastChangesVersion = 0;
+    }
+
+    public synchronized float getVoxelSize() {
+        return voxelSize;
+    }
+
+    public synchronized int getMaxCells() {
+        return maxCells;
+    }
+
+    /** Drops every voxel, keeping the configuration. */
+    public synchronized void clear() {
+        configure(voxelSize, maxCells);
+    }
+
+    /**
+     * Adds world-space points between the buffer's position and limit, as produced by
+     * {@link PointCloudUnprojector} with a camera pose. Points with zero confidence are ignored.
+     *
+     * @return Number of points that were rejected because the cell cap was reached
+     */
+    public synchronized int integrate(FloatBuffer points) {
+        version++;
+        int rejected = 0;
+        int end = points.limit() - FLOATS + 1;
+        for (int i = points.position(); i < end; i += FLOATS) {
+            float x = points.get(i);
+            float y = points.get(i + 1);
+            float z = points.get(i + 2);
+            float confidence = points.get(i + 3);
+            if (!(confidence > 0)) {
+                continue;
+            }
+            long key = keyFor(x, y, z);
+            if (key == EMPTY) {
+                rejected++;
+                continue;
+            }
+            int slot = findSlot(key);
+            if (keys[slot] == EMPTY) {
+                if (size >= maxCells) {
+                    rejected++;
+                    continue;
+                }
+                if (size + 1 > (mask + 1) * MAX_LOAD && grow()) {
+                    slot = findSlot(key);
+                }
+                keys[slot] = key;
+                size++;
+            }
+
+            // Confidence-weighted running mean
+            float weight = weights[slot] + confidence;
+            float blend = confidence / weight;
+            int m = slot * 3;
+            means[m] += (x - means[m]) * blend;
+            means[m + 1] += (y - means[m + 1]) * blend;
+            means[m + 2] += (z - means[m + 2]) * blend;
+            weights[slot] = weight;
+            counts[slot]++;
+            versions[slot] = version;
+        }
+        rejectedPoints += rejected;
+        return rejected;
+    }
+
+    /**
+     * Returns every voxel as X, Y, Z, mean confidence. The buffer is direct, native order and
+     * reused by the next query.
+     */
+    public synchronized FloatBuffer getCloud() {
+        return collect(Integer.MIN_VALUE);
+    }
+
+    /**
+     * Returns the voxels created or refined since the previous call, in the same layout as
+     * {@link #getCloud}. The first call returns everything.
+     */
+    public synchronized FloatBuffer getChangedCells() {
+        FloatBuffer changed = collect(lastChangesVersion);
+        lastChangesVersion = version;
+        return changed;
+    }
+
+    private FloatBuffer collect(int afterVersion) {
+        int floats = size * FLOATS;
+        if (output == null || output.capacity() < floats) {
+            output = ByteBuffer.allocateDirect(Math.max(floats, FLOATS) * 4)
+                    .order(ByteOrder.nativeOrder())
+                    .asFloatBuffer();
+        }
+        output.clear();
+        for (int slot = 0; slot <= mask; slot++) {
+            if (keys[slot] == EMPTY || versions[slot] <= afterVersion) {
+                continue;
+            }
+            int m = slot * 3;
+            output.put(means[m]);
+            output.put(means[m + 1]);
+            output.put(means[m + 2]);
+            output.put(weights[slot] / counts[slot]);
+        }
+        output.flip();
+        return output;
+    }
+
+    /** Number of occupied voxels. */
+    public synchronized int size() {
+        return size;
+    }
+
+    /** Points rejected since the last configure or clear because the cell cap was reached. */
+    public synchronized long getRejectedPoints() {
+        return rejectedPoints;
+    }
+
+    /** Bytes currently allocated for the table. */
+    public synchronized long getMemoryBytes() {
+        return (long) (mask + 1) * BYTES_PER_SLOT;
+    }
+
+    /**
+     * Packs the voxel coordinates of a point, or returns {@link #EMPTY} when the point is out of
+     * range or not finite.
+     */
+    private long keyFor(float x, float y, float z) {
+        float fx = (float) Math.floor(x * inverseVoxelSize);
+        float fy = (float) Math.floor(y * inverseVoxelSize);
+        float fz = (float) Math.floor(z * inverseVoxelSize);
+        // Also false for NaN
+        if (!(Math.abs(fx) < AXIS_OFFSET && Math.abs(fy) < AXIS_OFFSET
+                && Math.abs(fz) < AXIS_OFFSET)) {
+            return EMPTY;
+        }
+        long ix = ((int) fx + AXIS_OFFSET) & AXIS_MASK;
+        long iy = ((int) fy + AXIS_OFFSET) & AXIS_MASK;
+        long iz = ((int) fz + AXIS_OFFSET) & AXIS_MASK;
+        return (ix << (2 * AXIS_BITS)) | (iy << AXIS_BITS) | iz;
+    }
+
+    /** Returns the key's slot, or the empty slot where it would go. */
+    private int findSlot(long key) {
+        int slot = hash(key) & mask;
+        while (keys[slot] != EMPTY && keys[slot] != key) {
+            slot = (slot + 1) & mask;
+        }
+        return slot;
+    }
+
+    private static int hash(long key) {
+        // Murmur3 finalizer; neighbouring voxels must not land in neighbouring slots
+        key ^= key >>> 33;
+        key *= 0xff51afd7ed558ccdL;
+        key ^= key >>> 33;
+        key *= 0xc4ceb9fe1a85ec53L;
+        key ^= key >>> 33;
+        return (int) key;
+    }
+
+    /** Doubles the table if the cap allows it. Returns whether it did. */
+    private boolean grow() {
+        int capacity = mask + 1;
+        if (capacity >= capacityFor(maxCells)) {
+            return false;
+        }
+        long[] oldKeys = keys;
+        float[] oldMeans = means;
+        float[] oldWeights = weights;
+        int[] oldCounts = counts;
+        int[] oldVersions = versions;
+        allocate(capacity * 2);
+        for (int old = 0; old < oldKeys.length; old++) {
+            long key = oldKeys[old];
+            if (key == EMPTY) {
+                continue;
+            }
+            int slot = findSlot(key);
+            keys[slot] = key;
+            System.arraycopy(oldMeans, old * 3, means, slot * 3, 3);
+            weights[slot] = oldWeights[old];
+            counts[slot] = oldCounts[old];
+            versions[slot] = oldVersions[old];
+            size++;
+        }
+        return true;
+    }
+
+    private void allocate(int capacity) {
+        keys = new long[capacity];
+        Arrays.fill(keys, EMPTY);
+        means = new float[capacity * 3];
+        weights = new float[capacity];
+        counts = new int[capacity];
+        versions = new int[capacity];
+        mask = capacity - 1;
+        size = 0;
+    }
+
+    /** Smallest power-of-two table that holds {@code cells} within the load factor. */
+    private static int capacityFor(int cells) {
+        int needed = (int) Math.min(1 << 30, (long) Math.ceil(cells / MAX_LOAD) + 1);
+        int capacity = Integer.highestOneBit(needed);
+        return capacity < needed ? capacity << 1 : capacity;
+    }
+}
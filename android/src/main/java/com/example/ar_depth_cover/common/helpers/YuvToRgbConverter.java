@@ -0,0 +1,165 @@
+package com.example.ar_depth_cover.common.helpers;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Converts YUV_420_888 images to packed ARGB_8888 pixels, optionally rotating them, in one pass.
+ *
+ * <p>The BT.601 full-range coefficients are applied in 16.16 fixed point, so the per-pixel work is
+ * integer multiplies and shifts only, and each chroma sample's contribution is computed once for
+ * the two pixels of a row that share it. Rows are split into stripes on an optional
+ * {@link RowStripeExecutor}. The output array is reused across calls of the same size, so it can
+ * be handed straight to {@code Bitmap.setPixels}.
+ */
+public class YuvToRgbConverter {
+    // 16.16 fixed-point versions of 1.402, 0.344, 0.714 and 1.772
+    private static final int V_TO_R = 91881;
+    private static final int U_TO_G = 22544;
+    private static final int V_TO_G = 46793;
+    private static final int U_TO_B = 116130;
+
+    private RowStripeExecutor executor;
+    private int[] argb;
+
+    // State of the conversion in progress, read by the row kernel
+    private ByteBuffer currentY;
+    private ByteBuffer currentU;
+    private ByteBuffer currentV;
+    private int yRowStride;
+    private int uvRowStride;
+    private int uvPixelStride;
+    private int width;
+    private int rowBaseScale;
+    private int rowBaseOffset;
+    private int columnStep;
+    private int columnBase;
+    private final RowStripeExecutor.RowTask convertRows = this::convertRows;
+
+    /**
+     * Sets the pool used to convert row stripes in parallel, or {@code null} to run serially.
+     */
+    public void setExecutor(RowStripeExecutor executor) {
+        this.executor = executor;
+    }
+
+    /**
+     * Converts an image, rotating it clockwise by {@code rotationDegrees}.
+     *
+     * <p>The Y plane is assumed to have a pixel stride of 1, as YUV_420_888 guarantees. Buffers
+     * are read with absolute indices, so their positions are ignored.
+     *
+     * @param rotationDegrees 0, 90, 180 or 270; for 90 and 270 the output is {@code height}
+     *     pixels wide and {@code width} pixels tall
+     * @return ARGB pixels, row-major and tightly packed. The array is reused by the next call.
+     */
+    public int[] convert(
+            ByteBuffer y,
+            int yRowStride,
+            ByteBuffer u,
+            ByteBuffer v,
+            int uvRowStride,
+            int uvPixelStride,
+            int width,
+            int height,
+            int rotationDegrees) {
+        int pixels = width * height;
+        if (argb == null || argb.length != pixels) {
+            argb = new int[pixels];
+        }
+
+        // Output index of source pixel (x, row) is row * rowBaseScale + rowBaseOffset
+        // + columnBase + x * columnStep
+        switch (rotationDegrees) {
+            case 0:
+                rowBaseScale = width;
+                rowBaseOffset = 0;
+                columnBase = 0;
+                columnStep = 1;
+                break;
+            case 90:
+                // (x, row) -> (height - 1 - row, x) in a height-wide image
+                rowBaseScale = -1;
+                rowBaseOffset = height - 1;
+                columnBase = 0;
+                columnStep = height;
+                break;
+            case 180:
+                rowBaseScale = -width;
+                rowBaseOffset = (height - 1) * width;
+                columnBase = width - 1;
+                columnStep = -1;
+                break;
+            case 270:
+                // (x, row) -> (row, width - 1 - x) in a height-wide image
+                rowBaseScale = 1;
+                rowBaseOffset = 0;
+                columnBase = (width - 1) * height;
+                columnStep = -height;
+                break;
+            default:
+                throw new IllegalArgumentException("Unsupported rotation: " + rotationDegrees);
+        }
+
+        currentY = y;
+        currentU = u;
+        currentV = v;
+        this.yRowStride = yRowStride;
+        this.uvRowStride = uvRowStride;
+        this.uvPixelStride = uvPixelStride;
+        this.width = width;
+        if (executor != null) {
+            executor.run(height, convertRows);
+        } else {
+            convertRows(0, height);
+        }
+        currentY = null;
+        currentU = null;
+        currentV = null;
+        return argb;
+    }
+
+    private void convertRows(int rowStart, int rowEnd) {
+        final ByteBuffer yPlane = currentY;
+        final ByteBuffer uPlane = currentU;
+        final ByteBuffer vPlane = currentV;
+        final int[] out = argb;
+        final int width = this.width;
+        final int step = columnStep;
+
+        for (int row = rowStart; row < rowEnd; row++) {
+            int yOffset = row * yRowStride;
+            int uvOffset = (row >> 1) * uvRowStride;
+            int outIndex = row * rowBaseScale + rowBaseOffset + columnBase;
+
+            for (int x = 0; x < width; x += 2) {
+                // Chroma terms shared by pixels x and x + 1
+                int uvIndex = uvOffset + (x >> 1) * uvPixelStride;
+                int u = (uPlane.get(uvIndex) & 0xFF) - 128;
+                int v = (vPlane.get(uvIndex) & 0xFF) - 128;
+                int rTerm = V_TO_R * v;
+                int gTerm = -U_TO_G * u - V_TO_G * v;
+                int bTerm = U_TO_B * u;
+
+                out[outIndex] = toArgb(yPlane.get(yOffset + x) & 0xFF, rTerm, gTerm, bTerm);
+                outIndex += step;
+                if (x + 1 < width) {
+                    out[outIndex] =
+                            toArgb(yPlane.get(yOffset + x + 1) & 0xFF, rTerm, gTerm, bTerm);
+                    outIndex += step;
+                }
+            }
+        }
+    }
+
+    private static int toArgb(int luma, int rTerm, int gTerm, int bTerm) {
+        int base = luma << 16;
+        int r = clamp((base + rTerm) >> 16);
+        int g = clamp((base + gTerm) >> 16);
+        int b = clamp((base + bTerm) >> 16);
+        return 0xFF000000 | (r << 16) | (g << 8) | b;
+    }
+
+    private static int clamp(int value) {
+        return value < 0 ? 0 : (value > 255 ? 255 : value);
+    }
+}
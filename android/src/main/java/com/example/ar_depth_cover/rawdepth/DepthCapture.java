@@ -0,0 +1,119 @@
+package com.example.ar_depth_cover.rawdepth;
+
+import com.google.ar.core.Anchor;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.nio.ShortBuffer;
+
+/**
+ * Everything the depth pipeline needs from one ARCore frame, copied out on the frame thread so
+ * the images can be closed before fusion and serialization run on worker threads.
+ *
+ * <p>The planes are tightly packed (no row padding) and come from a buffer pool; whoever finishes
+ * with the capture returns them.
+ */
+final class DepthCapture {
+    long timestamp;
+    int width;
+    int height;
+
+    // Raw little-endian uint16 millimeters, width * height samples
+    ByteBuffer depth;
+    // Raw confidence, width * height bytes
+    ByteBuffer confidence;
+    // Depth fused across frames by the fusion stage, little-endian float32 meters with NaN for
+    // invalid pixels, width * height samples; null if fusion did not run or failed
+    ByteBuffer fusedDepth;
+
+    float[] cameraPose;
+    int[] intrinsicsDimensions;
+    float fx;
+    float fy;
+    float cx;
+    float cy;
+    // Anchor the model matrix was taken from, detached when the capture is recycled; null in
+    // continuous mode and for replayed captures
+    Anchor anchor;
+    // Model, view, projection and model-view-projection matrices
+    float[][] matrices;
+    String imagePath;
+
+    // Pooled copy of the camera image's Y, U and V planes, saved to imagePath by the packing
+    // stage; null once handed to the image write queue, or when there is no image to save
+    ByteBuffer[] imagePlanes;
+    int[] imageRowStrides;
+    int[] imagePixelStrides;
+    int imageWidth;
+    int imageHeight;
+
+    // When the frame thread started acquiring this capture, for end-to-end latency
+    long acquiredNanos;
+    // The replay that built this capture from a dataset record, told when it is recycled; null
+    // for captures from ARCore frames
+    DepthDatasetReplayer replayer;
+
+    /** Returns a little-endian view over the depth plane, read from index 0. */
+    ShortBuffer depthShorts() {
+        ByteBuffer bytes = depth.duplicate();
+        bytes.order(ByteOrder.LITTLE_ENDIAN);
+        bytes.rewind();
+        return bytes.asShortBuffer();
+    }
+
+    /** Returns a view over the fused depth plane, read from index 0. */
+    FloatBuffer fusedDepthFloats() {
+        ByteBuffer bytes = fusedDepth.duplicate();
+        bytes.order(ByteOrder.LITTLE_ENDIAN);
+        bytes.rewind();
+        return bytes.asFloatBuffer();
+    }
+
+    /**
+     * Copies {@code rows} rows of {@code rowBytes} bytes from a padded plane into {@code target},
+     * dropping the padding. {@code target} is rewound afterwards.
+     */
+    static void copyTight(ByteBuffer source, int rowStride, int rowBytes, int rows, ByteBuffer target) {
+        ByteBuffer rowSource = source.duplicate();
+        target.clear();
+        for (int y = 0; y < rows; y++) {
+            int rowStart = y * rowStride;
+            rowSource.limit(rowStart + rowBytes);
+            rowSource.position(rowStart);
+            target.put(rowSource);
+        }
+        target.flip();
+    }
+
+    /**
+     * Like {@link #copyTight}, but keeps only every {@code factor}-th sample of every
+     * {@code factor}-th row. Samples are picked, not averaged: averaging depth across an edge
+     * would invent points between the foreground and the background.
+     *
+     * @param bytesPerSample 2 for depth, 1 for confidence
+     * @param width Width of the source plane, in samples
+     * @param height Height of the source plane, in rows
+     */
+    static void copyDownsampled(ByteBuffer source, int rowStride, int bytesPerSample, int width,
+            int height, int factor, ByteBuffer target) {
+        if (factor == 1) {
+            copyTight(source, rowStride, width * bytesPerSample, height, target);
+            return;
+        }
+        int outWidth = width / factor;
+        int outHeight = height / factor;
+        int sampleStride = factor * bytesPerSample;
+        target.clear();
+        for (int y = 0; y < outHeight; y++) {
+            int rowStart = y * factor * rowStride;
+            for (int x = 0; x < outWidth; x++) {
+                int offset = rowStart + x * sampleStride;
+                for (int b = 0; b < bytesPerSample; b++) {
+                    target.put(source.get(offset + b));
+                }
+            }
+        }
+        target.flip();
+    }
+}
@@ -0,0 +1,187 @@
+package com.example.ar_depth_cover.rawdepth;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.util.List;
+
+/**
+ * Layout of depth dataset files, written by {@link DepthDatasetWriter} and read by
+ * {@link DepthDatasetReader}.
+ *
+ * <p>A dataset is a sequence of capture records behind a file header, closed by an index footer.
+ * Records are only ever appended; the footer is rewritten when the file is closed. A file whose
+ * writer never closed it (a crash, a killed app) has no footer, and readers recover its complete
+ * records by walking them from the start. All values are little endian.
+ *
+ * <p>File header:
+ *
+ * <pre>
+ *   0  int32   magic "ADS1"
+ *   4  int32   version
+ *   8  int64   reserved
+ * </pre>
+ *
+ * <p>Record, starting on an 8-byte boundary:
+ *
+ * <pre>
+ *   0  int32   magic "ADR1"
+ *   4  int32   header size, RECORD_HEADER_SIZE
+ *   8  int64   timestamp of the depth frame
+ *  16  int32   width
+ *  20  int32   height
+ *  24  int32   intrinsics image width
+ *  28  int32   intrinsics image height
+ *  32  float32 fx, fy, cx, cy in depth pixels
+ *  48  float32[16] camera pose, column major
+ * 112  float32[16 * 4] model, view, projection and MVP matrices, column major
+ * 368  int32   depth encoding of both planes, DEPTH_RAW_UINT16 or DEPTH_DELTA_DEFLATE
+ * 372  int32   depth bytes as stored
+ * 376  int32   confidence bytes as stored
+ * 380  int32   image format, IMAGE_NONE or IMAGE_JPEG
+ * 384  int32   image bytes
+ * 388  int32   CRC32 of the stored depth, confidence and image bytes
+ * 392  int64   reserved
+ * 400  depth, then confidence, then image; zero padded to a multiple of 8 bytes
+ * </pre>
+ *
+ * <p>Index footer:
+ *
+ * <pre>
+ *   0  int32   magic "ADI1"
+ *   4  int32   recordCount
+ *   8  int64[recordCount] record offsets
+ *      int64[recordCount] record timestamps
+ *      int64   offset of the footer
+ *      int32   recordCount
+ *      int32   magic "ADE1", always the last four bytes of a closed file
+ * </pre>
+ */
+public final class DepthDataset {
+    public static final int FILE_MAGIC = 0x31534441; // "ADS1" little endian
+    public static final int VERSION = 1;
+    public static final int FILE_HEADER_SIZE = 16;
+
+    public static final int RECORD_MAGIC = 0x31524441; // "ADR1"
+    public static final int RECORD_HEADER_SIZE = 400;
+
+    public static final int INDEX_MAGIC = 0x31494441; // "ADI1"
+    public static final int END_MAGIC = 0x31454441; // "ADE1"
+    public static final int TRAILER_SIZE = 16;
+
+    /** Depth is tightly packed uint16 millimeters, confidence tightly packed bytes. */
+    public static final int DEPTH_RAW_UINT16 = 0;
+    /**
+     * Depth and confidence are each compressed by
+     * {@link com.example.ar_depth_cover.common.helpers.DepthCodec}.
+     */
+    public static final int DEPTH_DELTA_DEFLATE = 1;
+
+    /** The record has no image. */
+    public static final int IMAGE_NONE = 0;
+    /** The record's image is a JPEG file. */
+    public static final int IMAGE_JPEG = 1;
+
+    static final int ALIGNMENT = 8;
+
+    // Offsets of record header fields
+    static final int TIMESTAMP_OFFSET = 8;
+    static final int DEPTH_BYTES_OFFSET = 372;
+    static final int CRC_OFFSET = 388;
+
+    private DepthDataset() {}
+
+    static int padding(long length) {
+        return (int) ((ALIGNMENT - length % ALIGNMENT) % ALIGNMENT);
+    }
+
+    /** Total size of a record with the given payload, including header and padding. */
+    static long recordSize(int depthBytes, int confidenceBytes, int imageBytes) {
+        long payload = (long) depthBytes + confidenceBytes + imageBytes;
+        return RECORD_HEADER_SIZE + payload + padding(payload);
+    }
+
+    /**
+     * Reads the index footer of a closed file into the lists.
+     *
+     * @return Offset of the footer, where appending resumes, or -1 if the file has no valid
+     *     footer
+     */
+    static long readIndex(FileChannel channel, List<Long> offsets, List<Long> timestamps)
+            throws IOException {
+        long size = channel.size();
+        if (size < FILE_HEADER_SIZE + 8 + TRAILER_SIZE) {
+            return -1;
+        }
+        ByteBuffer trailer = read(channel, size - TRAILER_SIZE, TRAILER_SIZE);
+        long indexOffset = trailer.getLong(0);
+        int count = trailer.getInt(8);
+        if (trailer.getInt(12) != END_MAGIC || count < 0 || indexOffset < FILE_HEADER_SIZE
+                || indexOffset + 8 + 16L * count + TRAILER_SIZE != size) {
+            return -1;
+        }
+        ByteBuffer index = read(channel, indexOffset, 8 + 16 * count);
+        if (index.getInt(0) != INDEX_MAGIC || index.getInt(4) != count) {
+            return -1;
+        }
+        for (int i = 0; i < count; i++) {
+            offsets.add(index.getLong(8 + i * 8));
+            timestamps.add(index.getLong(8 + count * 8 + i * 8));
+        }
+        return indexOffset;
+    }
+
+    /**
+     * Walks the records from the start of a file without a footer, adding each complete one to
+     * the lists. Stops at the first record that is cut short or malformed.
+     *
+     * @return Offset just past the last complete record
+     */
+    static long scanRecords(FileChannel channel, List<Long> offsets, List<Long> timestamps)
+            throws IOException {
+        long size = channel.size();
+        long offset = FILE_HEADER_SIZE;
+        while (offset + RECORD_HEADER_SIZE <= size) {
+            ByteBuffer header = read(channel, offset, RECORD_HEADER_SIZE);
+            if (header.getInt(0) != RECORD_MAGIC || header.getInt(4) != RECORD_HEADER_SIZE) {
+                break;
+            }
+            int depthBytes = header.getInt(DEPTH_BYTES_OFFSET);
+            int confidenceBytes = header.getInt(DEPTH_BYTES_OFFSET + 4);
+            int imageBytes = header.getInt(DEPTH_BYTES_OFFSET + 12);
+            if (depthBytes < 0 || confidenceBytes < 0 || imageBytes < 0) {
+                break;
+            }
+            long end = offset + recordSize(depthBytes, confidenceBytes, imageBytes);
+            if (end > size) {
+                break;
+            }
+            offsets.add(offset);
+            timestamps.add(header.getLong(TIMESTAMP_OFFSET));
+            offset = end;
+        }
+        return offset;
+    }
+
+    /** Whether the file starts with a dataset header of this version. */
+    static boolean hasFileHeader(FileChannel channel) throws IOException {
+        if (channel.size() < FILE_HEADER_SIZE) {
+            return false;
+        }
+        ByteBuffer header = read(channel, 0, FILE_HEADER_SIZE);
+        return header.getInt(0) == FILE_MAGIC && header.getInt(4) == VERSION;
+    }
+
+    private static ByteBuffer read(FileChannel channel, long position, int length)
+            throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(length).order(ByteOrder.LITTLE_ENDIAN);
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) < 0) {
+                throw new IOException("Unexpected end of dataset at " + position);
+            }
+        }
+        buffer.flip();
+        return buffer;
+    }
+}
@@ -0,0 +1,266 @@
+package com.example.ar_depth_cover.rawdepth;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.ShortBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.CRC32;
+import java.util.zip.DataFormatException;
+
+import com.example.ar_depth_cover.common.helpers.DepthCodec;
+
+/**
+ * Random access to the records of a depth dataset file, see {@link DepthDataset} for the layout.
+ *
+ * <p>The file is memory mapped, so opening it reads only the index footer and a record's planes
+ * are paged in when they are first touched. Raw records are returned as views over the mapping,
+ * with nothing copied; compressed planes are decoded into new buffers. A file that was never
+ * closed by its writer has no footer; its complete records are found by walking the file
+ * instead, see {@link #isRecovered()}.
+ *
+ * <p>Reading is thread-safe: records are independent views of a read-only mapping, and decoding
+ * shares one codec under a lock.
+ */
+public class DepthDatasetReader implements Closeable {
+    // Larger files are mapped one record at a time
+    private static final long MAX_SINGLE_MAPPING = Integer.MAX_VALUE;
+
+    /**
+     * One capture, with its planes as little-endian views into the file, or decoded copies if
+     * they were stored compressed.
+     */
+    public static final class Record {
+        public final long timestamp;
+        public final int width;
+        public final int height;
+        public final int[] intrinsicsDimensions;
+        public final float fx;
+        public final float fy;
+        public final float cx;
+        public final float cy;
+        /** Column-major camera-to-world pose. */
+        public final float[] cameraPose;
+        /** Model, view, projection and MVP matrices, column major. */
+        public final float[][] matrices;
+        /** One of the {@code DepthDataset.DEPTH_*} encodings the planes were stored with. */
+        public final int depthEncoding;
+        /** Uint16 millimeters, {@code width * height} samples. */
+        public final ByteBuffer depth;
+        /** {@code width * height} confidence values. */
+        public final ByteBuffer confidence;
+        /** One of the {@code DepthDataset.IMAGE_*} formats. */
+        public final int imageFormat;
+        /** The encoded image, or null if the record has none. */
+        public final ByteBuffer image;
+
+        Record(ByteBuffer record, DepthCodec codec) throws IOException {
+            timestamp = record.getLong(DepthDataset.TIMESTAMP_OFFSET);
+            width = record.getInt(16);
+            height = record.getInt(20);
+            intrinsicsDimensions = new int[] {record.getInt(24), record.getInt(28)};
+            fx = record.getFloat(32);
+            fy = record.getFloat(36);
+            cx = record.getFloat(40);
+            cy = record.getFloat(44);
+            cameraPose = readMatrix(record, 48);
+            matrices = new float[4][];
+            for (int m = 0; m < 4; m++) {
+                matrices[m] = readMatrix(record, 112 + m * 64);
+            }
+            depthEncoding = record.getInt(368);
+            int depthBytes = record.getInt(DepthDataset.DEPTH_BYTES_OFFSET);
+            int confidenceBytes = record.getInt(376);
+            imageFormat = record.getInt(380);
+            int imageBytes = record.getInt(384);
+
+            int offset = DepthDataset.RECORD_HEADER_SIZE;
+            ByteBuffer storedDepth = slice(record, offset, depthBytes);
+            offset += depthBytes;
+            ByteBuffer storedConfidence = slice(record, offset, confidenceBytes);
+            offset += confidenceBytes;
+            image = imageFormat != DepthDataset.IMAGE_NONE
+                    ? slice(record, offset, imageBytes)
+                    : null;
+
+            if (depthEncoding == DepthDataset.DEPTH_RAW_UINT16) {
+                depth = storedDepth;
+                confidence = storedConfidence;
+            } else if (depthEncoding == DepthDataset.DEPTH_DELTA_DEFLATE) {
+                depth = ByteBuffer.allocate(width * height * 2).order(ByteOrder.LITTLE_ENDIAN);
+                confidence = ByteBuffer.allocate(width * height);
+                synchronized (codec) {
+                    try {
+                        codec.decodeDepth(storedDepth, width, height, depth);
+                        codec.decodeConfidence(storedConfidence, width, height, confidence);
+                    } catch (DataFormatException e) {
+                        throw new IOException("Corrupt record at " + timestamp, e);
+                    }
+                }
+            } else {
+                throw new IOException("Unknown depth encoding " + depthEncoding);
+            }
+        }
+
+        /** Returns the depth plane as samples, read from index 0. */
+        public ShortBuffer depthShorts() {
+            return depth.duplicate().order(ByteOrder.LITTLE_ENDIAN).asShortBuffer();
+        }
+
+        private static float[] readMatrix(ByteBuffer record, int offset) {
+            float[] matrix = new float[16];
+            for (int i = 0; i < 16; i++) {
+                matrix[i] = record.getFloat(offset + i * 4);
+            }
+            return matrix;
+        }
+
+        private static ByteBuffer slice(ByteBuffer record, int offset, int length) {
+            ByteBuffer view = record.duplicate();
+            view.limit(offset + length);
+            view.position(offset);
+            return view.slice().order(ByteOrder.LITTLE_ENDIAN);
+        }
+    }
+
+    private final File file;
+    private final RandomAccessFile randomAccessFile;
+    private final FileChannel channel;
+    private final long[] offsets;
+    private final long[] timestamps;
+    private final long recordsEnd;
+    private final boolean recovered;
+    // The whole file, or null if it is too large for one mapping
+    private final MappedByteBuffer mapping;
+    private final DepthCodec codec = new DepthCodec();
+
+    public DepthDatasetReader(File file) throws IOException {
+        this.file = file;
+        randomAccessFile = new RandomAccessFile(file, "r");
+        channel = randomAccessFile.getChannel();
+        try {
+            if (!DepthDataset.hasFileHeader(channel)) {
+                throw new IOException("Not a depth dataset: " + file);
+            }
+            List<Long> offsetList = new ArrayList<>();
+            List<Long> timestampList = new ArrayList<>();
+            long end = DepthDataset.readIndex(channel, offsetList, timestampList);
+            recovered = end < 0;
+            if (recovered) {
+                end = DepthDataset.scanRecords(channel, offsetList, timestampList);
+            }
+            recordsEnd = end;
+            offsets = new long[offsetList.size()];
+            timestamps = new long[offsetList.size()];
+            for (int i = 0; i < offsets.length; i++) {
+                offsets[i] = offsetList.get(i);
+                timestamps[i] = timestampList.get(i);
+            }
+            mapping = recordsEnd <= MAX_SINGLE_MAPPING
+                    ? channel.map(FileChannel.MapMode.READ_ONLY, 0, recordsEnd)
+                    : null;
+        } catch (IOException e) {
+            randomAccessFile.close();
+            throw e;
+        }
+    }
+
+    public File getFile() {
+        return file;
+    }
+
+    /** Number of records. */
+    public int size() {
+        return offsets.length;
+    }
+
+    /** Whether the file had no index footer and its records were recovered by walking it. */
+    public boolean isRecovered() {
+        return recovered;
+    }
+
+    public long getTimestamp(int index) {
+        return timestamps[index];
+    }
+
+    /**
+     * Returns the index of the record with this timestamp, or -1. Records are in capture order,
+     * so this is a binary search.
+     */
+    public int indexOf(long timestamp) {
+        int low = 0;
+        int high = timestamps.length - 1;
+        while (low <= high) {
+            int middle = (low + high) >>> 1;
+            if (timestamps[middle] < timestamp) {
+                low = middle + 1;
+            } else if (timestamps[middle] > timestamp) {
+                high = middle - 1;
+            } else {
+                return middle;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Returns a record. Its planes stay valid after the reader is closed.
+     *
+     * @throws IOException If the record's planes cannot be decoded
+     */
+    public Record read(int index) throws IOException {
+        return new Record(map(index), codec);
+    }
+
+    /** Checks a record's planes against the checksum written with them. */
+    public boolean verify(int index) throws IOException {
+        // Checks the stored bytes, so compressed planes need not be decoded
+        ByteBuffer record = map(index);
+        long payload = (long) record.getInt(DepthDataset.DEPTH_BYTES_OFFSET)
+                + record.getInt(DepthDataset.DEPTH_BYTES_OFFSET + 4)
+                + record.getInt(DepthDataset.DEPTH_BYTES_OFFSET + 12);
+        if (DepthDataset.RECORD_HEADER_SIZE + payload > record.capacity()) {
+            return false;
+        }
+        ByteBuffer source = record.duplicate();
+        source.limit((int) (DepthDataset.RECORD_HEADER_SIZE + payload));
+        source.position(DepthDataset.RECORD_HEADER_SIZE);
+        CRC32 crc = new CRC32();
+        byte[] chunk = new byte[8192];
+        while (source.hasRemaining()) {
+            int length = Math.min(chunk.length, source.remaining());
+            source.get(chunk, 0, length);
+            crc.update(chunk, 0, length);
+        }
+        return (int) crc.getValue() == record.getInt(DepthDataset.CRC_OFFSET);
+    }
+
+    private ByteBuffer map(int index) throws IOException {
+        long start = offsets[index];
+        long end = index + 1 < offsets.length ? offsets[index + 1] : recordsEnd;
+        ByteBuffer record;
+        if (mapping != null) {
+            record = mapping.duplicate();
+            record.limit((int) end);
+            record.position((int) start);
+            record = record.slice();
+        } else {
+            record = channel.map(FileChannel.MapMode.READ_ONLY, start, end - start);
+        }
+        return record.order(ByteOrder.LITTLE_ENDIAN);
+    }
+
+    @Override
+    public void close() throws IOException {
+        randomAccessFile.close();
+        synchronized (codec) {
+            codec.release();
+        }
+    }
+}
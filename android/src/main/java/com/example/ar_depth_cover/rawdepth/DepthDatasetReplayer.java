@@ -0,0 +1,150 @@
+package com.example.ar_depth_cover.rawdepth;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+import com.example.ar_depth_cover.common.helpers.CaptureBufferPool;
+
+/**
+ * Replays the records of a depth dataset as {@link DepthCapture}s on a thread of its own, so the
+ * depth pipeline can re-run fusion and export offline without a camera or an ARCore session.
+ *
+ * <p>Captures are built from pooled buffers and handed to a {@link Sink}, which owns them from
+ * then on. At most {@code maxInFlight} captures are out at once; the sink's owner calls
+ * {@link #onCaptureDone()} as each one is recycled. As fast as possible, that backpressure is
+ * the only pacing, so no capture is dropped for a full pipeline queue. In real time, records
+ * are also spaced by their recorded timestamps.
+ */
+final class DepthDatasetReplayer {
+    /** Takes ownership of a replayed capture; always called on the replay thread. */
+    interface Sink {
+        void submit(DepthCapture capture);
+    }
+
+    /** Told on the replay thread once the last capture is submitted or the replay stopped. */
+    interface Listener {
+        void onReplayFinished(int replayedFrames, boolean cancelled);
+    }
+
+    private final DepthDatasetReader reader;
+    private final CaptureBufferPool bufferPool;
+    private final Semaphore inFlight;
+    private final boolean realTime;
+    private final Sink sink;
+    private final Listener listener;
+    private final Thread thread;
+    private volatile boolean cancelled = false;
+
+    /**
+     * @param reader Dataset to replay; closed when the replay ends
+     * @param maxInFlight Captures submitted but not yet done, at most
+     * @param realTime Whether to space records by their timestamps rather than run at full speed
+     */
+    DepthDatasetReplayer(DepthDatasetReader reader, CaptureBufferPool bufferPool,
+            int maxInFlight, boolean realTime, Sink sink, Listener listener) {
+        if (maxInFlight < 1) {
+            throw new IllegalArgumentException("maxInFlight must be positive: " + maxInFlight);
+        }
+        this.reader = reader;
+        this.bufferPool = bufferPool;
+        this.inFlight = new Semaphore(maxInFlight);
+        this.realTime = realTime;
+        this.sink = sink;
+        this.listener = listener;
+        thread = new Thread(this::run, "DatasetReplay");
+    }
+
+    void start() {
+        thread.start();
+    }
+
+    /** Stops submitting captures. Those already submitted go on through the pipeline. */
+    void stop() {
+        cancelled = true;
+        thread.interrupt();
+    }
+
+    /** Waits for the replay thread to end, for tests and shutdown. */
+    boolean awaitFinished(long timeoutMillis) throws InterruptedException {
+        thread.join(timeoutMillis);
+        return !thread.isAlive();
+    }
+
+    /** Returns a slot once a replayed capture has been recycled. */
+    void onCaptureDone() {
+        inFlight.release();
+    }
+
+    int size() {
+        return reader.size();
+    }
+
+    private void run() {
+        int replayed = 0;
+        try {
+            long startNanos = System.nanoTime();
+            long firstTimestamp = reader.size() > 0 ? reader.getTimestamp(0) : 0;
+            for (int i = 0; i < reader.size() && !cancelled; i++) {
+                if (realTime) {
+                    long due = startNanos + reader.getTimestamp(i) - firstTimestamp;
+                    long wait = due - System.nanoTime();
+                    if (wait > 0) {
+                        TimeUnit.NANOSECONDS.sleep(wait);
+                    }
+                }
+                inFlight.acquire();
+                DepthCapture capture;
+                try {
+                    capture = toCapture(reader.read(i));
+                } catch (IOException e) {
+                    // Skip an unreadable record, keep the rest of the replay
+                    inFlight.release();
+                    continue;
+                }
+                sink.submit(capture);
+                replayed++;
+            }
+        } catch (InterruptedException e) {
+            cancelled = true;
+        } finally {
+            try {
+                reader.close();
+            } catch (IOException e) {
+                // Nothing was written through the reader
+            }
+            if (listener != null) {
+                listener.onReplayFinished(replayed, cancelled);
+            }
+        }
+    }
+
+    private DepthCapture toCapture(DepthDatasetReader.Record record) {
+        DepthCapture capture = new DepthCapture();
+        capture.timestamp = record.timestamp;
+        capture.acquiredNanos = System.nanoTime();
+        capture.width = record.width;
+        capture.height = record.height;
+        capture.depth = copy(record.depth);
+        capture.confidence = copy(record.confidence);
+        capture.cameraPose = record.cameraPose;
+        capture.intrinsicsDimensions = record.intrinsicsDimensions;
+        capture.fx = record.fx;
+        capture.fy = record.fy;
+        capture.cx = record.cx;
+        capture.cy = record.cy;
+        capture.matrices = record.matrices;
+        capture.replayer = this;
+        return capture;
+    }
+
+    private ByteBuffer copy(ByteBuffer plane) {
+        ByteBuffer source = plane.duplicate();
+        source.rewind();
+        ByteBuffer copy = bufferPool.acquire(source.remaining());
+        copy.put(source);
+        copy.flip();
+        return copy;
+    }
+}
@@ -0,0 +1,277 @@
+package com.example.ar_depth_cover.rawdepth;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.CRC32;
+
+import com.example.ar_depth_cover.common.helpers.DepthCodec;
+
+/**
+ * Appends capture records to a depth dataset file, see {@link DepthDataset} for the layout.
+ *
+ * <p>Opening an existing dataset continues it: its footer, or an incomplete last record left by
+ * a crash, is cut off and new records follow the existing ones. Each record goes to disk with
+ * one gathering write of header and planes; raw planes are written without copying, compressed
+ * ones straight from the codec's output. {@link #close} writes the index footer. All methods are
+ * synchronized.
+ */
+public class DepthDatasetWriter implements Closeable {
+    private static final byte[] ZEROS = new byte[DepthDataset.ALIGNMENT];
+
+    private final File file;
+    private final FileChannel channel;
+    private final int depthEncoding;
+    // Only for DEPTH_DELTA_DEFLATE
+    private final DepthCodec codec;
+    private final List<Long> offsets = new ArrayList<>();
+    private final List<Long> timestamps = new ArrayList<>();
+    private final ByteBuffer header =
+            ByteBuffer.allocate(DepthDataset.RECORD_HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+    private final CRC32 crc = new CRC32();
+    private final byte[] crcChunk = new byte[8192];
+    private long end;
+    private long bytesWritten = 0;
+    private boolean closed = false;
+
+    /**
+     * Opens {@code file} for appending raw planes, creating it if needed.
+     *
+     * @throws IOException If the file exists but is not a dataset
+     */
+    public DepthDatasetWriter(File file) throws IOException {
+        this(file, DepthDataset.DEPTH_RAW_UINT16);
+    }
+
+    /**
+     * Opens {@code file} for appending, creating it if needed. Records of either encoding can
+     * follow each other in one file.
+     *
+     * @param depthEncoding {@link DepthDataset#DEPTH_RAW_UINT16} or
+     *     {@link DepthDataset#DEPTH_DELTA_DEFLATE}, which stores depth and confidence losslessly
+     *     in typically a quarter of the space, at the cost of encoding time on the writing thread
+     * @throws IOException If the file exists but is not a dataset
+     */
+    public DepthDatasetWriter(File file, int depthEncoding) throws IOException {
+        if (depthEncoding != DepthDataset.DEPTH_RAW_UINT16
+                && depthEncoding != DepthDataset.DEPTH_DELTA_DEFLATE) {
+            throw new IllegalArgumentException("unknown depth encoding: " + depthEncoding);
+        }
+        this.file = file;
+        this.depthEncoding = depthEncoding;
+        channel = new RandomAccessFile(file, "rw").getChannel();
+        try {
+            if (channel.size() == 0) {
+                ByteBuffer fileHeader = ByteBuffer.allocate(DepthDataset.FILE_HEADER_SIZE)
+                        .order(ByteOrder.LITTLE_ENDIAN);
+                fileHeader.putInt(DepthDataset.FILE_MAGIC);
+                fileHeader.putInt(DepthDataset.VERSION);
+                fileHeader.putLong(0);
+                fileHeader.flip();
+                writeFully(fileHeader, 0);
+                end = DepthDataset.FILE_HEADER_SIZE;
+            } else if (DepthDataset.hasFileHeader(channel)) {
+                end = DepthDataset.readIndex(channel, offsets, timestamps);
+                if (end < 0) {
+                    end = DepthDataset.scanRecords(channel, offsets, timestamps);
+                }
+                channel.truncate(end);
+            } else {
+                throw new IOException("Not a depth dataset: " + file);
+            }
+        } catch (IOException e) {
+            channel.close();
+            throw e;
+        }
+        codec = depthEncoding == DepthDataset.DEPTH_DELTA_DEFLATE ? new DepthCodec() : null;
+    }
+
+    public File getFile() {
+        return file;
+    }
+
+    public int getDepthEncoding() {
+        return depthEncoding;
+    }
+
+    /**
+     * Appends one capture.
+     *
+     * @param intrinsicsDimensions Width and height of the image the camera intrinsics refer to
+     * @param cameraPose Column-major camera-to-world pose
+     * @param matrices Model, view, projection and MVP matrices; missing ones are stored as zeros
+     * @param depth Tightly packed little-endian uint16 millimeters between position and limit,
+     *     compressed on the way if the writer's encoding asks for it
+     * @param confidence Tightly packed confidence between position and limit
+     * @param imageFormat {@link DepthDataset#IMAGE_NONE} or {@link DepthDataset#IMAGE_JPEG}
+     * @param image Encoded image between position and limit, or null
+     * @return Index of the new record
+     */
+    public synchronized int append(
+            long timestamp,
+            int width,
+            int height,
+            int[] intrinsicsDimensions,
+            float fx,
+            float fy,
+            float cx,
+            float cy,
+            float[] cameraPose,
+            float[][] matrices,
+            ByteBuffer depth,
+            ByteBuffer confidence,
+            int imageFormat,
+            ByteBuffer image) throws IOException {
+        if (closed) {
+            throw new IOException("Dataset is closed: " + file);
+        }
+        if (depth.remaining() != width * height * 2 || confidence.remaining() != width * height) {
+            throw new IllegalArgumentException("planes must be tightly packed " + width + "x"
+                    + height + ": " + depth.remaining() + ", " + confidence.remaining());
+        }
+        ByteBuffer depthBytes;
+        ByteBuffer confidenceBytes;
+        if (codec != null) {
+            depthBytes = codec.encodeDepth(depth, width, height);
+            confidenceBytes = codec.encodeConfidence(confidence, width, height);
+        } else {
+            depthBytes = depth.duplicate();
+            confidenceBytes = confidence.duplicate();
+        }
+        ByteBuffer imageBytes = image != null ? image.duplicate() : ByteBuffer.allocate(0);
+        if (imageBytes.remaining() == 0) {
+            imageFormat = DepthDataset.IMAGE_NONE;
+        }
+
+        crc.reset();
+        updateCrc(depthBytes);
+        updateCrc(confidenceBytes);
+        updateCrc(imageBytes);
+
+        header.clear();
+        header.putInt(DepthDataset.RECORD_MAGIC);
+        header.putInt(DepthDataset.RECORD_HEADER_SIZE);
+        header.putLong(timestamp);
+        header.putInt(width);
+        header.putInt(height);
+        header.putInt(intrinsicsDimensions != null ? intrinsicsDimensions[0] : 0);
+        header.putInt(intrinsicsDimensions != null ? intrinsicsDimensions[1] : 0);
+        header.putFloat(fx);
+        header.putFloat(fy);
+        header.putFloat(cx);
+        header.putFloat(cy);
+        putMatrix(cameraPose);
+        for (int m = 0; m < 4; m++) {
+            putMatrix(matrices != null && m < matrices.length ? matrices[m] : null);
+        }
+        header.putInt(depthEncoding);
+        header.putInt(depthBytes.remaining());
+        header.putInt(confidenceBytes.remaining());
+        header.putInt(imageFormat);
+        header.putInt(imageBytes.remaining());
+        header.putInt((int) crc.getValue());
+        header.putLong(0);
+        header.flip();
+
+        long payload = (long) depthBytes.remaining() + confidenceBytes.remaining()
+                + imageBytes.remaining();
+        ByteBuffer padding = ByteBuffer.wrap(ZEROS, 0, DepthDataset.padding(payload));
+        ByteBuffer[] parts = {header, depthBytes, confidenceBytes, imageBytes, padding};
+        long recordStart = end;
+        long recordSize = DepthDataset.RECORD_HEADER_SIZE + payload + padding.remaining();
+        try {
+            channel.position(recordStart);
+            long written = 0;
+            while (written < recordSize) {
+                written += channel.write(parts);
+            }
+        } catch (IOException e) {
+            // Leave no partial record behind for the next append to follow
+            channel.truncate(recordStart);
+            throw e;
+        }
+        end = recordStart + recordSize;
+        bytesWritten += recordSize;
+        offsets.add(recordStart);
+        timestamps.add(timestamp);
+        return offsets.size() - 1;
+    }
+
+    /** CRC32.update(ByteBuffer) needs API 26, so direct buffers go through a heap chunk. */
+    private void updateCrc(ByteBuffer bytes) {
+        if (bytes.hasArray()) {
+            crc.update(bytes.array(), bytes.arrayOffset() + bytes.position(), bytes.remaining());
+            return;
+        }
+        ByteBuffer source = bytes.duplicate();
+        while (source.hasRemaining()) {
+            int length = Math.min(crcChunk.length, source.remaining());
+            source.get(crcChunk, 0, length);
+            crc.update(crcChunk, 0, length);
+        }
+    }
+
+    private void putMatrix(float[] matrix) {
+        for (int i = 0; i < 16; i++) {
+            header.putFloat(matrix != null ? matrix[i] : 0f);
+        }
+    }
+
+    /** Number of records in the dataset, including those it held when opened. */
+    public synchronized int getRecordCount() {
+        return offsets.size();
+    }
+
+    /** Bytes of records appended through this writer. */
+    public synchronized long getBytesWritten() {
+        return bytesWritten;
+    }
+
+    /**
+     * Writes the index footer and closes the file. Later appends fail; reopen the file to
+     * continue it.
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        try {
+            int count = offsets.size();
+            ByteBuffer footer = ByteBuffer.allocate(8 + 16 * count + DepthDataset.TRAILER_SIZE)
+                    .order(ByteOrder.LITTLE_ENDIAN);
+            footer.putInt(DepthDataset.INDEX_MAGIC);
+            footer.putInt(count);
+            for (long offset : offsets) {
+                footer.putLong(offset);
+            }
+            for (long timestamp : timestamps) {
+                footer.putLong(timestamp);
+            }
+            footer.putLong(end);
+            footer.putInt(count);
+            footer.putInt(DepthDataset.END_MAGIC);
+            footer.flip();
+            writeFully(footer, end);
+            channel.force(false);
+        } finally {
+            channel.close();
+            if (codec != null) {
+                codec.release();
+            }
+        }
+    }
+
+    private void writeFully(ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            position += channel.write(buffer, position);
+        }
+    }
+}
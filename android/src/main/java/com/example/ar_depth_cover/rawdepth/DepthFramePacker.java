@@ -0,0 +1,287 @@
+package com.example.ar_depth_cover.rawdepth;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.nio.ShortBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Packs one depth capture into a single little-endian binary message for Flutter.
+ *
+ * <p>Layout (all offsets in bytes, decoded by {@code DepthFrame.fromByteData} in Dart):
+ *
+ * <pre>
+ *   0  int32   magic "ADF1"
+ *   4  int32   version
+ *   8  int64   timestamp
+ *  16  int32   depthWidth,      20 int32 depthHeight
+ *  24  int32   intrinsicsWidth, 28 int32 intrinsicsHeight
+ *  32  float32 fx, fy, cx, cy
+ *  48  float32[16] modelMatrix
+ * 112  float32[16] viewMatrix
+ * 176  float32[16] projectionMatrix
+ * 240  float32[16] transformMatrix (projection * view * model)
+ * 304  int32   depthFormat, DEPTH_FORMAT_FLOAT32_METERS or DEPTH_FORMAT_UINT16_MILLIMETERS
+ * 308  float32 depthScale, meters per stored depth unit
+ * 312  int32   imagePath length in bytes, 0 when there is no image
+ * 316  int32   frames dropped so far on the stream carrying this frame, 0 otherwise
+ * 320  depth plane, depthWidth * depthHeight samples in depthFormat
+ *      confidence plane, depthWidth * depthHeight bytes
+ *      imagePath, UTF-8
+ * </pre>
+ *
+ * <p>The header size is a multiple of 8 so the depth plane can be viewed in place as typed data.
+ */
+public final class DepthFramePacker {
+    public static final int MAGIC = 0x31464441; // "ADF1" little endian
+    public static final int VERSION = 1;
+    public static final int HEADER_SIZE = 320;
+
+    /** Depth stored as float32 meters, NaN for invalid pixels. */
+    public static final int DEPTH_FORMAT_FLOAT32_METERS = 0;
+    /** Depth stored as the sensor's unsigned 16-bit millimeters, 0 for invalid pixels. */
+    public static final int DEPTH_FORMAT_UINT16_MILLIMETERS = 1;
+
+    static final int OFFSET_MATRICES = 48;
+    static final int OFFSET_DEPTH_FORMAT = 304;
+    static final int OFFSET_DROPPED_FRAMES = 316;
+
+    private DepthFramePacker() {}
+
+    /**
+     * Returns the message size for a frame.
+     */
+    public static int computeSize(
+            int depthWidth, int depthHeight, int depthFormat, byte[] imagePath) {
+        int pixels = depthWidth * depthHeight;
+        return HEADER_SIZE
+                + pixels * bytesPerSample(depthFormat)
+                + pixels
+                + (imagePath != null ? imagePath.length : 0);
+    }
+
+    private static int bytesPerSample(int depthFormat) {
+        return depthFormat == DEPTH_FORMAT_UINT16_MILLIMETERS ? 2 : 4;
+    }
+
+    /**
+     * Packs a frame with float32 meter depth into a new direct buffer, as required by
+     * {@code BinaryMessenger}.
+     *
+     * @see #packMillimeters
+     *
+     * @param matrices Model, view, projection and transform matrices, 16 floats each, or null
+     * @param depthMeters Tightly packed depth plane in meters, read from index 0
+     * @param confidence Confidence plane, read from index 0
+     * @param confidenceRowStride Distance between confidence rows, in bytes
+     */
+    public static ByteBuffer pack(
+            long timestamp,
+            int depthWidth,
+            int depthHeight,
+            int[] intrinsicsDimensions,
+            float fx,
+            float fy,
+            float cx,
+            float cy,
+            float[][] matrices,
+            FloatBuffer depthMeters,
+            ByteBuffer confidence,
+            int confidenceRowStride,
+            String imagePath) {
+        return pack(timestamp, depthWidth, depthHeight, intrinsicsDimensions, fx, fy, cx, cy,
+                matrices, depthMeters, confidence, confidenceRowStride, imagePath, true);
+    }
+
+    /**
+     * Same as {@link #pack(long, int, int, int[], float, float, float, float, float[][],
+     * FloatBuffer, ByteBuffer, int, String)}, optionally into a heap buffer whose backing array
+     * is exactly the message, for senders that take a {@code byte[]}.
+     *
+     * @param direct Whether to pack into a direct buffer rather than a heap one
+     */
+    public static ByteBuffer pack(
+            long timestamp,
+            int depthWidth,
+            int depthHeight,
+            int[] intrinsicsDimensions,
+            float fx,
+            float fy,
+            float cx,
+            float cy,
+            float[][] matrices,
+            FloatBuffer depthMeters,
+            ByteBuffer confidence,
+            int confidenceRowStride,
+            String imagePath,
+            boolean direct) {
+        byte[] imagePathBytes =
+                imagePath != null ? imagePath.getBytes(StandardCharsets.UTF_8) : null;
+        ByteBuffer out = beginMessage(
+                timestamp, depthWidth, depthHeight, intrinsicsDimensions, fx, fy, cx, cy,
+                matrices, DEPTH_FORMAT_FLOAT32_METERS, 1f, imagePathBytes, direct);
+
+        // Depth plane, bulk-copied through a float view of the message
+        int pixels = depthWidth * depthHeight;
+        FloatBuffer depthView = out.asFloatBuffer();
+        FloatBuffer depthSource = depthMeters.duplicate();
+        depthSource.rewind();
+        depthSource.limit(pixels);
+        depthView.put(depthSource);
+        out.position(out.position() + pixels * 4);
+
+        return finishMessage(
+                out, depthWidth, depthHeight, confidence, confidenceRowStride, imagePathBytes);
+    }
+
+    /**
+     * Packs a frame that forwards the sensor's uint16 millimeter depth as is, at half the size of
+     * {@link #DEPTH_FORMAT_FLOAT32_METERS} payloads. Multiply by the header's depth scale to get
+     * meters.
+     *
+     * @param depthMillimeters Little-endian view of the raw depth plane, read from index 0
+     * @param depthRowStride Distance between depth rows, in shorts
+     */
+    public static ByteBuffer packMillimeters(
+            long timestamp,
+            int depthWidth,
+            int depthHeight,
+            int[] intrinsicsDimensions,
+            float fx,
+            float fy,
+            float cx,
+            float cy,
+            float[][] matrices,
+            ShortBuffer depthMillimeters,
+            int depthRowStride,
+            ByteBuffer confidence,
+            int confidenceRowStride,
+            String imagePath) {
+        return packMillimeters(timestamp, depthWidth, depthHeight, intrinsicsDimensions, fx, fy,
+                cx, cy, matrices, depthMillimeters, depthRowStride, confidence,
+                confidenceRowStride, imagePath, true);
+    }
+
+    /**
+     * Same as {@link #packMillimeters(long, int, int, int[], float, float, float, float,
+     * float[][], ShortBuffer, int, ByteBuffer, int, String)}, optionally into a heap buffer.
+     *
+     * @param direct Whether to pack into a direct buffer rather than a heap one
+     */
+    public static ByteBuffer packMillimeters(
+            long timestamp,
+            int depthWidth,
+            int depthHeight,
+            int[] intrinsicsDimensions,
+            float fx,
+            float fy,
+            float cx,
+            float cy,
+            float[][] matrices,
+            ShortBuffer depthMillimeters,
+            int depthRowStride,
+            ByteBuffer confidence,
+            int confidenceRowStride,
+            String imagePath,
+            boolean direct) {
+        byte[] imagePathBytes =
+                imagePath != null ? imagePath.getBytes(StandardCharsets.UTF_8) : null;
+        ByteBuffer out = beginMessage(
+                timestamp, depthWidth, depthHeight, intrinsicsDimensions, fx, fy, cx, cy,
+                matrices, DEPTH_FORMAT_UINT16_MILLIMETERS, 0.001f, imagePathBytes, direct);
+
+        // Depth plane row by row, dropping any row padding
+        ShortBuffer depthView = out.asShortBuffer();
+        ShortBuffer depthSource = depthMillimeters.duplicate();
+        for (int y = 0; y < depthHeight; y++) {
+            int rowStart = y * depthRowStride;
+            depthSource.limit(rowStart + depthWidth);
+            depthSource.position(rowStart);
+            depthView.put(depthSource);
+        }
+        out.position(out.position() + depthWidth * depthHeight * 2);
+
+        return finishMessage(
+                out, depthWidth, depthHeight, confidence, confidenceRowStride, imagePathBytes);
+    }
+
+    /**
+     * Stamps a packed frame with the number of frames dropped before it was delivered.
+     */
+    public static void setDroppedFrames(ByteBuffer message, long droppedFrames) {
+        message.order(ByteOrder.LITTLE_ENDIAN);
+        message.putInt(OFFSET_DROPPED_FRAMES, (int) Math.min(droppedFrames, Integer.MAX_VALUE));
+    }
+
+    /**
+     * Allocates the message and writes the header, leaving the position at the depth plane.
+     */
+    private static ByteBuffer beginMessage(
+            long timestamp,
+            int depthWidth,
+            int depthHeight,
+            int[] intrinsicsDimensions,
+            float fx,
+            float fy,
+            float cx,
+            float cy,
+            float[][] matrices,
+            int depthFormat,
+            float depthScale,
+            byte[] imagePathBytes,
+            boolean direct) {
+        int size = computeSize(depthWidth, depthHeight, depthFormat, imagePathBytes);
+        ByteBuffer out = direct ? ByteBuffer.allocateDirect(size) : ByteBuffer.allocate(size);
+        out.order(ByteOrder.LITTLE_ENDIAN);
+
+        out.putInt(MAGIC);
+        out.putInt(VERSION);
+        out.putLong(timestamp);
+        out.putInt(depthWidth);
+        out.putInt(depthHeight);
+        out.putInt(intrinsicsDimensions[0]);
+        out.putInt(intrinsicsDimensions[1]);
+        out.putFloat(fx);
+        out.putFloat(fy);
+        out.putFloat(cx);
+        out.putFloat(cy);
+        for (int m = 0; m < 4; m++) {
+            float[] matrix = matrices != null ? matrices[m] : null;
+            for (int i = 0; i < 16; i++) {
+                out.putFloat(matrix != null ? matrix[i] : 0f);
+            }
+        }
+        out.putInt(depthFormat);
+        out.putFloat(depthScale);
+        out.putInt(imagePathBytes != null ? imagePathBytes.length : 0);
+        out.putInt(0);
+        return out;
+    }
+
+    /**
+     * Appends the confidence plane and image path after the depth plane.
+     */
+    private static ByteBuffer finishMessage(
+            ByteBuffer out,
+            int depthWidth,
+            int depthHeight,
+            ByteBuffer confidence,
+            int confidenceRowStride,
+            byte[] imagePathBytes) {
+        // Confidence plane without row padding
+        ByteBuffer confidenceSource = confidence.duplicate();
+        for (int y = 0; y < depthHeight; y++) {
+            int rowStart = y * confidenceRowStride;
+            confidenceSource.limit(rowStart + depthWidth);
+            confidenceSource.position(rowStart);
+            out.put(confidenceSource);
+        }
+
+        if (imagePathBytes != null) {
+            out.put(imagePathBytes);
+        }
+        out.rewind();
+        return out;
+    }
+}
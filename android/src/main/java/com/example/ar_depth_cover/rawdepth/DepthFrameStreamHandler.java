@@ -0,0 +1,153 @@
+package com.example.ar_depth_cover.rawdepth;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+
+import com.example.ar_depth_cover.common.helpers.BoundedFrameQueue;
+
+import java.nio.ByteBuffer;
+import java.util.Map;
+
+import io.flutter.plugin.common.EventChannel;
+
+/**
+ * Streams packed depth frames to a Dart listener with backpressure.
+ *
+ * <p>Frames wait in a small {@link BoundedFrameQueue} and are emitted only while Dart holds a
+ * credit. Dart returns the credit through {@link #onFrameConsumed()} once its listener is done, so
+ * a stalled listener makes the queue drop frames instead of growing the UI thread's backlog. Each
+ * emitted frame carries the running dropped-frame count in its header.
+ *
+ * <p>Listen arguments (all optional): {@code "dropPolicy"} ("dropOldest" or "dropNewest"),
+ * {@code "queueCapacity"}, {@code "maxInFlight"} and {@code "generation"}, an id Dart picks per
+ * subscription and passes back with each acknowledgement. Acknowledgements of an earlier
+ * subscription that arrive after a new listen are ignored.
+ *
+ * <p>Frames packed into heap buffers by {@link DepthFramePacker} are handed to the codec as
+ * their backing array, without a copy.
+ */
+public class DepthFrameStreamHandler implements EventChannel.StreamHandler {
+    private static final String TAG = "DepthFrameStream";
+    private static final int DEFAULT_QUEUE_CAPACITY = 2;
+    private static final int DEFAULT_MAX_IN_FLIGHT = 1;
+
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+    private final Runnable drainRunnable = this::drain;
+
+    // Only touched on the main thread, except for the volatile read in isListening()
+    private volatile EventChannel.EventSink eventSink;
+    private volatile BoundedFrameQueue<ByteBuffer> queue;
+    private volatile int generation;
+
+    /**
+     * Returns whether a Dart listener is attached.
+     */
+    public boolean isListening() {
+        return eventSink != null;
+    }
+
+    /**
+     * Queues a frame packed by {@link DepthFramePacker}. May be called from any thread.
+     *
+     * @return false if there is no listener and the frame was not queued
+     */
+    public boolean offer(ByteBuffer frame) {
+        BoundedFrameQueue<ByteBuffer> currentQueue = queue;
+        if (currentQueue == null || eventSink == null) {
+            return false;
+        }
+        if (currentQueue.offer(frame) != null) {
+            Log.d(TAG, "Dropped depth frame, total dropped " + currentQueue.getDroppedFrames());
+        }
+        mainHandler.post(drainRunnable);
+        return true;
+    }
+
+    /**
+     * Returns the credit of one emitted frame. Called when Dart acknowledges a frame.
+     *
+     * @param ackGeneration Generation of the subscription the frame was emitted on
+     */
+    public void onFrameConsumed(int ackGeneration) {
+        BoundedFrameQueue<ByteBuffer> currentQueue = queue;
+        if (currentQueue != null && ackGeneration == generation) {
+            currentQueue.release();
+            mainHandler.post(drainRunnable);
+        }
+    }
+
+    /** Total frames dropped on the current stream, 0 when nothing is listening. */
+    public long getDroppedFrames() {
+        BoundedFrameQueue<ByteBuffer> currentQueue = queue;
+        return currentQueue != null ? currentQueue.getDroppedFrames() : 0;
+    }
+
+    @Override
+    public void onListen(Object arguments, EventChannel.EventSink events) {
+        BoundedFrameQueue.DropPolicy dropPolicy = BoundedFrameQueue.DropPolicy.DROP_OLDEST;
+        int queueCapacity = DEFAULT_QUEUE_CAPACITY;
+        int maxInFlight = DEFAULT_MAX_IN_FLIGHT;
+        int listenGeneration = 0;
+        if (arguments instanceof Map) {
+            Map<?, ?> params = (Map<?, ?>) arguments;
+            if ("dropNewest".equals(params.get("dropPolicy"))) {
+                dropPolicy = BoundedFrameQueue.DropPolicy.DROP_NEWEST;
+            }
+            if (params.get("queueCapacity") instanceof Integer) {
+                queueCapacity = (Integer) params.get("queueCapacity");
+            }
+            if (params.get("maxInFlight") instanceof Integer) {
+                maxInFlight = (Integer) params.get("maxInFlight");
+            }
+            if (params.get("generation") instanceof Integer) {
+                listenGeneration = (Integer) params.get("generation");
+            }
+        }
+
+        try {
+            queue = new BoundedFrameQueue<>(queueCapacity, maxInFlight, dropPolicy);
+            generation = listenGeneration;
+            eventSink = events;
+        } catch (IllegalArgumentException e) {
+            events.error("INVALID_ARGUMENTS", e.getMessage(), null);
+        }
+    }
+
+    @Override
+    public void onCancel(Object arguments) {
+        eventSink = null;
+        BoundedFrameQueue<ByteBuffer> currentQueue = queue;
+        queue = null;
+        if (currentQueue != null) {
+            currentQueue.clear();
+        }
+    }
+
+    private void drain() {
+        BoundedFrameQueue<ByteBuffer> currentQueue = queue;
+        EventChannel.EventSink sink = eventSink;
+        if (currentQueue == null || sink == null) {
+            return;
+        }
+        ByteBuffer frame;
+        while ((frame = currentQueue.poll()) != null) {
+            DepthFramePacker.setDroppedFrames(frame, currentQueue.getDroppedFrames());
+            // StandardMethodCodec sends byte[] as Uint8List
+            sink.success(toByteArray(frame));
+        }
+    }
+
+    /**
+     * Returns the frame's backing array when it holds exactly the frame, or a copy otherwise.
+     */
+    private static byte[] toByteArray(ByteBuffer frame) {
+        if (frame.hasArray() && frame.arrayOffset() == 0 && frame.position() == 0
+                && frame.remaining() == frame.array().length) {
+            return frame.array();
+        }
+        byte[] bytes = new byte[frame.remaining()];
+        frame.duplicate().get(bytes);
+        return bytes;
+    }
+}
@@ -0,0 +1,60 @@
+package com.example.ar_depth_cover.rawdepth;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+
+import com.example.ar_depth_cover.common.helpers.PointCloudUnprojector;
+
+/**
+ * Packs a point cloud into a single little-endian binary message for Flutter.
+ *
+ * <p>Layout (all offsets in bytes, decoded by {@code PointCloud.fromByteData} in Dart):
+ *
+ * <pre>
+ *   0  int32   magic "APC1"
+ *   4  int32   version
+ *   8  int64   timestamp of the depth frame
+ *  16  int32   pointCount
+ *  20  int32   space, SPACE_CAMERA or SPACE_WORLD
+ *  24  int32   floats per point (4)
+ *  28  int32   reserved
+ *  32  float32[pointCount * 4] X, Y, Z in meters and confidence in [0, 1], per point
+ * </pre>
+ */
+public final class PointCloudPacker {
+    public static final int MAGIC = 0x31435041; // "APC1" little endian
+    public static final int VERSION = 1;
+    public static final int HEADER_SIZE = 32;
+
+    /** Points relative to the camera: +X right, +Y up, looking down -Z. */
+    public static final int SPACE_CAMERA = 0;
+    /** Points in ARCore's world frame, comparable across frames. */
+    public static final int SPACE_WORLD = 1;
+
+    private PointCloudPacker() {}
+
+    /**
+     * Packs the points between the buffer's position and limit into a new direct buffer, as
+     * required by {@code BinaryMessenger}.
+     */
+    public static ByteBuffer pack(long timestamp, int space, FloatBuffer points) {
+        int floats = points.remaining();
+        int pointCount = floats / PointCloudUnprojector.FLOATS_PER_POINT;
+        ByteBuffer out = ByteBuffer.allocateDirect(HEADER_SIZE + floats * 4);
+        out.order(ByteOrder.LITTLE_ENDIAN);
+
+        out.putInt(MAGIC);
+        out.putInt(VERSION);
+        out.putLong(timestamp);
+        out.putInt(pointCount);
+        out.putInt(space);
+        out.putInt(PointCloudUnprojector.FLOATS_PER_POINT);
+        out.putInt(0);
+
+        // Bulk copy through a little-endian float view of the message
+        out.asFloatBuffer().put(points.duplicate());
+        out.rewind();
+        return out;
+    }
+}
@@ -32,11 +32,47 @@ public class RawDepthPlatformView extends FrameLayout implements PlatformView {
         
         // Parse creation parameters
         boolean logDepthOnly = true;
+        String fusionMode = null;
+        boolean parallelFusion = false;
+        String depthFormat = null;
+        Integer imageQueueDepth = null;
+        String imageQueuePolicy = null;
+        boolean continuousDepth = false;
+        boolean continuousImages = false;
+        Integer frameBudgetMillis = null;
+        String pointCloudSpace = null;
         if (args instanceof Map) {
             Map<String, Object> params = (Map<String, Object>) args;
             if (params.containsKey("logDepthOnly")) {
                 logDepthOnly = (boolean) params.get("logDepthOnly");
             }
+            if (params.containsKey("fusionMode")) {
+                fusionMode = (String) params.get("fusionMode");
+            }
+            if (params.containsKey("parallelFusion")) {
+                parallelFusion = (boolean) params.get("parallelFusion");
+            }
+            if (params.containsKey("depthFormat")) {
+                depthFormat = (String) params.get("depthFormat");
+            }
+            if (params.containsKey("imageQueueDepth")) {
+                imageQueueDepth = (Integer) params.get("imageQueueDepth");
+            }
+            if (params.containsKey("imageQueuePolicy")) {
+                imageQueuePolicy = (String) params.get("imageQueuePolicy");
+            }
+            if (params.containsKey("continuousDepth")) {
+                continuousDepth = (boolean) params.get("continuousDepth");
+            }
+            if (params.containsKey("continuousImages")) {
+                continuousImages = (boolean) params.get("continuousImages");
+            }
+            if (params.containsKey("frameBudgetMillis")) {
+                frameBudgetMillis = (Integer) params.get("frameBudgetMillis");
+            }
+            if (params.containsKey("pointCloudSpace")) {
+                pointCloudSpace = (String) params.get("pointCloudSpace");
+            }
         }
         
         // Create and configure GLSurfaceView
@@ -62,9 +98,34 @@ public class RawDepthPlatformView extends FrameLayout implements PlatformView {
         
         // Create the renderer with logDepthOnly flag
         renderer = new SampleDepthRenderer(surfaceView, context, logDepthOnly);
+        if (fusionMode != null) {
+            renderer.setFusionMode(fusionMode);
+        }
+        renderer.setParallelFusion(parallelFusion);
+        if (depthFormat != null) {
+            renderer.setDepthPayloadFormat(depthFormat);
+        }
+        if (imageQueueDepth != null && imageQueuePolicy != null) {
+            renderer.setImageWriteQueue(imageQueueDepth, imageQueuePolicy);
+        }
+        if (frameBudgetMillis != null) {
+            renderer.setFrameBudgetMillis(frameBudgetMillis);
+        }
+        renderer.setContinuousImages(continuousImages);
+        renderer.setContinuousMode(continuousDepth);
+        if (pointCloudSpace != null) {
+            renderer.setPointCloudSpace(pointCloudSpace);
+        }
         
         // Set the binary messenger for communication with Flutter
         renderer.setBinaryMessenger(messenger);
+
+        // Show completion message when a capture sequence ends
+        renderer.setCaptureSequenceListener((capturedFrames, cancelled) -> {
+            Toast.makeText(getContext(), (cancelled ? "Depth capture cancelled. Captured "
+                    : "Depth capture complete! Captured ") + capturedFrames + " frames.",
+                    Toast.LENGTH_SHORT).show();
+        });
         
         // Add the GLSurfaceView to this FrameLayout
         addView(surfaceView);
@@ -106,6 +167,7 @@ public class RawDepthPlatformView extends FrameLayout implements PlatformView {
     public void onPause() {
         Log.d(TAG, "onPause called");
         if (renderer != null) {
+            renderer.getCaptureScheduler().cancel();
             renderer.pause();
         }
         if (surfaceView != null) {
@@ -140,7 +202,7 @@ public class RawDepthPlatformView extends FrameLayout implements PlatformView {
             // Set click listener
             circularButton.setOnClickListener(v -> {
                 Toast.makeText(context, "Capturing depth data for 5 seconds...", Toast.LENGTH_SHORT).show();
-                Log.d(TAG, "Starting depth capture sequence - taking images every 500ms for 5 seconds");
+                Log.d(TAG, "Starting depth capture sequence - capturing up to 10 depth frames per second for 5 seconds");
                 
                 // Start a capture sequence
                 startCaptureSequence();
@@ -156,48 +218,14 @@ public class RawDepthPlatformView extends FrameLayout implements PlatformView {
     }
 
     /**
-     * Starts a sequence that captures depth data every 500ms for 5 seconds
+     * Starts a sequence that captures new depth frames at up to 10 per second for 5 seconds.
+     * Frames are picked on the GL thread as their depth timestamps arrive.
      */
     private void startCaptureSequence() {
-        final int CAPTURE_INTERVAL_MS = 100;  // 500ms between captures
-        final int TOTAL_DURATION_MS = 5000;   // 5 seconds total duration
-        final int TOTAL_CAPTURES = TOTAL_DURATION_MS / CAPTURE_INTERVAL_MS;
-        
-        // Create a new thread for the capture sequence
-        new Thread(() -> {
-            try {
-                int captureCount = 0;
-                
-                while (captureCount < TOTAL_CAPTURES) {
-                    // Process depth data on the renderer
-                    if (renderer != null) {
-                        // Must run on UI thread since it might involve GL operations
-                        surfaceView.post(() -> {
-                            renderer.processDepthDataManually();
-                        });
-                        
-                        Log.d(TAG, "Captured frame " + (captureCount + 1) + " of " + TOTAL_CAPTURES);
-                        captureCount++;
-                        
-                        // Sleep for the interval
-                        Thread.sleep(CAPTURE_INTERVAL_MS);
-                    } else {
-                        Log.e(TAG, "Renderer is null, cannot process depth data");
-                        break;
-                    }
-                }
-                
-                // Show completion message on UI thread
-                int finalCaptureCount = captureCount;
-                surfaceView.post(() -> {
-                    Toast.makeText(getContext(), "Depth capture complete! Captured " +
-                            finalCaptureCount + " frames.", Toast.LENGTH_SHORT).show();
-                });
-                
-            } catch (InterruptedException e) {
-                Log.e(TAG, "Capture sequence interrupted", e);
-            }
-        }).start();
+        final long TOTAL_DURATION_MS = 5000;  // 5 seconds total duration
+        final float MAX_CAPTURE_RATE_HZ = 10f;
+
+        renderer.getCaptureScheduler().startDuration(TOTAL_DURATION_MS, MAX_CAPTURE_RATE_HZ);
     }
 
     /**
@@ -20,10 +20,8 @@ import android.content.Context;
 import android.content.ContextWrapper;
 import android.content.Intent;
 import android.media.Image;
-import android.media.MediaRecorder;
 import android.net.Uri;
 import android.opengl.GLSurfaceView;
-import android.os.Build;
 import android.os.Environment;
 import android.os.Handler;
 import android.os.Looper;
@@ -33,38 +31,68 @@ import android.widget.Toast;
 import com.example.ar_depth_cover.common.samplerender.CameraTextureShader;
 import com.example.ar_depth_cover.common.samplerender.SampleRender;
 
-import com.google.ar.core.Anchor;
 import com.google.ar.core.ArCoreApk;
 import com.google.ar.core.Camera;
 import com.google.ar.core.CameraIntrinsics;
 import com.google.ar.core.Config;
 import com.google.ar.core.Frame;
+import com.google.ar.core.PlaybackStatus;
+import com.google.ar.core.RecordingConfig;
+import com.google.ar.core.RecordingStatus;
 import com.google.ar.core.Session;
+import com.google.ar.core.Track;
 import com.google.ar.core.TrackingState;
 import com.google.ar.core.exceptions.CameraNotAvailableException;
 import com.google.ar.core.exceptions.NotYetAvailableException;
+import com.google.ar.core.exceptions.PlaybackFailedException;
+import com.google.ar.core.exceptions.RecordingFailedException;
 
+import io.flutter.plugin.common.BasicMessageChannel;
+import io.flutter.plugin.common.BinaryCodec;
 import io.flutter.plugin.common.BinaryMessenger;
+import io.flutter.plugin.common.EventChannel;
+import io.flutter.plugin.common.MethodCall;
 import io.flutter.plugin.common.MethodChannel;
 
+import java.io.BufferedOutputStream;
 import java.io.File;
+import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
 import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
 import java.nio.FloatBuffer;
 import java.nio.ShortBuffer;
 import java.text.SimpleDateFormat;
-import java.util.ArrayList;
 import java.util.Date;
 import java.util.HashMap;
-import java.util.List;
 import java.util.Locale;
 import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.Callable;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.TimeUnit;
+import com.example.ar_depth_cover.common.helpers.AdaptiveRateController;
+import com.example.ar_depth_cover.common.helpers.CaptureBufferPool;
+import com.example.ar_depth_cover.common.helpers.DepthCaptureScheduler;
+import com.example.ar_depth_cover.common.helpers.DepthDecoder;
+import com.example.ar_depth_cover.common.helpers.DepthFusionStrategy;
+import com.example.ar_depth_cover.common.helpers.ImageWriteQueue;
+import com.example.ar_depth_cover.common.helpers.KalmanDepthFilter;
 import com.example.ar_depth_cover.common.helpers.MultiFrameDepthProcessor;
+import com.example.ar_depth_cover.common.helpers.PipelineStage;
+import com.example.ar_depth_cover.common.helpers.PngEncoder;
+import com.example.ar_depth_cover.common.helpers.PointCloudUnprojector;
+import com.example.ar_depth_cover.common.helpers.RowStripeExecutor;
+import com.example.ar_depth_cover.common.helpers.StageTimings;
+import com.example.ar_depth_cover.common.helpers.TsdfMesher;
+import com.example.ar_depth_cover.common.helpers.TsdfVolume;
+import com.example.ar_depth_cover.common.helpers.VoxelHashAccumulator;
+import com.example.ar_depth_cover.common.helpers.YuvToRgbConverter;
 
 /**
  * Renderer for depth data using Google's SampleRender framework.
@@ -72,8 +100,12 @@ import com.example.ar_depth_cover.common.helpers.MultiFrameDepthProcessor;
 public class SampleDepthRenderer implements SampleRender.Renderer {
     private static final String TAG = SampleDepthRenderer.class.getSimpleName();
     private static final String CHANNEL_NAME = "ar_depth_cover/depth_data";
-    private MultiFrameDepthProcessor depthProcessor = new MultiFrameDepthProcessor();
-
+    private static final String FRAME_CHANNEL_NAME = "ar_depth_cover/depth_frames";
+    private static final String FRAME_STREAM_CHANNEL_NAME = "ar_depth_cover/depth_frame_stream";
+    private static final String POINT_CLOUD_CHANNEL_NAME = "ar_depth_cover/point_clouds";
+    private final MultiFrameDepthProcessor depthProcessor = new MultiFrameDepthProcessor();
+    // Whether fusion runs in row stripes across all cores rather than on the calling thread
+    private volatile boolean parallelFusion = false;
 
     /**
      * Interface for listening to recording state changes
@@ -115,18 +147,126 @@ public class SampleDepthRenderer implements SampleRender.Renderer {
     
     // Flutter Method Channel for sending depth data to Flutter
     private MethodChannel methodChannel;
+
+    // Binary channel carrying packed depth frames, see DepthFramePacker
+    private BasicMessageChannel<ByteBuffer> depthFrameChannel;
+
+    // Backpressured stream of packed depth frames; preferred over depthFrameChannel while listened to
+    private final DepthFrameStreamHandler depthFrameStreamHandler = new DepthFrameStreamHandler();
+    private EventChannel depthFrameEventChannel;
+
+    // Depth plane encoding sent to Flutter, one of the DepthFramePacker.DEPTH_FORMAT_* values
+    private volatile int depthPayloadFormat = DepthFramePacker.DEPTH_FORMAT_FLOAT32_METERS;
+
+    // Point clouds sent to Flutter next to each depth frame, in one of the
+    // PointCloudPacker.SPACE_* spaces, or POINT_CLOUD_OFF
+    private static final int POINT_CLOUD_OFF = -1;
+    private BasicMessageChannel<ByteBuffer> pointCloudChannel;
+    private volatile int pointCloudSpace = POINT_CLOUD_OFF;
+    // Only touched by the packing stage
+    private final PointCloudUnprojector pointCloudUnprojector = new PointCloudUnprojector();
+
+    // World-space cloud fused across frames, fed by the packing stage while enabled
+    private static final float DEFAULT_VOXEL_SIZE_METERS = 0.01f;
+    private static final int DEFAULT_MAX_VOXELS = 250_000;
+    private final VoxelHashAccumulator pointAccumulator =
+            new VoxelHashAccumulator(DEFAULT_VOXEL_SIZE_METERS, DEFAULT_MAX_VOXELS);
+    private volatile boolean accumulatePoints = false;
+    private volatile long lastAccumulatedTimestamp = 0;
+
+    // Surface reconstruction: a TSDF volume fed by its own stage after packing, so delivery to
+    // Flutter never waits on integration
+    private static final float DEFAULT_TSDF_VOXEL_SIZE_METERS = 0.01f;
+    private static final float DEFAULT_TSDF_TRUNCATION_METERS = 0.04f;
+    private static final int DEFAULT_TSDF_MAX_BLOCKS = 8192;
+    private final TsdfVolume tsdfVolume = new TsdfVolume(
+            DEFAULT_TSDF_VOXEL_SIZE_METERS, DEFAULT_TSDF_TRUNCATION_METERS,
+            DEFAULT_TSDF_MAX_BLOCKS);
+    private volatile boolean surfaceReconstruction = false;
+    private volatile long lastIntegratedTimestamp = 0;
+    // Meshes only the blocks changed since the previous extraction
+    private final TsdfMesher surfaceMesher = new TsdfMesher(tsdfVolume);
+    // Builds surface meshes and accumulated clouds for Flutter off the platform thread
+    private final ExecutorService exportExecutor = Executors.newSingleThreadExecutor(
+            runnable -> new Thread(runnable, "ModelExport"));
     
     // Binary Messenger to communicate with Flutter
     private BinaryMessenger binaryMessenger;
 
     // A reference to the current frame for depth processing
     private Frame currentFrame;
+
+    // Picks the depth frames of capture sequences, checked on every drawn frame
+    private final DepthCaptureScheduler captureScheduler = new DepthCaptureScheduler();
+    private volatile DepthCaptureScheduler.Listener captureSequenceListener;
+
+    // Depth pipeline: the frame thread copies planes out (acquire), then fusion and packing run
+    // on their own threads, handing captures over through small lock-free queues
+    private static final int PIPELINE_QUEUE_CAPACITY = 2;
+    private final StageTimings acquireTimings = new StageTimings();
+    private final PipelineStage<DepthCapture> integrationStage = new PipelineStage<>(
+            "DepthIntegration", PIPELINE_QUEUE_CAPACITY, this::integrateSurface,
+            this::recycleCapture);
+    private final PipelineStage<DepthCapture> packingStage = new PipelineStage<>(
+            "DepthPacking", PIPELINE_QUEUE_CAPACITY, this::packAndSend, this::recycleCapture);
+    private final PipelineStage<DepthCapture> fusionStage = new PipelineStage<>(
+            "DepthFusion", PIPELINE_QUEUE_CAPACITY, this::fuseDepth, this::recycleCapture);
+
+    // Continuous mode processes new depth frames as they arrive, as often and at the
+    // resolution the rate controller allows
+    private static final long DEFAULT_FRAME_BUDGET_MILLIS = 100;
+    private volatile boolean continuousMode = false;
+    // Whether continuously processed frames also save their camera image; off by default since
+    // each saved image holds a full-size copy until the write queue gets to it
+    private volatile boolean continuousImages = false;
+    private final AdaptiveRateController rateController = new AdaptiveRateController(
+            TimeUnit.MILLISECONDS.toNanos(DEFAULT_FRAME_BUDGET_MILLIS), 3, 4);
     
 
     // Handler for main thread operations
     private final Handler mainHandler = new Handler(Looper.getMainLooper());
-    private final ExecutorService executorService = Executors.newSingleThreadExecutor();
-    private volatile String lastSavedImagePath = null;
+    // Bounded JPEG persistence; each pending write pins one full-size camera snapshot
+    private static final int DEFAULT_IMAGE_QUEUE_DEPTH = 3;
+    private final ImageWriteQueue imageWriteQueue = new ImageWriteQueue(
+            "ImageWriter", DEFAULT_IMAGE_QUEUE_DEPTH, ImageWriteQueue.OverflowPolicy.DROP_OLDEST);
+    // Directory for saved camera images, resolved on first use
+    private File imageDirectory;
+
+    // Camera image conversion for saved images, on its own stripe pool so it never waits on
+    // depth fusion running on the GL thread
+    private final YuvToRgbConverter yuvToRgbConverter = new YuvToRgbConverter();
+    private final RowStripeExecutor imageStripeExecutor =
+            new RowStripeExecutor(Runtime.getRuntime().availableProcessors());
+    private android.graphics.Bitmap rotatedBitmap;
+
+    // Plane snapshots handed from the GL thread to the save executor, returned after encoding
+    private final CaptureBufferPool captureBufferPool = new CaptureBufferPool(4);
+
+    // Dataset recording: processed captures are appended on the image write queue, behind the
+    // JPEG of the same frame, so the finished image can go into the record. The lock orders
+    // each record against the close task of the writer it was meant for.
+    private final Object datasetLock = new Object();
+    private DepthDatasetWriter datasetWriter;
+    private boolean embedDatasetImages = true;
+
+    // PNG export of processed planes, encoded on the image write queue next to the JPEG. The
+    // encoder is only used on that queue's thread.
+    private volatile boolean exportPng = false;
+    private final PngEncoder pngEncoder = new PngEncoder();
+
+    // ARCore session recording to MP4. Next to the streams ARCore records itself, a custom track
+    // carries the planes of each processed capture.
+    private static final UUID DEPTH_TRACK_ID =
+            UUID.fromString("5f6a3c1e-2b7d-4e8a-9c41-d3a7b2e9f014");
+    private static final String DEPTH_TRACK_MIME_TYPE = "application/vnd.ar-depth-cover.depth";
+    private static final int DEPTH_TRACK_HEADER_SIZE = 16;
+    private volatile boolean sessionRecording = false;
+    // Track data of the current capture, GL thread only
+    private ByteBuffer depthTrackBuffer;
+    private boolean playbackFinishedReported = false;
+
+    // Dataset replay; while one runs it feeds the pipeline in place of the GL thread
+    private volatile DepthDatasetReplayer replayer;
 
     // Recording state listener
     private RecordingStateListener recordingStateListener;
@@ -138,6 +278,14 @@ public class SampleDepthRenderer implements SampleRender.Renderer {
         this.glSurfaceView = glSurfaceView;
         this.context = context;
         this.logDepthOnly = logDepthOnly;
+
+        captureScheduler.setListener(this::onCaptureSequenceFinished);
+        fusionStage.setFailureListener(this::onStageFailure);
+        packingStage.setFailureListener(this::onStageFailure);
+        integrationStage.setFailureListener(this::onStageFailure);
+
+        tsdfVolume.setExecutor(RowStripeExecutor.getDefault());
+        yuvToRgbConverter.setExecutor(imageStripeExecutor);
         
         // Initialize texture coordinate buffers as direct buffers
         ByteBuffer bbIn = ByteBuffer.allocateDirect(8 * 4); // 8 floats * 4 bytes per float
@@ -154,6 +302,160 @@ public class SampleDepthRenderer implements SampleRender.Renderer {
         new SampleRender(glSurfaceView, this, context.getAssets());
     }
     
+    /**
+     * Selects how depth is fused across frames.
+     *
+     * @param mode One of "weightedWindow", "runningSum", "reprojected" or "kalman"
+     */
+    public void setFusionMode(String mode) {
+        // Holding the processor's lock applies the whole switch between two fused frames
+        synchronized (depthProcessor) {
+            switch (mode) {
+                case "kalman":
+                    KalmanDepthFilter kalmanFilter = new KalmanDepthFilter();
+                    kalmanFilter.setExecutor(
+                            parallelFusion ? RowStripeExecutor.getDefault() : null);
+                    depthProcessor.setFusionStrategy(kalmanFilter);
+                    return;
+                case "weightedWindow":
+                    depthProcessor.setFusionMode(
+                            MultiFrameDepthProcessor.FusionMode.WEIGHTED_WINDOW);
+                    break;
+                case "runningSum":
+                    depthProcessor.setFusionMode(MultiFrameDepthProcessor.FusionMode.RUNNING_SUM);
+                    break;
+                case "reprojected":
+                    depthProcessor.setFusionMode(MultiFrameDepthProcessor.FusionMode.REPROJECTED);
+                    break;
+                default:
+                    Log.w(TAG, "Unknown fusion mode: " + mode);
+                    return;
+            }
+            depthProcessor.setFusionStrategy(null);
+        }
+    }
+
+    /**
+     * Sets whether depth fusion is split into row stripes across all cores. Off by default, so
+     * fusion runs on the fusion stage's own thread only.
+     */
+    public void setParallelFusion(boolean enabled) {
+        RowStripeExecutor executor = enabled ? RowStripeExecutor.getDefault() : null;
+        synchronized (depthProcessor) {
+            parallelFusion = enabled;
+            depthProcessor.setExecutor(executor);
+            DepthFusionStrategy strategy = depthProcessor.getFusionStrategy();
+            if (strategy instanceof KalmanDepthFilter) {
+                ((KalmanDepthFilter) strategy).setExecutor(executor);
+            }
+        }
+    }
+
+    /**
+     * Selects how the depth plane is encoded for Flutter.
+     *
+     * @param format "float32" for meters fused across frames (the default) or "uint16" to
+     *     forward the sensor's millimeters untouched, at half the size and without fusion or a
+     *     conversion pass
+     */
+    public void setDepthPayloadFormat(String format) {
+        switch (format) {
+            case "float32":
+                depthPayloadFormat = DepthFramePacker.DEPTH_FORMAT_FLOAT32_METERS;
+                break;
+            case "uint16":
+                depthPayloadFormat = DepthFramePacker.DEPTH_FORMAT_UINT16_MILLIMETERS;
+                break;
+            default:
+                Log.w(TAG, "Unknown depth payload format: " + format);
+        }
+    }
+
+    /**
+     * Turns continuous depth processing on or off. While on, every new depth frame is processed
+     * on the GL thread's behalf, thinned out by the rate controller when the pipeline falls
+     * behind. Capture sequences keep working alongside it.
+     */
+    public void setContinuousMode(boolean enabled) {
+        if (enabled && !continuousMode) {
+            rateController.reset();
+        }
+        continuousMode = enabled;
+    }
+
+    public boolean isContinuousMode() {
+        return continuousMode;
+    }
+
+    /**
+     * Sets whether frames processed in continuous mode also snapshot and save their camera image.
+     * Capture sequences and manual captures always save it.
+     */
+    public void setContinuousImages(boolean enabled) {
+        continuousImages = enabled;
+    }
+
+    /**
+     * Sets the end-to-end latency a continuously processed frame may take before the rate
+     * controller lowers the processing rate or resolution.
+     */
+    public void setFrameBudgetMillis(long budgetMillis) {
+        rateController.setFrameBudgetNanos(TimeUnit.MILLISECONDS.toNanos(budgetMillis));
+    }
+
+    public AdaptiveRateController getRateController() {
+        return rateController;
+    }
+
+    /**
+     * Sets whether each processed depth frame is also unprojected into a point cloud and sent to
+     * Flutter: "off", "camera" for camera-space points, or "world" for points in ARCore's world
+     * frame.
+     */
+    public void setPointCloudSpace(String space) {
+        switch (space) {
+            case "off":
+                pointCloudSpace = POINT_CLOUD_OFF;
+                break;
+            case "camera":
+                pointCloudSpace = PointCloudPacker.SPACE_CAMERA;
+                break;
+            case "world":
+                pointCloudSpace = PointCloudPacker.SPACE_WORLD;
+                break;
+            default:
+                Log.w(TAG, "Unknown point cloud space: " + space);
+        }
+    }
+
+    /**
+     * Sets whether processed depth frames are fused into the world-space voxel cloud returned by
+     * {@link #getPointAccumulator()}.
+     */
+    public void setPointAccumulation(boolean enabled) {
+        accumulatePoints = enabled;
+    }
+
+    public VoxelHashAccumulator getPointAccumulator() {
+        return pointAccumulator;
+    }
+
+    /**
+     * Leaves pixels with a raw confidence (0-255) below {@code minConfidence} out of point clouds.
+     */
+    public void setPointCloudMinConfidence(int minConfidence) {
+        synchronized (pointCloudUnprojector) {
+            pointCloudUnprojector.setMinConfidence(minConfidence);
+        }
+    }
+
+    /**
+     * Returns the pool backing camera image snapshots, e.g. to inspect its hit and miss counts.
+     */
+    public CaptureBufferPool getCaptureBufferPool() {
+        return captureBufferPool;
+    }
+
     /**
      * Set the binary messenger for communication with Flutter
      */
@@ -161,6 +463,892 @@ public class SampleDepthRenderer implements SampleRender.Renderer {
         this.binaryMessenger = messenger;
         if (messenger != null) {
             methodChannel = new MethodChannel(messenger, CHANNEL_NAME);
+            methodChannel.setMethodCallHandler((call, result) -> {
+                switch (call.method) {
+                    case "ackDepthFrame":
+                        Number generation = call.argument("generation");
+                        depthFrameStreamHandler.onFrameConsumed(
+                                generation != null ? generation.intValue() : 0);
+                        result.success(null);
+                        break;
+                    case "startCapture":
+                        startCapture(call, result);
+                        break;
+                    case "cancelCapture":
+                        captureScheduler.cancel();
+                        result.success(null);
+                        break;
+                    case "setFusionMode":
+                        setFusionMode(call, result);
+                        break;
+                    case "setContinuousMode":
+                        setContinuousMode(call, result);
+                        break;
+                    case "configurePointAccumulation":
+                        configurePointAccumulation(call, result);
+                        break;
+                    case "getAccumulatedPointCloud":
+                        Boolean changedOnly = call.argument("changedOnly");
+                        getAccumulatedPointCloud(Boolean.TRUE.equals(changedOnly), result);
+                        break;
+                    case "clearPointAccumulation":
+                        pointAccumulator.clear();
+                        result.success(null);
+                        break;
+                    case "configureSurfaceReconstruction":
+                        configureSurfaceReconstruction(call, result);
+                        break;
+                    case "clearSurfaceReconstruction":
+                        tsdfVolume.clear();
+                        result.success(null);
+                        break;
+                    case "extractSurfaceMesh":
+                        extractSurfaceMesh(result);
+                        break;
+                    case "startDataset":
+                        startDataset(call, result);
+                        break;
+                    case "stopDataset":
+                        stopDataset(result);
+                        break;
+                    case "startRecording":
+                        startRecording(call, result);
+                        break;
+                    case "stopRecording":
+                        stopRecording(result);
+                        break;
+                    case "startPlayback":
+                        startPlayback(call, result);
+                        break;
+                    case "stopPlayback":
+                        stopPlayback(result);
+                        break;
+                    case "startReplay":
+                        startReplay(call, result);
+                        break;
+                    case "stopReplay":
+                        stopReplay();
+                        result.success(null);
+                        break;
+                    case "setPngExport":
+                        setPngExport(Boolean.TRUE.equals(call.argument("enabled")));
+                        result.success(null);
+                        break;
+                    default:
+                        result.notImplemented();
+                }
+            });
+            depthFrameChannel =
+                    new BasicMessageChannel<>(messenger, FRAME_CHANNEL_NAME, BinaryCodec.INSTANCE);
+            depthFrameEventChannel = new EventChannel(messenger, FRAME_STREAM_CHANNEL_NAME);
+            pointCloudChannel = new BasicMessageChannel<>(
+                    messenger, POINT_CLOUD_CHANNEL_NAME, BinaryCodec.INSTANCE);
+            depthFrameEventChannel.setStreamHandler(depthFrameStreamHandler);
+        }
+    }
+
+    /**
+     * Starts a capture sequence from Flutter. Arguments: either {@code frameCount} or
+     * {@code durationMillis}, and an optional {@code maxRateHz} (0 or absent for no cap).
+     */
+    private void startCapture(MethodCall call, MethodChannel.Result result) {
+        Number frameCount = call.argument("frameCount");
+        Number durationMillis = call.argument("durationMillis");
+        Number maxRateHz = call.argument("maxRateHz");
+        float rate = maxRateHz != null ? maxRateHz.floatValue() : 0f;
+        try {
+            if (frameCount != null) {
+                captureScheduler.startFrames(frameCount.intValue(), rate);
+            } else if (durationMillis != null) {
+                captureScheduler.startDuration(durationMillis.longValue(), rate);
+            } else {
+                result.error("INVALID_ARGUMENTS", "frameCount or durationMillis is required", null);
+                return;
+            }
+            result.success(null);
+        } catch (IllegalArgumentException e) {
+            result.error("INVALID_ARGUMENTS", e.getMessage(), null);
+        }
+    }
+
+    /**
+     * Changes depth fusion from Flutter. Arguments: an optional {@code mode}, as for
+     * {@link #setFusionMode(String)}, and an optional {@code parallel}.
+     */
+    private void setFusionMode(MethodCall call, MethodChannel.Result result) {
+        String mode = call.argument("mode");
+        Boolean parallel = call.argument("parallel");
+        if (parallel != null) {
+            setParallelFusion(parallel);
+        }
+        if (mode != null) {
+            setFusionMode(mode);
+        }
+        result.success(null);
+    }
+
+    /**
+     * Turns continuous mode on or off from Flutter. Arguments: {@code enabled} and optionally
+     * {@code frameBudgetMillis} and {@code saveImages}.
+     */
+    private void setContinuousMode(MethodCall call, MethodChannel.Result result) {
+        Boolean enabled = call.argument("enabled");
+        Number frameBudgetMillis = call.argument("frameBudgetMillis");
+        Boolean saveImages = call.argument("saveImages");
+        if (enabled == null) {
+            result.error("INVALID_ARGUMENTS", "enabled is required", null);
+            return;
+        }
+        try {
+            if (frameBudgetMillis != null) {
+                setFrameBudgetMillis(frameBudgetMillis.longValue());
+            }
+            if (saveImages != null) {
+                setContinuousImages(saveImages);
+            }
+            setContinuousMode(enabled);
+            result.success(null);
+        } catch (IllegalArgumentException e) {
+            result.error("INVALID_ARGUMENTS", e.getMessage(), null);
+        }
+    }
+
+    /**
+     * Configures point accumulation from Flutter. Arguments: {@code enabled} and optionally
+     * {@code voxelSize} in meters and {@code maxCells}; changing either clears the cloud.
+     */
+    private void configurePointAccumulation(MethodCall call, MethodChannel.Result result) {
+        Boolean enabled = call.argument("enabled");
+        Number voxelSize = call.argument("voxelSize");
+        Number maxCells = call.argument("maxCells");
+        try {
+            if (voxelSize != null || maxCells != null) {
+                float size = voxelSize != null
+                        ? voxelSize.floatValue() : pointAccumulator.getVoxelSize();
+                int cells = maxCells != null ? maxCells.intValue() : pointAccumulator.getMaxCells();
+                pointAccumulator.configure(size, cells);
+            }
+            if (enabled != null) {
+                setPointAccumulation(enabled);
+            }
+            result.success(null);
+        } catch (IllegalArgumentException e) {
+            result.error("INVALID_ARGUMENTS", e.getMessage(), null);
+        }
+    }
+
+    /**
+     * Configures surface reconstruction from Flutter. Arguments: {@code enabled} and optionally
+     * {@code voxelSize} and {@code truncation} in meters and {@code maxBlocks}; changing any of
+     * them clears the volume.
+     */
+    private void configureSurfaceReconstruction(MethodCall call, MethodChannel.Result result) {
+        Boolean enabled = call.argument("enabled");
+        Number voxelSize = call.argument("voxelSize");
+        Number truncation = call.argument("truncation");
+        Number maxBlocks = call.argument("maxBlocks");
+        try {
+            if (voxelSize != null || truncation != null || maxBlocks != null) {
+                tsdfVolume.configure(
+                        voxelSize != null ? voxelSize.floatValue() : tsdfVolume.getVoxelSize(),
+                        truncation != null ? truncation.floatValue() : tsdfVolume.getTruncation(),
+                        maxBlocks != null ? maxBlocks.intValue() : tsdfVolume.getMaxBlocks());
+            }
+            if (enabled != null) {
+                setSurfaceReconstruction(enabled);
+            }
+            result.success(null);
+        } catch (IllegalArgumentException e) {
+            result.error("INVALID_ARGUMENTS", e.getMessage(), null);
+        }
+    }
+
+    /**
+     * Packs the accumulated cloud, or only the voxels changed since the last such call, in the
+     * {@link PointCloudPacker} layout.
+     */
+    private byte[] packAccumulatedPointCloud(boolean changedOnly) {
+        ByteBuffer message;
+        synchronized (pointAccumulator) {
+            FloatBuffer cells = changedOnly
+                    ? pointAccumulator.getChangedCells()
+                    : pointAccumulator.getCloud();
+            message = PointCloudPacker.pack(
+                    lastAccumulatedTimestamp, PointCloudPacker.SPACE_WORLD, cells);
+        }
+        byte[] bytes = new byte[message.remaining()];
+        message.get(bytes);
+        return bytes;
+    }
+
+    /**
+     * Packs the accumulated cloud on the export executor and replies with it; a large cloud
+     * takes long enough to stall the platform thread.
+     */
+    private void getAccumulatedPointCloud(boolean changedOnly, MethodChannel.Result result) {
+        submitExport(new ExportTask(result, "POINT_CLOUD_FAILED",
+                () -> packAccumulatedPointCloud(changedOnly)));
+    }
+
+    /**
+     * Brings the surface mesh up to date on the export executor and replies with it in the
+     * {@link SurfaceMeshPacker} layout.
+     */
+    private void extractSurfaceMesh(MethodChannel.Result result) {
+        submitExport(new ExportTask(result, "MESH_FAILED", () -> {
+            ByteBuffer message;
+            synchronized (surfaceMesher) {
+                int remeshed = surfaceMesher.update();
+                message = SurfaceMeshPacker.pack(
+                        lastIntegratedTimestamp,
+                        remeshed,
+                        surfaceMesher.getVertices(),
+                        surfaceMesher.getNormals(),
+                        surfaceMesher.getIndices());
+            }
+            byte[] bytes = new byte[message.remaining()];
+            message.get(bytes);
+            return bytes;
+        }));
+    }
+
+    private void submitExport(ExportTask task) {
+        try {
+            exportExecutor.execute(task);
+        } catch (RejectedExecutionException e) {
+            // The renderer has been closed
+            task.fail("RENDERER_CLOSED", "The AR view has been disposed");
+        }
+    }
+
+    /**
+     * Work for the export executor that answers one Flutter call, so calls still queued when
+     * the executor shuts down can be answered too.
+     */
+    private final class ExportTask implements Runnable {
+        private final MethodChannel.Result result;
+        private final String errorCode;
+        private final Callable<byte[]> work;
+
+        ExportTask(MethodChannel.Result result, String errorCode, Callable<byte[]> work) {
+            this.result = result;
+            this.errorCode = errorCode;
+            this.work = work;
+        }
+
+        @Override
+        public void run() {
+            byte[] bytes;
+            try {
+                bytes = work.call();
+            } catch (Exception | OutOfMemoryError e) {
+                Log.e(TAG, "Export for Flutter failed: " + errorCode, e);
+                fail(errorCode, e.toString());
+                return;
+            }
+            mainHandler.post(() -> result.success(bytes));
+        }
+
+        void fail(String code, String message) {
+            mainHandler.post(() -> result.error(code, message, null));
+        }
+    }
+
+    /**
+     * Starts writing a dataset from Flutter. Arguments: an optional {@code path}, by default a
+     * new {@code DEPTH_<time>.ads} next to the saved images, {@code embedImages}, whether
+     * records carry the frame's JPEG (default true), and {@code compressDepth}, whether depth and
+     * confidence are stored compressed (default true). Replies with the dataset's path.
+     */
+    private void startDataset(MethodCall call, MethodChannel.Result result) {
+        String path = call.argument("path");
+        Boolean embedImages = call.argument("embedImages");
+        Boolean compressDepth = call.argument("compressDepth");
+        File file;
+        if (path != null) {
+            file = new File(path);
+        } else {
+            File directory = getImageDirectory();
+            if (directory == null) {
+                result.error("NO_DIRECTORY", "No writable directory for the dataset", null);
+                return;
+            }
+            file = new File(directory, "DEPTH_" + System.currentTimeMillis() + ".ads");
+        }
+        try {
+            startDataset(file, embedImages == null || embedImages,
+                    compressDepth == null || compressDepth);
+            result.success(file.getAbsolutePath());
+        } catch (IOException e) {
+            Log.e(TAG, "Could not open dataset " + file, e);
+            result.error("DATASET_FAILED", e.getMessage(), null);
+        }
+    }
+
+    /**
+     * Starts appending every processed capture to a {@link DepthDatasetWriter} file, continuing
+     * it if it already is a dataset. A dataset being written is closed first.
+     *
+     * <p>Records share the image write queue and its overflow policy; with the {@code BLOCK}
+     * policy no record of a processed capture is lost, though a backed-up pipeline turns new
+     * frames away before processing them. With {@code compressDepth} the planes are stored with
+     * {@link DepthDataset#DEPTH_DELTA_DEFLATE}, encoded on the image write thread.
+     */
+    public void startDataset(File file, boolean embedImages, boolean compressDepth)
+            throws IOException {
+        DepthDatasetWriter writer = new DepthDatasetWriter(file, compressDepth
+                ? DepthDataset.DEPTH_DELTA_DEFLATE
+                : DepthDataset.DEPTH_RAW_UINT16);
+        synchronized (datasetLock) {
+            embedDatasetImages = embedImages;
+            DepthDatasetWriter previous = datasetWriter;
+            datasetWriter = writer;
+            if (previous != null) {
+                closeDataset(previous, null);
+            }
+        }
+    }
+
+    /**
+     * Stops the dataset from Flutter, replying with its {@code path} and {@code recordCount}
+     * once the records already queued are written, or with null if none was being written.
+     */
+    private void stopDataset(MethodChannel.Result result) {
+        synchronized (datasetLock) {
+            DepthDatasetWriter writer = datasetWriter;
+            datasetWriter = null;
+            if (writer == null) {
+                result.success(null);
+                return;
+            }
+            closeDataset(writer, () -> {
+                Map<String, Object> summary = new HashMap<>();
+                summary.put("path", writer.getFile().getAbsolutePath());
+                summary.put("recordCount", writer.getRecordCount());
+                mainHandler.post(() -> result.success(summary));
+            });
+        }
+    }
+
+    /** Stops appending captures; the file is closed after the records already queued. */
+    public void stopDataset() {
+        synchronized (datasetLock) {
+            DepthDatasetWriter writer = datasetWriter;
+            datasetWriter = null;
+            if (writer != null) {
+                closeDataset(writer, null);
+            }
+        }
+    }
+
+    /**
+     * Closes the dataset behind its pending records, then runs {@code onClosed} if given. The
+     * close is a control task, so a full queue cannot drop it ahead of those records.
+     */
+    private void closeDataset(DepthDatasetWriter writer, Runnable onClosed) {
+        imageWriteQueue.submitControl(new ImageWriteQueue.WriteTask() {
+            @Override
+            public void write() throws Exception {
+                close();
+            }
+
+            @Override
+            public void discard() {
+                // The footer must be written even when the queue is shutting down
+                close();
+            }
+
+            private void close() {
+                try {
+                    writer.close();
+                    Log.i(TAG, "Dataset " + writer.getFile() + " closed with "
+                            + writer.getRecordCount() + " records");
+                } catch (IOException e) {
+                    Log.e(TAG, "Error closing dataset " + writer.getFile(), e);
+                }
+                if (onClosed != null) {
+                    onClosed.run();
+                }
+            }
+        });
+    }
+
+    /**
+     * Starts an ARCore recording from Flutter. Arguments: an optional {@code path}, by default a
+     * new {@code AR_<time>.mp4} next to the saved images. Replies with the recording's path.
+     */
+    private void startRecording(MethodCall call, MethodChannel.Result result) {
+        String path = call.argument("path");
+        File file;
+        if (path != null) {
+            file = new File(path);
+        } else {
+            File directory = getImageDirectory();
+            if (directory == null) {
+                result.error("NO_DIRECTORY", "No writable directory for the recording", null);
+                return;
+            }
+            file = new File(directory, "AR_" + System.currentTimeMillis() + ".mp4");
+        }
+        try {
+            startRecording(file);
+            result.success(file.getAbsolutePath());
+        } catch (IllegalStateException | RecordingFailedException e) {
+            Log.e(TAG, "Could not start recording to " + file, e);
+            result.error("RECORDING_FAILED", e.getMessage(), null);
+        }
+    }
+
+    /**
+     * Starts recording the session to an MP4 that {@link #startPlayback} can replay: the camera
+     * image and sensor data, ARCore's own depth, and a custom track with the planes of every
+     * capture the pipeline processes, for offline tools:
+     *
+     * <pre>
+     *   0  int32   width
+     *   4  int32   height
+     *   8  int64   depth timestamp
+     *  16  uint16[width * height] depth millimeters, little endian
+     *      uint8[width * height] confidence
+     * </pre>
+     *
+     * <p>The track is sparse: frames the pipeline does not process have no record. Records hold
+     * the planes as processed, so in continuous mode they may be downsampled by the rate
+     * controller; read the size from each record's header.
+     *
+     * <p>The recording stops with {@link #stopRecording} or when the session pauses.
+     *
+     * @throws IllegalStateException If there is no session
+     */
+    public void startRecording(File file) throws RecordingFailedException {
+        synchronized (frameInUseLock) {
+            if (session == null) {
+                throw new IllegalStateException("No AR session to record");
+            }
+            Track depthTrack = new Track(session)
+                    .setId(DEPTH_TRACK_ID)
+                    .setMimeType(DEPTH_TRACK_MIME_TYPE);
+            RecordingConfig recordingConfig = new RecordingConfig(session)
+                    .setMp4DatasetUri(Uri.fromFile(file))
+                    .setAutoStopOnPause(true)
+                    .addTrack(depthTrack);
+            session.startRecording(recordingConfig);
+            sessionRecording = true;
+        }
+        Log.i(TAG, "Recording session to " + file);
+        notifyRecordingState(true);
+    }
+
+    private void stopRecording(MethodChannel.Result result) {
+        try {
+            stopRecording();
+            result.success(null);
+        } catch (RecordingFailedException e) {
+            Log.e(TAG, "Could not stop recording", e);
+            result.error("RECORDING_FAILED", e.getMessage(), null);
+        }
+    }
+
+    /** Stops the session recording, if any, and finishes its MP4. */
+    public void stopRecording() throws RecordingFailedException {
+        synchronized (frameInUseLock) {
+            if (session == null || !sessionRecording) {
+                return;
+            }
+            sessionRecording = false;
+            session.stopRecording();
+        }
+        notifyRecordingState(false);
+    }
+
+    public boolean isRecording() {
+        return sessionRecording;
+    }
+
+    /**
+     * Sets a listener told on the main thread when a session recording starts or stops, after
+     * Flutter has been notified.
+     */
+    public void setRecordingStateListener(RecordingStateListener listener) {
+        this.recordingStateListener = listener;
+    }
+
+    private void notifyRecordingState(boolean recording) {
+        mainHandler.post(() -> {
+            if (methodChannel != null) {
+                Map<String, Object> event = new HashMap<>();
+                event.put("recording", recording);
+                methodChannel.invokeMethod("onRecordingStateChanged", event);
+            }
+            RecordingStateListener listener = recordingStateListener;
+            if (listener != null) {
+                listener.onRecordingStateChanged(recording);
+            }
+        });
+    }
+
+    /**
+     * Adds the capture's planes to the recording's depth track. Called on the GL thread while
+     * the frame is current.
+     */
+    private void recordDepthTrack(Frame frame, DepthCapture capture) {
+        ByteBuffer depth = capture.depth.duplicate();
+        ByteBuffer confidence = capture.confidence.duplicate();
+        depth.rewind();
+        confidence.rewind();
+        int size = DEPTH_TRACK_HEADER_SIZE + depth.remaining() + confidence.remaining();
+        if (depthTrackBuffer == null || depthTrackBuffer.capacity() < size) {
+            depthTrackBuffer = ByteBuffer.allocateDirect(size).order(ByteOrder.LITTLE_ENDIAN);
+        }
+        depthTrackBuffer.clear();
+        depthTrackBuffer.putInt(capture.width);
+        depthTrackBuffer.putInt(capture.height);
+        depthTrackBuffer.putLong(capture.timestamp);
+        depthTrackBuffer.put(depth);
+        depthTrackBuffer.put(confidence);
+        depthTrackBuffer.flip();
+        try {
+            frame.recordTrackData(DEPTH_TRACK_ID, depthTrackBuffer);
+        } catch (IllegalStateException e) {
+            // The recording stopped since this frame was acquired
+            Log.w(TAG, "Could not record depth track for frame " + capture.timestamp, e);
+        }
+    }
+
+    /**
+     * Notices a recording that stopped on its own, e.g. on an I/O error, and a playback that
+     * reached the end of its file. Called on the GL thread after each session update.
+     */
+    private void checkSessionStatus() {
+        if (sessionRecording && session.getRecordingStatus() != RecordingStatus.OK) {
+            sessionRecording = false;
+            Log.w(TAG, "Recording stopped: " + session.getRecordingStatus());
+            notifyRecordingState(false);
+        }
+        if (!playbackFinishedReported
+                && session.getPlaybackStatus() == PlaybackStatus.FINISHED) {
+            playbackFinishedReported = true;
+            mainHandler.post(() -> {
+                if (methodChannel != null) {
+                    methodChannel.invokeMethod("onPlaybackFinished", null);
+                }
+            });
+        }
+    }
+
+    private void startPlayback(MethodCall call, MethodChannel.Result result) {
+        String path = call.argument("path");
+        if (path == null) {
+            result.error("INVALID_ARGUMENTS", "path is required", null);
+            return;
+        }
+        try {
+            startPlayback(new File(path));
+            result.success(null);
+        } catch (IllegalStateException | PlaybackFailedException
+                | CameraNotAvailableException e) {
+            Log.e(TAG, "Could not play back " + path, e);
+            result.error("PLAYBACK_FAILED", e.getMessage(), null);
+        }
+    }
+
+    private void stopPlayback(MethodChannel.Result result) {
+        try {
+            stopPlayback();
+            result.success(null);
+        } catch (IllegalStateException | PlaybackFailedException
+                | CameraNotAvailableException e) {
+            Log.e(TAG, "Could not return to the camera", e);
+            result.error("PLAYBACK_FAILED", e.getMessage(), null);
+        }
+    }
+
+    /**
+     * Plays back an MP4 from {@link #startRecording} in place of the camera, which ARCore leaves
+     * closed meanwhile. Its frames go through the same capture and processing as live ones.
+     * Flutter gets {@code onPlaybackFinished} at the end of the file; the last frame then stays
+     * current until {@link #stopPlayback}.
+     *
+     * @throws IllegalStateException If there is no session
+     */
+    public void startPlayback(File file)
+            throws PlaybackFailedException, CameraNotAvailableException {
+        setPlaybackDataset(Uri.fromFile(file));
+    }
+
+    /** Returns the session from a playback to the live camera. */
+    public void stopPlayback() throws PlaybackFailedException, CameraNotAvailableException {
+        setPlaybackDataset(null);
+    }
+
+    private void setPlaybackDataset(Uri uri)
+            throws PlaybackFailedException, CameraNotAvailableException {
+        synchronized (frameInUseLock) {
+            if (session == null) {
+                throw new IllegalStateException("No AR session to play back into");
+            }
+            // The dataset can only change while the session is paused, which also ends a
+            // recording
+            session.pause();
+            if (sessionRecording) {
+                sessionRecording = false;
+                notifyRecordingState(false);
+            }
+            session.setPlaybackDatasetUri(uri);
+            playbackFinishedReported = false;
+            depthTimestamp = -1;
+            session.resume();
+        }
+    }
+
+    /**
+     * Starts a dataset replay from Flutter. Arguments: {@code path} and {@code realTime}, whether
+     * to keep the recorded pace (default false). Replies with the number of records.
+     */
+    private void startReplay(MethodCall call, MethodChannel.Result result) {
+        String path = call.argument("path");
+        Boolean realTime = call.argument("realTime");
+        if (path == null) {
+            result.error("INVALID_ARGUMENTS", "path is required", null);
+            return;
+        }
+        try {
+            result.success(startReplay(new File(path), Boolean.TRUE.equals(realTime)));
+        } catch (IOException | IllegalStateException e) {
+            Log.e(TAG, "Could not replay " + path, e);
+            result.error("REPLAY_FAILED", e.getMessage(), null);
+        }
+    }
+
+    /**
+     * Feeds the captures of a dataset from {@link #startDataset} through the depth pipeline from
+     * fusion on, as if they had just been taken: they are sent to Flutter and, where enabled,
+     * unprojected, fused into the TSDF volume, appended to a dataset and exported as PNG. Live
+     * frames are not processed meanwhile, and neither the camera nor a session is needed. A
+     * running replay is stopped first.
+     *
+     * <p>At full speed the replay waits for the pipeline instead of dropping captures; in real
+     * time it also keeps the recorded spacing. Flutter gets {@code onReplayFinished} once the
+     * last capture has been handed to the pipeline.
+     *
+     * @return Number of records in the dataset
+     * @throws IllegalStateException If the previous replay does not stop
+     */
+    public int startReplay(File file, boolean realTime) throws IOException {
+        DepthDatasetReplayer previous = replayer;
+        if (previous != null) {
+            previous.stop();
+            try {
+                if (!previous.awaitFinished(1000)) {
+                    throw new IllegalStateException("Previous replay did not stop");
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("Interrupted stopping the previous replay");
+            }
+        }
+        DepthDatasetReplayer next = new DepthDatasetReplayer(new DepthDatasetReader(file),
+                captureBufferPool, PIPELINE_QUEUE_CAPACITY, realTime,
+                this::submitReplayedCapture, this::onReplayFinished);
+        // The fusion stage takes captures from one thread at a time; the lock waits out a frame
+        // the GL thread is processing, and later frames see the replay and skip processing
+        synchronized (frameInUseLock) {
+            replayer = next;
+        }
+        next.start();
+        Log.i(TAG, "Replaying " + next.size() + " captures from " + file);
+        return next.size();
+    }
+
+    /**
+     * Stops the running replay, if any. Captures it already handed over finish processing.
+     */
+    public void stopReplay() {
+        DepthDatasetReplayer current = replayer;
+        if (current != null) {
+            current.stop();
+        }
+    }
+
+    public boolean isReplaying() {
+        return replayer != null;
+    }
+
+    /** Replay sink, on the replay thread. */
+    private void submitReplayedCapture(DepthCapture capture) {
+        // At most PIPELINE_QUEUE_CAPACITY replayed captures are out, so this only fails on
+        // shutdown
+        if (!fusionStage.offer(capture)) {
+            Log.w(TAG, "Depth pipeline closed, dropped replayed frame " + capture.timestamp);
+        }
+    }
+
+    private void onReplayFinished(int replayedFrames, boolean cancelled) {
+        // Hands the fusion stage back to the GL thread after the replay's last offer
+        synchronized (frameInUseLock) {
+            replayer = null;
+        }
+        Log.i(TAG, "Replay " + (cancelled ? "stopped" : "finished") + " after "
+                + replayedFrames + " captures");
+        mainHandler.post(() -> {
+            if (methodChannel != null) {
+                Map<String, Object> event = new HashMap<>();
+                event.put("replayedFrames", replayedFrames);
+                event.put("cancelled", cancelled);
+                methodChannel.invokeMethod("onReplayFinished", event);
+            }
+        });
+    }
+
+    /**
+     * Queues the capture to be appended to the dataset. The capture's planes return to the pool
+     * once the pipeline is done with it, so the record takes pooled copies of them. Callers hold
+     * datasetLock.
+     */
+    private void queueDatasetRecord(DepthDatasetWriter writer, DepthCapture capture) {
+        final ByteBuffer depth = copyToPooledBuffer(capture.depth);
+        final ByteBuffer confidence = copyToPooledBuffer(capture.confidence);
+        final long timestamp = capture.timestamp;
+        final int width = capture.width;
+        final int height = capture.height;
+        final int[] intrinsicsDimensions = capture.intrinsicsDimensions;
+        final float fx = capture.fx;
+        final float fy = capture.fy;
+        final float cx = capture.cx;
+        final float cy = capture.cy;
+        final float[] cameraPose = capture.cameraPose;
+        final float[][] matrices = capture.matrices;
+        final String imagePath = embedDatasetImages ? capture.imagePath : null;
+
+        imageWriteQueue.submit(new ImageWriteQueue.WriteTask() {
+            @Override
+            public void write() throws Exception {
+                try {
+                    // The frame's JPEG task ran before this one; no file means it was dropped
+                    ByteBuffer image = readSavedImage(imagePath);
+                    writer.append(timestamp, width, height, intrinsicsDimensions, fx, fy, cx, cy,
+                            cameraPose, matrices, depth, confidence,
+                            image != null ? DepthDataset.IMAGE_JPEG : DepthDataset.IMAGE_NONE,
+                            image);
+                } catch (IOException e) {
+                    Log.e(TAG, "Error appending frame " + timestamp + " to dataset", e);
+                    throw e;
+                } finally {
+                    releaseBuffers();
+                }
+            }
+
+            @Override
+            public void discard() {
+                Log.w(TAG, "Dataset record for frame " + timestamp + " dropped");
+                releaseBuffers();
+            }
+
+            private void releaseBuffers() {
+                captureBufferPool.release(depth);
+                captureBufferPool.release(confidence);
+            }
+        });
+    }
+
+    /**
+     * Sets whether each processed frame's planes are also saved as {@code DEPTH_<timestamp>.png},
+     * 16-bit grayscale millimeters, and {@code CONF_<timestamp>.png}, 8-bit grayscale, next to
+     * the frame's JPEG. The planes keep the depth image's orientation; the JPEG is rotated.
+     */
+    public void setPngExport(boolean enabled) {
+        exportPng = enabled;
+    }
+
+    /**
+     * Queues the capture's depth and confidence planes to be written as PNG files, from pooled
+     * copies as for dataset records.
+     */
+    private void queuePngExport(DepthCapture capture) {
+        File directory = getImageDirectory();
+        if (directory == null) {
+            return;
+        }
+        final File depthFile = new File(directory, "DEPTH_" + capture.timestamp + ".png");
+        final File confidenceFile = new File(directory, "CONF_" + capture.timestamp + ".png");
+        final ByteBuffer depth = copyToPooledBuffer(capture.depth);
+        final ByteBuffer confidence = copyToPooledBuffer(capture.confidence);
+        final int width = capture.width;
+        final int height = capture.height;
+
+        imageWriteQueue.submit(new ImageWriteQueue.WriteTask() {
+            @Override
+            public void write() throws Exception {
+                try {
+                    writePng(depthFile, depth, width, height, true);
+                    writePng(confidenceFile, confidence, width, height, false);
+                } catch (IOException e) {
+                    Log.e(TAG, "Error exporting PNG planes to " + depthFile, e);
+                    throw e;
+                } finally {
+                    releaseBuffers();
+                }
+            }
+
+            @Override
+            public void discard() {
+                Log.w(TAG, "PNG export of " + depthFile.getName() + " dropped");
+                releaseBuffers();
+            }
+
+            private void releaseBuffers() {
+                captureBufferPool.release(depth);
+                captureBufferPool.release(confidence);
+            }
+        });
+    }
+
+    /**
+     * Streams a plane into a PNG next to {@code file}, then moves it into place so readers never
+     * see a partial file. Only called on the image write thread.
+     */
+    private void writePng(File file, ByteBuffer plane, int width, int height, boolean depth)
+            throws IOException {
+        File partialFile = new File(file.getPath() + ".partial");
+        try (OutputStream out = new BufferedOutputStream(
+                new FileOutputStream(partialFile), 64 * 1024)) {
+            if (depth) {
+                pngEncoder.writeGray16(plane, width, height, out);
+            } else {
+                pngEncoder.writeGray8(plane, width, height, out);
+            }
+        } catch (IOException e) {
+            partialFile.delete();
+            throw e;
+        }
+        if (!partialFile.renameTo(file)) {
+            partialFile.delete();
+            throw new IOException("Could not move PNG into place: " + file);
+        }
+    }
+
+    private ByteBuffer copyToPooledBuffer(ByteBuffer plane) {
+        ByteBuffer source = plane.duplicate();
+        source.rewind();
+        ByteBuffer copy = captureBufferPool.acquire(source.remaining());
+        copy.put(source);
+        copy.flip();
+        return copy;
+    }
+
+    /** Reads a saved image file whole, or returns null if there is none at the path. */
+    private static ByteBuffer readSavedImage(String path) throws IOException {
+        if (path == null) {
+            return null;
+        }
+        File file = new File(path);
+        if (!file.isFile()) {
+            return null;
+        }
+        try (RandomAccessFile in = new RandomAccessFile(file, "r")) {
+            byte[] bytes = new byte[(int) in.length()];
+            in.readFully(bytes);
+            return ByteBuffer.wrap(bytes);
         }
     }
 
@@ -235,6 +1423,7 @@ public class SampleDepthRenderer implements SampleRender.Renderer {
                 
                 // Store reference to current frame for manual processing
                 currentFrame = frame;
+                checkSessionStatus();
                 
                 // Reset the positions of the texture coordinate buffers
                 texCoordsIn.clear();
@@ -299,15 +1488,71 @@ public class SampleDepthRenderer implements SampleRender.Renderer {
                 cameraShader.draw();
                 
                 // Process depth data if camera is tracking
+                // While a dataset replay runs, it feeds the pipeline instead
                 Camera camera = frame.getCamera();
-                if (camera.getTrackingState() == TrackingState.TRACKING) {
-                    // Uncomment if you want to process depth data every frame
-                    // processDepthData(frame);
+                if (camera.getTrackingState() == TrackingState.TRACKING && replayer == null) {
+                    processNewDepth(frame);
                 }
             } catch (Exception e) {
                 Log.e(TAG, "Exception on the OpenGL thread", e);
             }
-        }
+        }
+    }
+
+    /**
+     * Processes the frame's depth if a running capture sequence picks its depth timestamp, or in
+     * continuous mode if it is new and the rate controller takes it. A frame a capture sequence
+     * already took is skipped by processDepthData. The depth image is acquired once and shared by
+     * both checks and the processing. Runs inside onDrawFrame, so it never waits on the frame
+     * lock.
+     */
+    private void processNewDepth(Frame frame) {
+        boolean capturing = captureScheduler.isActive();
+        if (!capturing && !continuousMode) {
+            return;
+        }
+        try (Image depthImage = frame.acquireDepthImage16Bits()) {
+            long timestamp = depthImage.getTimestamp();
+            if (capturing && captureScheduler.shouldCapture(timestamp, System.nanoTime())) {
+                processDepthData(frame, depthImage, 1, false);
+            }
+            if (continuousMode && rateController.shouldProcess(timestamp)) {
+                processDepthData(frame, depthImage, rateController.getDownsample(), true);
+            }
+        } catch (NotYetAvailableException e) {
+            // No depth for this frame yet
+        }
+    }
+
+    /**
+     * Returns the scheduler driving capture sequences. Start and cancel sequences through it from
+     * any thread; frames are captured on the GL thread.
+     */
+    public DepthCaptureScheduler getCaptureScheduler() {
+        return captureScheduler;
+    }
+
+    /**
+     * Sets a listener told on the main thread when a capture sequence ends, after Flutter has
+     * been notified.
+     */
+    public void setCaptureSequenceListener(DepthCaptureScheduler.Listener listener) {
+        this.captureSequenceListener = listener;
+    }
+
+    private void onCaptureSequenceFinished(int capturedFrames, boolean cancelled) {
+        mainHandler.post(() -> {
+            if (methodChannel != null) {
+                Map<String, Object> event = new HashMap<>();
+                event.put("capturedFrames", capturedFrames);
+                event.put("cancelled", cancelled);
+                methodChannel.invokeMethod("onCaptureSequenceFinished", event);
+            }
+            DepthCaptureScheduler.Listener listener = captureSequenceListener;
+            if (listener != null) {
+                listener.onCaptureSequenceFinished(capturedFrames, cancelled);
+            }
+        });
     }
 
     /**
@@ -322,15 +1567,13 @@ public class SampleDepthRenderer implements SampleRender.Renderer {
             }
             
             try {
-                if (currentFrame != null) {
+                if (replayer != null) {
+                    Log.w(TAG, "Cannot process depth data: a dataset replay is running");
+                } else if (currentFrame != null) {
                     Camera camera = currentFrame.getCamera();
                     if (camera.getTrackingState() == TrackingState.TRACKING) {
                         Log.d(TAG, "Processing depth data manually");
-                        
-                  
-                        processDepthData(currentFrame);
-    
-
+                        processDepthData(currentFrame, 1);
                     } else {
                         Log.w(TAG, "Cannot process depth data: camera not tracking");
                     }
@@ -344,35 +1587,86 @@ public class SampleDepthRenderer implements SampleRender.Renderer {
     }
 
     /**
-     * Process depth data from the frame
+     * Acquires the frame's depth image and processes it, see
+     * {@link #processDepthData(Frame, Image, int, boolean)}.
+     */
+    private void processDepthData(Frame frame, int downsample) {
+        try (Image depthImage = frame.acquireDepthImage16Bits()) {
+            processDepthData(frame, depthImage, downsample, false);
+        } catch (NotYetAvailableException e) {
+            // Depth is not available yet
+            Log.w(TAG, "Depth data not yet available");
+        }
+    }
+
+    /**
+     * Process depth data from the frame.
+     *
+     * <p>Only the first pipeline stage runs here: the planes, pose and matrices are copied out and
+     * the images closed. Fusion and serialization happen on {@link #fusionStage} and
+     * {@link #packingStage}, so the caller, normally the GL thread, only pays for the copies.
+     * Must not be called from two threads at once; callers serialize on frameInUseLock.
+     *
+     * @param depthImage The frame's depth image, still open; the caller closes it
+     * @param downsample Divides the output resolution; 1 keeps the sensor's resolution
+     * @param continuous Whether the frame comes from continuous mode, which creates no anchor and
+     *     saves the camera image only if {@link #setContinuousImages} allows it
      */
-    private void processDepthData(Frame frame) {
-        try (Image cameraImage = frame.acquireCameraImage();
-             Image depthImage = frame.acquireDepthImage16Bits();
+    private void processDepthData(
+            Frame frame, Image depthImage, int downsample, boolean continuous) {
+        long acquireStart = System.nanoTime();
+        DepthCapture capture = null;
+        boolean saveImage = !continuous || continuousImages;
+        // A null resource is skipped on close
+        try (Image cameraImage = saveImage ? frame.acquireCameraImage() : null;
              Image confidenceImage = frame.acquireRawDepthConfidenceImage()) {
 
             if (depthTimestamp != depthImage.getTimestamp()) {
                 depthTimestamp = depthImage.getTimestamp();
                 depthReceived = true;
 
-                ShortBuffer depthBuffer = depthImage.getPlanes()[0].getBuffer().asShortBuffer();
-                ByteBuffer confidenceBuffer = confidenceImage.getPlanes()[0].getBuffer();
+                int sensorWidth = depthImage.getWidth();
+                int sensorHeight = depthImage.getHeight();
+                int depthWidth = sensorWidth / downsample;
+                int depthHeight = sensorHeight / downsample;
 
+                // Copy the planes without row padding so the images can be closed right away
+                capture = new DepthCapture();
+                capture.timestamp = depthTimestamp;
+                capture.acquiredNanos = acquireStart;
+                capture.width = depthWidth;
+                capture.height = depthHeight;
+                Image.Plane depthPlane = depthImage.getPlanes()[0];
+                capture.depth = captureBufferPool.acquire(depthWidth * depthHeight * 2);
+                DepthCapture.copyDownsampled(depthPlane.getBuffer(), depthPlane.getRowStride(), 2,
+                        sensorWidth, sensorHeight, downsample, capture.depth);
+                Image.Plane confidencePlane = confidenceImage.getPlanes()[0];
+                capture.confidence = captureBufferPool.acquire(depthWidth * depthHeight);
+                DepthCapture.copyDownsampled(confidencePlane.getBuffer(),
+                        confidencePlane.getRowStride(), 1, sensorWidth, sensorHeight, downsample,
+                        capture.confidence);
 
-                int depthWidth = depthImage.getWidth();
-                int depthHeight = depthImage.getHeight();
-                // Process and average depth across frames
-                FloatBuffer processedDepthBuffer = depthProcessor.processMultiFrameDepth(
-                    depthBuffer, 
-                    confidenceBuffer, 
-                    System.currentTimeMillis(),
-                        depthWidth,
-                        depthHeight
-                );
-            
                 // Get the camera pose matrix - this is the transformation matrix
-                float[] modelMatrix = new float[16];
-                frame.getCamera().getPose().toMatrix(modelMatrix, 0);
+                float[] cameraPose = new float[16];
+                frame.getCamera().getPose().toMatrix(cameraPose, 0);
+                capture.cameraPose = cameraPose;
+
+                CameraIntrinsics intrinsics = frame.getCamera().getTextureIntrinsics();
+
+                // To transform 2D depth pixels into 3D points we retrieve the intrinsic camera parameters
+                // corresponding to the depth miage. See more information about the depth values at
+                int[] intrinsicsDimensions = intrinsics.getImageDimensions();
+                capture.intrinsicsDimensions = intrinsicsDimensions;
+
+                // Picking every n-th sample divides the intrinsics by n
+                capture.fx = intrinsics.getFocalLength()[0] * sensorWidth
+                        / intrinsicsDimensions[0] / downsample;
+                capture.fy = intrinsics.getFocalLength()[1] * sensorHeight
+                        / intrinsicsDimensions[1] / downsample;
+                capture.cx = intrinsics.getPrincipalPoint()[0] * sensorWidth
+                        / intrinsicsDimensions[0] / downsample;
+                capture.cy = intrinsics.getPrincipalPoint()[1] * sensorHeight
+                        / intrinsicsDimensions[1] / downsample;
                 
                 // Get view matrix - another useful transformation matrix
                 float[] viewMatrix = new float[16];
@@ -382,61 +1676,44 @@ public class SampleDepthRenderer implements SampleRender.Renderer {
                 float[] projectionMatrix = new float[16];
                 frame.getCamera().getProjectionMatrix(projectionMatrix, 0, 0.1f, 100.0f);
                 
-                CameraIntrinsics intrinsics = frame.getCamera().getTextureIntrinsics();
-                Image.Plane depthImagePlane = depthImage.getPlanes()[0];
                 final Camera camera = frame.getCamera();
-                Anchor anchor = session.createAnchor(camera.getPose());
-                anchor.getPose().toMatrix(modelMatrix, 0);
-                
-                // Save image asynchronously without waiting
-                saveImageAsync(cameraImage);
-                
-                // Use the last saved image path (might be null if saving is still in progress)
-                String imagePath = lastSavedImagePath;
+                float[] modelMatrix = new float[16];
+                if (continuous) {
+                    // An anchor per frame at this rate would pile up tracked anchors in the
+                    // session; the camera pose gives the same matrix
+                    camera.getPose().toMatrix(modelMatrix, 0);
+                } else {
+                    capture.anchor = session.createAnchor(camera.getPose());
+                    capture.anchor.getPose().toMatrix(modelMatrix, 0);
+                }
                 
+                // Snapshot the camera image under a path derived from this depth timestamp, so the
+                // frame can carry its own image's path before the save has finished. Dart gets
+                // onImageSaved for the same timestamp once the file is in place.
+                if (saveImage) {
+                    snapshotCameraImage(cameraImage, capture);
+                }
 
-                Image.Plane confidenceImagePlane = confidenceImage.getPlanes()[0];
-
-                // To transform 2D depth pixels into 3D points we retrieve the intrinsic camera parameters
-                // corresponding to the depth miage. See more information about the depth values at
-                int[] intrinsicsDimensions = intrinsics.getImageDimensions();
+                // Calculate MVP matrix (P × V × M)
+                float[] mvMatrix = new float[16];
+                float[] mvpMatrix = new float[16];
+                android.opengl.Matrix.multiplyMM(mvMatrix, 0, viewMatrix, 0, modelMatrix, 0);
+                android.opengl.Matrix.multiplyMM(mvpMatrix, 0, projectionMatrix, 0, mvMatrix, 0);
+                capture.matrices =
+                        new float[][] {modelMatrix, viewMatrix, projectionMatrix, mvpMatrix};
 
-                float fx = intrinsics.getFocalLength()[0] * depthWidth / intrinsicsDimensions[0];
-                float fy = intrinsics.getFocalLength()[1] * depthHeight / intrinsicsDimensions[1];
-                float cx =
-                        intrinsics.getPrincipalPoint()[0] * depthWidth / intrinsicsDimensions[0];
-                float cy =
-                        intrinsics.getPrincipalPoint()[1] * depthHeight / intrinsicsDimensions[1];
-                
-                // Convert raw depth images to depth in meters
-                FloatBuffer depthInMeters = convertRawDepthImageToMeters(depthImage, confidenceImage);
-                
-                List<Float> sampledDepth = new ArrayList<>();
-                int stride = 1;
-                
-                for (int i = 0; i < depthInMeters.capacity(); i += stride) {
-                    sampledDepth.add(depthInMeters.get(i));
+                if (sessionRecording) {
+                    recordDepthTrack(frame, capture);
                 }
-                
-                // Log depth point buffer info
-                Log.d(TAG, "Depth 3D points received - capacity: " + sampledDepth.size() + 
-                      ", number of points: " + sampledDepth.size());
-                
-                // Send the depth data to Flutter
-                if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.N) {
-                    sendCompleteDepthDataToFlutter(
-                        sampledDepth.stream().mapToDouble(Float::doubleValue).toArray(),
-                        intrinsicsDimensions,
-                        depthWidth,
-                        depthHeight,
-                        fx,
-                        fy, 
-                        cx, 
-                        cy,
-                        confidenceImage,
-                        imagePath,
-                        depthTimestamp
-                    );
+
+                Log.d(TAG, "Depth frame received - " + depthWidth + "x" + depthHeight);
+
+                // Hand off to the fusion stage; if it is backed up the capture is dropped
+                DepthCapture handedOff = capture;
+                capture = null;
+                if (!fusionStage.offer(handedOff)) {
+                    Log.w(TAG, "Depth pipeline busy, dropped frame " + handedOff.timestamp);
+                    onPipelineDrop();
                 }
             } else {
                 Log.d(TAG, "Skipping depth processing - same timestamp as before: " + depthTimestamp);
@@ -446,200 +1723,395 @@ public class SampleDepthRenderer implements SampleRender.Renderer {
             Log.w(TAG, "Depth data not yet available");
         } catch (Exception e) {
             Log.e(TAG, "Error processing depth data", e);
+        } finally {
+            if (capture != null) {
+                recycleCapture(capture);
+            }
+            acquireTimings.record(System.nanoTime() - acquireStart);
         }
     }
 
     /**
-     * Send both 2D depth data, 3D points, and raw images to Flutter via the method channel
+     * Second pipeline stage: fuses depth across frames with the selected fusion mode, keeps the
+     * result on the capture for delivery to Flutter, then hands the capture to the packing stage.
+     * Frames sent as uint16 carry the raw plane, so fusion is skipped for them.
      */
-    private void sendCompleteDepthDataToFlutter(
-            double[] depthArray,
-            int[] intrinsicsDimensions,
-            int depthWidth,
-            int depthHeight,
-            float fx,
-            float fy,
-            float cx,
-            float cy,
-            Image confidenceImage,
-            String cameraImagePath,
-            long timestamp) {
-            
-        if (methodChannel == null) {
-            Log.w(TAG, "Method channel not available to send depth data");
+    private void fuseDepth(DepthCapture capture) {
+        boolean handedOff = false;
+        try {
+            fuse(capture);
+            handedOff = true;
+            if (!packingStage.offer(capture)) {
+                Log.w(TAG, "Depth packing busy, dropped frame " + capture.timestamp);
+                onPipelineDrop();
+            }
+        } finally {
+            // Fusion threw an error rather than falling back to the raw frame
+            if (!handedOff) {
+                recycleCapture(capture);
+            }
+        }
+    }
+
+    private void fuse(DepthCapture capture) {
+        if (depthPayloadFormat == DepthFramePacker.DEPTH_FORMAT_UINT16_MILLIMETERS) {
             return;
         }
-        
         try {
-            // Create a map with all the depth data
-            Map<String, Object> combinedData = new HashMap<>();
-            combinedData.put("timestamp", timestamp);
-            
-            // Add 2D depth data
-            combinedData.put("intrinsicsWidth", intrinsicsDimensions[0]);
-            combinedData.put("intrinsicsHeight", intrinsicsDimensions[1]);
-            combinedData.put("depthWidth", depthWidth);
-            combinedData.put("depthHeight", depthHeight);
-            combinedData.put("focalLengthX", fx);
-            combinedData.put("focalLengthY", fy);
-            combinedData.put("principalPointX", cx);
-            combinedData.put("principalPointY", cy);
-            combinedData.put("depthImage", depthArray);
-            combinedData.put("imagePath", cameraImagePath);
-            addRawImageDataToMap(combinedData, "confidenceImage", confidenceImage);
-
-            // Add the transformation matrices if available
-            Frame frame = currentFrame;
-            if (frame != null) {
-                float[] modelMatrix = new float[16];
-                float[] viewMatrix = new float[16];
-                float[] projectionMatrix = new float[16];
-                
-                frame.getCamera().getPose().toMatrix(modelMatrix, 0);
-                frame.getCamera().getViewMatrix(viewMatrix, 0);
-                frame.getCamera().getProjectionMatrix(projectionMatrix, 0, 0.1f, 100.0f);
-                
-                // Calculate MVP matrix (P × V × M)
-                float[] mvMatrix = new float[16];
-                float[] mvpMatrix = new float[16];
-                android.opengl.Matrix.multiplyMM(mvMatrix, 0, viewMatrix, 0, modelMatrix, 0);
-                android.opengl.Matrix.multiplyMM(mvpMatrix, 0, projectionMatrix, 0, mvMatrix, 0);
-                
-                // Convert float arrays to lists for sending via method channel
-                List<Float> modelMatrixList = new ArrayList<>();
-                List<Float> viewMatrixList = new ArrayList<>();
-                List<Float> projectionMatrixList = new ArrayList<>();
-                List<Float> mvpMatrixList = new ArrayList<>();
-                
-                for (int i = 0; i < 16; i++) {
-                    modelMatrixList.add(modelMatrix[i]);
-                    viewMatrixList.add(viewMatrix[i]);
-                    projectionMatrixList.add(projectionMatrix[i]);
-                    mvpMatrixList.add(mvpMatrix[i]);
+            FloatBuffer fused = depthProcessor.processMultiFrameDepth(
+                    capture.depthShorts(),
+                    capture.confidence,
+                    // The depth timestamp ages frames the same way live and in a replay
+                    TimeUnit.NANOSECONDS.toMillis(capture.timestamp),
+                    capture.width,
+                    capture.height,
+                    capture.cameraPose,
+                    capture.fx,
+                    capture.fy,
+                    capture.cx,
+                    capture.cy);
+            // The processor overwrites its output on the next frame, which may arrive before
+            // this one is packed
+            FloatBuffer source = fused.duplicate();
+            source.rewind();
+            source.limit(capture.width * capture.height);
+            ByteBuffer fusedDepth = captureBufferPool.acquire(source.remaining() * 4);
+            fusedDepth.order(ByteOrder.LITTLE_ENDIAN);
+            fusedDepth.asFloatBuffer().put(source);
+            capture.fusedDepth = fusedDepth;
+        } catch (RuntimeException e) {
+            // Still deliver the raw frame
+            Log.e(TAG, "Error fusing depth", e);
+        }
+    }
+
+    private void onStageFailure(DepthCapture capture, Throwable failure) {
+        Log.e(TAG, "Depth pipeline stage failed on frame " + capture.timestamp, failure);
+    }
+
+    private void onPipelineDrop() {
+        if (continuousMode && rateController.recordDropped()) {
+            Log.i(TAG, "Depth pipeline dropping frames, now at " + rateController);
+        }
+    }
+
+    /**
+     * Last pipeline stage: packs the capture and sends it to Flutter.
+     */
+    private void packAndSend(DepthCapture capture) {
+        try {
+            sendCompleteDepthDataToFlutter(capture);
+            // Under the BLOCK policy this waits for room here, never on the GL thread; the
+            // dataset record queued next reads the saved JPEG
+            saveImageAsync(capture);
+            synchronized (datasetLock) {
+                // A record queued under the lock lands ahead of its writer's close task. Under
+                // the BLOCK policy, stopping the dataset waits for this submit.
+                DepthDatasetWriter writer = datasetWriter;
+                if (writer != null) {
+                    queueDatasetRecord(writer, capture);
                 }
-                
-                combinedData.put("modelMatrix", modelMatrixList);
-                combinedData.put("viewMatrix", viewMatrixList);
-                combinedData.put("projectionMatrix", projectionMatrixList);
-                combinedData.put("transformMatrix", mvpMatrixList);
             }
-            
-            // Send the combined data to Flutter
+            if (exportPng) {
+                queuePngExport(capture);
+            }
+            if (pointCloudSpace != POINT_CLOUD_OFF || accumulatePoints) {
+                processPointCloud(capture, pointCloudSpace, accumulatePoints);
+            }
+        } finally {
+            if (surfaceReconstruction) {
+                // The integration stage recycles the capture, also when it drops it
+                if (!integrationStage.offer(capture)) {
+                    Log.w(TAG, "Surface integration busy, skipped frame " + capture.timestamp);
+                }
+            } else {
+                recycleCapture(capture);
+            }
+        }
+        long latencyNanos = System.nanoTime() - capture.acquiredNanos;
+        if (continuousMode && rateController.recordLatency(latencyNanos)) {
+            Log.i(TAG, "Depth pipeline latency "
+                    + String.format(Locale.US, "%.1f", latencyNanos / 1e6) + " ms, now at "
+                    + rateController);
+        }
+        Log.d(TAG, "Depth frame " + capture.timestamp + " delivered in "
+                + String.format(Locale.US, "%.1f", latencyNanos / 1e6) + " ms; "
+                + getPipelineTimings());
+    }
+
+    /**
+     * Last, optional pipeline stage: fuses the capture into the TSDF volume.
+     */
+    private void integrateSurface(DepthCapture capture) {
+        try {
+            tsdfVolume.integrate(
+                    capture.depthShorts(),
+                    capture.confidence,
+                    capture.width,
+                    capture.height,
+                    capture.fx,
+                    capture.fy,
+                    capture.cx,
+                    capture.cy,
+                    capture.cameraPose);
+            lastIntegratedTimestamp = capture.timestamp;
+        } finally {
+            recycleCapture(capture);
+        }
+    }
+
+    /**
+     * Sets whether processed depth frames are fused into the TSDF volume returned by
+     * {@link #getTsdfVolume()}.
+     */
+    public void setSurfaceReconstruction(boolean enabled) {
+        surfaceReconstruction = enabled;
+    }
+
+    public TsdfVolume getTsdfVolume() {
+        return tsdfVolume;
+    }
+
+    /**
+     * Incremental mesher over {@link #getTsdfVolume()}. Its buffers can be uploaded directly as
+     * vertex, normal and {@code GL_UNSIGNED_INT} index buffers; lock the mesher while reading
+     * them, since Flutter's extraction requests update it on another thread.
+     */
+    public TsdfMesher getSurfaceMesher() {
+        return surfaceMesher;
+    }
+
+    public PipelineStage<?> getIntegrationStage() {
+        return integrationStage;
+    }
+
+    /**
+     * Returns the capture's planes to the buffer pool.
+     */
+    private void recycleCapture(DepthCapture capture) {
+        captureBufferPool.release(capture.depth);
+        captureBufferPool.release(capture.confidence);
+        capture.depth = null;
+        capture.confidence = null;
+        if (capture.fusedDepth != null) {
+            captureBufferPool.release(capture.fusedDepth);
+            capture.fusedDepth = null;
+        }
+        if (capture.imagePlanes != null) {
+            // Dropped before its image was queued
+            for (ByteBuffer buffer : capture.imagePlanes) {
+                captureBufferPool.release(buffer);
+            }
+            capture.imagePlanes = null;
+        }
+        if (capture.anchor != null) {
+            capture.anchor.detach();
+            capture.anchor = null;
+        }
+        if (capture.replayer != null) {
+            capture.replayer.onCaptureDone();
+            capture.replayer = null;
+        }
+    }
+
+    /**
+     * Per-stage timings of the depth pipeline, e.g.
+     * {@code acquire[n=10 avg=2.10ms ...] fusion[...] packing[...]}.
+     */
+    public String getPipelineTimings() {
+        return "acquire[" + acquireTimings + "] fusion[" + fusionStage.getTimings()
+                + ", dropped " + fusionStage.getDroppedCount() + "] packing["
+                + packingStage.getTimings() + ", dropped " + packingStage.getDroppedCount()
+                + "] integration[" + integrationStage.getTimings() + ", dropped "
+                + integrationStage.getDroppedCount() + "]";
+    }
+
+    /** Timings of the frame-thread stage that copies planes out of ARCore images. */
+    public StageTimings getAcquireTimings() {
+        return acquireTimings;
+    }
+
+    public PipelineStage<?> getFusionStage() {
+        return fusionStage;
+    }
+
+    public PipelineStage<?> getPackingStage() {
+        return packingStage;
+    }
+
+    /**
+     * Send the depth plane, confidence plane, intrinsics and matrices to Flutter as one packed
+     * binary message. See {@link DepthFramePacker} for the layout. Float32 frames carry the fused
+     * depth when fusion succeeded and the raw depth in meters otherwise; uint16 frames always
+     * carry the raw millimeters.
+     */
+    private void sendCompleteDepthDataToFlutter(DepthCapture capture) {
+        if (depthFrameChannel == null) {
+            Log.w(TAG, "Depth frame channel not available to send depth data");
+            return;
+        }
+        
+        try {
+            // The stream takes the message's backing array as is; the message channel needs a
+            // direct buffer
+            boolean direct = !depthFrameStreamHandler.isListening();
+            ByteBuffer message;
+            if (depthPayloadFormat == DepthFramePacker.DEPTH_FORMAT_UINT16_MILLIMETERS) {
+                // Forward the raw millimeters; Dart applies the scale from the header
+                message = DepthFramePacker.packMillimeters(
+                        capture.timestamp,
+                        capture.width,
+                        capture.height,
+                        capture.intrinsicsDimensions,
+                        capture.fx,
+                        capture.fy,
+                        capture.cx,
+                        capture.cy,
+                        capture.matrices,
+                        capture.depthShorts(),
+                        capture.width,
+                        capture.confidence,
+                        capture.width,
+                        capture.imagePath,
+                        direct);
+            } else {
+                message = DepthFramePacker.pack(
+                        capture.timestamp,
+                        capture.width,
+                        capture.height,
+                        capture.intrinsicsDimensions,
+                        capture.fx,
+                        capture.fy,
+                        capture.cx,
+                        capture.cy,
+                        capture.matrices,
+                        capture.fusedDepth != null
+                                ? capture.fusedDepthFloats()
+                                : convertRawDepthToMeters(
+                                        capture.depthShorts(), capture.width,
+                                        capture.width, capture.height),
+                        capture.confidence,
+                        capture.width,
+                        capture.imagePath,
+                        direct);
+            }
+
+            // Stream listeners get the frame with backpressure; otherwise send it unconditionally
+            if (depthFrameStreamHandler.offer(message)) {
+                return;
+            }
+
+            // Send the packed frame to Flutter, copied if the stream was cancelled since packing
+            ByteBuffer directMessage = message.isDirect() ? message : copyToDirect(message);
             Activity activity = getActivity(context);
             if (activity != null) {
                 activity.runOnUiThread(() -> {
                     try {
-                        methodChannel.invokeMethod("onDepthDataReceived", combinedData);
+                        depthFrameChannel.send(directMessage);
                     } catch (Exception e) {
-                        Log.e(TAG, "Error sending complete depth data to Flutter", e);
+                        Log.e(TAG, "Error sending depth frame to Flutter", e);
                     }
                 });
             }
         } catch (Exception e) {
-            Log.e(TAG, "Error processing complete depth data", e);
+            Log.e(TAG, "Error packing depth frame", e);
         }
     }
-    
+
+    private static ByteBuffer copyToDirect(ByteBuffer message) {
+        ByteBuffer copy = ByteBuffer.allocateDirect(message.remaining());
+        copy.put(message.duplicate());
+        copy.rewind();
+        return copy;
+    }
+
     /**
-     * Helper to add raw image data to the map
+     * Unprojects the capture's depth into X, Y, Z, confidence points, fuses them into the
+     * accumulated cloud and sends them to Flutter, as requested. See {@link PointCloudPacker} for
+     * the message layout.
+     *
+     * @param space One of the PointCloudPacker.SPACE_* values, or POINT_CLOUD_OFF to not send
      */
-    private void addRawImageDataToMap(Map<String, Object> map, String key, Image image) {
-        try {
-            Map<String, Object> imageData = new HashMap<>();
-            Log.d(key, image.toString());
-            imageData.put("width", image.getWidth());
-            imageData.put("height", image.getHeight());
-            imageData.put("format", image.getFormat());
-            Log.d(key + " format", String.valueOf(image.getFormat()));
-            
-            List<Map<String, Object>> planes = new ArrayList<>();
-            
-            for (int i = 0; i < image.getPlanes().length; i++) {
-                Image.Plane plane = image.getPlanes()[i];
-                ByteBuffer buffer = plane.getBuffer();
-                
-                // Create a copy of the buffer since the original buffer may be invalid after this method returns
-                ByteBuffer copy = ByteBuffer.allocate(buffer.capacity());
-                copy.order(buffer.order()); // Match the byte order
-                
-                // Make sure we read from the beginning of the original buffer
-                buffer.rewind();
-                copy.put(buffer);
-                copy.rewind();
-                
-                // Convert to byte array for sending through the method channel
-                byte[] bytes = new byte[copy.remaining()];
-                copy.get(bytes);
-                
-                Map<String, Object> planeData = new HashMap<>();
-                planeData.put("bytesPerPixel", plane.getPixelStride());
-                planeData.put("bytesPerRow", plane.getRowStride());
-                planeData.put("data", bytes);
-                
-                planes.add(planeData);
+    private void processPointCloud(DepthCapture capture, int space, boolean accumulate) {
+        ByteBuffer message = null;
+        int pointCount;
+        synchronized (pointCloudUnprojector) {
+            if (accumulate || space == PointCloudPacker.SPACE_WORLD) {
+                FloatBuffer worldPoints = unprojectCapture(capture, capture.cameraPose);
+                if (accumulate) {
+                    int rejected = pointAccumulator.integrate(worldPoints);
+                    lastAccumulatedTimestamp = capture.timestamp;
+                    if (rejected > 0) {
+                        Log.w(TAG, "Point accumulator full, rejected " + rejected + " points");
+                    }
+                }
+                if (space == PointCloudPacker.SPACE_WORLD) {
+                    message = PointCloudPacker.pack(capture.timestamp, space, worldPoints);
+                }
             }
-            
-            imageData.put("planes", planes);
-            map.put(key, imageData);
-            
-            Log.d(TAG, "Added " + key + " data: " + image.getWidth() + "x" + image.getHeight() + 
-                  ", " + planes.size() + " planes");
-        } catch (Exception e) {
-            Log.e(TAG, "Error adding " + key + " data to map", e);
+            if (space == PointCloudPacker.SPACE_CAMERA) {
+                message = PointCloudPacker.pack(
+                        capture.timestamp, space, unprojectCapture(capture, null));
+            }
+            pointCount = pointCloudUnprojector.getPointCount();
+        }
+        Log.d(TAG, "Point cloud of " + pointCount + " points from depth frame "
+                + capture.timestamp);
+
+        if (message == null || pointCloudChannel == null) {
+            return;
         }
+        ByteBuffer pointCloudMessage = message;
+        mainHandler.post(() -> {
+            try {
+                pointCloudChannel.send(pointCloudMessage);
+            } catch (Exception e) {
+                Log.e(TAG, "Error sending point cloud to Flutter", e);
+            }
+        });
     }
 
-    public static final int FLOATS_PER_POINT = 4; // X,Y,Z,confidence.
+    private FloatBuffer unprojectCapture(DepthCapture capture, float[] cameraToWorld) {
+        return pointCloudUnprojector.unproject(
+                capture.depthShorts(),
+                capture.confidence,
+                capture.width,
+                capture.height,
+                capture.fx,
+                capture.fy,
+                capture.cx,
+                capture.cy,
+                cameraToWorld);
+    }
+
+    public static final int FLOATS_PER_POINT = PointCloudUnprojector.FLOATS_PER_POINT;
+
+    // Output of convertRawDepthToMeters, reused across frames; only touched by the packing stage
+    private float[] depthMetersArray;
+    private FloatBuffer depthMetersBuffer;
+
     /**
-     * Converts the raw depth image to depth values in meters
-     * @param depth The depth image
-     * @param confidence The confidence image
-     * @return A FloatBuffer containing depth values in meters for each pixel
+     * Converts raw depth to depth values in meters
+     * @param depthBuffer Little-endian raw depth in millimeters
+     * @param rowStrideShorts Distance between depth rows, in shorts
+     * @return A FloatBuffer containing depth values in meters for each pixel. The buffer is
+     *     reused by the next call.
      */
-    private static FloatBuffer
-    convertRawDepthImageToMeters(Image depth, Image confidence) {
-        // Java uses big endian so change the endianness to ensure
-        // that the depth data is in the correct byte order.
-        final Image.Plane depthImagePlane = depth.getPlanes()[0];
-        ByteBuffer depthByteBufferOriginal = depthImagePlane.getBuffer();
-        ByteBuffer depthByteBuffer = ByteBuffer.allocate(depthByteBufferOriginal.capacity());
-        depthByteBuffer.order(ByteOrder.LITTLE_ENDIAN);
-        while (depthByteBufferOriginal.hasRemaining()) {
-            depthByteBuffer.put(depthByteBufferOriginal.get());
-        }
-        depthByteBuffer.rewind();
-        ShortBuffer depthBuffer = depthByteBuffer.asShortBuffer();
-
-        // Get confidence data
-        final Image.Plane confidenceImagePlane = confidence.getPlanes()[0];
-        ByteBuffer confidenceBufferOriginal = confidenceImagePlane.getBuffer();
-        ByteBuffer confidenceBuffer = ByteBuffer.allocate(confidenceBufferOriginal.capacity());
-        confidenceBuffer.order(ByteOrder.LITTLE_ENDIAN);
-        while (confidenceBufferOriginal.hasRemaining()) {
-            confidenceBuffer.put(confidenceBufferOriginal.get());
+    private FloatBuffer convertRawDepthToMeters(
+            ShortBuffer depthBuffer, int rowStrideShorts, int depthWidth, int depthHeight) {
+        // Create output buffer for depth in meters
+        if (depthMetersArray == null || depthMetersArray.length != depthWidth * depthHeight) {
+            depthMetersArray = new float[depthWidth * depthHeight];
+            depthMetersBuffer = FloatBuffer.wrap(depthMetersArray);
         }
-        confidenceBuffer.rewind();
 
-        // Get dimensions
-        int depthWidth = depth.getWidth();
-        int depthHeight = depth.getHeight();
-        
-        // Create output buffer for depth in meters
-        FloatBuffer depthMeters = FloatBuffer.allocate(depthWidth * depthHeight);
-        Log.d("DEPTH_DATA_1", String.valueOf(depth.getPlanes().length));
-        Log.d("DEPTH_DATA_2", String.valueOf(depth.getPlanes()[0].getBuffer().capacity()));
-//        Log.d("DEPTH_DATA_3", String.valueOf(depth.getPlanes()[0]));
-        // Convert each depth value from millimeters to meters
-        for (int y = 0; y < depthHeight; y++) {
-            for (int x = 0; x < depthWidth; x++) {
-                int idx = y * depthWidth + x;
-                int depthMillimeters = depthBuffer.get(idx);
-               depthMeters.put(idx, depthMillimeters / 1000.0f);}
-            }
+        // Convert each depth value from millimeters to meters, skipping any row padding
+        DepthDecoder.UNGATED.decode(
+                depthBuffer, rowStrideShorts, null, 0,
+                depthWidth, depthMetersArray, 0, depthHeight);
 
-        
-        depthMeters.rewind();
-        return depthMeters;
+        depthMetersBuffer.rewind();
+        return depthMetersBuffer;
     }
     
     /**
@@ -717,14 +2189,27 @@ public class SampleDepthRenderer implements SampleRender.Renderer {
                 glSurfaceView.onPause();
             }
             session.pause();
+            // The recording stops with the session
+            if (sessionRecording) {
+                sessionRecording = false;
+                notifyRecordingState(false);
+            }
         }
     }
 
     /**
-     * Saves Image to disk asynchronously and returns immediately
-     * The result will be available in lastSavedImagePath
+     * Copies the camera image into pooled buffers on the capture and sets the path it will be
+     * saved at, {@code IMG_<timestamp>.jpg}. Called on the frame thread while the image is open;
+     * {@link #saveImageAsync} queues the save later, on the packing stage.
      */
-    private void saveImageAsync(Image imageToSave) {
+    private void snapshotCameraImage(Image imageToSave, DepthCapture capture) {
+        File directory = getImageDirectory();
+        if (directory == null) {
+            return;
+        }
+        capture.imagePath =
+                new File(directory, "IMG_" + capture.timestamp + ".jpg").getAbsolutePath();
+
         // Create a copy of the image data since the original image might be invalidated
         final Image.Plane[] planes = imageToSave.getPlanes();
         final ByteBuffer[] buffers = new ByteBuffer[3];
@@ -732,123 +2217,210 @@ public class SampleDepthRenderer implements SampleRender.Renderer {
         final int[] pixelStrides = new int[3];
         
         for (int i = 0; i < 3; i++) {
-            ByteBuffer originalBuffer = planes[i].getBuffer();
-            buffers[i] = ByteBuffer.allocate(originalBuffer.capacity());
-            buffers[i].order(originalBuffer.order());
+            // Copy through a duplicate so the image's own buffer position is left alone
+            ByteBuffer originalBuffer = planes[i].getBuffer().duplicate();
+            originalBuffer.rewind();
+            buffers[i] = captureBufferPool.acquire(originalBuffer.remaining());
             buffers[i].put(originalBuffer);
             buffers[i].rewind();
             strides[i] = planes[i].getRowStride();
             pixelStrides[i] = planes[i].getPixelStride();
         }
+        capture.imagePlanes = buffers;
+        capture.imageRowStrides = strides;
+        capture.imagePixelStrides = pixelStrides;
+        capture.imageWidth = imageToSave.getWidth();
+        capture.imageHeight = imageToSave.getHeight();
+    }
+
+    /**
+     * Queues the capture's camera snapshot to be saved at its {@code imagePath}, taking over the
+     * snapshot's buffers. Called on the packing stage; it only waits when the queue is full under
+     * the BLOCK policy.
+     *
+     * <p>The file only appears at the path once it is completely written. Completion, failure or
+     * a dropped write is reported to Flutter via {@code onImageSaved}.
+     */
+    private void saveImageAsync(DepthCapture capture) {
+        if (capture.imagePlanes == null) {
+            return;
+        }
+        final ByteBuffer[] buffers = capture.imagePlanes;
+        capture.imagePlanes = null;
+        final int[] strides = capture.imageRowStrides;
+        final int[] pixelStrides = capture.imagePixelStrides;
+        final int width = capture.imageWidth;
+        final int height = capture.imageHeight;
+        final long timestamp = capture.timestamp;
+        final String imagePath = capture.imagePath;
+        final File imageFile = new File(imagePath);
         
-        final int width = imageToSave.getWidth();
-        final int height = imageToSave.getHeight();
-        
-        executorService.execute(() -> {
-            try {
-                String result = saveImageInBackground(
-                    buffers, strides, pixelStrides, width, height);
-                lastSavedImagePath = result;
-                Log.d(TAG, "Image saved asynchronously at: " + result);
-            } catch (Exception e) {
-                Log.e(TAG, "Error saving image asynchronously", e);
-                lastSavedImagePath = null;
+        imageWriteQueue.submit(new ImageWriteQueue.WriteTask() {
+            @Override
+            public void write() throws Exception {
+                try {
+                    saveImageInBackground(
+                        imageFile, buffers, strides, pixelStrides, width, height);
+                    notifyImageSaved(timestamp, imagePath, true);
+                    Log.d(TAG, "Image saved asynchronously at: " + imagePath
+                            + " (buffer pool hits " + captureBufferPool.getHits()
+                            + ", misses " + captureBufferPool.getMisses()
+                            + "; queue latency avg "
+                            + String.format(Locale.US, "%.1f",
+                                    imageWriteQueue.getAverageQueueLatencyMillis())
+                            + " ms, max "
+                            + String.format(Locale.US, "%.1f",
+                                    imageWriteQueue.getMaxQueueLatencyMillis())
+                            + " ms)");
+                } catch (Exception e) {
+                    Log.e(TAG, "Error saving image asynchronously", e);
+                    notifyImageSaved(timestamp, imagePath, false);
+                    throw e;
+                } finally {
+                    releaseBuffers();
+                }
+            }
+
+            @Override
+            public void discard() {
+                Log.w(TAG, "Image write dropped, " + imageWriteQueue.getDroppedCount()
+                        + " dropped so far");
+                notifyImageSaved(timestamp, imagePath, false);
+                releaseBuffers();
+            }
+
+            private void releaseBuffers() {
+                for (ByteBuffer buffer : buffers) {
+                    captureBufferPool.release(buffer);
+                }
             }
         });
     }
 
     /**
-     * Saves Image to disk in a background thread
-     * This method contains the actual image saving logic
+     * Tells Flutter whether the image for the depth frame at {@code timestamp} was saved.
      */
-    private String saveImageInBackground(
-            ByteBuffer[] buffers, int[] strides, int[] pixelStrides,
-            int width, int height) throws IOException {
-        // Use Downloads directory which is more accessible to users
-        File mediaStorageDir = new File(
+    private void notifyImageSaved(long timestamp, String imagePath, boolean saved) {
+        if (methodChannel == null) {
+            return;
+        }
+        Map<String, Object> event = new HashMap<>();
+        event.put("timestamp", timestamp);
+        event.put("imagePath", imagePath);
+        event.put("saved", saved);
+        mainHandler.post(() -> methodChannel.invokeMethod("onImageSaved", event));
+    }
+
+    /**
+     * Returns the directory images are saved to, creating it on first use. Prefers the public
+     * Downloads directory, which is easier for users to reach, and falls back to internal storage.
+     */
+    private File getImageDirectory() {
+        if (imageDirectory != null) {
+            return imageDirectory;
+        }
+        File directory = new File(
                 Environment.getExternalStoragePublicDirectory(Environment.DIRECTORY_DOWNLOADS),
                 "ar_images");
-
-        if (!mediaStorageDir.exists()) {
-            if (!mediaStorageDir.mkdirs()) {
-                Log.e(TAG, "Failed to create directory for image storage");
-                // Try fallback to internal storage
-                mediaStorageDir = new File(context.getFilesDir(), "ar_images");
-                if (!mediaStorageDir.exists() && !mediaStorageDir.mkdirs()) {
-                    Log.e(TAG, "Failed to create fallback directory for image storage");
-                    return null;
-                }
+        if (!directory.exists() && !directory.mkdirs()) {
+            Log.e(TAG, "Failed to create directory for image storage");
+            directory = new File(context.getFilesDir(), "ar_images");
+            if (!directory.exists() && !directory.mkdirs()) {
+                Log.e(TAG, "Failed to create fallback directory for image storage");
+                return null;
             }
         }
+        imageDirectory = directory;
+        return directory;
+    }
 
-        // Create unique filename with timestamp
-        String timeStamp = String.valueOf(System.currentTimeMillis());
-        File imageFile = new File(mediaStorageDir, "IMG_" + timeStamp + ".jpg");
-        String imageOutputPath = imageFile.getAbsolutePath();
-        
-        // Create data arrays for processing
-        byte[] yData = new byte[buffers[0].capacity()];
-        byte[] uData = new byte[buffers[1].capacity()];
-        byte[] vData = new byte[buffers[2].capacity()];
-        
-        // Copy data from buffers
-        buffers[0].get(yData);
-        buffers[1].get(uData);
-        buffers[2].get(vData);
-        
-        // Create bitmap for RGB output
-        android.graphics.Bitmap bitmap = android.graphics.Bitmap.createBitmap(height, width, android.graphics.Bitmap.Config.ARGB_8888);
-        
-        // Convert YUV to RGB and rotate 90 degrees counterclockwise
-        for (int x = 0; x < width; x++) {
-            for (int y = 0; y < height; y++) {
-                // Calculate indices for YUV data
-                int yIndex = y * strides[0] + x;
-                int uvIndex = (y / 2) * strides[1] + (x / 2) * pixelStrides[1];
-                
-                // Get YUV values
-                int yValue = yData[yIndex] & 0xFF;
-                int uValue = uData[uvIndex] & 0xFF;
-                int vValue = vData[uvIndex] & 0xFF;
-                
-                // Convert YUV to RGB
-                uValue = uValue - 128;
-                vValue = vValue - 128;
-                
-                int r = (int)(yValue + 1.402f * vValue);
-                int g = (int)(yValue - 0.344f * uValue - 0.714f * vValue);
-                int b = (int)(yValue + 1.772f * uValue);
-                
-                // Clamp RGB values
-                r = r > 255 ? 255 : (r < 0 ? 0 : r);
-                g = g > 255 ? 255 : (g < 0 ? 0 : g);
-                b = b > 255 ? 255 : (b < 0 ? 0 : b);
-                
-                // Create ARGB color
-                int color = android.graphics.Color.argb(255, r, g, b);
-                
-                // Set pixel in rotated position (90 degrees counterclockwise)
-                bitmap.setPixel(height - 1 - y, x, color);
-            }
+    /**
+     * Configures the image write queue.
+     *
+     * @param depth Maximum number of pending image writes
+     * @param policy What to do when the queue is full: "block" stalls the packing stage until
+     *     there is room, so the pipeline drops new frames before processing them while rendering
+     *     carries on, "dropOldest" discards the oldest pending write, "skip" discards the new one
+     */
+    public void setImageWriteQueue(int depth, String policy) {
+        switch (policy) {
+            case "block":
+                imageWriteQueue.setOverflowPolicy(ImageWriteQueue.OverflowPolicy.BLOCK);
+                break;
+            case "dropOldest":
+                imageWriteQueue.setOverflowPolicy(ImageWriteQueue.OverflowPolicy.DROP_OLDEST);
+                break;
+            case "skip":
+                imageWriteQueue.setOverflowPolicy(ImageWriteQueue.OverflowPolicy.SKIP);
+                break;
+            default:
+                Log.w(TAG, "Unknown image queue policy: " + policy);
         }
-        
-        // Save the bitmap as JPEG
-        try (java.io.FileOutputStream out = new java.io.FileOutputStream(imageFile)) {
+        imageWriteQueue.setCapacity(depth);
+    }
+
+    /**
+     * Returns the queue persisting camera images, e.g. to inspect its latency metrics.
+     */
+    public ImageWriteQueue getImageWriteQueue() {
+        return imageWriteQueue;
+    }
+
+    /**
+     * Saves Image to disk in a background thread
+     * This method contains the actual image saving logic
+     */
+    private void saveImageInBackground(
+            File imageFile, ByteBuffer[] buffers, int[] strides, int[] pixelStrides,
+            int width, int height) throws IOException {
+        // Convert YUV to ARGB and rotate 90 degrees clockwise in one pass, then upload all
+        // pixels with a single call
+        int[] argb = yuvToRgbConverter.convert(
+                buffers[0], strides[0], buffers[1], buffers[2], strides[1], pixelStrides[1],
+                width, height, 90);
+        android.graphics.Bitmap bitmap = obtainRotatedBitmap(height, width);
+        bitmap.setPixels(argb, 0, height, 0, 0, height, width);
+
+        // Save the bitmap as JPEG next to the final path, then move it into place so readers
+        // never see a partial file
+        File partialFile = new File(imageFile.getPath() + ".partial");
+        try (FileOutputStream out = new FileOutputStream(partialFile)) {
             bitmap.compress(android.graphics.Bitmap.CompressFormat.JPEG, 100, out);
-        } finally {
-            bitmap.recycle();
         }
-        
-        return imageOutputPath;
+        if (!partialFile.renameTo(imageFile)) {
+            partialFile.delete();
+            throw new IOException("Could not move image into place: " + imageFile);
+        }
+    }
+
+    /**
+     * Returns the bitmap reused for saved images, recreating it when the size changes. Only
+     * called on the save executor's thread.
+     */
+    private android.graphics.Bitmap obtainRotatedBitmap(int width, int height) {
+        if (rotatedBitmap == null
+                || rotatedBitmap.getWidth() != width
+                || rotatedBitmap.getHeight() != height) {
+            if (rotatedBitmap != null) {
+                rotatedBitmap.recycle();
+            }
+            rotatedBitmap = android.graphics.Bitmap.createBitmap(
+                    width, height, android.graphics.Bitmap.Config.ARGB_8888);
+        }
+        return rotatedBitmap;
     }
 
     /**
      * Clean up resources used by the renderer
      */
     public void close() {
+        captureScheduler.cancel();
+        stopReplay();
         if (session != null) {
+            // Closing the session also finishes a recording
             session.close();
             session = null;
+            sessionRecording = false;
         }
         
         if (cameraShader != null) {
@@ -856,16 +2428,22 @@ public class SampleDepthRenderer implements SampleRender.Renderer {
             cameraShader = null;
         }
 
-        // Shutdown the executor service
-        executorService.shutdown();
-        try {
-            if (!executorService.awaitTermination(1, TimeUnit.SECONDS)) {
-                executorService.shutdownNow();
-            }
-        } catch (InterruptedException e) {
-            executorService.shutdownNow();
-            Thread.currentThread().interrupt();
+        // Let pending image writes finish briefly, then discard the rest; an open dataset still
+        // gets its footer
+        stopDataset();
+        imageWriteQueue.shutdown(1, TimeUnit.SECONDS);
+        if (imageWriteQueue.isTerminated()) {
+            // Otherwise a write still holds the encoder and the deflater is left to the GC
+            pngEncoder.release();
+        }
+        fusionStage.shutdown(500);
+        packingStage.shutdown(500);
+        integrationStage.shutdown(500);
+        for (Runnable pending : exportExecutor.shutdownNow()) {
+            ((ExportTask) pending).fail("RENDERER_CLOSED", "The AR view has been disposed");
         }
+        imageStripeExecutor.shutdown();
+        captureBufferPool.clear();
     }
     
 
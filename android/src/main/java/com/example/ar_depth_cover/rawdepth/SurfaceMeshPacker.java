@@ -0,0 +1,70 @@
+package com.example.ar_depth_cover.rawdepth;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+
+/**
+ * Packs a surface mesh into a single little-endian binary message for Flutter.
+ *
+ * <p>Layout (all offsets in bytes, decoded by {@code SurfaceMesh.fromByteData} in Dart):
+ *
+ * <pre>
+ *   0  int32   magic "AMS1"
+ *   4  int32   version
+ *   8  int64   timestamp of the last depth frame fused into the volume
+ *  16  int32   vertexCount
+ *  20  int32   indexCount, three per triangle
+ *  24  int32   blocks re-meshed by the extraction
+ *  28  int32   reserved
+ *  32  float32[vertexCount * 3] X, Y, Z world positions in meters
+ *      float32[vertexCount * 3] X, Y, Z unit normals
+ *      uint32[indexCount] triangle vertex indices, counter-clockwise seen from outside
+ * </pre>
+ */
+public final class SurfaceMeshPacker {
+    public static final int MAGIC = 0x31534d41; // "AMS1" little endian
+    public static final int VERSION = 1;
+    public static final int HEADER_SIZE = 32;
+
+    private SurfaceMeshPacker() {}
+
+    /**
+     * Packs the data between each buffer's position and limit into a new direct buffer, as
+     * required by {@code BinaryMessenger}.
+     */
+    public static ByteBuffer pack(
+            long timestamp,
+            int remeshedBlocks,
+            FloatBuffer vertices,
+            FloatBuffer normals,
+            IntBuffer indices) {
+        int vertexFloats = vertices.remaining();
+        if (normals.remaining() != vertexFloats) {
+            throw new IllegalArgumentException(
+                    "normals must match vertices: " + normals.remaining() + " != " + vertexFloats);
+        }
+        int indexCount = indices.remaining();
+        ByteBuffer out = ByteBuffer.allocateDirect(
+                HEADER_SIZE + vertexFloats * 2 * 4 + indexCount * 4);
+        out.order(ByteOrder.LITTLE_ENDIAN);
+
+        out.putInt(MAGIC);
+        out.putInt(VERSION);
+        out.putLong(timestamp);
+        out.putInt(vertexFloats / 3);
+        out.putInt(indexCount);
+        out.putInt(remeshedBlocks);
+        out.putInt(0);
+
+        // Bulk copies through little-endian views of the message
+        out.asFloatBuffer().put(vertices.duplicate());
+        out.position(out.position() + vertexFloats * 4);
+        out.asFloatBuffer().put(normals.duplicate());
+        out.position(out.position() + vertexFloats * 4);
+        out.asIntBuffer().put(indices.duplicate());
+        out.rewind();
+        return out;
+    }
+}
@@ -0,0 +1,89 @@
+package com.example.ar_depth_cover.common.helpers;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class AdaptiveRateControllerTest {
+  private static final long MS = 1_000_000L;
+
+  @Test
+  public void overBudget_lowersRateThenResolution() {
+    AdaptiveRateController controller = new AdaptiveRateController(50 * MS, 3, 4);
+    assertEquals(4, controller.getMaxLevel());
+
+    int[][] expected = {{2, 1}, {3, 1}, {3, 2}, {3, 4}};
+    for (int[] step : expected) {
+      assertFalse(controller.recordLatency(80 * MS));
+      assertFalse(controller.recordLatency(80 * MS));
+      assertTrue(controller.recordLatency(80 * MS));
+      assertEquals(step[0], controller.getFrameStride());
+      assertEquals(step[1], controller.getDownsample());
+
+      // Results still arriving from the previous level are ignored
+      for (int i = 0; i < AdaptiveRateController.SETTLE_SAMPLES; i++) {
+        assertFalse(controller.recordLatency(500 * MS));
+      }
+    }
+
+    // Already at the bottom of the ladder
+    for (int i = 0; i < 20; i++) {
+      assertFalse(controller.recordLatency(80 * MS));
+    }
+    assertEquals(4, controller.getLevel());
+  }
+
+  @Test
+  public void headroom_raisesOneLevelAtATime() {
+    AdaptiveRateController controller = new AdaptiveRateController(50 * MS, 2, 2);
+    while (controller.getLevel() < 2) {
+      controller.recordDropped();
+    }
+
+    // Inside the budget but without headroom: stays put
+    for (int i = 0; i < 50; i++) {
+      assertFalse(controller.recordLatency(40 * MS));
+    }
+    assertEquals(2, controller.getLevel());
+
+    int samples = 0;
+    while (!controller.recordLatency(10 * MS)) {
+      samples++;
+      assertTrue(samples < 30);
+    }
+    assertTrue(samples >= AdaptiveRateController.HEADROOM_SAMPLES - 1);
+    assertEquals(1, controller.getLevel());
+    assertEquals(1, controller.getDownsample());
+    assertEquals(2, controller.getFrameStride());
+  }
+
+  @Test
+  public void smoothing_ignoresSingleSpikes() {
+    AdaptiveRateController controller = new AdaptiveRateController(50 * MS, 3, 1);
+    for (int i = 1; i <= 100; i++) {
+      controller.recordLatency((i % 10 == 0 ? 120 : 20) * MS);
+    }
+    assertEquals(0, controller.getLevel());
+  }
+
+  @Test
+  public void shouldProcess_takesEveryNthNewTimestamp() {
+    AdaptiveRateController controller = new AdaptiveRateController(50 * MS, 2, 1);
+    while (controller.getLevel() < 1) {
+      controller.recordDropped();
+    }
+    assertEquals(2, controller.getFrameStride());
+
+    int processed = 0;
+    for (int frame = 0; frame < 20; frame++) {
+      // Drawn frames repeat each depth timestamp twice
+      long depthTimestamp = (frame / 2) * 33 * MS;
+      if (controller.shouldProcess(depthTimestamp)) {
+        processed++;
+      }
+    }
+    assertEquals(5, processed);
+  }
+}
@@ -0,0 +1,68 @@
+package com.example.ar_depth_cover.common.helpers;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import org.junit.Test;
+
+public class BoundedFrameQueueTest {
+  @Test
+  public void offer_dropOldestKeepsMostRecentFrames() {
+    BoundedFrameQueue<Integer> queue =
+        new BoundedFrameQueue<>(2, 1, BoundedFrameQueue.DropPolicy.DROP_OLDEST);
+
+    assertNull(queue.offer(1));
+    assertNull(queue.offer(2));
+    assertEquals(Integer.valueOf(1), queue.offer(3));
+    assertEquals(Integer.valueOf(2), queue.offer(4));
+
+    assertEquals(2, queue.getDroppedFrames());
+    assertEquals(Integer.valueOf(3), queue.poll());
+  }
+
+  @Test
+  public void offer_dropNewestKeepsQueuedFrames() {
+    BoundedFrameQueue<Integer> queue =
+        new BoundedFrameQueue<>(2, 1, BoundedFrameQueue.DropPolicy.DROP_NEWEST);
+
+    queue.offer(1);
+    queue.offer(2);
+    assertEquals(Integer.valueOf(3), queue.offer(3));
+
+    assertEquals(1, queue.getDroppedFrames());
+    assertEquals(Integer.valueOf(1), queue.poll());
+  }
+
+  @Test
+  public void poll_waitsForCreditFromStalledConsumer() {
+    BoundedFrameQueue<Integer> queue =
+        new BoundedFrameQueue<>(2, 1, BoundedFrameQueue.DropPolicy.DROP_OLDEST);
+
+    queue.offer(1);
+    assertEquals(Integer.valueOf(1), queue.poll());
+
+    // The consumer stalls: the queue stays bounded and drops instead of growing
+    for (int frame = 2; frame <= 100; frame++) {
+      queue.offer(frame);
+      assertNull(queue.poll());
+    }
+    assertEquals(2, queue.size());
+    assertEquals(97, queue.getDroppedFrames());
+
+    queue.release();
+    assertEquals(Integer.valueOf(99), queue.poll());
+  }
+
+  @Test
+  public void release_neverRaisesCreditsAboveMaxInFlight() {
+    BoundedFrameQueue<Integer> queue =
+        new BoundedFrameQueue<>(4, 1, BoundedFrameQueue.DropPolicy.DROP_OLDEST);
+
+    // A surplus release, e.g. a late acknowledgement, must not add a credit
+    queue.release();
+    queue.offer(1);
+    queue.offer(2);
+    assertEquals(Integer.valueOf(1), queue.poll());
+    assertNull(queue.poll());
+  }
+}
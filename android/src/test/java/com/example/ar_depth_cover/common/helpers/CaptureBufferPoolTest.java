@@ -0,0 +1,46 @@
+package com.example.ar_depth_cover.common.helpers;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+
+import java.nio.ByteBuffer;
+import org.junit.Test;
+
+public class CaptureBufferPoolTest {
+  @Test
+  public void acquire_reusesReleasedBufferOfSameSize() {
+    CaptureBufferPool pool = new CaptureBufferPool(2);
+
+    ByteBuffer first = pool.acquire(64);
+    first.put((byte) 1);
+    pool.release(first);
+    ByteBuffer second = pool.acquire(64);
+    ByteBuffer otherSize = pool.acquire(32);
+
+    assertSame(first, second);
+    assertEquals(0, second.position());
+    assertEquals(64, second.limit());
+    assertEquals(32, otherSize.capacity());
+    assertEquals(1, pool.getHits());
+    assertEquals(2, pool.getMisses());
+  }
+
+  @Test
+  public void release_keepsAtMostMaxBuffersPerSize() {
+    CaptureBufferPool pool = new CaptureBufferPool(2);
+    ByteBuffer a = pool.acquire(16);
+    ByteBuffer b = pool.acquire(16);
+    ByteBuffer c = pool.acquire(16);
+
+    pool.release(a);
+    pool.release(b);
+    pool.release(c);
+
+    assertEquals(2, pool.getIdleCount());
+    pool.acquire(16);
+    pool.acquire(16);
+    assertNotSame(a, pool.acquire(16));
+    assertEquals(4, pool.getMisses());
+  }
+}
@@ -0,0 +1,78 @@
+package com.example.ar_depth_cover.common.helpers;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.Test;
+
+public class DepthCaptureSchedulerTest {
+  private static final long MS = 1_000_000L;
+
+  private final List<String> finished = new ArrayList<>();
+
+  private DepthCaptureScheduler scheduler() {
+    DepthCaptureScheduler scheduler = new DepthCaptureScheduler();
+    scheduler.setListener(
+        (captured, cancelled) -> finished.add(captured + (cancelled ? " cancelled" : " done")));
+    return scheduler;
+  }
+
+  /**
+   * Draws 60 Hz frames for {@code frames} frames with 30 Hz depth, counting captures.
+   */
+  private static int drive(DepthCaptureScheduler scheduler, int frames) {
+    int captures = 0;
+    for (int frame = 0; frame < frames; frame++) {
+      long now = frame * 16_666_667L;
+      long depthTimestamp = (frame / 2) * 33_333_333L;
+      if (scheduler.shouldCapture(depthTimestamp, now)) {
+        captures++;
+      }
+    }
+    return captures;
+  }
+
+  @Test
+  public void frames_capturesEachNewDepthTimestampOnce() {
+    DepthCaptureScheduler scheduler = scheduler();
+    scheduler.startFrames(10, 0f);
+
+    assertEquals(10, drive(scheduler, 100));
+    assertFalse(scheduler.isActive());
+    assertEquals(List.of("10 done"), finished);
+  }
+
+  @Test
+  public void rateCap_skipsDepthFramesInsideTheInterval() {
+    DepthCaptureScheduler scheduler = scheduler();
+    scheduler.startFrames(1000, 10f);
+
+    // 2 s of 30 Hz depth capped at 10 Hz
+    assertEquals(20, drive(scheduler, 120));
+  }
+
+  @Test
+  public void duration_endsAfterElapsedTime() {
+    DepthCaptureScheduler scheduler = scheduler();
+    scheduler.startDuration(500, 0f);
+
+    // 500 ms of 30 Hz depth
+    assertEquals(15, drive(scheduler, 120));
+    assertEquals(List.of("15 done"), finished);
+  }
+
+  @Test
+  public void cancel_stopsCapturingAndNotifies() {
+    DepthCaptureScheduler scheduler = scheduler();
+    scheduler.startFrames(10, 0f);
+    assertTrue(scheduler.shouldCapture(1, 0));
+
+    scheduler.cancel();
+
+    assertFalse(scheduler.shouldCapture(2, 1));
+    assertEquals(List.of("1 cancelled"), finished);
+  }
+}
@@ -0,0 +1,118 @@
+package com.example.ar_depth_cover.common.helpers;
+
+import com.example.ar_depth_cover.rawdepth.DepthDatasetReader;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+
+/**
+ * JVM benchmark of {@link DepthCodec}: compression ratio and encode/decode throughput against
+ * plain deflate of the raw planes.
+ *
+ * <p>Not part of the unit test run. Launch the {@code main} method from the IDE, or with the
+ * test classpath on the command line. Without arguments it measures synthetic frames; pass
+ * dataset files ({@code .ads}) to measure recorded ones.
+ */
+public class DepthCodecBenchmark {
+  private static final int WARMUP_ITERATIONS = 50;
+  private static final int MEASURED_ITERATIONS = 200;
+
+  public static void main(String[] args) throws IOException, DataFormatException {
+    if (args.length == 0) {
+      for (int[] size : new int[][] {{160, 90}, {640, 480}}) {
+        ByteBuffer depth = DepthCodecTest.syntheticDepth(size[0], size[1]);
+        ByteBuffer confidence = ByteBuffer.allocateDirect(size[0] * size[1]);
+        for (int i = 0; i < size[0] * size[1]; i++) {
+          confidence.put(i, (byte) (depth.getShort(i * 2) == 0 ? 0 : 255));
+        }
+        report(String.format("synthetic %dx%d", size[0], size[1]),
+            depth, confidence, size[0], size[1]);
+      }
+      return;
+    }
+    for (String path : args) {
+      try (DepthDatasetReader reader = new DepthDatasetReader(new File(path))) {
+        // Measure a spread of up to eight records
+        List<Integer> picks = new ArrayList<>();
+        for (int i = 0; i < reader.size(); i += Math.max(1, reader.size() / 8)) {
+          picks.add(i);
+        }
+        for (int index : picks) {
+          DepthDatasetReader.Record record = reader.read(index);
+          report(String.format("%s #%d %dx%d", new File(path).getName(), index, record.width,
+              record.height), record.depth, record.confidence, record.width, record.height);
+        }
+      }
+    }
+  }
+
+  private static void report(
+      String name, ByteBuffer depth, ByteBuffer confidence, int width, int height)
+      throws DataFormatException {
+    System.out.println(name);
+    for (int level : new int[] {1, 6}) {
+      DepthCodec codec = new DepthCodec(level);
+      ByteBuffer encodedDepth = copy(codec.encodeDepth(depth, width, height));
+      int depthBytes = encodedDepth.remaining();
+      int confidenceBytes = codec.encodeConfidence(confidence, width, height).remaining();
+      ByteBuffer decoded = ByteBuffer.allocateDirect(width * height * 2);
+
+      double encodeMicros = measure(() -> codec.encodeDepth(depth, width, height));
+      double decodeMicros = measure(() -> {
+        try {
+          codec.decodeDepth(encodedDepth, width, height, decoded);
+        } catch (DataFormatException e) {
+          throw new IllegalStateException(e);
+        }
+      });
+      int plainBytes = plainDeflate(depth, level);
+      System.out.printf(
+          "  level %d  depth %.2fx (plain deflate %.2fx)  confidence %.2fx"
+              + "  encode %7.1f MB/s  decode %7.1f MB/s%n",
+          level,
+          depth.remaining() / (double) depthBytes,
+          depth.remaining() / (double) plainBytes,
+          confidence.remaining() / (double) confidenceBytes,
+          depth.remaining() / encodeMicros,
+          depth.remaining() / decodeMicros);
+      codec.release();
+    }
+  }
+
+  private static double measure(Runnable kernel) {
+    for (int i = 0; i < WARMUP_ITERATIONS; i++) {
+      kernel.run();
+    }
+    long start = System.nanoTime();
+    for (int i = 0; i < MEASURED_ITERATIONS; i++) {
+      kernel.run();
+    }
+    return (System.nanoTime() - start) / 1e3 / MEASURED_ITERATIONS;
+  }
+
+  /** Size of the raw plane deflated without prediction, the baseline the codec improves on. */
+  private static int plainDeflate(ByteBuffer plane, int level) {
+    byte[] raw = new byte[plane.remaining()];
+    plane.duplicate().get(raw);
+    Deflater deflater = new Deflater(level, true);
+    deflater.setInput(raw);
+    deflater.finish();
+    byte[] out = new byte[raw.length + 1024];
+    int length = 0;
+    while (!deflater.finished()) {
+      length += deflater.deflate(out, length, out.length - length);
+    }
+    deflater.end();
+    return length;
+  }
+
+  private static ByteBuffer copy(ByteBuffer source) {
+    ByteBuffer copy = ByteBuffer.allocate(source.remaining());
+    copy.put(source.duplicate()).flip();
+    return copy;
+  }
+}
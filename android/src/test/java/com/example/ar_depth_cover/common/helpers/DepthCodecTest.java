@@ -0,0 +1,92 @@
+package com.example.ar_depth_cover.common.helpers;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Random;
+import java.util.zip.DataFormatException;
+import org.junit.Test;
+
+public class DepthCodecTest {
+  private static final int WIDTH = 160;
+  private static final int HEIGHT = 90;
+
+  @Test
+  public void planesRoundTripLosslessly() throws DataFormatException {
+    ByteBuffer depth = syntheticDepth(WIDTH, HEIGHT);
+    // Extremes wrap around the prediction in both directions
+    depth.putShort(0, (short) 0xFFFF);
+    depth.putShort(2, (short) 0);
+    depth.putShort(WIDTH * 2, (short) 0xFFFF);
+    ByteBuffer confidence = ByteBuffer.allocate(WIDTH * HEIGHT);
+    Random random = new Random(3);
+    for (int i = 0; i < WIDTH * HEIGHT; i++) {
+      confidence.put(i, (byte) (random.nextInt(4) == 0 ? 0 : 255));
+    }
+
+    DepthCodec codec = new DepthCodec();
+    ByteBuffer encodedDepth = codec.encodeDepth(depth, WIDTH, HEIGHT);
+    ByteBuffer encodedConfidence = codec.encodeConfidence(confidence, WIDTH, HEIGHT);
+    // A smooth scene compresses far below the raw plane
+    assertTrue(encodedDepth.remaining() * 3 < depth.remaining());
+
+    ByteBuffer decodedDepth = ByteBuffer.allocate(WIDTH * HEIGHT * 2);
+    ByteBuffer decodedConfidence = ByteBuffer.allocate(WIDTH * HEIGHT);
+    codec.decodeDepth(encodedDepth, WIDTH, HEIGHT, decodedDepth);
+    codec.decodeConfidence(encodedConfidence, WIDTH, HEIGHT, decodedConfidence);
+    assertEquals(depth, decodedDepth.order(ByteOrder.LITTLE_ENDIAN));
+    assertEquals(confidence, decodedConfidence);
+
+    // Scratch state carries over between frames and sizes
+    ByteBuffer small = syntheticDepth(7, 5);
+    ByteBuffer decodedSmall = ByteBuffer.allocate(7 * 5 * 2);
+    codec.decodeDepth(codec.encodeDepth(small, 7, 5), 7, 5, decodedSmall);
+    assertEquals(small, decodedSmall.order(ByteOrder.LITTLE_ENDIAN));
+    codec.release();
+  }
+
+  @Test
+  public void truncatedStreamIsRejected() {
+    DepthCodec codec = new DepthCodec(6);
+    ByteBuffer encoded = codec.encodeDepth(syntheticDepth(WIDTH, HEIGHT), WIDTH, HEIGHT);
+    encoded.limit(encoded.limit() / 2);
+    try {
+      codec.decodeDepth(encoded, WIDTH, HEIGHT, ByteBuffer.allocate(WIDTH * HEIGHT * 2));
+      fail();
+    } catch (DataFormatException expected) {
+      // The plane cannot be completed
+    }
+    // Decoding a smaller plane than was encoded leaves data over
+    ByteBuffer whole = codec.encodeDepth(syntheticDepth(WIDTH, HEIGHT), WIDTH, HEIGHT);
+    try {
+      codec.decodeDepth(whole, WIDTH, HEIGHT - 1, ByteBuffer.allocate(WIDTH * HEIGHT * 2));
+      fail();
+    } catch (DataFormatException expected) {
+      // The stream holds more samples than asked for
+    }
+    codec.release();
+  }
+
+  /** A tilted floor with a box standing on it and a few invalid zero pixels. */
+  static ByteBuffer syntheticDepth(int width, int height) {
+    ByteBuffer depth = ByteBuffer.allocateDirect(width * height * 2)
+        .order(ByteOrder.LITTLE_ENDIAN);
+    Random random = new Random(width * 31 + height);
+    for (int y = 0; y < height; y++) {
+      for (int x = 0; x < width; x++) {
+        int millimeters = 800 + y * 20 + x * 3 + random.nextInt(3);
+        if (x > width / 3 && x < width / 2 && y > height / 4 && y < height / 2) {
+          millimeters = 600 + random.nextInt(3);
+        }
+        if (random.nextInt(50) == 0) {
+          millimeters = 0;
+        }
+        depth.putShort((y * width + x) * 2, (short) millimeters);
+      }
+    }
+    return depth;
+  }
+}
@@ -0,0 +1,86 @@
+package com.example.ar_depth_cover.common.helpers;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.ShortBuffer;
+import java.util.Random;
+
+/**
+ * JVM benchmark comparing {@link DepthDecoder} with the per-pixel division loops it replaced.
+ *
+ * <p>Not part of the unit test run. Launch the {@code main} method from the IDE, or with the
+ * test classpath on the command line.
+ */
+public class DepthDecoderBenchmark {
+  private static final float CONFIDENCE_THRESHOLD = 0.7f;
+  private static final int WARMUP_ITERATIONS = 200;
+  private static final int MEASURED_ITERATIONS = 1000;
+
+  public static void main(String[] args) {
+    for (int[] size : new int[][] {{160, 90}, {640, 480}}) {
+      int width = size[0];
+      int height = size[1];
+      ShortBuffer depth =
+          ByteBuffer.allocateDirect(width * height * 2)
+              .order(ByteOrder.LITTLE_ENDIAN)
+              .asShortBuffer();
+      ByteBuffer confidence = ByteBuffer.allocateDirect(width * height);
+      Random random = new Random(1);
+      for (int i = 0; i < width * height; i++) {
+        depth.put(i, (short) (300 + random.nextInt(5000)));
+        confidence.put(i, (byte) random.nextInt(256));
+      }
+      float[] out = new float[width * height];
+      DepthDecoder decoder = new DepthDecoder(CONFIDENCE_THRESHOLD);
+
+      System.out.printf("%dx%d%n", width, height);
+      double gatedReference =
+          measure(() -> referenceGated(depth, confidence, width, height, out));
+      double gated =
+          measure(() -> decoder.decode(depth, width, confidence, width, width, out, 0, height));
+      double ungatedReference = measure(() -> referenceUngated(depth, width, height, out));
+      double ungated =
+          measure(() -> DepthDecoder.UNGATED.decode(depth, width, null, 0, width, out, 0, height));
+      System.out.printf(
+          "  gated    division %8.1f us  table %8.1f us  speedup %.2fx%n",
+          gatedReference, gated, gatedReference / gated);
+      System.out.printf(
+          "  ungated  division %8.1f us  table %8.1f us  speedup %.2fx%n",
+          ungatedReference, ungated, ungatedReference / ungated);
+    }
+  }
+
+  private static double measure(Runnable kernel) {
+    for (int i = 0; i < WARMUP_ITERATIONS; i++) {
+      kernel.run();
+    }
+    long start = System.nanoTime();
+    for (int i = 0; i < MEASURED_ITERATIONS; i++) {
+      kernel.run();
+    }
+    return (System.nanoTime() - start) / 1e3 / MEASURED_ITERATIONS;
+  }
+
+  /** The loop previously in MultiFrameDepthProcessor.convertDepthToMeters. */
+  private static void referenceGated(
+      ShortBuffer depth, ByteBuffer confidence, int width, int height, float[] out) {
+    for (int y = 0; y < height; y++) {
+      for (int x = 0; x < width; x++) {
+        int idx = y * width + x;
+        int depthMillimeters = depth.get(idx);
+        float confidenceRatio = (confidence.get(idx) & 0xFF) / 255.0f;
+        out[idx] = confidenceRatio >= CONFIDENCE_THRESHOLD ? depthMillimeters / 1000.0f : Float.NaN;
+      }
+    }
+  }
+
+  /** The loop previously in SampleDepthRenderer.convertRawDepthImageToMeters. */
+  private static void referenceUngated(ShortBuffer depth, int width, int height, float[] out) {
+    for (int y = 0; y < height; y++) {
+      for (int x = 0; x < width; x++) {
+        int idx = y * width + x;
+        out[idx] = depth.get(idx) / 1000.0f;
+      }
+    }
+  }
+}
@@ -0,0 +1,55 @@
+package com.example.ar_depth_cover.common.helpers;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.nio.ByteBuffer;
+import java.nio.ShortBuffer;
+import java.util.Random;
+import org.junit.Test;
+
+public class DepthDecoderTest {
+  @Test
+  public void decode_matchesDivisionAndThreshold() {
+    int width = 64;
+    int height = 16;
+    ShortBuffer depth = ShortBuffer.allocate(width * height);
+    ByteBuffer confidence = ByteBuffer.allocate(width * height);
+    Random random = new Random(5);
+    for (int i = 0; i < width * height; i++) {
+      depth.put(i, (short) random.nextInt(1 << 16));
+      confidence.put(i, (byte) random.nextInt(256));
+    }
+
+    float[] out = new float[width * height];
+    new DepthDecoder(0.7f).decode(depth, width, confidence, width, width, out, 0, height);
+
+    for (int i = 0; i < width * height; i++) {
+      int millimeters = depth.get(i) & 0xFFFF;
+      if ((confidence.get(i) & 0xFF) / 255.0f >= 0.7f) {
+        assertEquals(
+            Float.floatToRawIntBits(millimeters / 1000.0f), Float.floatToRawIntBits(out[i]));
+      } else {
+        assertTrue(Float.isNaN(out[i]));
+      }
+    }
+  }
+
+  @Test
+  public void decode_skipsRowPadding() {
+    int width = 3;
+    int rowStride = 5;
+    ShortBuffer depth = ShortBuffer.wrap(new short[] {1, 2, 3, -1, -1, 4, 5, 6, -1, -1});
+
+    float[] out = new float[width * 2];
+    DepthDecoder.UNGATED.decode(depth, rowStride, null, 0, width, out, 0, 2);
+
+    assertEquals(0.006f, out[5], 1e-7f);
+    assertEquals(0.004f, out[3], 1e-7f);
+  }
+
+  @Test
+  public void toMeters_treatsDepthAsUnsigned() {
+    assertEquals(65.535f, DepthDecoder.toMeters((short) 0xFFFF), 1e-4f);
+  }
+}
@@ -0,0 +1,108 @@
+package com.example.ar_depth_cover.common.helpers;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import org.junit.Test;
+
+public class ImageWriteQueueTest {
+  private final List<String> events = new CopyOnWriteArrayList<>();
+  private final CountDownLatch writerStarted = new CountDownLatch(1);
+  private final CountDownLatch storage = new CountDownLatch(1);
+
+  private ImageWriteQueue.WriteTask task(String name) {
+    return new ImageWriteQueue.WriteTask() {
+      @Override
+      public void write() throws Exception {
+        writerStarted.countDown();
+        // Simulates slow storage until the test releases it
+        storage.await();
+        events.add("write " + name);
+      }
+
+      @Override
+      public void discard() {
+        events.add("discard " + name);
+      }
+    };
+  }
+
+  /** Starts a write that stalls, then fills the queue behind it. */
+  private ImageWriteQueue stalledQueue(ImageWriteQueue.OverflowPolicy policy) throws Exception {
+    ImageWriteQueue queue = new ImageWriteQueue("test-writer", 2, policy);
+    queue.submit(task("a"));
+    assertTrue(writerStarted.await(1, TimeUnit.SECONDS));
+    assertTrue(queue.submit(task("b")));
+    assertTrue(queue.submit(task("c")));
+    return queue;
+  }
+
+  @Test
+  public void submit_skipDiscardsNewWrite() throws Exception {
+    ImageWriteQueue queue = stalledQueue(ImageWriteQueue.OverflowPolicy.SKIP);
+
+    assertFalse(queue.submit(task("d")));
+    storage.countDown();
+    queue.shutdown(1, TimeUnit.SECONDS);
+
+    assertEquals(List.of("discard d", "write a", "write b", "write c"), events);
+    assertEquals(1, queue.getDroppedCount());
+    assertEquals(3, queue.getCompletedCount());
+  }
+
+  @Test
+  public void submit_dropOldestDiscardsOldestPendingWrite() throws Exception {
+    ImageWriteQueue queue = stalledQueue(ImageWriteQueue.OverflowPolicy.DROP_OLDEST);
+
+    assertTrue(queue.submit(task("d")));
+    assertEquals(2, queue.getDepth());
+    storage.countDown();
+    queue.shutdown(1, TimeUnit.SECONDS);
+
+    assertEquals(List.of("discard b", "write a", "write c", "write d"), events);
+    assertEquals(1, queue.getDroppedCount());
+  }
+
+  @Test
+  public void submit_blockWaitsForRoomAndTracksLatency() throws Exception {
+    ImageWriteQueue queue = stalledQueue(ImageWriteQueue.OverflowPolicy.BLOCK);
+
+    Thread producer = new Thread(() -> queue.submit(task("d")));
+    producer.start();
+    producer.join(100);
+    assertTrue("producer should be blocked", producer.isAlive());
+
+    storage.countDown();
+    producer.join(1000);
+    queue.shutdown(1, TimeUnit.SECONDS);
+
+    assertEquals(List.of("write a", "write b", "write c", "write d"), events);
+    assertEquals(0, queue.getDroppedCount());
+    assertEquals(2, queue.getMaxDepth());
+    // b and c waited behind the stalled write for at least the producer's 100 ms
+    assertTrue(queue.getMaxQueueLatencyMillis() >= 100);
+    assertTrue(queue.getAverageQueueLatencyMillis() > 0);
+  }
+
+  @Test
+  public void submitControl_bypassesCapacityAndEviction() throws Exception {
+    ImageWriteQueue queue = stalledQueue(ImageWriteQueue.OverflowPolicy.DROP_OLDEST);
+
+    assertTrue(queue.submitControl(task("close")));
+    // The full queue evicts the oldest write, never the control task
+    assertTrue(queue.submit(task("d")));
+    assertTrue(queue.submit(task("e")));
+    storage.countDown();
+    queue.shutdown(1, TimeUnit.SECONDS);
+
+    assertEquals(
+        List.of("discard b", "discard c", "write a", "write close", "write d", "write e"),
+        events);
+    assertEquals(2, queue.getDroppedCount());
+  }
+}
@@ -0,0 +1,113 @@
+package com.example.ar_depth_cover.common.helpers;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.nio.ByteBuffer;
+import java.nio.FloatBuffer;
+import java.nio.ShortBuffer;
+import java.util.Random;
+import org.junit.Test;
+
+public class KalmanDepthFilterTest {
+  private static final int WIDTH = 16;
+  private static final int HEIGHT = 8;
+
+  private static ByteBuffer confidencePlane(int confidence) {
+    ByteBuffer buffer = ByteBuffer.allocate(WIDTH * HEIGHT);
+    for (int i = 0; i < WIDTH * HEIGHT; i++) {
+      buffer.put(i, (byte) confidence);
+    }
+    return buffer;
+  }
+
+  private static ShortBuffer noisyPlane(Random random, float meters, float sigma) {
+    ShortBuffer buffer = ShortBuffer.allocate(WIDTH * HEIGHT);
+    for (int i = 0; i < WIDTH * HEIGHT; i++) {
+      buffer.put(i, (short) Math.round((meters + random.nextGaussian() * sigma) * 1000));
+    }
+    return buffer;
+  }
+
+  private static FloatBuffer fuse(KalmanDepthFilter filter, ShortBuffer depth, ByteBuffer confidence) {
+    return filter.fuse(depth, confidence, 0, WIDTH, HEIGHT, null, 0f, 0f, 0f, 0f);
+  }
+
+  @Test
+  public void fuse_convergesOnStaticScene() {
+    KalmanDepthFilter filter = new KalmanDepthFilter();
+    ByteBuffer confidence = confidencePlane(255);
+    Random random = new Random(11);
+
+    FloatBuffer result = null;
+    for (int frame = 0; frame < 60; frame++) {
+      result = fuse(filter, noisyPlane(random, 1.5f, 0.02f), confidence);
+    }
+
+    float worstError = 0f;
+    for (int i = 0; i < WIDTH * HEIGHT; i++) {
+      worstError = Math.max(worstError, Math.abs(result.get(i) - 1.5f));
+    }
+    assertTrue("worst error " + worstError, worstError < 0.015f);
+    assertTrue(filter.getVariance(0) < 0.0001f);
+  }
+
+  @Test
+  public void fuse_weightsMeasurementsByConfidence() {
+    KalmanDepthFilter filter = new KalmanDepthFilter();
+
+    fuse(filter, constantPlane(1000), confidencePlane(255));
+    FloatBuffer result = fuse(filter, constantPlane(1020), confidencePlane(64));
+
+    // A low-confidence measurement moves the estimate only slightly
+    assertTrue(result.get(0) > 1.0f);
+    assertTrue(result.get(0) < 1.002f);
+  }
+
+  @Test
+  public void fuse_restartsPixelOnSceneChange() {
+    KalmanDepthFilter filter = new KalmanDepthFilter();
+    ByteBuffer confidence = confidencePlane(255);
+
+    for (int frame = 0; frame < 10; frame++) {
+      fuse(filter, constantPlane(2000), confidence);
+    }
+    FloatBuffer result = fuse(filter, constantPlane(800), confidence);
+
+    assertEquals(0.8f, result.get(0), 1e-6f);
+  }
+
+  @Test
+  public void fuse_ignoresZeroDepthAndZeroConfidence() {
+    KalmanDepthFilter filter = new KalmanDepthFilter();
+
+    FloatBuffer result = fuse(filter, constantPlane(0), confidencePlane(255));
+    assertTrue(Float.isNaN(result.get(0)));
+
+    fuse(filter, constantPlane(1000), confidencePlane(255));
+    result = fuse(filter, constantPlane(3000), confidencePlane(0));
+    assertEquals(1.0f, result.get(0), 1e-6f);
+  }
+
+  @Test
+  public void processor_delegatesToStrategy() {
+    MultiFrameDepthProcessor processor = new MultiFrameDepthProcessor();
+    KalmanDepthFilter filter = new KalmanDepthFilter();
+    processor.setFusionStrategy(filter);
+
+    FloatBuffer result =
+        processor.processMultiFrameDepth(constantPlane(1000), confidencePlane(255), 0, WIDTH, HEIGHT);
+
+    assertSame(fuse(filter, constantPlane(1000), confidencePlane(255)), result);
+    assertEquals(0, processor.getFrameCount());
+  }
+
+  private static ShortBuffer constantPlane(int millimeters) {
+    ShortBuffer buffer = ShortBuffer.allocate(WIDTH * HEIGHT);
+    for (int i = 0; i < WIDTH * HEIGHT; i++) {
+      buffer.put(i, (short) millimeters);
+    }
+    return buffer;
+  }
+}
@@ -0,0 +1,85 @@
+package com.example.ar_depth_cover.common.helpers;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+import org.junit.Test;
+
+public class LongObjectMapTest {
+  @Test
+  public void put_growsAndKeepsEveryEntry() {
+    LongObjectMap<String> map = new LongObjectMap<>(2);
+    for (long key = 0; key < 1000; key++) {
+      map.put(key * 7, "v" + key);
+    }
+    assertEquals(1000, map.size());
+    for (long key = 0; key < 1000; key++) {
+      assertEquals("v" + key, map.get(key * 7));
+    }
+    assertNull(map.get(1));
+
+    map.put(7, "replaced");
+    assertEquals(1000, map.size());
+    assertEquals("replaced", map.get(7));
+  }
+
+  @Test
+  public void remove_keepsProbeRunsReachable() {
+    LongObjectMap<Long> map = new LongObjectMap<>(64);
+    Map<Long, Long> expected = new HashMap<>();
+    Random random = new Random(42);
+    for (int i = 0; i < 20_000; i++) {
+      // A small key range so removals land in the middle of probe runs
+      long key = random.nextInt(200);
+      if (random.nextBoolean()) {
+        map.put(key, key * 3);
+        expected.put(key, key * 3);
+      } else {
+        map.remove(key);
+        expected.remove(key);
+      }
+    }
+    assertEquals(expected.size(), map.size());
+    for (long key = 0; key < 200; key++) {
+      assertEquals(expected.containsKey(key), map.containsKey(key));
+      assertEquals(expected.get(key), map.get(key));
+    }
+  }
+
+  @Test
+  public void nullValues_areStillContained() {
+    LongObjectMap<String> map = new LongObjectMap<>(4);
+    map.put(5, null);
+    assertTrue(map.containsKey(5));
+    assertNull(map.get(5));
+    assertEquals(1, map.size());
+
+    map.clear();
+    assertFalse(map.containsKey(5));
+    assertEquals(0, map.size());
+  }
+
+  @Test
+  public void valueAt_visitsEachValueOnce() {
+    LongObjectMap<Integer> map = new LongObjectMap<>(8);
+    for (int i = 1; i <= 50; i++) {
+      map.put(i * 1_000_003L, i);
+    }
+    int sum = 0;
+    int count = 0;
+    for (int slot = 0; slot < map.slots(); slot++) {
+      Integer value = map.valueAt(slot);
+      if (value != null) {
+        sum += value;
+        count++;
+      }
+    }
+    assertEquals(50, count);
+    assertEquals(50 * 51 / 2, sum);
+  }
+}
@@ -0,0 +1,101 @@
+package com.example.ar_depth_cover.common.helpers;
+
+import java.nio.ByteBuffer;
+import java.nio.ShortBuffer;
+import java.util.Random;
+
+/**
+ * JVM benchmark for serial vs. row-striped {@link MultiFrameDepthProcessor} fusion.
+ *
+ * <p>Not part of the unit test run. Launch the {@code main} method from the IDE, or with the
+ * test classpath on the command line; pass a maximum thread count to override the number of
+ * available cores. Frames come with a camera sliding sideways, so
+ * {@link MultiFrameDepthProcessor.FusionMode#REPROJECTED} runs its reprojection.
+ */
+public class MultiFrameDepthProcessorBenchmark {
+  private static final int WARMUP_FRAMES = 50;
+  private static final int MEASURED_FRAMES = 200;
+
+  public static void main(String[] args) {
+    int maxThreads =
+        args.length > 0 ? Integer.parseInt(args[0]) : Runtime.getRuntime().availableProcessors();
+
+    for (int[] size : new int[][] {{160, 90}, {640, 480}}) {
+      for (MultiFrameDepthProcessor.FusionMode mode : MultiFrameDepthProcessor.FusionMode.values()) {
+        System.out.printf("%dx%d %s%n", size[0], size[1], mode);
+        double serialMillis = 0;
+        for (int threads = 1; threads <= maxThreads; threads *= 2) {
+          double millis = measure(size[0], size[1], mode, threads);
+          if (threads == 1) {
+            serialMillis = millis;
+          }
+          System.out.printf(
+              "  threads=%-2d %8.3f ms/frame  speedup %.2fx%n",
+              threads, millis, serialMillis / millis);
+        }
+      }
+    }
+  }
+
+  private static double measure(
+      int width, int height, MultiFrameDepthProcessor.FusionMode mode, int threads) {
+    ShortBuffer[] depth = new ShortBuffer[4];
+    ByteBuffer[] confidence = new ByteBuffer[depth.length];
+    Random random = new Random(1);
+    for (int f = 0; f < depth.length; f++) {
+      depth[f] = ShortBuffer.allocate(width * height);
+      confidence[f] = ByteBuffer.allocate(width * height);
+      for (int i = 0; i < width * height; i++) {
+        depth[f].put(i, (short) (300 + random.nextInt(5000)));
+        confidence[f].put(i, (byte) random.nextInt(256));
+      }
+    }
+
+    RowStripeExecutor executor = threads > 1 ? new RowStripeExecutor(threads) : null;
+    MultiFrameDepthProcessor processor = new MultiFrameDepthProcessor(5, mode);
+    processor.setExecutor(executor);
+    try {
+      long timestamp = 0;
+      for (int i = 0; i < WARMUP_FRAMES; i++) {
+        fuse(processor, depth, confidence, i, timestamp++, width, height);
+      }
+      long start = System.nanoTime();
+      for (int i = 0; i < MEASURED_FRAMES; i++) {
+        fuse(processor, depth, confidence, i, timestamp++, width, height);
+      }
+      return (System.nanoTime() - start) / 1e6 / MEASURED_FRAMES;
+    } finally {
+      if (executor != null) {
+        executor.shutdown();
+      }
+    }
+  }
+
+  private static void fuse(
+      MultiFrameDepthProcessor processor,
+      ShortBuffer[] depth,
+      ByteBuffer[] confidence,
+      int frame,
+      long timestamp,
+      int width,
+      int height) {
+    // Identity rotation, moving 5 mm along X per frame
+    float[] pose = new float[16];
+    pose[0] = 1f;
+    pose[5] = 1f;
+    pose[10] = 1f;
+    pose[15] = 1f;
+    pose[12] = frame * 0.005f;
+    processor.processMultiFrameDepth(
+        depth[frame % depth.length],
+        confidence[frame % depth.length],
+        timestamp,
+        width,
+        height,
+        pose,
+        width,
+        width,
+        width / 2f,
+        height / 2f);
+  }
+}
@@ -0,0 +1,276 @@
+package com.example.ar_depth_cover.common.helpers;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.nio.ByteBuffer;
+import java.nio.FloatBuffer;
+import java.nio.ShortBuffer;
+import java.util.Random;
+import org.junit.Test;
+
+public class MultiFrameDepthProcessorTest {
+  private static final int WIDTH = 4;
+  private static final int HEIGHT = 3;
+
+  private static ShortBuffer depthPlane(int millimeters) {
+    ShortBuffer buffer = ShortBuffer.allocate(WIDTH * HEIGHT);
+    for (int i = 0; i < WIDTH * HEIGHT; i++) {
+      buffer.put(i, (short) millimeters);
+    }
+    return buffer;
+  }
+
+  private static ByteBuffer confidencePlane(int confidence) {
+    ByteBuffer buffer = ByteBuffer.allocate(WIDTH * HEIGHT);
+    for (int i = 0; i < WIDTH * HEIGHT; i++) {
+      buffer.put(i, (byte) confidence);
+    }
+    return buffer;
+  }
+
+  @Test
+  public void processMultiFrameDepth_weightsRecentFramesHigher() {
+    MultiFrameDepthProcessor processor = new MultiFrameDepthProcessor();
+
+    processor.processMultiFrameDepth(depthPlane(1000), confidencePlane(255), 0, WIDTH, HEIGHT);
+    FloatBuffer result =
+        processor.processMultiFrameDepth(depthPlane(2000), confidencePlane(255), 10, WIDTH, HEIGHT);
+
+    // Weights 1/2 and 2/2: (1 * 0.5 + 2 * 1) / 1.5
+    assertEquals(5f / 3f, result.get(0), 1e-6f);
+  }
+
+  @Test
+  public void processMultiFrameDepth_marksLowConfidenceAsNaN() {
+    MultiFrameDepthProcessor processor = new MultiFrameDepthProcessor();
+
+    FloatBuffer result =
+        processor.processMultiFrameDepth(depthPlane(1000), confidencePlane(10), 0, WIDTH, HEIGHT);
+
+    assertTrue(Float.isNaN(result.get(0)));
+  }
+
+  @Test
+  public void processMultiFrameDepth_evictsOldestWhenFull() {
+    MultiFrameDepthProcessor processor = new MultiFrameDepthProcessor(2);
+
+    processor.processMultiFrameDepth(depthPlane(9000), confidencePlane(255), 0, WIDTH, HEIGHT);
+    processor.processMultiFrameDepth(depthPlane(1000), confidencePlane(255), 1, WIDTH, HEIGHT);
+    FloatBuffer result =
+        processor.processMultiFrameDepth(depthPlane(1000), confidencePlane(255), 2, WIDTH, HEIGHT);
+
+    assertEquals(2, processor.getFrameCount());
+    assertEquals(1f, result.get(5), 1e-6f);
+  }
+
+  @Test
+  public void processMultiFrameDepth_prunesFramesOlderThanOneSecond() {
+    MultiFrameDepthProcessor processor = new MultiFrameDepthProcessor();
+
+    processor.processMultiFrameDepth(depthPlane(9000), confidencePlane(255), 0, WIDTH, HEIGHT);
+    FloatBuffer result =
+        processor.processMultiFrameDepth(depthPlane(1000), confidencePlane(255), 1500, WIDTH, HEIGHT);
+
+    assertEquals(1, processor.getFrameCount());
+    assertEquals(1f, result.get(0), 1e-6f);
+  }
+
+  @Test
+  public void processMultiFrameDepth_reusesOutputBuffer() {
+    MultiFrameDepthProcessor processor = new MultiFrameDepthProcessor();
+
+    FloatBuffer first =
+        processor.processMultiFrameDepth(depthPlane(1000), confidencePlane(255), 0, WIDTH, HEIGHT);
+    FloatBuffer second =
+        processor.processMultiFrameDepth(depthPlane(1000), confidencePlane(255), 1, WIDTH, HEIGHT);
+
+    assertSame(first, second);
+  }
+
+  @Test
+  public void runningSumMode_matchesWeightedWindow() {
+    MultiFrameDepthProcessor window =
+        new MultiFrameDepthProcessor(30, MultiFrameDepthProcessor.FusionMode.WEIGHTED_WINDOW);
+    MultiFrameDepthProcessor running =
+        new MultiFrameDepthProcessor(30, MultiFrameDepthProcessor.FusionMode.RUNNING_SUM);
+    Random random = new Random(42);
+
+    for (int frame = 0; frame < 200; frame++) {
+      ShortBuffer depth = ShortBuffer.allocate(WIDTH * HEIGHT);
+      ByteBuffer confidence = ByteBuffer.allocate(WIDTH * HEIGHT);
+      for (int i = 0; i < WIDTH * HEIGHT; i++) {
+        depth.put(i, (short) (500 + random.nextInt(8000)));
+        confidence.put(i, (byte) random.nextInt(256));
+      }
+      // Occasional gaps long enough to prune several frames at once
+      long timestamp = frame * 33L + (frame / 50) * 900L;
+
+      FloatBuffer expected =
+          window.processMultiFrameDepth(depth, confidence, timestamp, WIDTH, HEIGHT);
+      FloatBuffer actual =
+          running.processMultiFrameDepth(depth, confidence, timestamp, WIDTH, HEIGHT);
+
+      for (int i = 0; i < WIDTH * HEIGHT; i++) {
+        assertEquals(expected.get(i), actual.get(i), 1e-4f);
+      }
+    }
+  }
+
+  @Test
+  public void setFusionMode_rebuildsFromBufferedFrames() {
+    MultiFrameDepthProcessor processor = new MultiFrameDepthProcessor();
+
+    processor.processMultiFrameDepth(depthPlane(1000), confidencePlane(255), 0, WIDTH, HEIGHT);
+    processor.setFusionMode(MultiFrameDepthProcessor.FusionMode.RUNNING_SUM);
+    FloatBuffer result =
+        processor.processMultiFrameDepth(depthPlane(2000), confidencePlane(255), 10, WIDTH, HEIGHT);
+
+    assertEquals(5f / 3f, result.get(0), 1e-6f);
+  }
+
+  @Test
+  public void parallelExecution_isBitIdenticalToSerial() {
+    int width = 160;
+    int height = 90;
+    RowStripeExecutor executor = new RowStripeExecutor(4);
+    try {
+      for (MultiFrameDepthProcessor.FusionMode mode : MultiFrameDepthProcessor.FusionMode.values()) {
+        MultiFrameDepthProcessor serial = new MultiFrameDepthProcessor(8, mode);
+        MultiFrameDepthProcessor parallel = new MultiFrameDepthProcessor(8, mode);
+        parallel.setExecutor(executor);
+        Random random = new Random(7);
+
+        for (int frame = 0; frame < 20; frame++) {
+          ShortBuffer depth = ShortBuffer.allocate(width * height);
+          ByteBuffer confidence = ByteBuffer.allocate(width * height);
+          for (int i = 0; i < width * height; i++) {
+            depth.put(i, (short) (300 + random.nextInt(5000)));
+            confidence.put(i, (byte) random.nextInt(256));
+          }
+
+          FloatBuffer expected =
+              serial.processMultiFrameDepth(depth, confidence, frame * 33L, width, height);
+          FloatBuffer actual =
+              parallel.processMultiFrameDepth(depth, confidence, frame * 33L, width, height);
+
+          for (int i = 0; i < width * height; i++) {
+            assertEquals(
+                Float.floatToRawIntBits(expected.get(i)), Float.floatToRawIntBits(actual.get(i)));
+          }
+        }
+      }
+    } finally {
+      executor.shutdown();
+    }
+  }
+
+  private static final float[] IDENTITY_POSE = {
+    1, 0, 0, 0,
+    0, 1, 0, 0,
+    0, 0, 1, 0,
+    0, 0, 0, 1
+  };
+
+  private static float[] translation(float x, float y, float z) {
+    float[] pose = IDENTITY_POSE.clone();
+    pose[12] = x;
+    pose[13] = y;
+    pose[14] = z;
+    return pose;
+  }
+
+  /**
+   * Renders a step scene seen by a camera translated to {@code cameraX}: a plane 1 m in front of
+   * the origin covering world x < 0, and a background plane at 2 m behind it.
+   */
+  private static ShortBuffer renderStepScene(
+      float cameraX, int width, int height, float fx, float cx) {
+    ShortBuffer depth = ShortBuffer.allocate(width * height);
+    for (int v = 0; v < height; v++) {
+      for (int u = 0; u < width; u++) {
+        float worldXAtOneMeter = cameraX + (u - cx) / fx;
+        depth.put(v * width + u, (short) (worldXAtOneMeter < 0 ? 1000 : 2000));
+      }
+    }
+    return depth;
+  }
+
+  @Test
+  public void reprojectedMode_withStaticCamera_matchesWeightedWindow() {
+    int width = 32;
+    int height = 24;
+    MultiFrameDepthProcessor window =
+        new MultiFrameDepthProcessor(5, MultiFrameDepthProcessor.FusionMode.WEIGHTED_WINDOW);
+    MultiFrameDepthProcessor reprojected =
+        new MultiFrameDepthProcessor(5, MultiFrameDepthProcessor.FusionMode.REPROJECTED);
+    Random random = new Random(3);
+
+    for (int frame = 0; frame < 8; frame++) {
+      ShortBuffer depth = ShortBuffer.allocate(width * height);
+      ByteBuffer confidence = ByteBuffer.allocate(width * height);
+      for (int i = 0; i < width * height; i++) {
+        depth.put(i, (short) (300 + random.nextInt(5000)));
+        confidence.put(i, (byte) random.nextInt(256));
+      }
+
+      FloatBuffer expected = window.processMultiFrameDepth(depth, confidence, frame, width, height);
+      FloatBuffer actual =
+          reprojected.processMultiFrameDepth(
+              depth, confidence, frame, width, height, IDENTITY_POSE, 30f, 30f, 16f, 12f);
+
+      for (int i = 0; i < width * height; i++) {
+        assertEquals(
+            Float.floatToRawIntBits(expected.get(i)), Float.floatToRawIntBits(actual.get(i)));
+      }
+    }
+  }
+
+  @Test
+  public void reprojectedMode_keepsEdgesSharpUnderCameraMotion() {
+    int width = 160;
+    int height = 90;
+    float fx = 120f;
+    float cx = 80f;
+    float cy = 45f;
+    ByteBuffer confidence = confidencePlane(width, height, 255);
+    MultiFrameDepthProcessor window =
+        new MultiFrameDepthProcessor(5, MultiFrameDepthProcessor.FusionMode.WEIGHTED_WINDOW);
+    MultiFrameDepthProcessor reprojected =
+        new MultiFrameDepthProcessor(5, MultiFrameDepthProcessor.FusionMode.REPROJECTED);
+
+    FloatBuffer smeared = null;
+    FloatBuffer compensated = null;
+    float cameraX = 0f;
+    for (int frame = 0; frame < 5; frame++) {
+      cameraX = -0.1f + frame * 0.05f;
+      ShortBuffer depth = renderStepScene(cameraX, width, height, fx, cx);
+      smeared = window.processMultiFrameDepth(depth, confidence, frame, width, height);
+      compensated =
+          reprojected.processMultiFrameDepth(
+              depth, confidence, frame, width, height, translation(cameraX, 0f, 0f),
+              fx, fx, cx, cy);
+    }
+
+    ShortBuffer truth = renderStepScene(cameraX, width, height, fx, cx);
+    int smearedErrors = 0;
+    int compensatedErrors = 0;
+    for (int i = 0; i < width * height; i++) {
+      float expected = truth.get(i) / 1000f;
+      if (Math.abs(smeared.get(i) - expected) > 0.01f) smearedErrors++;
+      if (Math.abs(compensated.get(i) - expected) > 0.01f) compensatedErrors++;
+    }
+
+    assertTrue("window average should smear the edge", smearedErrors > 20 * height);
+    assertEquals(0, compensatedErrors);
+  }
+
+  private static ByteBuffer confidencePlane(int width, int height, int confidence) {
+    ByteBuffer buffer = ByteBuffer.allocate(width * height);
+    for (int i = 0; i < width * height; i++) {
+      buffer.put(i, (byte) confidence);
+    }
+    return buffer;
+  }
+}
@@ -0,0 +1,99 @@
+package com.example.ar_depth_cover.common.helpers;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import org.junit.Test;
+
+public class PipelineStageTest {
+  @Test
+  public void stages_chainAndRecordTimings() throws Exception {
+    List<String> delivered = new CopyOnWriteArrayList<>();
+    CountDownLatch done = new CountDownLatch(5);
+    PipelineStage<String> last =
+        new PipelineStage<>("last", 4, item -> {
+          delivered.add(item);
+          done.countDown();
+        }, null);
+    PipelineStage<String> first =
+        new PipelineStage<>("first", 4, item -> {
+          Thread.sleep(2);
+          last.offer(item.toUpperCase());
+        }, null);
+
+    for (String item : new String[] {"a", "b", "c", "d", "e"}) {
+      while (first.getQueuedCount() == 4) {
+        Thread.sleep(1);
+      }
+      assertTrue(first.offer(item));
+    }
+
+    assertTrue(done.await(2, TimeUnit.SECONDS));
+    assertEquals(List.of("A", "B", "C", "D", "E"), delivered);
+    // Joining the worker makes its last timing visible
+    first.shutdown(1000);
+    last.shutdown(1000);
+    assertEquals(5, first.getTimings().getCount());
+    assertTrue(first.getTimings().getAverageMillis() >= 2);
+  }
+
+  @Test
+  public void offer_dropsAndRecyclesWhenBackedUp() throws Exception {
+    CountDownLatch release = new CountDownLatch(1);
+    CountDownLatch started = new CountDownLatch(1);
+    List<Integer> recycled = new CopyOnWriteArrayList<>();
+    PipelineStage<Integer> stage =
+        new PipelineStage<>("slow", 1, item -> {
+          started.countDown();
+          release.await();
+        }, recycled::add);
+
+    assertTrue(stage.offer(1));
+    assertTrue(started.await(1, TimeUnit.SECONDS));
+    assertTrue(stage.offer(2));
+    // The producer is never blocked by the stalled stage
+    assertFalse(stage.offer(3));
+
+    assertEquals(1, stage.getDroppedCount());
+    assertEquals(List.of(3), recycled);
+
+    release.countDown();
+    stage.shutdown(1000);
+    assertFalse(stage.offer(4));
+    assertTrue(recycled.contains(4));
+  }
+
+  @Test
+  public void run_survivesErrorsAndReportsThem() throws Exception {
+    List<Integer> processed = new CopyOnWriteArrayList<>();
+    List<Integer> failedItems = new CopyOnWriteArrayList<>();
+    CountDownLatch done = new CountDownLatch(1);
+    OutOfMemoryError error = new OutOfMemoryError("test");
+    PipelineStage<Integer> stage =
+        new PipelineStage<>("failing", 2, item -> {
+          if (item == 1) {
+            throw error;
+          }
+          processed.add(item);
+          done.countDown();
+        }, null);
+    stage.setFailureListener((item, failure) -> failedItems.add(item));
+
+    assertTrue(stage.offer(1));
+    assertTrue(stage.offer(2));
+
+    // The worker outlives the error and processes the next item
+    assertTrue(done.await(1, TimeUnit.SECONDS));
+    stage.shutdown(1000);
+    assertEquals(List.of(2), processed);
+    assertEquals(List.of(1), failedItems);
+    assertEquals(1, stage.getFailedCount());
+    assertSame(error, stage.getLastFailure());
+  }
+}
@@ -0,0 +1,77 @@
+package com.example.ar_depth_cover.common.helpers;
+
+import static org.junit.Assert.assertEquals;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.Raster;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Random;
+import javax.imageio.ImageIO;
+import org.junit.Test;
+
+public class PngEncoderTest {
+  @Test
+  public void depthRoundTripsAsSixteenBitGrayscale() throws IOException {
+    // Wide enough to span several IDAT chunks, with extremes in both bytes
+    int width = 300;
+    int height = 200;
+    ByteBuffer depth = DepthCodecTest.syntheticDepth(width, height);
+    depth.putShort(0, (short) 0xFFFF);
+    depth.putShort(2, (short) 0x00FF);
+    depth.putShort(4, (short) 0xFF00);
+
+    PngEncoder encoder = new PngEncoder();
+    BufferedImage image = encodeAndRead(encoder, depth, width, height, true);
+    assertEquals(width, image.getWidth());
+    assertEquals(height, image.getHeight());
+    assertEquals(16, image.getColorModel().getComponentSize(0));
+    Raster raster = image.getRaster();
+    for (int y = 0; y < height; y++) {
+      for (int x = 0; x < width; x++) {
+        assertEquals(depth.getShort((y * width + x) * 2) & 0xFFFF, raster.getSample(x, y, 0));
+      }
+    }
+    encoder.release();
+  }
+
+  @Test
+  public void confidenceRoundTripsAsEightBitGrayscale() throws IOException {
+    PngEncoder encoder = new PngEncoder(9);
+    Random random = new Random(5);
+    // The encoder is reused across sizes
+    for (int[] size : new int[][] {{1, 1}, {7, 3}, {160, 90}}) {
+      int width = size[0];
+      int height = size[1];
+      ByteBuffer confidence = ByteBuffer.allocate(width * height);
+      for (int i = 0; i < width * height; i++) {
+        confidence.put(i, (byte) (i % 7 == 0 ? random.nextInt(256) : 255));
+      }
+      BufferedImage image = encodeAndRead(encoder, confidence, width, height, false);
+      assertEquals(8, image.getColorModel().getComponentSize(0));
+      Raster raster = image.getRaster();
+      for (int y = 0; y < height; y++) {
+        for (int x = 0; x < width; x++) {
+          assertEquals(confidence.get(y * width + x) & 0xFF, raster.getSample(x, y, 0));
+        }
+      }
+    }
+    encoder.release();
+  }
+
+  private static BufferedImage encodeAndRead(
+      PngEncoder encoder, ByteBuffer plane, int width, int height, boolean sixteenBit)
+      throws IOException {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    if (sixteenBit) {
+      // Samples are read as little endian whatever the buffer's own byte order
+      encoder.writeGray16(plane.duplicate().order(ByteOrder.BIG_ENDIAN), width, height, out);
+    } else {
+      encoder.writeGray8(plane, width, height, out);
+    }
+    return ImageIO.read(new ByteArrayInputStream(out.toByteArray()));
+  }
+}
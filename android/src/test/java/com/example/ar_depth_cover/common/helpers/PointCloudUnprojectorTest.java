@@ -0,0 +1,60 @@
+package com.example.ar_depth_cover.common.helpers;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.nio.ByteBuffer;
+import java.nio.FloatBuffer;
+import java.nio.ShortBuffer;
+import org.junit.Test;
+
+public class PointCloudUnprojectorTest {
+  // 2x2 image, principal point between the pixels, 1 m in front of the camera
+  private static final ShortBuffer DEPTH = ShortBuffer.wrap(new short[] {1000, 0, 2000, 1000});
+  private static final ByteBuffer CONFIDENCE =
+      ByteBuffer.wrap(new byte[] {(byte) 255, (byte) 255, 10, (byte) 255});
+
+  @Test
+  public void unproject_cameraSpaceSkipsInvalidPixels() {
+    PointCloudUnprojector unprojector = new PointCloudUnprojector();
+    unprojector.setMinConfidence(50);
+
+    FloatBuffer points =
+        unprojector.unproject(DEPTH, CONFIDENCE, 2, 2, 2f, 2f, 0.5f, 0.5f, null);
+
+    assertTrue(points.isDirect());
+    // Pixel 1 has no depth and pixel 2 too little confidence
+    assertEquals(2, unprojector.getPointCount());
+    assertEquals(8, points.remaining());
+    // (0, 0): left and up of the principal point
+    assertEquals(-0.25f, points.get(0), 1e-6f);
+    assertEquals(0.25f, points.get(1), 1e-6f);
+    assertEquals(-1f, points.get(2), 1e-6f);
+    assertEquals(1f, points.get(3), 1e-6f);
+    // (1, 1): right and down
+    assertEquals(0.25f, points.get(4), 1e-6f);
+    assertEquals(-0.25f, points.get(5), 1e-6f);
+    assertEquals(-1f, points.get(6), 1e-6f);
+  }
+
+  @Test
+  public void unproject_worldSpaceAppliesPose() {
+    // Camera at (1, 2, 3), turned 90 degrees left about +Y: its -Z looks down world -X
+    float[] pose = {
+      0, 0, -1, 0,
+      0, 1, 0, 0,
+      1, 0, 0, 0,
+      1, 2, 3, 1,
+    };
+    PointCloudUnprojector unprojector = new PointCloudUnprojector();
+
+    FloatBuffer points =
+        unprojector.unproject(DEPTH, CONFIDENCE, 2, 2, 2f, 2f, 0.5f, 0.5f, pose);
+
+    assertEquals(3, unprojector.getPointCount());
+    // Camera point (-0.25, 0.25, -1)
+    assertEquals(0f, points.get(0), 1e-6f);
+    assertEquals(2.25f, points.get(1), 1e-6f);
+    assertEquals(3.25f, points.get(2), 1e-6f);
+  }
+}
@@ -0,0 +1,51 @@
+package com.example.ar_depth_cover.common.helpers;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class SpscQueueTest {
+  @Test
+  public void offer_rejectsWhenFullAndWrapsAround() {
+    SpscQueue<Integer> queue = new SpscQueue<>(3);
+    assertEquals(4, queue.capacity());
+
+    for (int round = 0; round < 3; round++) {
+      for (int i = 0; i < 4; i++) {
+        assertTrue(queue.offer(round * 10 + i));
+      }
+      assertFalse(queue.offer(99));
+      for (int i = 0; i < 4; i++) {
+        assertEquals(Integer.valueOf(round * 10 + i), queue.poll());
+      }
+      assertNull(queue.poll());
+    }
+  }
+
+  @Test
+  public void handoff_preservesOrderAcrossThreads() throws Exception {
+    SpscQueue<Integer> queue = new SpscQueue<>(8);
+    int count = 20_000;
+    Thread producer = new Thread(() -> {
+      for (int i = 0; i < count; i++) {
+        while (!queue.offer(i)) {
+          Thread.yield();
+        }
+      }
+    });
+    producer.start();
+
+    for (int expected = 0; expected < count; expected++) {
+      Integer item;
+      while ((item = queue.poll()) == null) {
+        Thread.yield();
+      }
+      assertEquals(expected, item.intValue());
+    }
+    producer.join();
+    assertTrue(queue.isEmpty());
+  }
+}
@@ -0,0 +1,233 @@
+package com.example.ar_depth_cover.common.helpers;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.nio.ByteBuffer;
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+import java.nio.ShortBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import org.junit.Test;
+
+public class TsdfMesherTest {
+  private static final int SIZE = 128;
+  private static final float FOCAL = 128f;
+  private static final float CENTER = 64f;
+
+  @Test
+  public void update_sphereSeenFromAllSidesIsClosed() {
+    float[] center = {0.05f, -0.02f, -1.5f};
+    float radius = 0.3f;
+    TsdfVolume volume = new TsdfVolume(0.02f, 0.08f, 10_000);
+    for (float[] pose : posesAround(center, 1.5f)) {
+      integrate(volume, renderSphere(pose, center, radius), pose);
+    }
+
+    TsdfMesher mesher = new TsdfMesher(volume);
+    assertTrue(mesher.update() > 0);
+    FloatBuffer vertices = mesher.getVertices();
+    FloatBuffer normals = mesher.getNormals();
+    IntBuffer indices = mesher.getIndices();
+    assertEquals(mesher.getVertexCount() * 3, vertices.limit());
+    assertEquals(mesher.getIndexCount(), indices.limit());
+    assertTrue(mesher.getIndexCount() > 300);
+
+    for (int v = 0; v < mesher.getVertexCount(); v++) {
+      float dx = vertices.get(v * 3) - center[0];
+      float dy = vertices.get(v * 3 + 1) - center[1];
+      float dz = vertices.get(v * 3 + 2) - center[2];
+      float distance = (float) Math.sqrt(dx * dx + dy * dy + dz * dz);
+      assertEquals(radius, distance, 0.03f);
+      // Normals point away from the center
+      float outward = (normals.get(v * 3) * dx + normals.get(v * 3 + 1) * dy
+          + normals.get(v * 3 + 2) * dz) / distance;
+      assertTrue(outward > 0.5f);
+    }
+
+    // Border vertices come welded, so no two vertices share a position
+    int[] welded = weld(vertices, mesher.getVertexCount());
+    for (int v = 0; v < welded.length; v++) {
+      assertEquals(v, welded[v]);
+    }
+
+    // Every edge joins two triangles in opposite directions and the surface is a sphere:
+    // V - E + F = 2
+    HashMap<Long, Integer> edges = new HashMap<>();
+    int faces = 0;
+    for (int t = 0; t < mesher.getIndexCount(); t += 3) {
+      int[] corners = {indices.get(t), indices.get(t + 1), indices.get(t + 2)};
+      for (int e = 0; e < 3; e++) {
+        edges.merge(directedEdge(corners[e], corners[(e + 1) % 3]), 1, Integer::sum);
+      }
+      faces++;
+    }
+    for (Long edge : edges.keySet()) {
+      long reverse = directedEdge((int) (edge & 0xFFFFFFFFL), (int) (edge >>> 32));
+      assertEquals("edge " + edge, Integer.valueOf(1), edges.get(edge));
+      assertEquals("edge " + edge, Integer.valueOf(1), edges.get(reverse));
+    }
+    assertEquals(2, mesher.getVertexCount() - edges.size() / 2 + faces);
+  }
+
+  @Test
+  public void update_remeshesOnlyBlocksAroundChanges() {
+    TsdfVolume volume = new TsdfVolume(0.01f, 0.04f, 10_000);
+    float[] identity = {1, 0, 0, 0, 0, 1, 0, 0, 0, 0, 1, 0, 0, 0, 0, 1};
+    integrate(volume, renderSphere(identity, new float[] {-0.2f, 0f, -1.2f}, 0.15f), identity);
+    TsdfMesher mesher = new TsdfMesher(volume);
+
+    int first = mesher.update();
+    assertEquals(volume.getBlockCount(), first);
+    int firstIndices = mesher.getIndexCount();
+    assertTrue(firstIndices > 0);
+    assertEquals(0, mesher.update());
+    assertEquals(firstIndices, mesher.getIndexCount());
+
+    // A second object well away from the first only touches blocks of its own
+    integrate(volume, renderSphere(identity, new float[] {0.25f, 0f, -1.2f}, 0.1f), identity);
+    int second = mesher.update();
+    assertTrue(second > 0);
+    assertTrue(second < volume.getBlockCount());
+    assertTrue(mesher.getIndexCount() > firstIndices);
+
+    // Same mesh as extracting everything from scratch
+    TsdfMesher fresh = new TsdfMesher(volume);
+    fresh.update();
+    assertEquals(fresh.getVertexCount(), mesher.getVertexCount());
+    assertEquals(fresh.getIndexCount(), mesher.getIndexCount());
+    assertEquals(sortedTriangles(fresh), sortedTriangles(mesher));
+
+    volume.clear();
+    mesher.update();
+    assertEquals(0, mesher.getVertexCount());
+    assertEquals(0, mesher.getIndices().limit());
+  }
+
+  private static void integrate(TsdfVolume volume, ShortBuffer depth, float[] pose) {
+    ByteBuffer confidence = ByteBuffer.allocate(SIZE * SIZE);
+    for (int i = 0; i < SIZE * SIZE; i++) {
+      confidence.put(i, (byte) 255);
+    }
+    volume.integrate(depth, confidence, SIZE, SIZE, FOCAL, FOCAL, CENTER, CENTER, pose);
+  }
+
+  /** Cameras looking at a point from its six sides and eight diagonals. */
+  private static List<float[]> posesAround(float[] target, float distance) {
+    List<float[]> poses = new ArrayList<>();
+    for (int x = -1; x <= 1; x++) {
+      for (int y = -1; y <= 1; y++) {
+        for (int z = -1; z <= 1; z++) {
+          int nonZero = Math.abs(x) + Math.abs(y) + Math.abs(z);
+          if (nonZero == 1 || nonZero == 3) {
+            poses.add(lookAt(target, new float[] {x, y, z}, distance));
+          }
+        }
+      }
+    }
+    return poses;
+  }
+
+  /** Pose of a camera {@code distance} from the target along {@code direction}, facing it. */
+  private static float[] lookAt(float[] target, float[] direction, float distance) {
+    // The camera looks down -Z, so +Z points back along the direction
+    float[] back = normalize(direction);
+    float[] up = Math.abs(back[1]) > 0.9f ? new float[] {0, 0, -1} : new float[] {0, 1, 0};
+    float[] right = normalize(cross(up, back));
+    float[] trueUp = cross(back, right);
+    float[] pose = new float[16];
+    for (int c = 0; c < 3; c++) {
+      pose[c] = right[c];
+      pose[4 + c] = trueUp[c];
+      pose[8 + c] = back[c];
+      pose[12 + c] = target[c] + back[c] * distance;
+    }
+    pose[15] = 1;
+    return pose;
+  }
+
+  private static float[] cross(float[] a, float[] b) {
+    return new float[] {
+      a[1] * b[2] - a[2] * b[1], a[2] * b[0] - a[0] * b[2], a[0] * b[1] - a[1] * b[0]
+    };
+  }
+
+  private static float[] normalize(float[] v) {
+    float length = (float) Math.sqrt(v[0] * v[0] + v[1] * v[1] + v[2] * v[2]);
+    return new float[] {v[0] / length, v[1] / length, v[2] / length};
+  }
+
+  /** Numbers vertices by their exact position, so identical copies share an id. */
+  private static int[] weld(FloatBuffer vertices, int count) {
+    HashMap<List<Float>, Integer> ids = new HashMap<>();
+    int[] welded = new int[count];
+    for (int v = 0; v < count; v++) {
+      List<Float> key = Arrays.asList(
+          vertices.get(v * 3), vertices.get(v * 3 + 1), vertices.get(v * 3 + 2));
+      Integer id = ids.get(key);
+      if (id == null) {
+        id = ids.size();
+        ids.put(key, id);
+      }
+      welded[v] = id;
+    }
+    return welded;
+  }
+
+  private static long directedEdge(int from, int to) {
+    return ((long) from << 32) | (to & 0xFFFFFFFFL);
+  }
+
+  /** Triangles as position strings, independent of block and vertex order. */
+  private static List<String> sortedTriangles(TsdfMesher mesher) {
+    FloatBuffer vertices = mesher.getVertices();
+    IntBuffer indices = mesher.getIndices();
+    List<String> triangles = new ArrayList<>();
+    for (int t = 0; t < mesher.getIndexCount(); t += 3) {
+      String[] corners = new String[3];
+      for (int c = 0; c < 3; c++) {
+        int v = indices.get(t + c);
+        corners[c] = vertices.get(v * 3) + "," + vertices.get(v * 3 + 1) + ","
+            + vertices.get(v * 3 + 2);
+      }
+      Arrays.sort(corners);
+      triangles.add(String.join(" ", corners));
+    }
+    triangles.sort(null);
+    return triangles;
+  }
+
+  /** Ray casts a sphere into a depth image in millimeters, 0 where the ray misses. */
+  private static ShortBuffer renderSphere(float[] pose, float[] center, float radius) {
+    // Sphere center in camera space, for a rigid pose
+    float dx = center[0] - pose[12];
+    float dy = center[1] - pose[13];
+    float dz = center[2] - pose[14];
+    float ccx = pose[0] * dx + pose[1] * dy + pose[2] * dz;
+    float ccy = pose[4] * dx + pose[5] * dy + pose[6] * dz;
+    float ccz = pose[8] * dx + pose[9] * dy + pose[10] * dz;
+
+    ShortBuffer depth = ShortBuffer.allocate(SIZE * SIZE);
+    for (int v = 0; v < SIZE; v++) {
+      for (int u = 0; u < SIZE; u++) {
+        // Ray direction scaled so that its depth component is 1
+        float rx = (u - CENTER) / FOCAL;
+        float ry = -(v - CENTER) / FOCAL;
+        float rz = -1f;
+        float a = rx * rx + ry * ry + rz * rz;
+        float b = -2f * (rx * ccx + ry * ccy + rz * ccz);
+        float c = ccx * ccx + ccy * ccy + ccz * ccz - radius * radius;
+        float discriminant = b * b - 4 * a * c;
+        if (discriminant < 0) {
+          continue;
+        }
+        float t = (float) ((-b - Math.sqrt(discriminant)) / (2 * a));
+        depth.put(v * SIZE + u, (short) Math.round(t * 1000));
+      }
+    }
+    return depth;
+  }
+}
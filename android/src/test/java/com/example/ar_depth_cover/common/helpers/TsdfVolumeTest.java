@@ -0,0 +1,136 @@
+package com.example.ar_depth_cover.common.helpers;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.nio.ByteBuffer;
+import java.nio.ShortBuffer;
+import org.junit.Test;
+
+public class TsdfVolumeTest {
+  private static final int SIZE = 64;
+  private static final float FOCAL = 64f;
+  private static final float CENTER = 32f;
+  private static final float[] IDENTITY = {
+    1, 0, 0, 0,
+    0, 1, 0, 0,
+    0, 0, 1, 0,
+    0, 0, 0, 1,
+  };
+
+  @Test
+  public void integrate_planeHasZeroCrossingAtItsDepth() {
+    TsdfVolume volume = new TsdfVolume(0.02f, 0.08f, 10_000);
+    ShortBuffer depth = ShortBuffer.allocate(SIZE * SIZE);
+    for (int i = 0; i < SIZE * SIZE; i++) {
+      depth.put(i, (short) 1000);
+    }
+
+    volume.integrate(depth, fullConfidence(), SIZE, SIZE, FOCAL, FOCAL, CENTER, CENTER, IDENTITY);
+
+    // Voxel centers 1 cm in front of and behind the plane at z = -1
+    assertEquals(0.125f, volume.getTsdf(0.01f, 0.01f, -0.99f), 1e-4f);
+    assertEquals(-0.125f, volume.getTsdf(0.01f, 0.01f, -1.01f), 1e-4f);
+    assertEquals(1f, volume.getTsdf(0.01f, 0.01f, -0.85f), 1e-4f);
+    // Beyond the truncation band behind the surface nothing is observed
+    assertTrue(Float.isNaN(volume.getTsdf(0.01f, 0.01f, -1.25f)));
+
+    // Only blocks around the 1 m x 1 m plane are allocated, not the frustum in front of it:
+    // 7 x 7 blocks of 16 cm, in at most two layers
+    assertTrue(volume.getBlockCount() <= 2 * 8 * 8);
+    assertTrue(volume.getBlockCount() >= 7 * 7);
+  }
+
+  @Test
+  public void integrate_sphereSeenFromTwoSidesMatchesItsRadius() {
+    float[] center = {0f, 0f, -1.5f};
+    float radius = 0.3f;
+    TsdfVolume volume = new TsdfVolume(0.01f, 0.04f, 10_000);
+
+    // Front view from the origin, then a view from the far side looking back along +Z
+    volume.integrate(renderSphere(IDENTITY, center, radius), fullConfidence(),
+        SIZE, SIZE, FOCAL, FOCAL, CENTER, CENTER, IDENTITY);
+    float[] back = {
+      -1, 0, 0, 0,
+      0, 1, 0, 0,
+      0, 0, -1, 0,
+      0, 0, -3, 1,
+    };
+    volume.integrate(renderSphere(back, center, radius), fullConfidence(),
+        SIZE, SIZE, FOCAL, FOCAL, CENTER, CENTER, back);
+
+    // Along the axis: outside, near the front and back surfaces, the center is unobserved
+    assertTrue(volume.getTsdf(0.005f, 0.005f, -1.5f + radius + 0.025f) > 0.4f);
+    assertEquals(0f, volume.getTsdf(0.005f, 0.005f, -1.5f + radius + 0.005f), 0.3f);
+    assertEquals(0f, volume.getTsdf(0.005f, 0.005f, -1.5f - radius - 0.005f), 0.3f);
+    assertTrue(volume.getTsdf(0.005f, 0.005f, -1.5f + radius - 0.025f) < -0.4f);
+    assertTrue(Float.isNaN(volume.getTsdf(0.005f, 0.005f, -1.5f)));
+  }
+
+  @Test
+  public void integrate_parallelMatchesSerial() {
+    float[] center = {0.1f, -0.05f, -1.2f};
+    ShortBuffer depth = renderSphere(IDENTITY, center, 0.25f);
+    TsdfVolume serial = new TsdfVolume(0.01f, 0.04f, 10_000);
+    TsdfVolume parallel = new TsdfVolume(0.01f, 0.04f, 10_000);
+    RowStripeExecutor executor = new RowStripeExecutor(3);
+    parallel.setExecutor(executor);
+
+    int touched = serial.integrate(
+        depth, fullConfidence(), SIZE, SIZE, FOCAL, FOCAL, CENTER, CENTER, IDENTITY);
+    assertEquals(touched, parallel.integrate(
+        depth, fullConfidence(), SIZE, SIZE, FOCAL, FOCAL, CENTER, CENTER, IDENTITY));
+    executor.shutdown();
+
+    assertEquals(serial.getBlockCount(), parallel.getBlockCount());
+    for (float z = -1.5f; z < -0.9f; z += 0.013f) {
+      for (float x = -0.2f; x < 0.4f; x += 0.017f) {
+        float expected = serial.getTsdf(x, -0.05f, z);
+        float actual = parallel.getTsdf(x, -0.05f, z);
+        assertTrue(Float.isNaN(expected) == Float.isNaN(actual));
+        if (!Float.isNaN(expected)) {
+          assertEquals(expected, actual, 0f);
+        }
+      }
+    }
+  }
+
+  private static ByteBuffer fullConfidence() {
+    ByteBuffer confidence = ByteBuffer.allocate(SIZE * SIZE);
+    for (int i = 0; i < SIZE * SIZE; i++) {
+      confidence.put(i, (byte) 255);
+    }
+    return confidence;
+  }
+
+  /** Ray casts a sphere into a depth image in millimeters, 0 where the ray misses. */
+  private static ShortBuffer renderSphere(float[] pose, float[] center, float radius) {
+    // Sphere center in camera space, for a rigid pose
+    float dx = center[0] - pose[12];
+    float dy = center[1] - pose[13];
+    float dz = center[2] - pose[14];
+    float ccx = pose[0] * dx + pose[1] * dy + pose[2] * dz;
+    float ccy = pose[4] * dx + pose[5] * dy + pose[6] * dz;
+    float ccz = pose[8] * dx + pose[9] * dy + pose[10] * dz;
+
+    ShortBuffer depth = ShortBuffer.allocate(SIZE * SIZE);
+    for (int v = 0; v < SIZE; v++) {
+      for (int u = 0; u < SIZE; u++) {
+        // Ray direction scaled so that its depth component is 1
+        float rx = (u - CENTER) / FOCAL;
+        float ry = -(v - CENTER) / FOCAL;
+        float rz = -1f;
+        float a = rx * rx + ry * ry + rz * rz;
+        float b = -2f * (rx * ccx + ry * ccy + rz * ccz);
+        float c = ccx * ccx + ccy * ccy + ccz * ccz - radius * radius;
+        float discriminant = b * b - 4 * a * c;
+        if (discriminant < 0) {
+          continue;
+        }
+        float t = (float) ((-b - Math.sqrt(discriminant)) / (2 * a));
+        depth.put(v * SIZE + u, (short) Math.round(t * 1000));
+      }
+    }
+    return depth;
+  }
+}
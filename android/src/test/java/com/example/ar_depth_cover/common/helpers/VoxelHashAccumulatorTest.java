@@ -0,0 +1,83 @@
+package com.example.ar_depth_cover.common.helpers;
+
+import static org.junit.Assert.assertEquals;
+
+import java.nio.FloatBuffer;
+import org.junit.Test;
+
+public class VoxelHashAccumulatorTest {
+  @Test
+  public void integrate_fusesPointsPerVoxelByConfidence() {
+    VoxelHashAccumulator accumulator = new VoxelHashAccumulator(0.1f, 100);
+
+    accumulator.integrate(FloatBuffer.wrap(new float[] {
+      0.01f, 0.01f, -0.01f, 1f,
+      0.04f, 0.04f, -0.04f, 0.5f,
+      // Neighbouring voxel across zero
+      -0.01f, 0.01f, -0.01f, 1f,
+      // Ignored: no confidence
+      5f, 5f, 5f, 0f,
+    }));
+
+    assertEquals(2, accumulator.size());
+    FloatBuffer cloud = accumulator.getCloud();
+    assertEquals(8, cloud.remaining());
+    float[] fused = findCell(cloud, 0.02f);
+    assertEquals(0.02f, fused[0], 1e-6f);
+    assertEquals(0.02f, fused[1], 1e-6f);
+    assertEquals(-0.02f, fused[2], 1e-6f);
+    assertEquals(0.75f, fused[3], 1e-6f);
+  }
+
+  @Test
+  public void integrate_growsUntilTheCellCap() {
+    int side = 30;
+    VoxelHashAccumulator accumulator = new VoxelHashAccumulator(1f, 20_000);
+    FloatBuffer points = FloatBuffer.allocate(side * side * side * 4);
+    for (int x = 0; x < side; x++) {
+      for (int y = 0; y < side; y++) {
+        for (int z = 0; z < side; z++) {
+          points.put(new float[] {x + 0.5f, -y - 0.5f, z + 0.5f, 1f});
+        }
+      }
+    }
+    points.flip();
+
+    int rejected = accumulator.integrate(points);
+
+    assertEquals(20_000, accumulator.size());
+    assertEquals(side * side * side - 20_000, rejected);
+    assertEquals(rejected, accumulator.getRejectedPoints());
+
+    // Existing voxels still refine at the cap
+    points.rewind();
+    assertEquals(rejected, accumulator.integrate(points));
+    assertEquals(20_000, accumulator.size());
+  }
+
+  @Test
+  public void getChangedCells_returnsOnlyCellsTouchedSinceLastCall() {
+    VoxelHashAccumulator accumulator = new VoxelHashAccumulator(1f, 100);
+    accumulator.integrate(
+        FloatBuffer.wrap(new float[] {0.5f, 0.5f, 0.5f, 1f, 2.5f, 0.5f, 0.5f, 1f}));
+    assertEquals(8, accumulator.getChangedCells().remaining());
+    assertEquals(0, accumulator.getChangedCells().remaining());
+
+    accumulator.integrate(
+        FloatBuffer.wrap(new float[] {2.7f, 0.5f, 0.5f, 1f, 9.5f, 0.5f, 0.5f, 1f}));
+
+    FloatBuffer changed = accumulator.getChangedCells();
+    assertEquals(8, changed.remaining());
+    assertEquals(3, accumulator.size());
+    assertEquals(12, accumulator.getCloud().remaining());
+  }
+
+  private static float[] findCell(FloatBuffer cloud, float x) {
+    for (int i = cloud.position(); i < cloud.limit(); i += 4) {
+      if (Math.abs(cloud.get(i) - x) < 1e-3f) {
+        return new float[] {cloud.get(i), cloud.get(i + 1), cloud.get(i + 2), cloud.get(i + 3)};
+      }
+    }
+    throw new AssertionError("no cell at x=" + x);
+  }
+}
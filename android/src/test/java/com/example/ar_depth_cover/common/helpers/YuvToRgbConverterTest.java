@@ -0,0 +1,109 @@
+package com.example.ar_depth_cover.common.helpers;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.nio.ByteBuffer;
+import java.util.Random;
+import org.junit.Test;
+
+public class YuvToRgbConverterTest {
+  // Odd width and height to cover the unpaired last column and chroma row
+  private static final int WIDTH = 37;
+  private static final int HEIGHT = 21;
+  private static final int Y_ROW_STRIDE = 48;
+  private static final int UV_ROW_STRIDE = 48;
+  private static final int UV_PIXEL_STRIDE = 2;
+
+  private final ByteBuffer yPlane = ByteBuffer.allocate(Y_ROW_STRIDE * HEIGHT);
+  // Interleaved chroma as most devices deliver it: V and U planes are offset views of one buffer
+  private final ByteBuffer uvPlane = ByteBuffer.allocate(UV_ROW_STRIDE * ((HEIGHT + 1) / 2) + 1);
+  private final ByteBuffer uPlane;
+  private final ByteBuffer vPlane;
+
+  public YuvToRgbConverterTest() {
+    Random random = new Random(5);
+    random.nextBytes(yPlane.array());
+    random.nextBytes(uvPlane.array());
+    vPlane = uvPlane.duplicate();
+    uvPlane.position(1);
+    uPlane = uvPlane.slice();
+  }
+
+  /** The float conversion the renderer used before, writing the unrotated image. */
+  private int[] referenceArgb() {
+    int[] out = new int[WIDTH * HEIGHT];
+    for (int y = 0; y < HEIGHT; y++) {
+      for (int x = 0; x < WIDTH; x++) {
+        int uvIndex = (y / 2) * UV_ROW_STRIDE + (x / 2) * UV_PIXEL_STRIDE;
+        int luma = yPlane.get(y * Y_ROW_STRIDE + x) & 0xFF;
+        int u = (uPlane.get(uvIndex) & 0xFF) - 128;
+        int v = (vPlane.get(uvIndex) & 0xFF) - 128;
+        int r = clamp((int) (luma + 1.402f * v));
+        int g = clamp((int) (luma - 0.344f * u - 0.714f * v));
+        int b = clamp((int) (luma + 1.772f * u));
+        out[y * WIDTH + x] = 0xFF000000 | (r << 16) | (g << 8) | b;
+      }
+    }
+    return out;
+  }
+
+  private static int clamp(int value) {
+    return value < 0 ? 0 : (value > 255 ? 255 : value);
+  }
+
+  private int[] convert(YuvToRgbConverter converter, int rotationDegrees) {
+    return converter
+        .convert(
+            yPlane, Y_ROW_STRIDE, uPlane, vPlane, UV_ROW_STRIDE, UV_PIXEL_STRIDE,
+            WIDTH, HEIGHT, rotationDegrees)
+        .clone();
+  }
+
+  private static void assertChannelsWithinOne(int expected, int actual) {
+    for (int shift = 0; shift < 24; shift += 8) {
+      int difference = ((expected >> shift) & 0xFF) - ((actual >> shift) & 0xFF);
+      assertTrue(
+          Integer.toHexString(expected) + " vs " + Integer.toHexString(actual),
+          Math.abs(difference) <= 1);
+    }
+    assertTrue(actual >>> 24 == 0xFF);
+  }
+
+  @Test
+  public void convert_matchesFloatReferenceForEveryRotation() {
+    int[] reference = referenceArgb();
+    YuvToRgbConverter converter = new YuvToRgbConverter();
+
+    int[] upright = convert(converter, 0);
+    int[] clockwise = convert(converter, 90);
+    int[] upsideDown = convert(converter, 180);
+    int[] counterClockwise = convert(converter, 270);
+
+    for (int y = 0; y < HEIGHT; y++) {
+      for (int x = 0; x < WIDTH; x++) {
+        int expected = reference[y * WIDTH + x];
+        assertChannelsWithinOne(expected, upright[y * WIDTH + x]);
+        // Rotated outputs are HEIGHT pixels wide
+        assertChannelsWithinOne(expected, clockwise[x * HEIGHT + (HEIGHT - 1 - y)]);
+        assertChannelsWithinOne(
+            expected, upsideDown[(HEIGHT - 1 - y) * WIDTH + (WIDTH - 1 - x)]);
+        assertChannelsWithinOne(expected, counterClockwise[(WIDTH - 1 - x) * HEIGHT + y]);
+      }
+    }
+  }
+
+  @Test
+  public void convert_parallelMatchesSerial() {
+    YuvToRgbConverter serial = new YuvToRgbConverter();
+    YuvToRgbConverter parallel = new YuvToRgbConverter();
+    RowStripeExecutor executor = new RowStripeExecutor(4);
+    parallel.setExecutor(executor);
+
+    try {
+      assertArrayEquals(convert(serial, 90), convert(parallel, 90));
+    } finally {
+      executor.shutdown();
+    }
+  }
+}
@@ -0,0 +1,48 @@
+package com.example.ar_depth_cover.rawdepth;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.nio.ByteBuffer;
+import java.nio.ShortBuffer;
+import org.junit.Test;
+
+public class DepthCaptureTest {
+  @Test
+  public void copyDownsampled_picksEveryNthSampleAndSkipsPadding() {
+    // 4x4 depth plane of little-endian shorts, rows padded to 10 bytes
+    int width = 4;
+    int height = 4;
+    int rowStride = 10;
+    ByteBuffer source = ByteBuffer.allocate(rowStride * height);
+    for (int y = 0; y < height; y++) {
+      for (int x = 0; x < width; x++) {
+        int value = 1000 + y * 10 + x;
+        source.put(y * rowStride + x * 2, (byte) value);
+        source.put(y * rowStride + x * 2 + 1, (byte) (value >> 8));
+      }
+    }
+
+    DepthCapture capture = new DepthCapture();
+    capture.depth = ByteBuffer.allocate(2 * 2 * 2);
+    DepthCapture.copyDownsampled(source, rowStride, 2, width, height, 2, capture.depth);
+
+    ShortBuffer shorts = capture.depthShorts();
+    assertEquals(4, shorts.remaining());
+    assertEquals(1000, shorts.get(0));
+    assertEquals(1002, shorts.get(1));
+    assertEquals(1020, shorts.get(2));
+    assertEquals(1022, shorts.get(3));
+  }
+
+  @Test
+  public void copyDownsampled_factorOneCopiesTight() {
+    ByteBuffer source = ByteBuffer.wrap(new byte[] {1, 2, 3, -1, 4, 5, 6, -1});
+    ByteBuffer target = ByteBuffer.allocate(6);
+    DepthCapture.copyDownsampled(source, 4, 1, 3, 2, 1, target);
+
+    byte[] copied = new byte[target.remaining()];
+    target.get(copied);
+    assertArrayEquals(new byte[] {1, 2, 3, 4, 5, 6}, copied);
+  }
+}
@@ -0,0 +1,123 @@
+package com.example.ar_depth_cover.rawdepth;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import com.example.ar_depth_cover.common.helpers.CaptureBufferPool;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import org.junit.Test;
+
+public class DepthDatasetReplayerTest {
+  private static final int WIDTH = 4;
+  private static final int HEIGHT = 3;
+
+  @Test
+  public void replaysRecordsInOrderWithBoundedCapturesInFlight() throws Exception {
+    File file = writeDataset(5);
+    CaptureBufferPool pool = new CaptureBufferPool(4);
+    BlockingQueue<DepthCapture> submitted = new LinkedBlockingQueue<>();
+    AtomicInteger finishedFrames = new AtomicInteger(-1);
+    AtomicReference<Boolean> finishedCancelled = new AtomicReference<>();
+    DepthDatasetReplayer replayer = new DepthDatasetReplayer(
+        new DepthDatasetReader(file), pool, 2, false, submitted::add,
+        (frames, cancelled) -> {
+          finishedFrames.set(frames);
+          finishedCancelled.set(cancelled);
+        });
+    try {
+      replayer.start();
+      DepthCapture first = submitted.poll(1, TimeUnit.SECONDS);
+      DepthCapture second = submitted.poll(1, TimeUnit.SECONDS);
+      assertNotNull(second);
+      // Nothing more until a capture is done
+      assertNull(submitted.poll(100, TimeUnit.MILLISECONDS));
+
+      assertSame(replayer, first.replayer);
+      assertEquals(0L, first.timestamp);
+      assertEquals(WIDTH, first.width);
+      assertEquals(2.5f, first.cx, 0f);
+      assertEquals(1000 + 1, first.depthShorts().get(1));
+      assertEquals(20, first.confidence.get(1));
+      assertEquals(1_000_000L, second.timestamp);
+
+      // Finishing captures lets the rest through, in order
+      done(replayer, pool, first);
+      done(replayer, pool, second);
+      for (int i = 2; i < 5; i++) {
+        DepthCapture capture = submitted.poll(1, TimeUnit.SECONDS);
+        assertNotNull(capture);
+        assertEquals(i * 1_000_000L, capture.timestamp);
+        done(replayer, pool, capture);
+      }
+      assertTrue(replayer.awaitFinished(1000));
+      assertEquals(5, finishedFrames.get());
+      assertFalse(finishedCancelled.get());
+    } finally {
+      file.delete();
+    }
+  }
+
+  @Test
+  public void stopEndsTheReplayAsCancelled() throws Exception {
+    File file = writeDataset(3);
+    AtomicReference<Boolean> finishedCancelled = new AtomicReference<>();
+    AtomicInteger finishedFrames = new AtomicInteger(-1);
+    BlockingQueue<DepthCapture> submitted = new LinkedBlockingQueue<>();
+    DepthDatasetReplayer replayer = new DepthDatasetReplayer(
+        new DepthDatasetReader(file), new CaptureBufferPool(4), 1, false, submitted::add,
+        (frames, cancelled) -> {
+          finishedFrames.set(frames);
+          finishedCancelled.set(cancelled);
+        });
+    try {
+      replayer.start();
+      assertNotNull(submitted.poll(1, TimeUnit.SECONDS));
+      // The replay now waits for a slot that never comes
+      replayer.stop();
+      assertTrue(replayer.awaitFinished(1000));
+      assertEquals(1, finishedFrames.get());
+      assertTrue(finishedCancelled.get());
+    } finally {
+      file.delete();
+    }
+  }
+
+  private static void done(
+      DepthDatasetReplayer replayer, CaptureBufferPool pool, DepthCapture capture) {
+    pool.release(capture.depth);
+    pool.release(capture.confidence);
+    replayer.onCaptureDone();
+  }
+
+  /** Writes records one millisecond apart, from timestamp 0. */
+  private static File writeDataset(int records) throws IOException {
+    File file = File.createTempFile("replay", ".ads");
+    file.delete();
+    try (DepthDatasetWriter writer =
+        new DepthDatasetWriter(file, DepthDataset.DEPTH_DELTA_DEFLATE)) {
+      for (int r = 0; r < records; r++) {
+        ByteBuffer depth = ByteBuffer.allocate(WIDTH * HEIGHT * 2).order(ByteOrder.LITTLE_ENDIAN);
+        ByteBuffer confidence = ByteBuffer.allocate(WIDTH * HEIGHT);
+        for (int i = 0; i < WIDTH * HEIGHT; i++) {
+          depth.putShort(i * 2, (short) (1000 + i + r));
+          confidence.put(i, (byte) (i * 20));
+        }
+        writer.append(r * 1_000_000L, WIDTH, HEIGHT, new int[] {640, 480}, 5f, 5f, 2.5f, 1.5f,
+            new float[16], new float[4][16], depth, confidence, DepthDataset.IMAGE_NONE, null);
+      }
+    }
+    return file;
+  }
+}
@@ -0,0 +1,161 @@
+package com.example.ar_depth_cover.rawdepth;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import org.junit.Test;
+
+public class DepthDatasetTest {
+  private static final int WIDTH = 4;
+  private static final int HEIGHT = 3;
+
+  @Test
+  public void writtenRecordsReadBackThroughTheIndex() throws IOException {
+    File file = File.createTempFile("dataset", ".ads");
+    file.delete();
+    try (DepthDatasetWriter writer = new DepthDatasetWriter(file)) {
+      append(writer, 100L, null);
+      append(writer, 200L, ByteBuffer.wrap(new byte[] {(byte) 0xFF, (byte) 0xD8, 1, 2, 3}));
+    }
+    // Reopening continues the dataset after the existing records
+    try (DepthDatasetWriter writer = new DepthDatasetWriter(file)) {
+      assertEquals(2, writer.getRecordCount());
+      assertEquals(2, append(writer, 300L, null));
+    }
+
+    try (DepthDatasetReader reader = new DepthDatasetReader(file)) {
+      assertFalse(reader.isRecovered());
+      assertEquals(3, reader.size());
+      assertEquals(1, reader.indexOf(200L));
+      assertEquals(-1, reader.indexOf(250L));
+
+      DepthDatasetReader.Record record = reader.read(1);
+      assertEquals(200L, record.timestamp);
+      assertEquals(WIDTH, record.width);
+      assertEquals(HEIGHT, record.height);
+      assertArrayEquals(new int[] {640, 480}, record.intrinsicsDimensions);
+      assertEquals(2.5f, record.cx, 0f);
+      assertEquals(200f, record.cameraPose[12], 0f);
+      assertEquals(3f, record.matrices[2][5], 0f);
+      assertEquals(DepthDataset.DEPTH_RAW_UINT16, record.depthEncoding);
+      for (int i = 0; i < WIDTH * HEIGHT; i++) {
+        assertEquals(1000 + i + 200, record.depthShorts().get(i));
+        assertEquals(i * 20, record.confidence.get(i) & 0xFF);
+      }
+      assertEquals(DepthDataset.IMAGE_JPEG, record.imageFormat);
+      assertEquals(5, record.image.remaining());
+      assertEquals(3, record.image.get(4));
+      assertTrue(reader.verify(1));
+
+      assertNull(reader.read(0).image);
+      assertEquals(DepthDataset.IMAGE_NONE, reader.read(0).imageFormat);
+      assertEquals(1300, reader.read(2).depthShorts().get(0));
+    } finally {
+      file.delete();
+    }
+  }
+
+  @Test
+  public void unclosedDatasetIsRecoveredUpToItsLastCompleteRecord() throws IOException {
+    File file = File.createTempFile("dataset", ".ads");
+    file.delete();
+    long secondRecordEnd;
+    try (DepthDatasetWriter writer = new DepthDatasetWriter(file)) {
+      append(writer, 1L, null);
+      append(writer, 2L, null);
+      append(writer, 3L, null);
+    }
+    try (DepthDatasetReader reader = new DepthDatasetReader(file)) {
+      secondRecordEnd = offsetOf(reader, 2);
+    }
+
+    // Lose the footer and half of the last record, as if the app died mid-write
+    try (RandomAccessFile raw = new RandomAccessFile(file, "rw")) {
+      raw.setLength(secondRecordEnd + 50);
+    }
+    try (DepthDatasetReader reader = new DepthDatasetReader(file)) {
+      assertTrue(reader.isRecovered());
+      assertEquals(2, reader.size());
+      assertEquals(2L, reader.getTimestamp(1));
+      assertTrue(reader.verify(1));
+    }
+
+    // Appending cuts off the partial record
+    try (DepthDatasetWriter writer = new DepthDatasetWriter(file)) {
+      assertEquals(2, append(writer, 4L, null));
+    }
+    try (DepthDatasetReader reader = new DepthDatasetReader(file)) {
+      assertFalse(reader.isRecovered());
+      assertEquals(3, reader.size());
+      assertEquals(4L, reader.read(2).timestamp);
+    } finally {
+      file.delete();
+    }
+  }
+
+  @Test
+  public void compressedRecordsDecodeToTheirPlanes() throws IOException {
+    File file = File.createTempFile("dataset", ".ads");
+    file.delete();
+    try (DepthDatasetWriter writer =
+        new DepthDatasetWriter(file, DepthDataset.DEPTH_DELTA_DEFLATE)) {
+      append(writer, 100L, null);
+    }
+    // Encodings may mix within a file
+    try (DepthDatasetWriter writer = new DepthDatasetWriter(file)) {
+      append(writer, 200L, null);
+    }
+
+    try (DepthDatasetReader reader = new DepthDatasetReader(file)) {
+      DepthDatasetReader.Record compressed = reader.read(0);
+      assertEquals(DepthDataset.DEPTH_DELTA_DEFLATE, compressed.depthEncoding);
+      assertEquals(DepthDataset.DEPTH_RAW_UINT16, reader.read(1).depthEncoding);
+      assertEquals(WIDTH * HEIGHT * 2, compressed.depth.remaining());
+      for (int i = 0; i < WIDTH * HEIGHT; i++) {
+        assertEquals(1000 + i + 100, compressed.depthShorts().get(i));
+        assertEquals(i * 20, compressed.confidence.get(i) & 0xFF);
+      }
+      assertTrue(reader.verify(0));
+      assertTrue(reader.verify(1));
+    } finally {
+      file.delete();
+    }
+  }
+
+  private static long offsetOf(DepthDatasetReader reader, int index) throws IOException {
+    // Records are contiguous from the file header, each one header plus padded planes
+    long offset = DepthDataset.FILE_HEADER_SIZE;
+    for (int i = 0; i < index; i++) {
+      DepthDatasetReader.Record record = reader.read(i);
+      offset += DepthDataset.recordSize(record.depth.remaining(), record.confidence.remaining(),
+          record.image != null ? record.image.remaining() : 0);
+    }
+    return offset;
+  }
+
+  private static int append(DepthDatasetWriter writer, long timestamp, ByteBuffer image)
+      throws IOException {
+    ByteBuffer depth = ByteBuffer.allocateDirect(WIDTH * HEIGHT * 2)
+        .order(ByteOrder.LITTLE_ENDIAN);
+    ByteBuffer confidence = ByteBuffer.allocate(WIDTH * HEIGHT);
+    for (int i = 0; i < WIDTH * HEIGHT; i++) {
+      depth.putShort(i * 2, (short) (1000 + i + timestamp));
+      confidence.put(i, (byte) (i * 20));
+    }
+    float[] pose = new float[16];
+    pose[12] = timestamp;
+    float[][] matrices = new float[4][16];
+    matrices[2][5] = 3f;
+    return writer.append(timestamp, WIDTH, HEIGHT, new int[] {640, 480}, 5f, 5f, 2.5f, 1.5f,
+        pose, matrices, depth, confidence,
+        image != null ? DepthDataset.IMAGE_JPEG : DepthDataset.IMAGE_NONE, image);
+  }
+}
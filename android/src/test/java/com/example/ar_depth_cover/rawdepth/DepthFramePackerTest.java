@@ -0,0 +1,113 @@
+package com.example.ar_depth_cover.rawdepth;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.nio.ShortBuffer;
+import java.nio.charset.StandardCharsets;
+import org.junit.Test;
+
+public class DepthFramePackerTest {
+  @Test
+  public void pack_writesHeaderAndTightPlanes() {
+    int width = 3;
+    int height = 2;
+    FloatBuffer depth = FloatBuffer.wrap(new float[] {0f, 0.5f, 1f, 1.5f, 2f, Float.NaN});
+    // Confidence rows padded to a stride of 4
+    ByteBuffer confidence =
+        ByteBuffer.wrap(new byte[] {10, 11, 12, -1, 13, 14, (byte) 255, -1});
+    float[] model = new float[16];
+    model[12] = 4f;
+
+    ByteBuffer message =
+        DepthFramePacker.pack(
+            99L, width, height, new int[] {640, 480}, 1f, 2f, 3f, 4f,
+            new float[][] {model, null, null, null}, depth, confidence, 4, "/a.jpg");
+
+    assertTrue(message.isDirect());
+    message.order(ByteOrder.LITTLE_ENDIAN);
+    assertEquals(DepthFramePacker.HEADER_SIZE + width * height * 5 + 6, message.remaining());
+    assertEquals(DepthFramePacker.MAGIC, message.getInt(0));
+    assertEquals(99L, message.getLong(8));
+    assertEquals(3, message.getInt(16));
+    assertEquals(480, message.getInt(28));
+    assertEquals(3f, message.getFloat(40), 0f);
+    assertEquals(4f, message.getFloat(DepthFramePacker.OFFSET_MATRICES + 12 * 4), 0f);
+    assertEquals(6, message.getInt(312));
+    assertEquals(0, message.getInt(316));
+
+    DepthFramePacker.setDroppedFrames(message, 5);
+    assertEquals(5, message.getInt(316));
+
+    int depthOffset = DepthFramePacker.HEADER_SIZE;
+    assertEquals(1.5f, message.getFloat(depthOffset + 3 * 4), 0f);
+    assertTrue(Float.isNaN(message.getFloat(depthOffset + 5 * 4)));
+
+    int confidenceOffset = depthOffset + width * height * 4;
+    assertEquals(12, message.get(confidenceOffset + 2));
+    assertEquals(13, message.get(confidenceOffset + 3));
+    assertEquals(255, message.get(confidenceOffset + 5) & 0xFF);
+
+    byte[] path = new byte[6];
+    message.position(confidenceOffset + width * height);
+    message.get(path);
+    assertEquals("/a.jpg", new String(path, StandardCharsets.UTF_8));
+  }
+
+  @Test
+  public void packMillimeters_dropsRowPaddingAndWritesScale() {
+    int width = 3;
+    int height = 2;
+    // Depth and confidence rows padded to a stride of 4
+    ShortBuffer depth =
+        ShortBuffer.wrap(new short[] {0, 500, 1000, -1, 1500, 2000, (short) 65000, -1});
+    ByteBuffer confidence = ByteBuffer.wrap(new byte[] {1, 2, 3, -1, 4, 5, 6, -1});
+
+    ByteBuffer message =
+        DepthFramePacker.packMillimeters(
+            7L, width, height, new int[] {640, 480}, 1f, 2f, 3f, 4f,
+            null, depth, 4, confidence, 4, null);
+
+    message.order(ByteOrder.LITTLE_ENDIAN);
+    assertEquals(DepthFramePacker.HEADER_SIZE + width * height * 3, message.remaining());
+    assertEquals(
+        DepthFramePacker.DEPTH_FORMAT_UINT16_MILLIMETERS,
+        message.getInt(DepthFramePacker.OFFSET_DEPTH_FORMAT));
+    assertEquals(0.001f, message.getFloat(DepthFramePacker.OFFSET_DEPTH_FORMAT + 4), 0f);
+    assertEquals(0, message.getInt(312));
+
+    int depthOffset = DepthFramePacker.HEADER_SIZE;
+    assertEquals(1000, message.getShort(depthOffset + 2 * 2));
+    assertEquals(1500, message.getShort(depthOffset + 3 * 2));
+    assertEquals(65000, message.getShort(depthOffset + 5 * 2) & 0xFFFF);
+
+    int confidenceOffset = depthOffset + width * height * 2;
+    assertEquals(3, message.get(confidenceOffset + 2));
+    assertEquals(4, message.get(confidenceOffset + 3));
+    assertEquals(6, message.get(confidenceOffset + 5));
+  }
+
+  @Test
+  public void pack_heapMessageIsItsWholeBackingArray() {
+    FloatBuffer depth = FloatBuffer.wrap(new float[] {0.25f, 0.5f});
+    ByteBuffer confidence = ByteBuffer.wrap(new byte[] {1, 2});
+
+    ByteBuffer direct = DepthFramePacker.pack(
+        1L, 2, 1, new int[] {640, 480}, 1f, 1f, 1f, 1f, null, depth, confidence, 2, "/b.jpg");
+    ByteBuffer heap = DepthFramePacker.pack(
+        1L, 2, 1, new int[] {640, 480}, 1f, 1f, 1f, 1f, null, depth, confidence, 2, "/b.jpg",
+        false);
+
+    assertFalse(heap.isDirect());
+    assertEquals(0, heap.arrayOffset());
+    assertEquals(heap.remaining(), heap.array().length);
+    byte[] directBytes = new byte[direct.remaining()];
+    direct.duplicate().get(directBytes);
+    assertArrayEquals(directBytes, heap.array());
+  }
+}
@@ -0,0 +1,31 @@
+package com.example.ar_depth_cover.rawdepth;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import org.junit.Test;
+
+public class PointCloudPackerTest {
+  @Test
+  public void pack_writesHeaderAndPoints() {
+    FloatBuffer points = FloatBuffer.wrap(new float[] {1f, 2f, 3f, 0.5f, 4f, 5f, 6f, 1f});
+
+    ByteBuffer message = PointCloudPacker.pack(77L, PointCloudPacker.SPACE_WORLD, points);
+
+    assertTrue(message.isDirect());
+    assertEquals(PointCloudPacker.HEADER_SIZE + 32, message.remaining());
+    message.order(ByteOrder.LITTLE_ENDIAN);
+    assertEquals(PointCloudPacker.MAGIC, message.getInt(0));
+    assertEquals(77L, message.getLong(8));
+    assertEquals(2, message.getInt(16));
+    assertEquals(PointCloudPacker.SPACE_WORLD, message.getInt(20));
+    assertEquals(4, message.getInt(24));
+    assertEquals(0.5f, message.getFloat(32 + 12), 0f);
+    assertEquals(6f, message.getFloat(32 + 24), 0f);
+    // The source buffer is left untouched
+    assertEquals(8, points.remaining());
+  }
+}
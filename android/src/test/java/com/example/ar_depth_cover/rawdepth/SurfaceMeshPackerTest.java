@@ -0,0 +1,36 @@
+package com.example.ar_depth_cover.rawdepth;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+import org.junit.Test;
+
+public class SurfaceMeshPackerTest {
+  @Test
+  public void pack_writesHeaderThenPositionsNormalsAndIndices() {
+    FloatBuffer vertices = FloatBuffer.wrap(new float[] {0f, 0f, 0f, 1f, 0f, 0f, 0f, 1f, 0f});
+    FloatBuffer normals = FloatBuffer.wrap(new float[] {0f, 0f, 1f, 0f, 0f, 1f, 0f, 0f, 1f});
+    IntBuffer indices = IntBuffer.wrap(new int[] {0, 1, 2});
+
+    ByteBuffer message = SurfaceMeshPacker.pack(99L, 4, vertices, normals, indices);
+
+    assertTrue(message.isDirect());
+    assertEquals(SurfaceMeshPacker.HEADER_SIZE + 18 * 4 + 3 * 4, message.remaining());
+    message.order(ByteOrder.LITTLE_ENDIAN);
+    assertEquals(SurfaceMeshPacker.MAGIC, message.getInt(0));
+    assertEquals(99L, message.getLong(8));
+    assertEquals(3, message.getInt(16));
+    assertEquals(3, message.getInt(20));
+    assertEquals(4, message.getInt(24));
+    assertEquals(1f, message.getFloat(32 + 3 * 4), 0f);
+    assertEquals(1f, message.getFloat(32 + 9 * 4 + 2 * 4), 0f);
+    assertEquals(2, message.getInt(32 + 18 * 4 + 2 * 4));
+    // The source buffers are left untouched
+    assertEquals(9, vertices.remaining());
+    assertEquals(3, indices.remaining());
+  }
+}
@@ -8,10 +8,8 @@ import 'package:flutter/services.dart';
 import 'package:ar_depth_cover/ar_depth_cover.dart';
 import 'package:permission_handler/permission_handler.dart';
 import 'package:path_provider/path_provider.dart';
-import 'dart:io';
 import 'dart:typed_data';
 import 'gallery_view.dart'; // Import the gallery view
-import 'dart:convert';
 
 void main() {
   runApp(const MyApp());
@@ -51,6 +49,9 @@ class _ARHomePageState extends State<ARHomePage> {
   // Add this variable to your _ARHomePageState class
   int _lastSaveTimestamp = 0;
 
+  // Whether processed frames are being recorded into a dataset
+  bool _recordingDataset = false;
+
   @override
   void initState() {
     super.initState();
@@ -114,67 +115,27 @@ class _ARHomePageState extends State<ARHomePage> {
           log('imagePath: ${depthData['imagePath']}', name: 'Received Depth Data');
           log('depthData: ${depthData['depthImage'].length }', name: 'Received Depth Data');
           log('confidenceData: ${depthData['confidenceImage']['planes'][0]['data'].length}', name: 'Received Depth Data');
-          
-      // Save depth and confidence data to a JSON file
-      _saveDepthAndConfidenceData(depthData);
     });
   }
   
-  // Function to save depth and confidence data
-  Future<void> _saveDepthAndConfidenceData(Map<String, dynamic> depthData) async {
+  // Appends processed depth frames to a native dataset file while recording
+  Future<void> _toggleDataset() async {
     try {
-      // Get the image path and extract a filename base
-      String? imagePath = depthData['imagePath'];
-      if (imagePath == null) {
-        log('Cannot save data: Image path is null', name: 'Save Data Error');
-        return;
+      if (_recordingDataset) {
+        final int records = await ARView.stopDataset();
+        log('Dataset closed with $records records', name: 'Dataset');
+      } else {
+        final String path = await ARView.startDataset();
+        log('Recording dataset to $path', name: 'Dataset');
       }
-      log(imagePath, name: "Data Saved");
-      // Create a filename based on the image path
-      String baseFilename = imagePath.split('/').last.split('.').first;
-      // Get the directory path by removing the last component (filename)
-      String directoryPath = imagePath.split('/').sublist(0, imagePath.split('/').length - 1).join('/');
-      String jsonFilename = '${baseFilename}_depth_data.json';
-      
-      // Get app's documents directory
-
-      log('directory: $directoryPath', name: 'Data Saved');
-      final filePath = '$directoryPath/$jsonFilename';
-      
-      // Prepare data to save
-      Map<String, dynamic> dataToSave = {
-        'timestamp': DateTime.now().millisecondsSinceEpoch,
-        'depthWidth': depthData['depthWidth'],
-        'depthHeight': depthData['depthHeight'],
-        'intrinsicsWidth': depthData['intrinsicsWidth'],
-        'intrinsicsHeight': depthData['intrinsicsHeight'],
-        'focalLengthX': depthData['focalLengthX'],
-        'focalLengthY': depthData['focalLengthY'],
-        'principalPointX': depthData['principalPointX'],
-        'principalPointY': depthData['principalPointY'],
-        'modelMatrix': depthData['modelMatrix'],
-        'viewMatrix': depthData['viewMatrix'],
-        'projectionMatrix': depthData['projectionMatrix'],
-        'transformMatrix': depthData['transformMatrix'],
-        'depthData': List<double>.from(depthData['depthImage']),
-        'confidenceData': List<int>.from(depthData['confidenceImage']['planes'][0]['data']),
-        'originalImagePath': imagePath,
-      };
-      
-      // Convert to JSON and save to file
-      final jsonString = jsonEncode(dataToSave);
-      final file = File(filePath);
-      await file.writeAsString(jsonString);
-      
-      log('Successfully saved depth and confidence data to $filePath', name: 'Data Saved');
-    } catch (e) {
-      log('Error saving depth and confidence data: $e', name: 'Save Data Error');
+      if (!mounted) return;
+      setState(() {
+        _recordingDataset = !_recordingDataset;
+      });
+    } on PlatformException catch (e) {
+      log('Dataset error: ${e.message}', name: 'Dataset');
     }
   }
-  
-  
-  
-  
 
 
   @override
@@ -183,6 +144,13 @@ class _ARHomePageState extends State<ARHomePage> {
       appBar: AppBar(
         title: const Text('AR Depth Cover Example'),
         actions: [
+          IconButton(
+            icon: Icon(_recordingDataset
+                ? Icons.stop_circle_outlined
+                : Icons.fiber_manual_record),
+            tooltip: _recordingDataset ? 'Stop dataset' : 'Record dataset',
+            onPressed: _toggleDataset,
+          ),
           // Add a gallery button to the app bar
           IconButton(
             icon: const Icon(Icons.photo_library),
@@ -239,6 +207,13 @@ class _ARHomePageState extends State<ARHomePage> {
       return ARView(
         logDepthOnly: false, // Set to false to receive depth data visualization
         onDepthDataReceived: _onDepthDataReceived,
+        depthFormat: DepthPayloadFormat.uint16,
+        onImageSaved: (int timestamp, String imagePath, bool saved) {
+          if (!saved) {
+            log('Image for depth frame $timestamp was not saved: $imagePath',
+                name: 'Save Data Error');
+          }
+        },
       );
     } catch (e) {
       return Center(
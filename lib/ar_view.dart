@@ -1,25 +1,465 @@
+import 'dart:async';
+
 import 'package:flutter/material.dart';
 import 'package:flutter/services.dart';
 
+import 'depth_frame.dart';
+import 'point_cloud.dart';
+import 'surface_mesh.dart';
+
+export 'depth_frame.dart';
+export 'point_cloud.dart';
+export 'surface_mesh.dart';
+
 /// Callback type for receiving depth data from the AR camera
 typedef DepthDataCallback = void Function(Map<String, dynamic> depthData);
 
+/// Callback type for receiving decoded depth frames from the AR camera
+typedef DepthFrameCallback = void Function(DepthFrame frame);
+
+/// Callback type for receiving point clouds unprojected from depth frames
+typedef PointCloudCallback = void Function(PointCloud pointCloud);
+
+/// Callback type for the outcome of saving the camera image of the depth
+/// frame with the same [timestamp]. [imagePath] is the path that frame
+/// carried; the file exists there only if [saved] is true.
+typedef ImageSavedCallback = void Function(
+    int timestamp, String imagePath, bool saved);
+
+/// Callback type for the end of a capture sequence started with
+/// [ARView.startCapture] or the view's capture button.
+typedef CaptureSequenceCallback = void Function(
+    int capturedFrames, bool cancelled);
+
+/// Callback type for an ARCore session recording starting or stopping, by
+/// [ARView.stopRecording], a paused session or an error.
+typedef RecordingStateCallback = void Function(bool recording);
+
+/// Callback type for the end of a dataset replay started with
+/// [ARView.startReplay]. The last [replayedFrames] may still be in the
+/// pipeline.
+typedef ReplayFinishedCallback = void Function(
+    int replayedFrames, bool cancelled);
+
+/// How the native side fuses depth across consecutive frames.
+enum DepthFusionMode {
+  /// Recency-weighted average over the last few frames.
+  weightedWindow,
+
+  /// Same average as [weightedWindow], maintained incrementally.
+  runningSum,
+
+  /// Recency-weighted average after reprojecting older frames into the
+  /// current camera view.
+  reprojected,
+
+  /// Per-pixel Kalman filter; converges best on static scenes.
+  kalman,
+}
+
+/// How the depth plane is encoded on its way from the native side.
+enum DepthPayloadFormat {
+  /// Float32 meters, fused across frames with [ARView.fusionMode] on the
+  /// native side. Pixels the fusion rejects, e.g. for low confidence, are NaN.
+  float32,
+
+  /// The sensor's uint16 millimeters, forwarded untouched at half the size;
+  /// no fusion is applied. Read them from [DepthFrame.depthMillimeters];
+  /// [DepthFrame.depth] converts to meters on first access.
+  uint16,
+}
+
+/// Which frame the native queue gives up when [ARView.depthFrameStream]
+/// falls behind.
+enum DepthFrameDropPolicy {
+  /// Evict the oldest queued frame, so listeners always get recent frames.
+  dropOldest,
+
+  /// Discard the arriving frame, keeping the frames already queued.
+  dropNewest,
+}
+
+/// What the native image writer does when its queue of pending JPEG saves
+/// is full.
+enum ImageQueuePolicy {
+  /// Wait for room. No queued image is lost, but on slow storage the depth
+  /// pipeline backs up and skips new frames until there is room. Rendering
+  /// is not affected.
+  block,
+
+  /// Discard the oldest pending save.
+  dropOldest,
+
+  /// Discard the new save.
+  skip,
+}
+
 class ARView extends StatefulWidget {
   final DepthDataCallback? onDepthDataReceived;
+  final DepthFrameCallback? onDepthFrameReceived;
+  final ImageSavedCallback? onImageSaved;
+  final CaptureSequenceCallback? onCaptureSequenceFinished;
+  final RecordingStateCallback? onRecordingStateChanged;
+
+  /// Called when a playback started with [ARView.startPlayback] reaches the
+  /// end of its file.
+  final VoidCallback? onPlaybackFinished;
+  final ReplayFinishedCallback? onReplayFinished;
+
+  /// Receives a point cloud for every depth frame when [pointCloudSpace] is
+  /// set. Unprojection happens natively, off the UI thread.
+  final PointCloudCallback? onPointCloudReceived;
+  final PointCloudSpace? pointCloudSpace;
   final bool logDepthOnly;
+  final DepthFusionMode fusionMode;
+
+  /// Splits depth fusion into row stripes across all CPU cores. Lowers
+  /// fusion latency at the cost of the cores' time; off by default.
+  final bool parallelFusion;
+  final DepthPayloadFormat depthFormat;
+
+  /// Maximum number of camera images waiting to be saved. Each one holds a
+  /// full-size frame copy in memory.
+  final int imageQueueDepth;
+  final ImageQueuePolicy imageQueuePolicy;
+
+  /// Processes every new depth frame instead of only on capture. When the
+  /// pipeline's latency goes over [frameBudget], the native side processes
+  /// fewer frames and then lowers the resolution, and raises them again once
+  /// there is headroom.
+  final bool continuousDepth;
+  final Duration frameBudget;
+
+  /// Also saves the camera image of frames processed in continuous mode.
+  /// Off by default: each queued image holds a full-size frame copy, and
+  /// continuous frames otherwise carry no image path.
+  final bool continuousImages;
 
   const ARView({
     Key? key,
     this.onDepthDataReceived,
+    this.onDepthFrameReceived,
+    this.onImageSaved,
+    this.onCaptureSequenceFinished,
+    this.onRecordingStateChanged,
+    this.onPlaybackFinished,
+    this.onReplayFinished,
+    this.onPointCloudReceived,
+    this.pointCloudSpace,
     this.logDepthOnly = true,
+    this.fusionMode = DepthFusionMode.weightedWindow,
+    this.parallelFusion = false,
+    this.depthFormat = DepthPayloadFormat.float32,
+    this.imageQueueDepth = 3,
+    this.imageQueuePolicy = ImageQueuePolicy.dropOldest,
+    this.continuousDepth = false,
+    this.frameBudget = const Duration(milliseconds: 100),
+    this.continuousImages = false,
   }) : super(key: key);
 
+  static const MethodChannel _depthDataChannel =
+      MethodChannel('ar_depth_cover/depth_data');
+  static const EventChannel _depthFrameStreamChannel =
+      EventChannel('ar_depth_cover/depth_frame_stream');
+  static int _depthFrameStreamGeneration = 0;
+
+  /// Starts a capture sequence that processes new depth frames as the sensor
+  /// delivers them, for either [frameCount] frames or [duration].
+  ///
+  /// [maxRateHz] caps the capture rate; 0 captures every new depth frame.
+  /// A sequence already running is cancelled. Captured frames arrive through
+  /// the usual callbacks or [depthFrameStream].
+  static Future<void> startCapture({
+    int? frameCount,
+    Duration? duration,
+    double maxRateHz = 0,
+  }) {
+    assert((frameCount == null) != (duration == null),
+        'Pass exactly one of frameCount and duration');
+    return _depthDataChannel.invokeMethod<void>('startCapture', <String, dynamic>{
+      if (frameCount != null) 'frameCount': frameCount,
+      if (duration != null) 'durationMillis': duration.inMilliseconds,
+      'maxRateHz': maxRateHz,
+    });
+  }
+
+  /// Changes how depth is fused while the view is running. See [fusionMode]
+  /// and [parallelFusion]; arguments left out keep their current setting.
+  static Future<void> setFusionMode({
+    DepthFusionMode? mode,
+    bool? parallel,
+  }) {
+    return _depthDataChannel.invokeMethod<void>('setFusionMode', <String, dynamic>{
+      if (mode != null) 'mode': mode.name,
+      if (parallel != null) 'parallel': parallel,
+    });
+  }
+
+  /// Turns continuous depth processing on or off while the view is running.
+  /// See [continuousDepth] and [continuousImages].
+  static Future<void> setContinuousDepth(
+    bool enabled, {
+    Duration? frameBudget,
+    bool? saveImages,
+  }) {
+    return _depthDataChannel.invokeMethod<void>('setContinuousMode', <String, dynamic>{
+      'enabled': enabled,
+      if (frameBudget != null) 'frameBudgetMillis': frameBudget.inMilliseconds,
+      if (saveImages != null) 'saveImages': saveImages,
+    });
+  }
+
+  /// Starts or stops fusing every processed depth frame into a native
+  /// world-space point cloud with one point per voxel.
+  ///
+  /// Passing [voxelSize] (meters) or [maxCells] clears the cloud. Once
+  /// [maxCells] voxels exist, points in new voxels are rejected while
+  /// existing voxels keep refining.
+  static Future<void> configurePointAccumulation({
+    bool? enabled,
+    double? voxelSize,
+    int? maxCells,
+  }) {
+    return _depthDataChannel
+        .invokeMethod<void>('configurePointAccumulation', <String, dynamic>{
+      if (enabled != null) 'enabled': enabled,
+      if (voxelSize != null) 'voxelSize': voxelSize,
+      if (maxCells != null) 'maxCells': maxCells,
+    });
+  }
+
+  /// Returns the accumulated world-space cloud. With [changedOnly], returns
+  /// only the voxels created or refined since the previous such call, which
+  /// is cheap to merge into a cloud kept on the Dart side.
+  static Future<PointCloud> getAccumulatedPointCloud(
+      {bool changedOnly = false}) async {
+    final Uint8List? bytes = await _depthDataChannel.invokeMethod<Uint8List>(
+        'getAccumulatedPointCloud', <String, dynamic>{
+      'changedOnly': changedOnly,
+    });
+    return PointCloud.fromByteData(ByteData.sublistView(bytes!));
+  }
+
+  /// Drops the accumulated cloud, keeping accumulation on or off.
+  static Future<void> clearPointAccumulation() {
+    return _depthDataChannel.invokeMethod<void>('clearPointAccumulation');
+  }
+
+  /// Starts or stops fusing every processed depth frame into a native
+  /// truncated signed distance field, the basis for surface meshes.
+  ///
+  /// [voxelSize] and [truncation] are in meters; memory grows with the
+  /// observed surface, up to [maxBlocks] blocks of 8x8x8 voxels (about 4 KB
+  /// each). Passing any of them clears the volume.
+  static Future<void> configureSurfaceReconstruction({
+    bool? enabled,
+    double? voxelSize,
+    double? truncation,
+    int? maxBlocks,
+  }) {
+    return _depthDataChannel
+        .invokeMethod<void>('configureSurfaceReconstruction', <String, dynamic>{
+      if (enabled != null) 'enabled': enabled,
+      if (voxelSize != null) 'voxelSize': voxelSize,
+      if (truncation != null) 'truncation': truncation,
+      if (maxBlocks != null) 'maxBlocks': maxBlocks,
+    });
+  }
+
+  /// Empties the surface reconstruction volume.
+  static Future<void> clearSurfaceReconstruction() {
+    return _depthDataChannel.invokeMethod<void>('clearSurfaceReconstruction');
+  }
+
+  /// Extracts the surface fused by [configureSurfaceReconstruction] as a
+  /// triangle mesh.
+  ///
+  /// Only the parts of the volume that changed since the previous call are
+  /// re-meshed natively, so calling this regularly during a scan stays cheap;
+  /// the returned mesh is always complete.
+  static Future<SurfaceMesh> extractSurfaceMesh() async {
+    final Uint8List? bytes =
+        await _depthDataChannel.invokeMethod<Uint8List>('extractSurfaceMesh');
+    return SurfaceMesh.fromByteData(ByteData.sublistView(bytes!));
+  }
+
+  /// Starts appending every processed depth frame to a native dataset file
+  /// and returns its path.
+  ///
+  /// Each record holds the frame's intrinsics, pose and matrices, uint16
+  /// depth and confidence, and with [embedImages] the frame's JPEG. With
+  /// [compressDepth] the planes are stored losslessly compressed, typically
+  /// in a fraction of the raw size, at some CPU cost per frame. Without
+  /// [path] a new `DEPTH_<time>.ads` file is created next to the saved
+  /// images; an existing dataset at [path] is continued. Records share the
+  /// image write queue, so use [ImageQueuePolicy.block] to never drop the
+  /// record of a processed frame; frames skipped while the pipeline is
+  /// backed up get none.
+  static Future<String> startDataset({
+    String? path,
+    bool embedImages = true,
+    bool compressDepth = true,
+  }) async {
+    final String? datasetPath = await _depthDataChannel
+        .invokeMethod<String>('startDataset', <String, dynamic>{
+      if (path != null) 'path': path,
+      'embedImages': embedImages,
+      'compressDepth': compressDepth,
+    });
+    return datasetPath!;
+  }
+
+  /// Stops the dataset started by [startDataset] once the frames already
+  /// queued are written, and returns how many records it holds.
+  static Future<int> stopDataset() async {
+    final Map<dynamic, dynamic>? summary =
+        await _depthDataChannel.invokeMethod<Map<dynamic, dynamic>>('stopDataset');
+    return summary == null ? 0 : summary['recordCount'] as int;
+  }
+
+  /// Starts recording the ARCore session to an MP4 and returns its path.
+  ///
+  /// The file holds the camera image, sensor data and ARCore's depth, which
+  /// [startPlayback] replays, plus a custom track with the depth and
+  /// confidence planes of every processed frame. That track only has records
+  /// for frames the pipeline processed, and in [continuousDepth] mode their
+  /// planes may be at a lowered resolution; each record's header gives its
+  /// size. Without [path] a new
+  /// `AR_<time>.mp4` is created next to the saved images. The recording stops
+  /// with [stopRecording] or when the session pauses; [onRecordingStateChanged]
+  /// reports both.
+  static Future<String> startRecording({String? path}) async {
+    final String? recordingPath = await _depthDataChannel
+        .invokeMethod<String>('startRecording', <String, dynamic>{
+      if (path != null) 'path': path,
+    });
+    return recordingPath!;
+  }
+
+  /// Stops the session recording, if any, and finishes its file.
+  static Future<void> stopRecording() {
+    return _depthDataChannel.invokeMethod<void>('stopRecording');
+  }
+
+  /// Plays back an MP4 from [startRecording] in place of the camera. Its
+  /// frames are captured and processed like live ones, and the camera stays
+  /// closed. [onPlaybackFinished] reports the end of the file.
+  static Future<void> startPlayback(String path) {
+    return _depthDataChannel.invokeMethod<void>('startPlayback', <String, dynamic>{
+      'path': path,
+    });
+  }
+
+  /// Returns from a playback to the live camera.
+  static Future<void> stopPlayback() {
+    return _depthDataChannel.invokeMethod<void>('stopPlayback');
+  }
+
+  /// Feeds the frames of a dataset from [startDataset] through the native
+  /// depth pipeline, from fusion on, and returns how many it holds.
+  ///
+  /// Frames arrive as if just captured, without camera images, and go into
+  /// point clouds, surface reconstruction, a running dataset and PNG export
+  /// where those are enabled. Live frames are not processed meanwhile. By
+  /// default frames run as fast as the pipeline takes them, never dropped;
+  /// with [realTime] they keep their recorded spacing. [onReplayFinished]
+  /// reports the end.
+  static Future<int> startReplay(String path, {bool realTime = false}) async {
+    final int? records = await _depthDataChannel
+        .invokeMethod<int>('startReplay', <String, dynamic>{
+      'path': path,
+      'realTime': realTime,
+    });
+    return records!;
+  }
+
+  /// Stops the running dataset replay, if any.
+  static Future<void> stopReplay() {
+    return _depthDataChannel.invokeMethod<void>('stopReplay');
+  }
+
+  /// Starts or stops saving every processed depth frame as PNG files next to
+  /// its camera image: `DEPTH_<timestamp>.png`, 16-bit grayscale
+  /// millimeters, and `CONF_<timestamp>.png`, 8-bit grayscale confidence.
+  /// The planes keep the depth image's orientation. Files are written on the
+  /// image write queue and appear once complete.
+  static Future<void> setPngExport(bool enabled) {
+    return _depthDataChannel.invokeMethod<void>('setPngExport', <String, dynamic>{
+      'enabled': enabled,
+    });
+  }
+
+  /// Cancels the running capture sequence, if any.
+  static Future<void> cancelCapture() {
+    return _depthDataChannel.invokeMethod<void>('cancelCapture');
+  }
+
+  /// Streams depth frames with backpressure.
+  ///
+  /// The native side keeps at most [queueCapacity] frames and only sends the
+  /// next one after the listener is done with the previous one. With
+  /// `await for`, that is when the loop body completes, so slow async
+  /// processing makes the native queue drop frames by [dropPolicy] rather
+  /// than letting them pile up. [DepthFrame.droppedFrames] counts the frames
+  /// dropped so far.
+  ///
+  /// While the stream has a listener, frames are delivered only through it
+  /// and not to [onDepthDataReceived] or [onDepthFrameReceived].
+  static Stream<DepthFrame> depthFrameStream({
+    DepthFrameDropPolicy dropPolicy = DepthFrameDropPolicy.dropOldest,
+    int queueCapacity = 2,
+  }) {
+    late final StreamController<DepthFrame> controller;
+    StreamSubscription<dynamic>? subscription;
+    int unacknowledged = 0;
+    // Tags acknowledgements, so late ones from an earlier subscription are
+    // not credited to this one
+    final int generation = ++_depthFrameStreamGeneration;
+
+    void acknowledge() {
+      for (; unacknowledged > 0; unacknowledged--) {
+        _depthDataChannel.invokeMethod<void>(
+            'ackDepthFrame', <String, dynamic>{'generation': generation});
+      }
+    }
+
+    // Synchronous, so a listener that pauses on delivery (as `await for`
+    // does) is seen as paused before the frame is acknowledged.
+    controller = StreamController<DepthFrame>(
+      sync: true,
+      onListen: () {
+        subscription = _depthFrameStreamChannel
+            .receiveBroadcastStream(<String, dynamic>{
+          'dropPolicy': dropPolicy.name,
+          'queueCapacity': queueCapacity,
+          'generation': generation,
+        }).listen(
+          (dynamic message) {
+            final Uint8List bytes = message as Uint8List;
+            unacknowledged++;
+            controller.add(DepthFrame.fromByteData(ByteData.sublistView(bytes)));
+            if (!controller.isPaused) {
+              acknowledge();
+            }
+          },
+          onError: controller.addError,
+          onDone: controller.close,
+        );
+      },
+      onResume: acknowledge,
+      onCancel: () => subscription?.cancel(),
+    );
+    return controller.stream;
+  }
+
   @override
   State<ARView> createState() => _ARViewState();
 }
 
 class _ARViewState extends State<ARView> {
   late MethodChannel _channel;
+  late BasicMessageChannel<ByteData?> _frameChannel;
+  late BasicMessageChannel<ByteData?> _pointCloudChannel;
 
   @override
   void initState() {
@@ -27,6 +467,40 @@ class _ARViewState extends State<ARView> {
     // The channel name must match the one used in the native code
     _channel = const MethodChannel('ar_depth_cover/depth_data');
     _channel.setMethodCallHandler(_handleMethodCall);
+    _frameChannel = const BasicMessageChannel<ByteData?>(
+        'ar_depth_cover/depth_frames', BinaryCodec());
+    _frameChannel.setMessageHandler(_handleDepthFrame);
+    _pointCloudChannel = const BasicMessageChannel<ByteData?>(
+        'ar_depth_cover/point_clouds', BinaryCodec());
+    _pointCloudChannel.setMessageHandler(_handlePointCloud);
+  }
+
+  @override
+  void dispose() {
+    _channel.setMethodCallHandler(null);
+    _frameChannel.setMessageHandler(null);
+    _pointCloudChannel.setMessageHandler(null);
+    super.dispose();
+  }
+
+  // Decode packed depth frames from native code
+  Future<ByteData?> _handleDepthFrame(ByteData? message) async {
+    if (message == null) return null;
+    if (widget.onDepthFrameReceived == null &&
+        widget.onDepthDataReceived == null) {
+      return null;
+    }
+    final DepthFrame frame = DepthFrame.fromByteData(message);
+    widget.onDepthFrameReceived?.call(frame);
+    widget.onDepthDataReceived?.call(frame.toMap());
+    return null;
+  }
+
+  // Decode packed point clouds from native code
+  Future<ByteData?> _handlePointCloud(ByteData? message) async {
+    if (message == null || widget.onPointCloudReceived == null) return null;
+    widget.onPointCloudReceived!(PointCloud.fromByteData(message));
+    return null;
   }
 
   // Handle incoming method calls from native code
@@ -39,6 +513,28 @@ class _ARViewState extends State<ARView> {
           widget.onDepthDataReceived!(depthData);
         }
         break;
+      case 'onCaptureSequenceFinished':
+        final Map<dynamic, dynamic> event = call.arguments as Map;
+        widget.onCaptureSequenceFinished
+            ?.call(event['capturedFrames'] as int, event['cancelled'] as bool);
+        break;
+      case 'onRecordingStateChanged':
+        final Map<dynamic, dynamic> event = call.arguments as Map;
+        widget.onRecordingStateChanged?.call(event['recording'] as bool);
+        break;
+      case 'onPlaybackFinished':
+        widget.onPlaybackFinished?.call();
+        break;
+      case 'onReplayFinished':
+        final Map<dynamic, dynamic> event = call.arguments as Map;
+        widget.onReplayFinished
+            ?.call(event['replayedFrames'] as int, event['cancelled'] as bool);
+        break;
+      case 'onImageSaved':
+        final Map<dynamic, dynamic> event = call.arguments as Map;
+        widget.onImageSaved?.call(event['timestamp'] as int,
+            event['imagePath'] as String, event['saved'] as bool);
+        break;
       default:
         print('Unknown method ${call.method}');
     }
@@ -51,6 +547,15 @@ class _ARViewState extends State<ARView> {
     // Pass parameters to the platform side.
     final Map<String, dynamic> creationParams = <String, dynamic>{
       'logDepthOnly': widget.logDepthOnly,
+      'fusionMode': widget.fusionMode.name,
+      'parallelFusion': widget.parallelFusion,
+      'depthFormat': widget.depthFormat.name,
+      'imageQueueDepth': widget.imageQueueDepth,
+      'imageQueuePolicy': widget.imageQueuePolicy.name,
+      'continuousDepth': widget.continuousDepth,
+      'frameBudgetMillis': widget.frameBudget.inMilliseconds,
+      'continuousImages': widget.continuousImages,
+      'pointCloudSpace': widget.pointCloudSpace?.name ?? 'off',
     };
 
     return AndroidView(
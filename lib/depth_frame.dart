@@ -0,0 +1,224 @@
+import 'dart:convert';
+import 'dart:typed_data';
+
+/// One depth capture decoded from the packed binary message sent by the
+/// native side.
+///
+/// The depth and confidence planes are views over the received message
+/// rather than copies whenever the message is suitably aligned.
+class DepthFrame {
+  static const int _magic = 0x31464441; // "ADF1"
+  static const int _headerSize = 320;
+
+  /// Depth stored as float32 meters fused across frames, NaN for invalid or
+  /// rejected pixels.
+  static const int depthFormatFloat32Meters = 0;
+
+  /// Depth stored as the sensor's uint16 millimeters, 0 for invalid pixels.
+  static const int depthFormatUint16Millimeters = 1;
+
+  final int timestamp;
+  final int depthWidth;
+  final int depthHeight;
+  final int intrinsicsWidth;
+  final int intrinsicsHeight;
+  final double focalLengthX;
+  final double focalLengthY;
+  final double principalPointX;
+  final double principalPointY;
+
+  /// Column-major 4x4 matrices.
+  final Float32List modelMatrix;
+  final Float32List viewMatrix;
+  final Float32List projectionMatrix;
+  final Float32List transformMatrix;
+
+  /// One of [depthFormatFloat32Meters] or [depthFormatUint16Millimeters].
+  final int depthFormat;
+
+  /// Meters per stored depth unit: 1 for float32 frames, 0.001 for uint16.
+  final double depthScale;
+
+  /// Raw depth in millimeters, row-major, `depthWidth * depthHeight` values.
+  /// Only set for [depthFormatUint16Millimeters] frames.
+  final Uint16List? depthMillimeters;
+
+  Float32List? _depth;
+
+  /// Raw confidence (0-255), row-major, `depthWidth * depthHeight` values.
+  final Uint8List confidence;
+
+  /// Path the camera image for this frame is saved at, if any. The save may
+  /// still be in progress; `ARView.onImageSaved` reports when the file is
+  /// in place.
+  final String? imagePath;
+
+  /// Frames the native queue dropped before this one on
+  /// `ARView.depthFrameStream`; always 0 for callback delivery.
+  final int droppedFrames;
+
+  DepthFrame({
+    required this.timestamp,
+    required this.depthWidth,
+    required this.depthHeight,
+    required this.intrinsicsWidth,
+    required this.intrinsicsHeight,
+    required this.focalLengthX,
+    required this.focalLengthY,
+    required this.principalPointX,
+    required this.principalPointY,
+    required this.modelMatrix,
+    required this.viewMatrix,
+    required this.projectionMatrix,
+    required this.transformMatrix,
+    Float32List? depth,
+    this.depthMillimeters,
+    this.depthFormat = depthFormatFloat32Meters,
+    this.depthScale = 1.0,
+    required this.confidence,
+    this.imagePath,
+    this.droppedFrames = 0,
+  })  : assert(depth != null || depthMillimeters != null),
+        _depth = depth;
+
+  /// Depth in meters, row-major, `depthWidth * depthHeight` values.
+  ///
+  /// For float32 frames these are the fused values, NaN where fusion
+  /// rejected the pixel. For uint16 frames this is computed from
+  /// [depthMillimeters] on first access, with 0 mapped to 0.
+  Float32List get depth {
+    final Float32List? cached = _depth;
+    if (cached != null) {
+      return cached;
+    }
+    final Uint16List millimeters = depthMillimeters!;
+    final Float32List meters = Float32List(millimeters.length);
+    for (int i = 0; i < millimeters.length; i++) {
+      meters[i] = millimeters[i] * depthScale;
+    }
+    return _depth = meters;
+  }
+
+  /// Decodes a message packed by `DepthFramePacker` on the Android side.
+  factory DepthFrame.fromByteData(ByteData data) {
+    if (data.lengthInBytes < _headerSize ||
+        data.getInt32(0, Endian.little) != _magic) {
+      throw const FormatException('Not a depth frame message');
+    }
+    final int depthWidth = data.getInt32(16, Endian.little);
+    final int depthHeight = data.getInt32(20, Endian.little);
+    final int depthFormat = data.getInt32(304, Endian.little);
+    final int bytesPerSample;
+    switch (depthFormat) {
+      case depthFormatFloat32Meters:
+        bytesPerSample = 4;
+        break;
+      case depthFormatUint16Millimeters:
+        bytesPerSample = 2;
+        break;
+      default:
+        throw FormatException('Unsupported depth format $depthFormat');
+    }
+    final int imagePathLength = data.getInt32(312, Endian.little);
+    final int pixels = depthWidth * depthHeight;
+
+    final int confidenceOffset = _headerSize + pixels * bytesPerSample;
+    final int imagePathOffset = confidenceOffset + pixels;
+
+    return DepthFrame(
+      timestamp: data.getInt64(8, Endian.little),
+      depthWidth: depthWidth,
+      depthHeight: depthHeight,
+      intrinsicsWidth: data.getInt32(24, Endian.little),
+      intrinsicsHeight: data.getInt32(28, Endian.little),
+      focalLengthX: data.getFloat32(32, Endian.little),
+      focalLengthY: data.getFloat32(36, Endian.little),
+      principalPointX: data.getFloat32(40, Endian.little),
+      principalPointY: data.getFloat32(44, Endian.little),
+      modelMatrix: _float32View(data, 48, 16),
+      viewMatrix: _float32View(data, 112, 16),
+      projectionMatrix: _float32View(data, 176, 16),
+      transformMatrix: _float32View(data, 240, 16),
+      depth: depthFormat == depthFormatFloat32Meters
+          ? _float32View(data, _headerSize, pixels)
+          : null,
+      depthMillimeters: depthFormat == depthFormatUint16Millimeters
+          ? _uint16View(data, _headerSize, pixels)
+          : null,
+      depthFormat: depthFormat,
+      depthScale: data.getFloat32(308, Endian.little),
+      confidence: data.buffer
+          .asUint8List(data.offsetInBytes + confidenceOffset, pixels),
+      imagePath: imagePathLength > 0
+          ? utf8.decode(data.buffer.asUint8List(
+              data.offsetInBytes + imagePathOffset, imagePathLength))
+          : null,
+      droppedFrames: data.getInt32(316, Endian.little),
+    );
+  }
+
+  /// Views [length] little-endian floats at [offset], copying only when the
+  /// data is not 4-byte aligned or the host is big endian.
+  static Float32List _float32View(ByteData data, int offset, int length) {
+    final int start = data.offsetInBytes + offset;
+    if (start % 4 == 0 && Endian.host == Endian.little) {
+      return data.buffer.asFloat32List(start, length);
+    }
+    final Float32List copy = Float32List(length);
+    for (int i = 0; i < length; i++) {
+      copy[i] = data.getFloat32(offset + i * 4, Endian.little);
+    }
+    return copy;
+  }
+
+  /// Views [length] little-endian uint16 values at [offset], copying only
+  /// when the data is not 2-byte aligned or the host is big endian.
+  static Uint16List _uint16View(ByteData data, int offset, int length) {
+    final int start = data.offsetInBytes + offset;
+    if (start % 2 == 0 && Endian.host == Endian.little) {
+      return data.buffer.asUint16List(start, length);
+    }
+    final Uint16List copy = Uint16List(length);
+    for (int i = 0; i < length; i++) {
+      copy[i] = data.getUint16(offset + i * 2, Endian.little);
+    }
+    return copy;
+  }
+
+  /// Returns the frame in the map shape used by [DepthDataCallback].
+  ///
+  /// Uint16 frames also carry `depthMillimeters`; `depthImage` stays in
+  /// meters for existing callers, which costs one conversion pass.
+  Map<String, dynamic> toMap() {
+    return <String, dynamic>{
+      'timestamp': timestamp,
+      'intrinsicsWidth': intrinsicsWidth,
+      'intrinsicsHeight': intrinsicsHeight,
+      'depthWidth': depthWidth,
+      'depthHeight': depthHeight,
+      'focalLengthX': focalLengthX,
+      'focalLengthY': focalLengthY,
+      'principalPointX': principalPointX,
+      'principalPointY': principalPointY,
+      'depthImage': depth,
+      'depthScale': depthScale,
+      if (depthMillimeters != null) 'depthMillimeters': depthMillimeters,
+      'imagePath': imagePath,
+      'confidenceImage': <String, dynamic>{
+        'width': depthWidth,
+        'height': depthHeight,
+        'planes': <Map<String, dynamic>>[
+          <String, dynamic>{
+            'bytesPerPixel': 1,
+            'bytesPerRow': depthWidth,
+            'data': confidence,
+          },
+        ],
+      },
+      'modelMatrix': modelMatrix,
+      'viewMatrix': viewMatrix,
+      'projectionMatrix': projectionMatrix,
+      'transformMatrix': transformMatrix,
+    };
+  }
+}
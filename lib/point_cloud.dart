@@ -0,0 +1,68 @@
+import 'dart:typed_data';
+
+/// Coordinate space of a [PointCloud].
+enum PointCloudSpace {
+  /// Relative to the camera: +X right, +Y up, looking down -Z.
+  camera,
+
+  /// ARCore's world frame, so points from different frames line up.
+  world,
+}
+
+/// Points unprojected from one depth frame on the native side.
+class PointCloud {
+  static const int _magic = 0x31435041; // "APC1"
+  static const int _headerSize = 32;
+
+  /// X, Y, Z in meters and confidence in [0, 1], per point.
+  static const int floatsPerPoint = 4;
+
+  /// Timestamp of the depth frame the points come from.
+  final int timestamp;
+  final PointCloudSpace space;
+  final int pointCount;
+
+  /// Interleaved X, Y, Z, confidence values, `pointCount * 4` floats. A
+  /// view over the received message whenever it is suitably aligned.
+  final Float32List points;
+
+  PointCloud({
+    required this.timestamp,
+    required this.space,
+    required this.pointCount,
+    required this.points,
+  });
+
+  /// Decodes a message packed by `PointCloudPacker` on the Android side.
+  factory PointCloud.fromByteData(ByteData data) {
+    if (data.lengthInBytes < _headerSize ||
+        data.getInt32(0, Endian.little) != _magic) {
+      throw const FormatException('Not a point cloud message');
+    }
+    final int pointCount = data.getInt32(16, Endian.little);
+    final int spaceIndex = data.getInt32(20, Endian.little);
+    if (spaceIndex < 0 || spaceIndex >= PointCloudSpace.values.length) {
+      throw FormatException('Unsupported point cloud space $spaceIndex');
+    }
+    final int floats = pointCount * floatsPerPoint;
+    if (pointCount < 0 || data.lengthInBytes < _headerSize + floats * 4) {
+      throw const FormatException('Truncated point cloud message');
+    }
+    final int start = data.offsetInBytes + _headerSize;
+    final Float32List points;
+    if (start % 4 == 0 && Endian.host == Endian.little) {
+      points = data.buffer.asFloat32List(start, floats);
+    } else {
+      points = Float32List(floats);
+      for (int i = 0; i < floats; i++) {
+        points[i] = data.getFloat32(_headerSize + i * 4, Endian.little);
+      }
+    }
+    return PointCloud(
+      timestamp: data.getInt64(8, Endian.little),
+      space: PointCloudSpace.values[spaceIndex],
+      pointCount: pointCount,
+      points: points,
+    );
+  }
+}
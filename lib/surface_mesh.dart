@@ -0,0 +1,84 @@
+import 'dart:typed_data';
+
+/// Triangle mesh of the surface fused from depth frames on the native side.
+class SurfaceMesh {
+  static const int _magic = 0x31534d41; // "AMS1"
+  static const int _headerSize = 32;
+
+  /// Timestamp of the last depth frame fused into the volume.
+  final int timestamp;
+  final int vertexCount;
+
+  /// Blocks of the volume re-meshed by this extraction; 0 when nothing
+  /// changed since the previous one.
+  final int remeshedBlocks;
+
+  /// X, Y, Z world positions in meters, `vertexCount * 3` floats.
+  final Float32List positions;
+
+  /// X, Y, Z unit normals pointing out of the surface, one per vertex.
+  final Float32List normals;
+
+  /// Three vertex indices per triangle, counter-clockwise seen from outside.
+  final Uint32List indices;
+
+  SurfaceMesh({
+    required this.timestamp,
+    required this.vertexCount,
+    required this.remeshedBlocks,
+    required this.positions,
+    required this.normals,
+    required this.indices,
+  });
+
+  int get triangleCount => indices.length ~/ 3;
+
+  /// Decodes a message packed by `SurfaceMeshPacker` on the Android side.
+  factory SurfaceMesh.fromByteData(ByteData data) {
+    if (data.lengthInBytes < _headerSize ||
+        data.getInt32(0, Endian.little) != _magic) {
+      throw const FormatException('Not a surface mesh message');
+    }
+    final int vertexCount = data.getInt32(16, Endian.little);
+    final int indexCount = data.getInt32(20, Endian.little);
+    final int floats = vertexCount * 3;
+    if (data.lengthInBytes < _headerSize + (floats * 2 + indexCount) * 4) {
+      throw const FormatException('Truncated surface mesh message');
+    }
+    final int normalsOffset = _headerSize + floats * 4;
+    final int indicesOffset = normalsOffset + floats * 4;
+    return SurfaceMesh(
+      timestamp: data.getInt64(8, Endian.little),
+      vertexCount: vertexCount,
+      remeshedBlocks: data.getInt32(24, Endian.little),
+      positions: _floats(data, _headerSize, floats),
+      normals: _floats(data, normalsOffset, floats),
+      indices: _uints(data, indicesOffset, indexCount),
+    );
+  }
+
+  /// A view over the message when it is suitably aligned, a copy otherwise.
+  static Float32List _floats(ByteData data, int offset, int count) {
+    final int start = data.offsetInBytes + offset;
+    if (start % 4 == 0 && Endian.host == Endian.little) {
+      return data.buffer.asFloat32List(start, count);
+    }
+    final Float32List values = Float32List(count);
+    for (int i = 0; i < count; i++) {
+      values[i] = data.getFloat32(offset + i * 4, Endian.little);
+    }
+    return values;
+  }
+
+  static Uint32List _uints(ByteData data, int offset, int count) {
+    final int start = data.offsetInBytes + offset;
+    if (start % 4 == 0 && Endian.host == Endian.little) {
+      return data.buffer.asUint32List(start, count);
+    }
+    final Uint32List values = Uint32List(count);
+    for (int i = 0; i < count; i++) {
+      values[i] = data.getUint32(offset + i * 4, Endian.little);
+    }
+    return values;
+  }
+}
@@ -0,0 +1,95 @@
+import 'dart:convert';
+import 'dart:typed_data';
+
+import 'package:flutter_test/flutter_test.dart';
+import 'package:ar_depth_cover/depth_frame.dart';
+
+ByteData _packFrame({String? imagePath}) {
+  const int width = 3;
+  const int height = 2;
+  final List<int> path = imagePath != null ? utf8.encode(imagePath) : <int>[];
+  final ByteData data =
+      ByteData(320 + width * height * 5 + path.length);
+  data.setInt32(0, 0x31464441, Endian.little);
+  data.setInt32(4, 1, Endian.little);
+  data.setInt64(8, 123456789, Endian.little);
+  data.setInt32(16, width, Endian.little);
+  data.setInt32(20, height, Endian.little);
+  data.setInt32(24, 640, Endian.little);
+  data.setInt32(28, 480, Endian.little);
+  data.setFloat32(32, 100.5, Endian.little);
+  data.setFloat32(48, 1.0, Endian.little); // modelMatrix[0]
+  data.setFloat32(240 + 60, 7.0, Endian.little); // transformMatrix[15]
+  data.setInt32(312, path.length, Endian.little);
+  data.setInt32(316, 4, Endian.little);
+  for (int i = 0; i < width * height; i++) {
+    data.setFloat32(320 + i * 4, i * 0.5, Endian.little);
+    data.setUint8(320 + width * height * 4 + i, 200 + i);
+  }
+  for (int i = 0; i < path.length; i++) {
+    data.setUint8(320 + width * height * 5 + i, path[i]);
+  }
+  return data;
+}
+
+ByteData _packMillimeterFrame() {
+  const int width = 3;
+  const int height = 2;
+  final ByteData data = ByteData(320 + width * height * 3);
+  data.setInt32(0, 0x31464441, Endian.little);
+  data.setInt32(4, 1, Endian.little);
+  data.setInt32(16, width, Endian.little);
+  data.setInt32(20, height, Endian.little);
+  data.setInt32(304, DepthFrame.depthFormatUint16Millimeters, Endian.little);
+  data.setFloat32(308, 0.001, Endian.little);
+  for (int i = 0; i < width * height; i++) {
+    data.setUint16(320 + i * 2, i * 500, Endian.little);
+    data.setUint8(320 + width * height * 2 + i, 100 + i);
+  }
+  return data;
+}
+
+void main() {
+  test('decodes header, planes and image path', () {
+    final DepthFrame frame =
+        DepthFrame.fromByteData(_packFrame(imagePath: '/tmp/IMG_1.jpg'));
+
+    expect(frame.timestamp, 123456789);
+    expect(frame.depthWidth, 3);
+    expect(frame.depthHeight, 2);
+    expect(frame.intrinsicsWidth, 640);
+    expect(frame.focalLengthX, closeTo(100.5, 1e-6));
+    expect(frame.modelMatrix[0], 1.0);
+    expect(frame.transformMatrix[15], 7.0);
+    expect(frame.depth, <double>[0, 0.5, 1, 1.5, 2, 2.5]);
+    expect(frame.confidence, <int>[200, 201, 202, 203, 204, 205]);
+    expect(frame.imagePath, '/tmp/IMG_1.jpg');
+    expect(frame.droppedFrames, 4);
+  });
+
+  test('views planes without copying', () {
+    final ByteData data = _packFrame();
+    final DepthFrame frame = DepthFrame.fromByteData(data);
+
+    expect(frame.depth.buffer, same(data.buffer));
+    expect(frame.confidence.buffer, same(data.buffer));
+    expect(frame.imagePath, isNull);
+  });
+
+  test('rejects other messages', () {
+    expect(() => DepthFrame.fromByteData(ByteData(320)),
+        throwsA(isA<FormatException>()));
+  });
+
+  test('decodes uint16 millimeter frames', () {
+    final ByteData data = _packMillimeterFrame();
+    final DepthFrame frame = DepthFrame.fromByteData(data);
+
+    expect(frame.depthFormat, DepthFrame.depthFormatUint16Millimeters);
+    expect(frame.depthMillimeters, <int>[0, 500, 1000, 1500, 2000, 2500]);
+    expect(frame.depthMillimeters!.buffer, same(data.buffer));
+    expect(frame.confidence, <int>[100, 101, 102, 103, 104, 105]);
+    expect(frame.depth[3], closeTo(1.5, 1e-6));
+    expect(frame.depth, same(frame.depth));
+  });
+}
@@ -0,0 +1,31 @@
+import 'dart:typed_data';
+
+import 'package:flutter_test/flutter_test.dart';
+import 'package:ar_depth_cover/point_cloud.dart';
+
+void main() {
+  test('decodes header and points', () {
+    final ByteData data = ByteData(32 + 2 * 16);
+    data.setInt32(0, 0x31435041, Endian.little);
+    data.setInt32(4, 1, Endian.little);
+    data.setInt64(8, 42, Endian.little);
+    data.setInt32(16, 2, Endian.little);
+    data.setInt32(20, 1, Endian.little);
+    data.setInt32(24, 4, Endian.little);
+    for (int i = 0; i < 8; i++) {
+      data.setFloat32(32 + i * 4, i * 0.25, Endian.little);
+    }
+
+    final PointCloud cloud = PointCloud.fromByteData(data);
+
+    expect(cloud.timestamp, 42);
+    expect(cloud.space, PointCloudSpace.world);
+    expect(cloud.pointCount, 2);
+    expect(cloud.points, <double>[0, 0.25, 0.5, 0.75, 1, 1.25, 1.5, 1.75]);
+  });
+
+  test('rejects other messages', () {
+    expect(() => PointCloud.fromByteData(ByteData(32)),
+        throwsA(isA<FormatException>()));
+  });
+}
@@ -0,0 +1,43 @@
+import 'dart:typed_data';
+
+import 'package:flutter_test/flutter_test.dart';
+import 'package:ar_depth_cover/surface_mesh.dart';
+
+void main() {
+  test('decodes header, vertices, normals and indices', () {
+    final ByteData data = ByteData(32 + 18 * 4 + 3 * 4);
+    data.setInt32(0, 0x31534d41, Endian.little);
+    data.setInt32(4, 1, Endian.little);
+    data.setInt64(8, 7, Endian.little);
+    data.setInt32(16, 3, Endian.little);
+    data.setInt32(20, 3, Endian.little);
+    data.setInt32(24, 2, Endian.little);
+    for (int i = 0; i < 9; i++) {
+      data.setFloat32(32 + i * 4, i.toDouble(), Endian.little);
+      data.setFloat32(32 + 36 + i * 4, i % 3 == 2 ? 1 : 0, Endian.little);
+    }
+    for (int i = 0; i < 3; i++) {
+      data.setUint32(32 + 72 + i * 4, 2 - i, Endian.little);
+    }
+
+    final SurfaceMesh mesh = SurfaceMesh.fromByteData(data);
+
+    expect(mesh.timestamp, 7);
+    expect(mesh.vertexCount, 3);
+    expect(mesh.remeshedBlocks, 2);
+    expect(mesh.triangleCount, 1);
+    expect(mesh.positions, <double>[0, 1, 2, 3, 4, 5, 6, 7, 8]);
+    expect(mesh.normals, <double>[0, 0, 1, 0, 0, 1, 0, 0, 1]);
+    expect(mesh.indices, <int>[2, 1, 0]);
+  });
+
+  test('rejects other and truncated messages', () {
+    expect(() => SurfaceMesh.fromByteData(ByteData(32)),
+        throwsA(isA<FormatException>()));
+    final ByteData truncated = ByteData(32);
+    truncated.setInt32(0, 0x31534d41, Endian.little);
+    truncated.setInt32(16, 3, Endian.little);
+    expect(() => SurfaceMesh.fromByteData(truncated),
+        throwsA(isA<FormatException>()));
+  });
+}